@@ -0,0 +1,301 @@
+package com.lotaris.rox.client.j2ee.itf.benchmark;
+
+import com.lotaris.j2ee.itf.model.Description;
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.TestFlag;
+import com.lotaris.rox.client.j2ee.itf.index.RoxableTestProcessor;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Synthetic test suite used by the benchmarks. The test methods of this class are
+ * never run, they are the templates of a realistic suite: plain keys, names,
+ * categories, tags, tickets and flags. The suite of a benchmark is generated from them
+ * and compiled when the benchmark is set up, with distinct test methods spread over
+ * test classes, so the caches of the metadata and of the filter decisions see as many
+ * methods and classes as in a large suite. The descriptions cycle over the generated
+ * methods like the executions of a large suite do over its test methods.
+ */
+public class BenchmarkTests {
+	/**
+	 * Number of test methods of a generated class
+	 */
+	static final int METHODS_PER_CLASS = 25;
+
+	/**
+	 * Number of distinct test methods generated, the larger runs execute them several times.
+	 * The suite is kept small so it compiles in a second or two; it is generated once per
+	 * fork whatever the number of tests of the run.
+	 */
+	static final int MAX_METHODS = 1000;
+
+	private static final String PACKAGE = BenchmarkTests.class.getPackage().getName() + ".generated";
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Filters of a typical run restricted to a feature: a few keys, tags and tickets
+	 */
+	static final String[] FILTERS = {
+		"key:" + getKey(0, 1), "key:" + getKey(1, 4), "key:" + getKey(2, 7),
+		"tag:payment", "tag:slow",
+		"ticket:JIRA-1204",
+		"name:Create an account",
+		"shouldRefundTheOrder"
+	};
+
+	private static final String[] MESSAGES = {
+		null,
+		"Expected the order to be refunded but it was CANCELLED",
+		null,
+		null,
+		"java.lang.IllegalStateException: The account is locked\n\tat com.example.AccountService.login(AccountService.java:142)"
+	};
+
+	/**
+	 * Test methods generated, shared by the benchmarks of a fork
+	 */
+	private static List<Method> suite;
+
+	@RoxableTest(key = "0f2a6b1c9d01")
+	@com.lotaris.j2ee.itf.annotations.Test
+	public void shouldCreateTheOrder(Description description) {}
+
+	@RoxableTest(key = "0f2a6b1c9d02", tags = { "payment", "order" })
+	@com.lotaris.j2ee.itf.annotations.Test
+	public void shouldPayTheOrder(Description description) {}
+
+	@RoxableTest(key = "0f2a6b1c9d03", tags = "payment", tickets = "JIRA-1204")
+	@com.lotaris.j2ee.itf.annotations.Test
+	public void shouldRefundTheOrder(Description description) {}
+
+	@RoxableTest(key = "0f2a6b1c9d04", name = "Create an account", category = "Account")
+	@com.lotaris.j2ee.itf.annotations.Test
+	public void shouldCreateTheAccount(Description description) {}
+
+	@RoxableTest(key = "0f2a6b1c9d05", category = "Account", tags = { "security", "slow" }, tickets = { "JIRA-88", "JIRA-97" })
+	@com.lotaris.j2ee.itf.annotations.Test
+	public void shouldLockTheAccountAfterThreeFailedLogins(Description description) {}
+
+	@RoxableTest(key = "0f2a6b1c9d06", flags = TestFlag.INACTIVE)
+	@com.lotaris.j2ee.itf.annotations.Test
+	public void shouldExportTheInvoices(Description description) {}
+
+	@RoxableTest(key = "0f2a6b1c9d07", tags = "report")
+	@com.lotaris.j2ee.itf.annotations.Test
+	public void shouldComputeTheMonthlyReport(Description description) {}
+
+	@RoxableTest(key = "0f2a6b1c9d08", tags = { "report", "slow" })
+	@com.lotaris.j2ee.itf.annotations.Test
+	public void shouldSendTheMonthlyReport(Description description) {}
+
+	/**
+	 * Create the descriptions of finished tests, with the data usually added by the tests
+	 *
+	 * @param count The number of descriptions
+	 * @return The descriptions created
+	 */
+	static Description[] createDescriptions(int count) {
+		List<Method> methods = getSuite();
+		Description[] descriptions = new Description[count];
+
+		for (int i = 0; i < count; i++) {
+			Method method = methods.get(i % methods.size());
+
+			Description description = new Description("benchmark", method.getAnnotation(com.lotaris.j2ee.itf.annotations.Test.class), method);
+			description.addData("iteration", Integer.toString(i));
+			description.addData("dataset", "dataset-" + (i % 16));
+			description.addData("locale", i % 2 == 0 ? "en_US" : "fr_CH");
+
+			String message = MESSAGES[i % MESSAGES.length];
+			descriptions[i] = message == null ? description.pass() : description.fail(message);
+		}
+
+		return descriptions;
+	}
+
+	/**
+	 * @param descriptions The descriptions of a run
+	 * @return The test classes of the run
+	 */
+	static Collection<Class<?>> getClasses(Description[] descriptions) {
+		Set<Class<?>> classes = new LinkedHashSet<>();
+		for (Description description : descriptions) {
+			classes.add(description.getMethod().getDeclaringClass());
+		}
+		return classes;
+	}
+
+	/**
+	 * @param classIndex The index of the generated class
+	 * @param methodIndex The index of the method in its class
+	 * @return The key of the generated test method
+	 */
+	static String getKey(int classIndex, int methodIndex) {
+		return String.format("%06x%06x", classIndex, methodIndex);
+	}
+
+	private static synchronized List<Method> getSuite() {
+		if (suite == null) {
+			try {
+				suite = generateSuite(MAX_METHODS);
+			}
+			catch (IOException | ReflectiveOperationException e) {
+				throw new IllegalStateException("Unable to generate the test suite of the benchmarks", e);
+			}
+		}
+
+		return suite;
+	}
+
+	/**
+	 * Generate and compile a suite of distinct test methods copying the annotations of the
+	 * templates, the test index being generated by the processor as for a real suite
+	 */
+	private static List<Method> generateSuite(int count) throws IOException, ReflectiveOperationException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+
+		if (compiler == null) {
+			throw new IllegalStateException("The benchmarks must run on a JDK to compile the generated test suite");
+		}
+
+		List<Method> templates = getTemplates();
+		int classCount = (count + METHODS_PER_CLASS - 1) / METHODS_PER_CLASS;
+
+		File directory = Files.createTempDirectory("rox-benchmark-suite").toFile();
+		File sourceDirectory = new File(directory, "src");
+		File classDirectory = new File(directory, "classes");
+		File packageDirectory = new File(sourceDirectory, PACKAGE.replace('.', File.separatorChar));
+
+		if (!packageDirectory.mkdirs() || !classDirectory.mkdirs()) {
+			throw new IOException("Unable to create the directories of the generated test suite in " + directory);
+		}
+
+		List<File> sources = new ArrayList<>(classCount);
+
+		for (int classIndex = 0; classIndex < classCount; classIndex++) {
+			StringBuilder source = new StringBuilder();
+			source.append("package ").append(PACKAGE).append(";\n");
+			source.append("public class GeneratedTests").append(classIndex).append(" {\n");
+
+			for (int methodIndex = 0; methodIndex < METHODS_PER_CLASS && classIndex * METHODS_PER_CLASS + methodIndex < count; methodIndex++) {
+				Method template = templates.get((classIndex * METHODS_PER_CLASS + methodIndex) % templates.size());
+				appendMethod(source, template, getKey(classIndex, methodIndex), template.getName() + methodIndex);
+			}
+
+			source.append("}\n");
+
+			File file = new File(packageDirectory, "GeneratedTests" + classIndex + ".java");
+			Files.write(file.toPath(), source.toString().getBytes(UTF8));
+			sources.add(file);
+		}
+
+		try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, UTF8)) {
+			JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, null,
+				Arrays.asList("-d", classDirectory.getPath(), "-classpath", System.getProperty("java.class.path"), "-nowarn"),
+				null, fileManager.getJavaFileObjectsFromFiles(sources));
+
+			task.setProcessors(Collections.singletonList(new RoxableTestProcessor()));
+
+			if (!task.call()) {
+				throw new IllegalStateException("Unable to compile the generated test suite in " + sourceDirectory);
+			}
+		}
+
+		// The class loader is never closed, the generated classes are used until the end of the fork
+		ClassLoader loader = new URLClassLoader(new URL[] { classDirectory.toURI().toURL() }, BenchmarkTests.class.getClassLoader());
+		List<Method> methods = new ArrayList<>(count);
+
+		for (int classIndex = 0; classIndex < classCount; classIndex++) {
+			Class<?> type = loader.loadClass(PACKAGE + ".GeneratedTests" + classIndex);
+			methods.addAll(sortByName(getTestMethods(type)));
+		}
+
+		return methods;
+	}
+
+	private static void appendMethod(StringBuilder source, Method template, String key, String name) {
+		RoxableTest annotation = template.getAnnotation(RoxableTest.class);
+
+		source.append("  @").append(RoxableTest.class.getName()).append("(key = \"").append(key).append('"');
+
+		if (!annotation.name().isEmpty()) {
+			source.append(", name = ").append(quote(annotation.name()));
+		}
+
+		if (!annotation.category().isEmpty()) {
+			source.append(", category = ").append(quote(annotation.category()));
+		}
+
+		source.append(", tags = {");
+		for (int i = 0; i < annotation.tags().length; i++) {
+			source.append(i > 0 ? ", " : "").append(quote(annotation.tags()[i]));
+		}
+
+		source.append("}, tickets = {");
+		for (int i = 0; i < annotation.tickets().length; i++) {
+			source.append(i > 0 ? ", " : "").append(quote(annotation.tickets()[i]));
+		}
+
+		source.append("}, flags = {");
+		for (int i = 0; i < annotation.flags().length; i++) {
+			source.append(i > 0 ? ", " : "").append(TestFlag.class.getName()).append('.').append(annotation.flags()[i].name());
+		}
+
+		source.append("})\n");
+		source.append("  @").append(com.lotaris.j2ee.itf.annotations.Test.class.getName()).append('\n');
+		source.append("  public void ").append(name).append("(").append(Description.class.getName()).append(" description) {}\n");
+	}
+
+	private static String quote(String value) {
+		return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+	}
+
+	/**
+	 * @return The templates of the generated test methods
+	 */
+	private static List<Method> getTemplates() {
+		return sortByName(getTestMethods(BenchmarkTests.class));
+	}
+
+	private static List<Method> getTestMethods(Class<?> type) {
+		List<Method> methods = new ArrayList<>();
+
+		for (Method method : type.getMethods()) {
+			if (method.getAnnotation(RoxableTest.class) != null) {
+				methods.add(method);
+			}
+		}
+
+		return methods;
+	}
+
+	/**
+	 * The order of the reflected methods is not specified, keep the runs comparable
+	 */
+	private static List<Method> sortByName(List<Method> methods) {
+		Collections.sort(methods, new Comparator<Method>() {
+			@Override
+			public int compare(Method left, Method right) {
+				return left.getName().compareTo(right.getName());
+			}
+		});
+
+		return methods;
+	}
+}
@@ -0,0 +1,65 @@
+package com.lotaris.rox.client.j2ee.itf.benchmark;
+
+import com.lotaris.j2ee.itf.model.Description;
+import com.lotaris.rox.client.j2ee.itf.RoxFilter;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of selecting the tests of a run with the ROX filters. One operation filters
+ * all the descriptions of the run, with the filters compiled once for the run or
+ * compiled for each run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+	@Param({ "1000", "10000", "100000" })
+	private int tests;
+
+	@Param({ "none", "suite" })
+	private String filters;
+
+	private Description[] descriptions;
+	private RoxFilter filter;
+
+	@Setup
+	public void setUp() {
+		descriptions = BenchmarkTests.createDescriptions(tests);
+		filter = createFilter();
+	}
+
+	@Benchmark
+	public void isRunnable(Blackhole blackhole) {
+		for (Description description : descriptions) {
+			blackhole.consume(filter.isRunnable(description));
+		}
+	}
+
+	@Benchmark
+	public void compileAndIsRunnable(Blackhole blackhole) {
+		RoxFilter runFilter = createFilter();
+
+		for (Description description : descriptions) {
+			blackhole.consume(runFilter.isRunnable(description));
+		}
+	}
+
+	private RoxFilter createFilter() {
+		return new RoxFilter("none".equals(filters) ? null : BenchmarkTests.FILTERS);
+	}
+}
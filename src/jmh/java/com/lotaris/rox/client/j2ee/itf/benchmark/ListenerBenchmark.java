@@ -0,0 +1,87 @@
+package com.lotaris.rox.client.j2ee.itf.benchmark;
+
+import com.lotaris.j2ee.itf.model.Description;
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.client.j2ee.itf.RoxListener;
+import com.lotaris.rox.client.j2ee.itf.metadata.TestMetadataCache;
+import com.lotaris.rox.common.model.v1.Test;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of turning the descriptions of a run into ROX test results. One operation
+ * handles all the descriptions of the run, with the metadata of the test methods
+ * cached by the previous operations or resolved again as in the first run after a
+ * deployment.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListenerBenchmark {
+	@Param({ "1000", "10000", "100000" })
+	private int tests;
+
+	private Description[] descriptions;
+	private Collection<Class<?>> classes;
+	private BenchmarkListener listener;
+
+	@Setup
+	public void setUp() {
+		descriptions = BenchmarkTests.createDescriptions(tests);
+		classes = BenchmarkTests.getClasses(descriptions);
+		listener = new BenchmarkListener();
+	}
+
+	@Benchmark
+	public void createTest(Blackhole blackhole) {
+		for (Description description : descriptions) {
+			blackhole.consume(listener.createTest(description));
+		}
+	}
+
+	@Benchmark
+	public void createTestColdCache(Blackhole blackhole) {
+		for (Class<?> type : classes) {
+			TestMetadataCache.clear(type);
+		}
+
+		for (Description description : descriptions) {
+			blackhole.consume(listener.createTest(description));
+		}
+	}
+
+	@Benchmark
+	public void getCategory(Blackhole blackhole) {
+		for (Description description : descriptions) {
+			blackhole.consume(listener.getCategory(description));
+		}
+	}
+
+	/**
+	 * Expose the test creation of the listener to the benchmarks
+	 */
+	static class BenchmarkListener extends RoxListener {
+		Test createTest(Description description) {
+			return createTest(description, getMetadata(description));
+		}
+
+		String getCategory(Description description) {
+			return getCategory(getClassAnnotation(description), description.getMethod().getAnnotation(RoxableTest.class), description);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.lotaris.rox.client.j2ee.itf.benchmark;
+
+import com.lotaris.j2ee.itf.model.Description;
+import com.lotaris.rox.client.j2ee.itf.config.RunConfiguration;
+import com.lotaris.rox.client.j2ee.itf.publish.PayloadPublisher;
+import com.lotaris.rox.client.j2ee.itf.publish.PayloadWriter;
+import com.lotaris.rox.common.model.v1.Payload;
+import com.lotaris.rox.common.model.v1.Test;
+import com.lotaris.rox.core.serializer.json.JsonSerializer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of producing the payload of a run at its end, as done by the listener when it
+ * publishes the results: from the payload model like the ROX connector, or in a
+ * single pass from the results. The payloads are written to a stream which discards
+ * them so the network and the disk are not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadBenchmark {
+	@Param({ "1000", "10000", "100000" })
+	private int tests;
+
+	private List<Test> results;
+	private PayloadPublisher publisher;
+	private PayloadWriter writer;
+
+	@Setup
+	public void setUp() {
+		ListenerBenchmark.BenchmarkListener listener = new ListenerBenchmark.BenchmarkListener();
+
+		results = new ArrayList<>(tests);
+		for (Description description : BenchmarkTests.createDescriptions(tests)) {
+			results.add(listener.createTest(description));
+		}
+
+		publisher = new PayloadPublisher(RunConfiguration.snapshot());
+		writer = new PayloadWriter("2aca8c029b8f", "1.0.0", "benchmark");
+	}
+
+	@Benchmark
+	public Payload createPayload() {
+		return publisher.createPayload("benchmark-run", System.currentTimeMillis(), 60000L, results);
+	}
+
+	@Benchmark
+	public void serializePayload() throws IOException {
+		Payload payload = publisher.createPayload("benchmark-run", System.currentTimeMillis(), 60000L, results);
+
+		// The serializer flushes and closes the writer
+		new JsonSerializer().serializePayload(new OutputStreamWriter(new NullOutputStream(), "UTF-8"), payload, false);
+	}
+
+	@Benchmark
+	public void writePayload() throws IOException {
+		writer.write(new NullOutputStream(), "benchmark-run", 60000L, results);
+	}
+
+	/**
+	 * Discard the payloads written
+	 */
+	private static class NullOutputStream extends OutputStream {
+		@Override
+		public void write(int b) {}
+
+		@Override
+		public void write(byte[] b, int off, int len) {}
+	}
+}
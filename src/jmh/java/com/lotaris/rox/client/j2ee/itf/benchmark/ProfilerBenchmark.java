@@ -0,0 +1,44 @@
+package com.lotaris.rox.client.j2ee.itf.benchmark;
+
+import com.lotaris.rox.client.j2ee.itf.profile.TestProfiler;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Overhead of the profiling added to each test, one operation being the measures taken
+ * at the start and at the end of a test.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProfilerBenchmark {
+	private TestProfiler profiler;
+	private Map<String, String> data;
+
+	@Setup
+	public void setUp() {
+		profiler = new TestProfiler();
+		data = new HashMap<>();
+	}
+
+	@Benchmark
+	public Map<String, String> profileTest() {
+		profiler.start();
+		profiler.stop(data);
+		return data;
+	}
+}
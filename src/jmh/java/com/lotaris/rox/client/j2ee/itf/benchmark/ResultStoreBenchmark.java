@@ -0,0 +1,97 @@
+package com.lotaris.rox.client.j2ee.itf.benchmark;
+
+import com.lotaris.j2ee.itf.model.Description;
+import com.lotaris.rox.client.j2ee.itf.store.ColumnarResultStore;
+import com.lotaris.rox.client.j2ee.itf.store.ListResultStore;
+import com.lotaris.rox.client.j2ee.itf.store.ResultStore;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Memory retained by the results of a run until the payload is built, depending on
+ * the store. One operation collects all the results of the run; the heap used once
+ * the garbage is collected is reported by the retainedBytes and bytesPerResult
+ * counters next to the time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ResultStoreBenchmark {
+	@Param({ "10000", "100000" })
+	private int tests;
+
+	@Param({ "list", "columnar" })
+	private String store;
+
+	private Description[] descriptions;
+	private ListenerBenchmark.BenchmarkListener listener;
+
+	/**
+	 * Heap retained by the results of the last operation
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Retained {
+		public long retainedBytes;
+		public long bytesPerResult;
+
+		private long baseline;
+
+		@Setup(Level.Iteration)
+		public void setUp() {
+			retainedBytes = 0;
+			bytesPerResult = 0;
+			baseline = getUsedHeap();
+		}
+	}
+
+	@Setup
+	public void setUp() {
+		descriptions = BenchmarkTests.createDescriptions(tests);
+		listener = new ListenerBenchmark.BenchmarkListener();
+	}
+
+	@Benchmark
+	public ResultStore collect(Retained retained) {
+		ResultStore results = "columnar".equals(store) ? new ColumnarResultStore() : new ListResultStore();
+
+		for (Description description : descriptions) {
+			results.add(listener.createTest(description));
+		}
+
+		retained.retainedBytes = getUsedHeap() - retained.baseline;
+		retained.bytesPerResult = retained.retainedBytes / tests;
+
+		return results;
+	}
+
+	/**
+	 * @return The heap used once the garbage is collected
+	 */
+	static long getUsedHeap() {
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+		for (int i = 0; i < 3; i++) {
+			memory.gc();
+		}
+
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+}
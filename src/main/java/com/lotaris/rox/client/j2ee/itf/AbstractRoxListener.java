@@ -6,6 +6,13 @@ import com.lotaris.j2ee.itf.model.Description;
 import com.lotaris.rox.annotations.RoxableTest;
 import com.lotaris.rox.annotations.RoxableTestClass;
 import com.lotaris.rox.annotations.TestFlag;
+import com.lotaris.rox.client.j2ee.itf.config.RunConfiguration;
+import com.lotaris.rox.client.j2ee.itf.index.RoxableTestIndex;
+import com.lotaris.rox.client.j2ee.itf.index.RoxableTestIndex.IndexedTest;
+import com.lotaris.rox.client.j2ee.itf.metadata.TestMetadata;
+import com.lotaris.rox.client.j2ee.itf.metadata.TestMetadataCache;
+import com.lotaris.rox.client.j2ee.itf.metrics.RoxMetrics;
+import com.lotaris.rox.client.j2ee.itf.profile.TestProfiler;
 import com.lotaris.rox.common.config.Configuration;
 import com.lotaris.rox.common.utils.Inflector;
 import com.lotaris.rox.common.model.v1.Test;
@@ -13,6 +20,7 @@ import com.lotaris.rox.common.model.v1.ModelFactory;
 import com.lotaris.rox.utils.CollectionHelper;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -22,11 +30,6 @@ import java.util.Set;
  * @author Laurent Prevost, laurent.prevost@lotaris.com
  */
 public abstract class AbstractRoxListener extends DefaultListener {
-	/**
-	 * Rox configuration
-	 */
-	protected static final Configuration configuration = Configuration.getInstance();
-
 	/**
 	 * Default category when none is specified
 	 */
@@ -38,14 +41,104 @@ public abstract class AbstractRoxListener extends DefaultListener {
 	 */
 	private String category;
 	
+	/**
+	 * Configuration given for the runs of the listener, null to take a snapshot of the
+	 * current configuration at the start of each run
+	 */
+	private volatile RunConfiguration runConfiguration;
+
+	/**
+	 * Configuration of the current run, safely published to the threads running the tests
+	 */
+	private volatile RunConfiguration currentConfiguration;
+
+	/**
+	 * Resolve the metadata of the test methods which are not cached yet
+	 */
+	private final TestMetadataCache.Resolver metadataResolver = new TestMetadataCache.Resolver() {
+		@Override
+		public TestMetadata resolve(Description description) {
+			return resolveMetadata(description);
+		}
+	};
+
+	/**
+	 * Measure the resources used by the tests, created by the first run with the profiling enabled
+	 */
+	private volatile TestProfiler profiler;
+
+	/**
+	 * True if a subclass reads the annotations in its own way, the test index is not used then
+	 */
+	private final boolean annotationHooksOverridden =
+		isOverridden(getClass(), "getMethodAnnotation") || isOverridden(getClass(), "getClassAnnotation");
+
 	public AbstractRoxListener() {}
 	
 	public AbstractRoxListener(String category) {
 		this.category = category;
 	}
+
+	@Override
+	public void testRunStart() {
+		super.testRunStart();
+
+		RunConfiguration configuration = runConfiguration;
+		currentConfiguration = configuration != null ? configuration : RunConfiguration.snapshot();
+
+		if (currentConfiguration.isProfiling() && profiler == null) {
+			profiler = new TestProfiler();
+		}
+	}
+
+	@Override
+	public void testStart(Description description) {
+		super.testStart(description);
+
+		TestProfiler runProfiler = profiler;
+
+		if (runProfiler != null && getConfiguration().isProfiling()) {
+			runProfiler.start();
+		}
+	}
+
+	/**
+	 * Rox configuration
+	 * 
+	 * @deprecated The configuration can change while a test run is executed, use
+	 * {@link #getConfiguration()} to read the configuration captured for the current run
+	 */
+	@Deprecated
+	protected static final Configuration configuration = Configuration.getInstance();
+
+	/**
+	 * @return The configuration of the current run
+	 */
+	protected RunConfiguration getConfiguration() {
+		RunConfiguration configuration = currentConfiguration;
+
+		if (configuration == null) {
+			configuration = runConfiguration != null ? runConfiguration : RunConfiguration.snapshot();
+			currentConfiguration = configuration;
+		}
+
+		return configuration;
+	}
+
+	/**
+	 * Use the same configuration for all the runs of the listener, typically a snapshot
+	 * with the overrides of the request starting the run
+	 *
+	 * @param configuration The configuration, null to take a snapshot of the current one at the start of each run
+	 */
+	public void setConfiguration(RunConfiguration configuration) {
+		runConfiguration = configuration;
+		currentConfiguration = configuration;
+	}
 	
 	/**
-	 * Try to retrieve the {@link RoxableTest} annotation of the test method
+	 * Try to retrieve the {@link RoxableTest} annotation of the test method. The test
+	 * index is not used by a listener overriding this method.
 	 * 
 	 * @param description The representation of the test
 	 * @return The annotation found, or null if not found
@@ -56,49 +149,162 @@ public abstract class AbstractRoxListener extends DefaultListener {
 	}
 	
 	/**
-	 * Try to retrieve the {@link RoxableTestClass} annotation of the test class
+	 * Try to retrieve the {@link RoxableTestClass} annotation of the test class. The test
+	 * index is not used by a listener overriding this method.
 	 * 
 	 * @param description The representation of the test
 	 * @return The annotation found, or null if not found
 	 */
 	protected RoxableTestClass getClassAnnotation(Description description) {
-		return description.getMethod().getClass().getAnnotation(RoxableTestClass.class);
+		return description.getMethod().getDeclaringClass().getAnnotation(RoxableTestClass.class);
 	}
 	
+	/**
+	 * Retrieve the metadata of the test method. The metadata is resolved once per
+	 * method and class of listener, and then reused for all the executions of the test.
+	 *
+	 * @param description The representation of the test
+	 * @return The metadata of the test method
+	 */
+	protected TestMetadata getMetadata(Description description) {
+		return TestMetadataCache.get(description, getClass(), metadataResolver);
+	}
+
+	/**
+	 * Resolve the metadata of a test method from the test index generated at compile
+	 * time, or from its annotations when its class was not indexed or when the listener
+	 * overrides {@link #getMethodAnnotation(Description)} or {@link #getClassAnnotation(Description)}
+	 *
+	 * @param description The representation of the test
+	 * @return The metadata resolved
+	 */
+	protected TestMetadata resolveMetadata(Description description) {
+		IndexedTest indexed = annotationHooksOverridden ? null : RoxableTestIndex.find(description.getMethod());
+
+		if (indexed != null) {
+			return new TestMetadata(
+				indexed.getKey(),
+				indexed.getName().isEmpty() ? Inflector.getHumanName(description.getSimpleName()) : indexed.getName(),
+				indexed.getCategory(),
+				indexed.getFlags(),
+				addDefaultTag(CollectionHelper.getTags(new HashSet<>(indexed.getTags()), null, null)),
+				CollectionHelper.getTickets(new HashSet<>(indexed.getTickets()), null, null),
+				getData(description, indexed.isRollback())
+			);
+		}
+
+		RoxableTest methodAnnotation = getMethodAnnotation(description);
+		RoxableTestClass classAnnotation = getClassAnnotation(description);
+
+		Map<String, String> data = getData(description, description.getMethod().getAnnotation(NoRollback.class) == null);
+
+		return new TestMetadata(
+			methodAnnotation,
+			classAnnotation,
+			getName(description, methodAnnotation),
+			getAnnotationCategory(classAnnotation, methodAnnotation),
+			methodAnnotation != null ? TestFlag.flagsValue(Arrays.asList(methodAnnotation.flags())) : 0,
+			getTags(methodAnnotation, classAnnotation),
+			getTickets(methodAnnotation, classAnnotation),
+			data
+		);
+	}
+
+	/**
+	 * @param type The class of the listener
+	 * @param name The name of an annotation hook
+	 * @return True if the hook is overridden by the class of the listener or one of its superclasses
+	 */
+	private static boolean isOverridden(Class<?> type, String name) {
+		for (Class<?> current = type; current != null && current != AbstractRoxListener.class; current = current.getSuperclass()) {
+			try {
+				current.getDeclaredMethod(name, Description.class);
+				return true;
+			}
+			catch (NoSuchMethodException nsme) {
+				// Not overridden at this level
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param description The representation of the test
+	 * @param rollback False if the test is not rolled back
+	 * @return The data describing where the test comes from
+	 */
+	private Map<String, String> getData(Description description, boolean rollback) {
+		Class<?> testClass = description.getMethod().getDeclaringClass();
+
+		Map<String, String> data = new HashMap<>();
+		data.put("package", testClass.getPackage() != null ? testClass.getPackage().getName() : "");
+		data.put("class", testClass.getSimpleName());
+		data.put("method", description.getSimpleName());
+		data.put("rollback", "" + rollback);
+		return data;
+	}
+
 	/**
 	 * Create a test based on the different information gathered from class, method and description
 	 * 
 	 * @param description jUnit test description
 	 * @param methodAnnotation Method annotation
 	 * @param classAnnotation Class annotation
-	 * @param passed Test passing or not
-	 * @param message Message associated to the test result
 	 * @return The test created from all the data available
 	 */
 	protected Test createTest(Description description, RoxableTest methodAnnotation, RoxableTestClass classAnnotation) {
+		return createTest(description, getMetadata(description));
+	}
+
+	/**
+	 * Create a test based on the metadata of the test method and the result of its execution
+	 *
+	 * @param description jUnit test description
+	 * @param metadata The metadata of the test method
+	 * @return The test created from all the data available
+	 */
+	protected Test createTest(Description description, TestMetadata metadata) {
+		long start = System.nanoTime();
+
 		Map<String, String> data = new HashMap<>();
-		if (description.getData() != null || description.getData().size() > 0) {
+		if (description.getData() != null) {
 			data.putAll(description.getData());
 		}
+		data.putAll(metadata.getData());
+
+		RunConfiguration configuration = getConfiguration();
+
+		TestProfiler runProfiler = profiler;
+
+		if (runProfiler != null && configuration.isProfiling()) {
+			runProfiler.stop(data);
+		}
 		
-		data.put("package", description.getMethod().getClass().getPackage().getName());
-		data.put("class", description.getMethod().getClass().getSimpleName());
-		data.put("method", description.getSimpleName());
-		data.put("rollback", "" + (description.getMethod().getAnnotation(NoRollback.class) == null));
-		
-		return ModelFactory.createTest(
-			methodAnnotation.key(),
-			getName(description, methodAnnotation),
-			getCategory(classAnnotation, methodAnnotation, description),
+		Test test = ModelFactory.createTest(
+			metadata.getKey(),
+			metadata.getName(),
+			metadata.getCategory() != null ? metadata.getCategory() : getDefaultCategory(),
 			description.getEndDate(),
 			description.getDuration(),
 			description.getMessage(),
 			description.isPassed(),
-			TestFlag.flagsValue(Arrays.asList(methodAnnotation.flags())),
-			getTags(methodAnnotation, classAnnotation),
-			getTickets(methodAnnotation, classAnnotation),
+			metadata.getFlags(),
+			metadata.getTags(),
+			metadata.getTickets(),
 			data
 		);
+
+		if (!configuration.getTags().isEmpty()) {
+			test.addTags(configuration.getTags());
+		}
+
+		if (!configuration.getTickets().isEmpty()) {
+			test.addTickets(configuration.getTickets());
+		}
+
+		RoxMetrics.getInstance().getCreateTestTimer().record(System.nanoTime() - start);
+
+		return test;
 	}
 	
 	/**
@@ -126,14 +332,13 @@ public abstract class AbstractRoxListener extends DefaultListener {
 	 * @return The category found
 	 */
 	protected String getCategory(RoxableTestClass classAnnotation, RoxableTest methodAnnotation, Description description) {
-		if (methodAnnotation != null && methodAnnotation.category() != null && !methodAnnotation.category().isEmpty()) {
-			return methodAnnotation.category();
-		}
-		else if (classAnnotation != null && classAnnotation.category() != null && !classAnnotation.category().isEmpty()) {
-			return classAnnotation.category();
+		String annotationCategory = getAnnotationCategory(classAnnotation, methodAnnotation);
+
+		if (annotationCategory != null) {
+			return annotationCategory;
 		}
-		else if (configuration.getCategory() != null && !configuration.getCategory().isEmpty()) {
-			return configuration.getCategory();
+		else if (getConfiguration().getCategory() != null && !getConfiguration().getCategory().isEmpty()) {
+			return getConfiguration().getCategory();
 		}
 		else if (category != null) {
 			return category;
@@ -144,15 +349,43 @@ public abstract class AbstractRoxListener extends DefaultListener {
 	}
 
 	/**
-	 * Compute the list of tags associated for a test
+	 * @return The category applied to the tests which do not override it
+	 */
+	protected String getDefaultCategory() {
+		return getCategory(null, null, null);
+	}
+
+	/**
+	 * Retrieve the category defined on the annotations
+	 *
+	 * @param classAnnotation The roxable class annotation to get the override category
+	 * @param methodAnnotation The roxable annotation to get the override category
+	 * @return The category found, null if none
+	 */
+	private String getAnnotationCategory(RoxableTestClass classAnnotation, RoxableTest methodAnnotation) {
+		if (methodAnnotation != null && methodAnnotation.category() != null && !methodAnnotation.category().isEmpty()) {
+			return methodAnnotation.category();
+		}
+		else if (classAnnotation != null && classAnnotation.category() != null && !classAnnotation.category().isEmpty()) {
+			return classAnnotation.category();
+		}
+		else {
+			return null;
+		}
+	}
+
+	/**
+	 * Compute the list of tags associated for a test, without the ones from the configuration
 	 * 
 	 * @param methodAnnotation The method annotation to get info
 	 * @param classAnnotation The class annotation to get info
 	 * @return The tags associated to the test
 	 */
 	private Set<String> getTags(RoxableTest methodAnnotation, RoxableTestClass classAnnotation) {
-		Set<String> tags = CollectionHelper.getTags(configuration.getTags(), methodAnnotation, classAnnotation);
-		
+		return addDefaultTag(CollectionHelper.getTags(null, methodAnnotation, classAnnotation));
+	}
+
+	private Set<String> addDefaultTag(Set<String> tags) {
 		if (!tags.contains(DEFAULT_TAG)) {
 			tags.add(DEFAULT_TAG);
 		}
@@ -161,13 +394,13 @@ public abstract class AbstractRoxListener extends DefaultListener {
 	}
 
 	/**
-	 * Compute the list of tickets associated for a test
+	 * Compute the list of tickets associated for a test, without the ones from the configuration
 	 * 
 	 * @param methodAnnotation The method annotation to get info
 	 * @param classAnnotation The class annotation to get info
 	 * @return The tickets associated to the test
 	 */
 	private Set<String> getTickets(RoxableTest methodAnnotation, RoxableTestClass classAnnotation) {
-		return CollectionHelper.getTickets(configuration.getTickets(), methodAnnotation, classAnnotation);
+		return CollectionHelper.getTickets(null, methodAnnotation, classAnnotation);
 	}
 }
\ No newline at end of file
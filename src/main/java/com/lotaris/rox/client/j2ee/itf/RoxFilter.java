@@ -2,7 +2,10 @@ package com.lotaris.rox.client.j2ee.itf;
 
 import com.lotaris.j2ee.itf.filters.Filter;
 import com.lotaris.j2ee.itf.model.Description;
-import com.lotaris.rox.core.filters.FilterUtils;
+import com.lotaris.rox.client.j2ee.itf.config.RunConfiguration;
+import com.lotaris.rox.client.j2ee.itf.filters.CompiledFilter;
+import com.lotaris.rox.client.j2ee.itf.filters.ShardFilter;
+import com.lotaris.rox.client.j2ee.itf.metrics.RoxMetrics;
 
 /**
  * The integration test framework listener is used to send the result to the server
@@ -13,12 +16,32 @@ public class RoxFilter implements Filter {
 //	private static final Logger LOGGER = LoggerFactory.getLogger(RoxFilter.class);
 	
 	/**
-	 * Define the filters to apply
+	 * Define the filters to apply, compiled once for all the tests
 	 */
-	private String[] filters;
+	private CompiledFilter filter;
+	
+	/**
+	 * Slice of the tests run by this node when the suite is sharded, null to run them all
+	 */
+	private ShardFilter shard;
 	
 	public RoxFilter(String[] filters) {
-		this.filters = filters;
+		this(filters, null);
+	}
+	
+	public RoxFilter(String[] filters, ShardFilter shard) {
+		this(filters, shard, null);
+	}
+	
+	/**
+	 * @param filters The filters to apply
+	 * @param shard The slice of the tests to run, null to run them all
+	 * @param configuration The configuration of the run, null to take a snapshot of the current one when required
+	 * @throws IllegalArgumentException When a failed filter cannot be resolved from the test history
+	 */
+	public RoxFilter(String[] filters, ShardFilter shard, RunConfiguration configuration) {
+		this.filter = new CompiledFilter(filters, configuration);
+		this.shard = shard;
 	}
 	
 	@Override
@@ -28,9 +51,12 @@ public class RoxFilter implements Filter {
 			return false;
 		}
 		
-		// Delegate the filtering to the filter utils
+		// Delegate the filtering to the compiled filters
 		else {
-			return FilterUtils.isRunnable(description.getMethod(), filters);
+			long start = System.nanoTime();
+			boolean runnable = (shard == null || shard.isInShard(description.getMethod())) && filter.isRunnable(description.getMethod());
+			RoxMetrics.getInstance().getFilterTimer().record(System.nanoTime() - start);
+			return runnable;
 		}
 	}
 }
\ No newline at end of file
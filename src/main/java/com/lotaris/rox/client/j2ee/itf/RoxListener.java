@@ -2,16 +2,34 @@ package com.lotaris.rox.client.j2ee.itf;
 
 import com.lotaris.j2ee.itf.model.Description;
 import com.lotaris.rox.annotations.RoxableTest;
-import com.lotaris.rox.annotations.RoxableTestClass;
+import com.lotaris.rox.client.j2ee.itf.config.RunConfiguration;
+import com.lotaris.rox.client.j2ee.itf.history.RegressionDetector;
+import com.lotaris.rox.client.j2ee.itf.history.RunOutcomes;
+import com.lotaris.rox.client.j2ee.itf.history.TestHistory;
+import com.lotaris.rox.client.j2ee.itf.journal.JournalRecovery;
+import com.lotaris.rox.client.j2ee.itf.journal.ResultJournal;
+import com.lotaris.rox.client.j2ee.itf.metadata.TestMetadata;
+import com.lotaris.rox.client.j2ee.itf.publish.AsyncPayloadPublisher;
+import com.lotaris.rox.client.j2ee.itf.publish.AsyncPayloadPublisher.Completion;
+import com.lotaris.rox.client.j2ee.itf.publish.BackgroundExecutors;
+import com.lotaris.rox.client.j2ee.itf.publish.ChunkedUploader;
+import com.lotaris.rox.client.j2ee.itf.publish.PayloadPublisher;
+import com.lotaris.rox.client.j2ee.itf.publish.PublishResult;
+import com.lotaris.rox.client.j2ee.itf.publish.StreamingPublisher;
+import com.lotaris.rox.client.j2ee.itf.publish.StreamingPublisher.BatchListener;
+import com.lotaris.rox.client.j2ee.itf.store.ColumnarResultStore;
+import com.lotaris.rox.client.j2ee.itf.store.ListResultStore;
+import com.lotaris.rox.client.j2ee.itf.store.ResultStore;
+import com.lotaris.rox.client.j2ee.itf.store.SpillingResultStore;
+import com.lotaris.rox.client.j2ee.itf.store.ThreadLocalResultStore;
 import com.lotaris.rox.common.config.RoxRuntimeException;
 import com.lotaris.rox.common.model.v1.Payload;
 import com.lotaris.rox.common.model.v1.Test;
-import com.lotaris.rox.common.model.v1.ModelFactory;
-import com.lotaris.rox.core.connector.Connector;
-import com.lotaris.rox.core.storage.FileStore;
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,32 +42,193 @@ public class RoxListener extends AbstractRoxListener {
 	private static final Logger LOGGER = LoggerFactory.getLogger(RoxListener.class);
 	
 	/**
-	 * Store the list of the tests executed
+	 * Store the tests executed, per thread when the tests may end concurrently
 	 */
-	private List<Test> results = new ArrayList<>();
+	private volatile ResultStore results = new ListResultStore();
+
+	/**
+	 * Publisher used to save and send the payloads, created with the configuration of the run
+	 */
+	private PayloadPublisher publisher;
+
+	/**
+	 * Journal of the results of the current run, when the journal is enabled
+	 */
+	private volatile ResultJournal journal;
+
+	/**
+	 * Publisher of the partial payloads when the streaming mode is enabled
+	 */
+	private StreamingPublisher streamingPublisher;
+
+	/**
+	 * Outcomes of the streamed tests recorded in the test history, null when the history is not recorded
+	 */
+	private RunOutcomes streamedOutcomes;
+
+	/**
+	 * Keep the order of the results in the journal and in the stream the same
+	 */
+	private final Object streamLock = new Object();
+
+	/**
+	 * Executor used to publish the payload in the background, the shared one when not set
+	 */
+	private ExecutorService publishExecutor;
+
+	/**
+	 * Publication of the payload started at the end of the run in asynchronous mode
+	 */
+	private Future<PublishResult> publication;
+
+	/**
+	 * Detector of the tests slower than in the previous runs, when the regression detection is enabled
+	 */
+	private volatile RegressionDetector regressionDetector;
+
+	/**
+	 * Uid shared with the runs of the other nodes when the suite is sharded, null to use the configured one
+	 */
+	private String uid;
 
 	public RoxListener() {}
 	
 	public RoxListener(String category) {
 		super(category);
 	}
+
+	@Override
+	public void testRunStart() {
+		super.testRunStart();
+
+		RunConfiguration configuration = getConfiguration();
+
+		// Ensure there is nothing to do when ROX is disabled
+		if (configuration.isDisabled()) {
+			return;
+		}
+
+		// The results of a run which could not be published are kept for the next one
+		if (results.isEmpty()) {
+			results = createResultStore(configuration);
+		}
+
+		publisher = createPublisher(configuration);
+
+		if (configuration.isRegressionDetection()) {
+			regressionDetector = new RegressionDetector(
+				TestHistory.load(configuration.getHistoryFile(), configuration.getSavedPayloadDirectory()),
+				configuration.getRegressionFactor(),
+				configuration.getRegressionMinRuns(),
+				configuration.getRegressionMinDuration());
+		}
+		else {
+			regressionDetector = null;
+		}
+
+		if (configuration.isJournaling() && publisher.isEnabled()) {
+			File directory = configuration.getJournalDirectory();
+
+			// Publish the results of the runs interrupted before the application was stopped
+			JournalRecovery.recoverOnce(directory, publisher, publishExecutor != null ? publishExecutor : BackgroundExecutors.getPublishExecutor(configuration.getPublishThreads()));
+
+			try {
+				journal = ResultJournal.create(directory, getUid(), startDate, configuration.getJournalSyncInterval(), configuration.getJournalSyncBatch());
+			}
+			catch (IOException ioe) {
+				LOGGER.warn("Could not create the journal of the results in {}", directory, ioe);
+			}
+		}
+
+		if (configuration.isStreaming() && publisher.isEnabled()) {
+			try {
+				streamingPublisher = new StreamingPublisher(
+					publisher,
+					getUid(),
+					startDate,
+					configuration.getStreamBatchSize(),
+					configuration.getStreamFlushInterval() * 1000L,
+					configuration.getStreamQueueSize());
+
+				if (journal != null) {
+					streamingPublisher.setListener(markPublished(journal));
+				}
+
+				streamingPublisher.start();
+
+				// The results are not stored, the history is recorded from the outcomes of the streamed tests
+				streamedOutcomes = configuration.isHistory() ? new RunOutcomes() : null;
+			} catch (RoxRuntimeException e) {
+				LOGGER.warn("Could not start the streaming of the results, the payload will be published at the end of the run", e);
+			}
+		}
+	}
 	
 	@Override
 	public void testRunEnd() {
 		super.testRunEnd();
+
+		RunConfiguration configuration = getConfiguration();
 		
 		// Ensure there is nothing to do when ROX is disabled
 		if (configuration.isDisabled()) {
 			return;
 		}
+
+		RegressionDetector runDetector = regressionDetector;
+		if (runDetector != null && runDetector.getRegressionCount() > 0) {
+			LOGGER.warn(runDetector.getSummary());
+		}
+
+		// Publish the remaining results of the stream
+		boolean streamDelivered = true;
+		if (streamingPublisher != null) {
+			streamingPublisher.close();
+			streamDelivered = streamingPublisher.isDelivered();
+			streamingPublisher = null;
+		}
+
+		if (streamedOutcomes != null) {
+			if (streamedOutcomes.size() > 0) {
+				recordHistory(configuration, streamedOutcomes);
+			}
+			streamedOutcomes = null;
+		}
 		
+		// The journal is deleted once the results are delivered
+		ResultJournal runJournal = journal;
+		journal = null;
+
 		if (!results.isEmpty()) {
+			List<Test> tests = results.getResults();
+
+			LOGGER.info("{} test results collected in {} ms, the tests took {} ms in total",
+				tests.size(), endDate - startDate, getSummedDuration(tests));
+
+			if (configuration.isHistory()) {
+				recordHistory(configuration, tests);
+			}
+
 			try {
-				publishTestPayload();
+				publishTestPayload(configuration, tests, runJournal);
 			} catch (RoxRuntimeException e) {
 				LOGGER.warn("Could not publish or save test payload", e);
+
+				// The results will be recovered from the journal
+				if (runJournal != null) {
+					runJournal.close();
+				}
 			}
 		}	
+		else if (runJournal != null) {
+			if (streamDelivered) {
+				runJournal.delete();
+			}
+			else {
+				LOGGER.warn("Some partial payloads were not delivered, their results will be recovered from the journal {}", runJournal.getFile());
+				runJournal.close();
+			}
+		}
 	}
 
 	@Override
@@ -57,16 +236,36 @@ public class RoxListener extends AbstractRoxListener {
 		super.testEnd(description);
 
 		// Ensure there is nothing to do when ROX is disabled
-		if (configuration.isDisabled()) {
+		if (getConfiguration().isDisabled()) {
 			return;
 		}
 		
-		RoxableTest methodAnnotation = getMethodAnnotation(description);
-		RoxableTestClass cAnnotation = getClassAnnotation(description);
+		TestMetadata metadata = getMetadata(description);
+
+		if (metadata.getKey() != null) {
+			if (!metadata.getKey().isEmpty()) {
+				Test test = createTest(description, metadata);
+
+				RegressionDetector runDetector = regressionDetector;
+				if (runDetector != null) {
+					runDetector.check(test);
+				}
+
+				if (streamingPublisher != null) {
+					// The tests are queued in the order of their records, to mark the ones published in the journal
+					synchronized (streamLock) {
+						appendToJournal(test);
+						streamingPublisher.add(test);
 
-		if (methodAnnotation != null) {
-			if (!methodAnnotation.key().isEmpty()) {
-				results.add(createTest(description, methodAnnotation, cAnnotation));
+						if (streamedOutcomes != null) {
+							streamedOutcomes.add(test);
+						}
+					}
+				}
+				else {
+					appendToJournal(test);
+					results.add(test);
+				}
 			}
 			else {
 				LOGGER.warn("@{} annotation is present but the key is not configured.", RoxableTest.class.getSimpleName());
@@ -77,32 +276,228 @@ public class RoxListener extends AbstractRoxListener {
 		}
 	}
 
-	private void publishTestPayload() {
-		if (configuration.isPublish() || configuration.isSave()) {
-			Payload payload = ModelFactory.createPayload(
-					ModelFactory.createTestRun(
-					configuration.getProjectApiId(),
-					configuration.getProjectVersion(),
-					endDate,
-					endDate - startDate,
-					configuration.getGroup(),
-					configuration.getUid(
-					getCategory(null, null, null),
-					configuration.getProjectApiId(),
-					configuration.getProjectVersion()),
-					results));
+	private void appendToJournal(Test test) {
+		ResultJournal runJournal = journal;
 
+		if (runJournal != null) {
 			try {
-				if (configuration.isSave()) {
-					new FileStore(configuration).save(payload);
+				runJournal.append(test);
+			}
+			catch (IOException ioe) {
+				LOGGER.warn("Could not append the result to the journal {}, the journal is closed", runJournal.getFile(), ioe);
+				journal = null;
+				runJournal.close();
+			}
+		}
+	}
+
+	/**
+	 * Keep the results of the run in the test history used to order the next runs
+	 */
+	private void recordHistory(RunConfiguration configuration, Iterable<Test> tests) {
+		File index = configuration.getHistoryFile();
+
+		try {
+			TestHistory.record(index, getUid(), configuration.getProjectVersion(), tests);
+		}
+		catch (IOException ioe) {
+			LOGGER.warn("Could not record the results in the test history {}", index, ioe);
+		}
+	}
+
+	/**
+	 * @param configuration The configuration of the run
+	 * @return The publisher of the payloads of the run
+	 */
+	private PayloadPublisher createPublisher(RunConfiguration configuration) {
+		ChunkedUploader uploader = null;
+
+		if (configuration.isChunkedUpload()) {
+			uploader = new ChunkedUploader(
+				configuration,
+				configuration.isPayloadGzip(),
+				configuration.getUploadMaxChunkSize(),
+				configuration.getUploadMaxChunkTests(),
+				configuration.getUploadConnections(),
+				configuration.getUploadRetries(),
+				configuration.getUploadRetryDelay());
+		}
+
+		return new PayloadPublisher(configuration, uploader);
+	}
+
+	/**
+	 * @param configuration The configuration of the run
+	 * @return The store for the results of a run, depending on the configuration
+	 */
+	private ResultStore createResultStore(RunConfiguration configuration) {
+		if (configuration.isSpilling()) {
+			return new SpillingResultStore(configuration.getSpillMemoryResults(), configuration.getSpillDirectory());
+		}
+		else if (configuration.isColumnar()) {
+			return new ColumnarResultStore();
+		}
+		else if (configuration.isConcurrent()) {
+			return new ThreadLocalResultStore();
+		}
+		else {
+			return new ListResultStore();
+		}
+	}
+
+	/**
+	 * The duration of the run is the wall-clock time between its start and its end,
+	 * which is shorter than the sum of the durations of its tests when they run in parallel
+	 *
+	 * @param tests The tests of the run
+	 * @return The sum of the durations of the tests
+	 */
+	private long getSummedDuration(List<Test> tests) {
+		long duration = 0;
+		for (Test test : tests) {
+			duration += test.getDuration();
+		}
+		return duration;
+	}
+
+	/**
+	 * @return The uid of the test run
+	 */
+	private String getUid() {
+		if (uid != null) {
+			return uid;
+		}
+
+		RunConfiguration configuration = getConfiguration();
+
+		return configuration.getConfiguration().getUid(
+			getDefaultCategory(),
+			configuration.getProjectApiId(),
+			configuration.getProjectVersion());
+	}
+
+	/**
+	 * Report the results under a given test run uid, so the payloads of the shards of
+	 * a suite run on several nodes are assembled into a single test run by ROX
+	 *
+	 * @param uid The test run uid, null to use the configured one
+	 */
+	public void setUid(String uid) {
+		this.uid = uid;
+	}
+
+	/**
+	 * Use a specific executor to publish the payload in the background
+	 *
+	 * @param publishExecutor The executor, typically a managed executor of the application server
+	 */
+	public void setPublishExecutor(ExecutorService publishExecutor) {
+		this.publishExecutor = publishExecutor;
+	}
+
+	/**
+	 * @return The publication started at the end of the last run in asynchronous mode, null if none
+	 */
+	public Future<PublishResult> getPublication() {
+		return publication;
+	}
+
+	private void publishTestPayload(RunConfiguration configuration, List<Test> tests, ResultJournal runJournal) {
+		if (publisher.isEnabled()) {
+			if (publisher.isStreaming()) {
+				streamTestPayload(configuration, tests, runJournal);
+				return;
+			}
+
+			Payload payload = publisher.createPayload(getUid(), endDate, endDate - startDate, tests);
+
+			// The payload holds its own copy of the results, the store is emptied for the next run
+			results.clear();
+
+			if (configuration.isPublishAsync()) {
+				publication = createAsyncPublisher(configuration).publish(payload, release(null, runJournal));
+			}
+			else {
+				release(null, runJournal).completed(publisher.publish(payload));
+			}
+		}
+	}
+
+	/**
+	 * Write the payload directly from the stored results, which are released once written
+	 */
+	private void streamTestPayload(RunConfiguration configuration, List<Test> tests, ResultJournal runJournal) {
+		if (configuration.isPublishAsync()) {
+			// The results are read in the background, the next run starts with a new store
+			ResultStore runResults = results;
+			results = createResultStore(configuration);
+
+			publication = createAsyncPublisher(configuration).stream(getUid(), endDate - startDate, tests, clear(runResults), release(null, runJournal));
+		}
+		else {
+			release(results, runJournal).completed(publisher.stream(getUid(), endDate - startDate, tests));
+		}
+	}
+
+	/**
+	 * @param runResults The results to clear once published, can be null
+	 * @param runJournal The journal to delete once the results are delivered, can be null
+	 * @return The completion releasing the results of a run, and its journal unless they were not delivered
+	 */
+	private static Completion release(final ResultStore runResults, final ResultJournal runJournal) {
+		return new Completion() {
+			@Override
+			public void completed(PublishResult result) {
+				if (runResults != null) {
+					runResults.clear();
 				}
 
-				if (configuration.isPublish()) {
-					new Connector(configuration).send(payload);
+				if (runJournal != null) {
+					if (result != null && result.isDelivered()) {
+						runJournal.delete();
+					}
+					else {
+						LOGGER.warn("The results were not delivered, they will be recovered from the journal {}", runJournal.getFile());
+						runJournal.close();
+					}
 				}
-			} catch (IOException ioe) {
-				LOGGER.warn("Unable to save the payload or to send it to ROX", ioe);
 			}
-		}
+		};
+	}
+
+	/**
+	 * @param runResults The results to clear
+	 * @return The task clearing the results once they are no longer read
+	 */
+	private static Runnable clear(final ResultStore runResults) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				runResults.clear();
+			}
+		};
+	}
+
+	/**
+	 * @param runJournal The journal of the streamed run
+	 * @return The listener marking the tests of the partial payloads delivered in the journal
+	 */
+	private static BatchListener markPublished(final ResultJournal runJournal) {
+		return new BatchListener() {
+			@Override
+			public void published(int first, int count) {
+				try {
+					runJournal.markPublished(first, count);
+				}
+				catch (IOException ioe) {
+					LOGGER.warn("Could not mark the published results in the journal {}, they will be published again if it is recovered", runJournal.getFile(), ioe);
+				}
+			}
+		};
+	}
+
+	private AsyncPayloadPublisher createAsyncPublisher(RunConfiguration configuration) {
+		ExecutorService executor = publishExecutor != null ? publishExecutor : BackgroundExecutors.getPublishExecutor(configuration.getPublishThreads());
+		return new AsyncPayloadPublisher(publisher, executor, configuration.getPublishTimeout() * 1000L);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,436 @@
+package com.lotaris.rox.client.j2ee.itf.config;
+
+import com.lotaris.rox.client.j2ee.itf.dispatch.DispatchingListener;
+import com.lotaris.rox.client.j2ee.itf.history.TestHistory;
+import com.lotaris.rox.client.j2ee.itf.rest.RunAdmission;
+import com.lotaris.rox.common.config.Configuration;
+import com.lotaris.rox.common.model.v1.Payload;
+import java.io.File;
+
+/**
+ * ROX configuration extended with the settings specific to the ITF client. These
+ * settings are read from the same configuration files, under the <code>itf</code>
+ * node (e.g. <code>itf.stream.enabled</code>).
+ */
+public class ItfConfiguration extends Configuration {
+	private static final String P_ITF_CONCURRENT							= P_ROOT_NODE_NAME + ".itf.concurrent";
+	private static final String P_ITF_COLUMNAR								= P_ROOT_NODE_NAME + ".itf.columnar";
+	private static final String P_ITF_SPILL_ENABLED						= P_ROOT_NODE_NAME + ".itf.spill.enabled";
+	private static final String P_ITF_SPILL_MEMORY_RESULTS				= P_ROOT_NODE_NAME + ".itf.spill.memoryResults";
+	private static final String P_ITF_SPILL_DIRECTORY					= P_ROOT_NODE_NAME + ".itf.spill.directory";
+	private static final String P_ITF_PAYLOAD_STREAMING				= P_ROOT_NODE_NAME + ".itf.payload.streaming";
+	private static final String P_ITF_PAYLOAD_GZIP						= P_ROOT_NODE_NAME + ".itf.payload.gzip";
+	private static final String P_ITF_JOURNAL_ENABLED					= P_ROOT_NODE_NAME + ".itf.journal.enabled";
+	private static final String P_ITF_JOURNAL_DIRECTORY				= P_ROOT_NODE_NAME + ".itf.journal.directory";
+	private static final String P_ITF_JOURNAL_SYNC_INTERVAL		= P_ROOT_NODE_NAME + ".itf.journal.syncInterval";
+	private static final String P_ITF_JOURNAL_SYNC_BATCH			= P_ROOT_NODE_NAME + ".itf.journal.syncBatch";
+	private static final String P_ITF_STREAM_ENABLED					= P_ROOT_NODE_NAME + ".itf.stream.enabled";
+	private static final String P_ITF_STREAM_BATCH_SIZE				= P_ROOT_NODE_NAME + ".itf.stream.batchSize";
+	private static final String P_ITF_STREAM_FLUSH_INTERVAL		= P_ROOT_NODE_NAME + ".itf.stream.flushInterval";
+	private static final String P_ITF_STREAM_QUEUE_SIZE				= P_ROOT_NODE_NAME + ".itf.stream.queueSize";
+	private static final String P_ITF_PUBLISH_ASYNC						= P_ROOT_NODE_NAME + ".itf.publish.async";
+	private static final String P_ITF_PUBLISH_THREADS					= P_ROOT_NODE_NAME + ".itf.publish.threads";
+	private static final String P_ITF_PUBLISH_TIMEOUT					= P_ROOT_NODE_NAME + ".itf.publish.timeout";
+	private static final String P_ITF_RUNS_QUEUE_SIZE					= P_ROOT_NODE_NAME + ".itf.runs.queueSize";
+	private static final String P_ITF_RUNS_RETAINED						= P_ROOT_NODE_NAME + ".itf.runs.retained";
+	private static final String P_ITF_RUNS_ADMISSION					= P_ROOT_NODE_NAME + ".itf.runs.admission";
+	private static final String P_ITF_RUNS_LIMIT							= P_ROOT_NODE_NAME + ".itf.runs.limit";
+	private static final String P_ITF_RUNS_WAIT_TIMEOUT				= P_ROOT_NODE_NAME + ".itf.runs.waitTimeout";
+	private static final String P_ITF_HISTORY_ENABLED					= P_ROOT_NODE_NAME + ".itf.history.enabled";
+	private static final String P_ITF_HISTORY_FILE						= P_ROOT_NODE_NAME + ".itf.history.file";
+	private static final String P_ITF_REGRESSION_ENABLED			= P_ROOT_NODE_NAME + ".itf.history.regression.enabled";
+	private static final String P_ITF_REGRESSION_FACTOR				= P_ROOT_NODE_NAME + ".itf.history.regression.factor";
+	private static final String P_ITF_REGRESSION_MIN_RUNS			= P_ROOT_NODE_NAME + ".itf.history.regression.minRuns";
+	private static final String P_ITF_REGRESSION_MIN_DURATION	= P_ROOT_NODE_NAME + ".itf.history.regression.minDuration";
+	private static final String P_ITF_EVENTS_BUFFER_SIZE			= P_ROOT_NODE_NAME + ".itf.events.bufferSize";
+	private static final String P_ITF_UPLOAD_CHUNKED					= P_ROOT_NODE_NAME + ".itf.upload.chunked";
+	private static final String P_ITF_UPLOAD_MAX_CHUNK_SIZE		= P_ROOT_NODE_NAME + ".itf.upload.maxChunkSize";
+	private static final String P_ITF_UPLOAD_MAX_CHUNK_TESTS	= P_ROOT_NODE_NAME + ".itf.upload.maxChunkTests";
+	private static final String P_ITF_UPLOAD_CONNECTIONS			= P_ROOT_NODE_NAME + ".itf.upload.connections";
+	private static final String P_ITF_UPLOAD_RETRIES					= P_ROOT_NODE_NAME + ".itf.upload.retries";
+	private static final String P_ITF_UPLOAD_RETRY_DELAY			= P_ROOT_NODE_NAME + ".itf.upload.retryDelay";
+	private static final String P_ITF_DISPATCH_ENABLED				= P_ROOT_NODE_NAME + ".itf.dispatch.enabled";
+	private static final String P_ITF_DISPATCH_BUFFER_SIZE		= P_ROOT_NODE_NAME + ".itf.dispatch.bufferSize";
+	private static final String P_ITF_DISPATCH_BACK_PRESSURE	= P_ROOT_NODE_NAME + ".itf.dispatch.backPressure";
+	private static final String P_ITF_DISPATCH_SAMPLE_RATE		= P_ROOT_NODE_NAME + ".itf.dispatch.sampleRate";
+	private static final String P_ITF_DISPATCH_DRAIN_TIMEOUT	= P_ROOT_NODE_NAME + ".itf.dispatch.drainTimeout";
+	private static final String P_ITF_PROFILE_ENABLED					= P_ROOT_NODE_NAME + ".itf.profile.enabled";
+
+	/**
+	 * Default values
+	 */
+	private static final int DEFAULT_SPILL_MEMORY_RESULTS			= 10000;
+	private static final int DEFAULT_JOURNAL_SYNC_INTERVAL	= 1000;
+	private static final int DEFAULT_JOURNAL_SYNC_BATCH			= 100;
+	private static final int DEFAULT_STREAM_BATCH_SIZE			= 500;
+	private static final int DEFAULT_STREAM_FLUSH_INTERVAL	= 30;
+	private static final int DEFAULT_STREAM_QUEUE_SIZE			= 5000;
+	private static final int DEFAULT_PUBLISH_THREADS				= 2;
+	private static final int DEFAULT_PUBLISH_TIMEOUT				= 300;
+	private static final int DEFAULT_RUNS_QUEUE_SIZE				= 10;
+	private static final int DEFAULT_RUNS_RETAINED					= 100;
+	private static final int DEFAULT_RUNS_WAIT_TIMEOUT			= 3600;
+	private static final int DEFAULT_EVENTS_BUFFER_SIZE			= 1000;
+	private static final double DEFAULT_REGRESSION_FACTOR		= 3.0;
+	private static final int DEFAULT_REGRESSION_MIN_RUNS		= 5;
+	private static final int DEFAULT_REGRESSION_MIN_DURATION	= 100;
+	private static final int DEFAULT_UPLOAD_MAX_CHUNK_SIZE	= 4 * 1024 * 1024;
+	private static final int DEFAULT_UPLOAD_MAX_CHUNK_TESTS	= 5000;
+	private static final int DEFAULT_UPLOAD_CONNECTIONS			= 4;
+	private static final int DEFAULT_UPLOAD_RETRIES					= 3;
+	private static final int DEFAULT_UPLOAD_RETRY_DELAY			= 1000;
+	private static final int DEFAULT_DISPATCH_BUFFER_SIZE		= 1024;
+	private static final int DEFAULT_DISPATCH_SAMPLE_RATE		= 10;
+	private static final int DEFAULT_DISPATCH_DRAIN_TIMEOUT	= 60;
+
+	private static volatile ItfConfiguration instance;
+
+	protected ItfConfiguration() {
+		super();
+	}
+
+	/**
+	 * @return The ITF configuration, loaded on first access
+	 */
+	public static ItfConfiguration getInstance() {
+		ItfConfiguration configuration = instance;
+
+		if (configuration == null) {
+			synchronized (ItfConfiguration.class) {
+				if (instance == null) {
+					instance = new ItfConfiguration();
+				}
+				configuration = instance;
+			}
+		}
+
+		return configuration;
+	}
+
+	/**
+	 * Load the configuration files again. The new configuration replaces the current one
+	 * only once it is fully loaded, and the runs already started keep the snapshot of the
+	 * configuration they started with.
+	 *
+	 * @return The configuration loaded
+	 * @see RunConfiguration
+	 */
+	public static ItfConfiguration reload() {
+		ItfConfiguration configuration = new ItfConfiguration();
+
+		synchronized (ItfConfiguration.class) {
+			instance = configuration;
+		}
+
+		return configuration;
+	}
+
+	/**
+	 * @return True if the tests may end concurrently on several threads
+	 */
+	public boolean isConcurrent() {
+		return config.getBoolean(P_ITF_CONCURRENT, false);
+	}
+
+	/**
+	 * @return True if the results must be kept in memory in columns instead of one object per result
+	 */
+	public boolean isColumnar() {
+		return config.getBoolean(P_ITF_COLUMNAR, false);
+	}
+
+	/**
+	 * @return True if the results beyond the memory limit must be stored on disk until the end of the run
+	 */
+	public boolean isSpilling() {
+		return config.getBoolean(P_ITF_SPILL_ENABLED, false);
+	}
+
+	/**
+	 * @return The maximum number of results kept in memory before storing them on disk
+	 */
+	public int getSpillMemoryResults() {
+		return Math.max(0, config.getInt(P_ITF_SPILL_MEMORY_RESULTS, DEFAULT_SPILL_MEMORY_RESULTS));
+	}
+
+	/**
+	 * @return The directory where the results are stored on disk, the temporary directory when not set
+	 */
+	public File getSpillDirectory() {
+		String directory = config.getString(P_ITF_SPILL_DIRECTORY, null);
+		return directory != null && !directory.isEmpty() ? new File(directory) : null;
+	}
+
+	/**
+	 * @return True if the payloads must be written in a single pass to the local file and to ROX
+	 */
+	public boolean isPayloadStreaming() {
+		return config.getBoolean(P_ITF_PAYLOAD_STREAMING, false);
+	}
+
+	/**
+	 * @return True if the payloads written in a single pass must be sent compressed with gzip
+	 */
+	public boolean isPayloadGzip() {
+		return config.getBoolean(P_ITF_PAYLOAD_GZIP, false);
+	}
+
+	/**
+	 * @return True if the results must be journaled on disk to recover them after a crash
+	 */
+	public boolean isJournaling() {
+		return config.getBoolean(P_ITF_JOURNAL_ENABLED, false);
+	}
+
+	/**
+	 * @return The directory of the journals, in the ROX workspace when not set
+	 */
+	public File getJournalDirectory() {
+		String directory = config.getString(P_ITF_JOURNAL_DIRECTORY, null);
+		return directory != null && !directory.isEmpty() ? new File(directory) : new File(getWorkspace(), "journal");
+	}
+
+	/**
+	 * @return The maximum time between two syncs of a journal to the disk, in milliseconds
+	 */
+	public int getJournalSyncInterval() {
+		return Math.max(1, config.getInt(P_ITF_JOURNAL_SYNC_INTERVAL, DEFAULT_JOURNAL_SYNC_INTERVAL));
+	}
+
+	/**
+	 * @return The number of results after which a journal is synced without waiting for the interval
+	 */
+	public int getJournalSyncBatch() {
+		return Math.max(1, config.getInt(P_ITF_JOURNAL_SYNC_BATCH, DEFAULT_JOURNAL_SYNC_BATCH));
+	}
+
+	/**
+	 * @return True if the results must be published in batches while the tests are running
+	 */
+	public boolean isStreaming() {
+		return config.getBoolean(P_ITF_STREAM_ENABLED, false);
+	}
+
+	/**
+	 * @return The number of tests after which a partial payload is published
+	 */
+	public int getStreamBatchSize() {
+		return Math.max(1, config.getInt(P_ITF_STREAM_BATCH_SIZE, DEFAULT_STREAM_BATCH_SIZE));
+	}
+
+	/**
+	 * @return The maximum number of seconds between two partial payloads
+	 */
+	public int getStreamFlushInterval() {
+		return Math.max(1, config.getInt(P_ITF_STREAM_FLUSH_INTERVAL, DEFAULT_STREAM_FLUSH_INTERVAL));
+	}
+
+	/**
+	 * @return The maximum number of results waiting to be published
+	 */
+	public int getStreamQueueSize() {
+		return Math.max(1, config.getInt(P_ITF_STREAM_QUEUE_SIZE, DEFAULT_STREAM_QUEUE_SIZE));
+	}
+
+	/**
+	 * @return True if the payload must be saved and sent in the background at the end of the run
+	 */
+	public boolean isPublishAsync() {
+		return config.getBoolean(P_ITF_PUBLISH_ASYNC, false);
+	}
+
+	/**
+	 * @return The number of threads used to save and send the payloads in the background
+	 */
+	public int getPublishThreads() {
+		return Math.max(1, config.getInt(P_ITF_PUBLISH_THREADS, DEFAULT_PUBLISH_THREADS));
+	}
+
+	/**
+	 * @return The maximum number of seconds to save and send a payload in the background
+	 */
+	public int getPublishTimeout() {
+		return Math.max(1, config.getInt(P_ITF_PUBLISH_TIMEOUT, DEFAULT_PUBLISH_TIMEOUT));
+	}
+
+	/**
+	 * @return The maximum number of test runs waiting to be executed in asynchronous mode
+	 */
+	public int getMaxQueuedRuns() {
+		return Math.max(0, config.getInt(P_ITF_RUNS_QUEUE_SIZE, DEFAULT_RUNS_QUEUE_SIZE));
+	}
+
+	/**
+	 * @return The number of test runs for which the status is kept
+	 */
+	public int getRetainedRuns() {
+		return Math.max(1, config.getInt(P_ITF_RUNS_RETAINED, DEFAULT_RUNS_RETAINED));
+	}
+
+	/**
+	 * @return What to do with a run when the maximum number of runs executed at the same time is reached
+	 * @throws IllegalArgumentException When the configured admission is unknown
+	 */
+	public RunAdmission.Policy getRunAdmission() {
+		return RunAdmission.Policy.fromName(config.getString(P_ITF_RUNS_ADMISSION, RunAdmission.Policy.PARALLEL.getName()));
+	}
+
+	/**
+	 * The limit applies to the runs executed in the request and in the background alike,
+	 * the executor of the background runs having as many threads as the limit allows.
+	 *
+	 * @return The maximum number of runs executed at the same time on the node, 0 for no limit
+	 */
+	public int getRunLimit() {
+		return Math.max(0, config.getInt(P_ITF_RUNS_LIMIT, 0));
+	}
+
+	/**
+	 * @return The maximum number of seconds a run waits to be admitted
+	 */
+	public int getRunWaitTimeout() {
+		return Math.max(0, config.getInt(P_ITF_RUNS_WAIT_TIMEOUT, DEFAULT_RUNS_WAIT_TIMEOUT));
+	}
+
+	/**
+	 * @return True if the results of the runs must be kept in the test history
+	 */
+	public boolean isHistory() {
+		return config.getBoolean(P_ITF_HISTORY_ENABLED, false);
+	}
+
+	/**
+	 * @return The index file of the test history, in the ROX workspace when not set
+	 */
+	public File getHistoryFile() {
+		String file = config.getString(P_ITF_HISTORY_FILE, null);
+		return file != null && !file.isEmpty() ? new File(file) : new File(getWorkspace(), "history.idx");
+	}
+
+	/**
+	 * @return True if the tests much slower than in the previous runs must be flagged, from the test history
+	 */
+	public boolean isRegressionDetection() {
+		return config.getBoolean(P_ITF_REGRESSION_ENABLED, false);
+	}
+
+	/**
+	 * @return The number of times its baseline duration a test must take to be flagged
+	 */
+	public double getRegressionFactor() {
+		return Math.max(1.0, config.getDouble(P_ITF_REGRESSION_FACTOR, DEFAULT_REGRESSION_FACTOR));
+	}
+
+	/**
+	 * @return The number of runs for which the duration of a test must be known before it can be flagged
+	 */
+	public int getRegressionMinRuns() {
+		return Math.min(TestHistory.MAX_DURATIONS, Math.max(1, config.getInt(P_ITF_REGRESSION_MIN_RUNS, DEFAULT_REGRESSION_MIN_RUNS)));
+	}
+
+	/**
+	 * @return The duration in milliseconds under which a test is never flagged
+	 */
+	public int getRegressionMinDuration() {
+		return Math.max(0, config.getInt(P_ITF_REGRESSION_MIN_DURATION, DEFAULT_REGRESSION_MIN_DURATION));
+	}
+
+	/**
+	 * @return The maximum number of events of a run waiting for the client following it
+	 */
+	public int getEventBufferSize() {
+		return Math.max(1, config.getInt(P_ITF_EVENTS_BUFFER_SIZE, DEFAULT_EVENTS_BUFFER_SIZE));
+	}
+
+	/**
+	 * @return True if the payloads must be uploaded to ROX in several chunks sharing the test run uid
+	 */
+	public boolean isChunkedUpload() {
+		return config.getBoolean(P_ITF_UPLOAD_CHUNKED, false);
+	}
+
+	/**
+	 * @return The maximum size of the JSON of a chunk, in bytes
+	 */
+	public int getUploadMaxChunkSize() {
+		return Math.max(1, config.getInt(P_ITF_UPLOAD_MAX_CHUNK_SIZE, DEFAULT_UPLOAD_MAX_CHUNK_SIZE));
+	}
+
+	/**
+	 * @return The maximum number of tests of a chunk
+	 */
+	public int getUploadMaxChunkTests() {
+		return Math.max(1, config.getInt(P_ITF_UPLOAD_MAX_CHUNK_TESTS, DEFAULT_UPLOAD_MAX_CHUNK_TESTS));
+	}
+
+	/**
+	 * @return The maximum number of chunks uploaded at the same time
+	 */
+	public int getUploadConnections() {
+		return Math.max(1, config.getInt(P_ITF_UPLOAD_CONNECTIONS, DEFAULT_UPLOAD_CONNECTIONS));
+	}
+
+	/**
+	 * @return The number of times a chunk is uploaded again when it fails
+	 */
+	public int getUploadRetries() {
+		return Math.max(0, config.getInt(P_ITF_UPLOAD_RETRIES, DEFAULT_UPLOAD_RETRIES));
+	}
+
+	/**
+	 * @return The time to wait before the first retry of a chunk, in milliseconds
+	 */
+	public int getUploadRetryDelay() {
+		return Math.max(0, config.getInt(P_ITF_UPLOAD_RETRY_DELAY, DEFAULT_UPLOAD_RETRY_DELAY));
+	}
+
+	/**
+	 * @return True if the additional listeners must be called on a dedicated thread instead of the test threads
+	 */
+	public boolean isDispatching() {
+		return config.getBoolean(P_ITF_DISPATCH_ENABLED, false);
+	}
+
+	/**
+	 * @return The maximum number of events waiting for the additional listeners
+	 */
+	public int getDispatchBufferSize() {
+		return Math.max(2, config.getInt(P_ITF_DISPATCH_BUFFER_SIZE, DEFAULT_DISPATCH_BUFFER_SIZE));
+	}
+
+	/**
+	 * @return What to do with the events when the additional listeners do not keep up
+	 * @throws IllegalArgumentException When the configured back-pressure is unknown
+	 */
+	public DispatchingListener.BackPressure getDispatchBackPressure() {
+		return DispatchingListener.BackPressure.fromName(config.getString(P_ITF_DISPATCH_BACK_PRESSURE, DispatchingListener.BackPressure.BLOCK.getName()));
+	}
+
+	/**
+	 * @return One event in this number is kept when the events are sampled
+	 */
+	public int getDispatchSampleRate() {
+		return Math.max(1, config.getInt(P_ITF_DISPATCH_SAMPLE_RATE, DEFAULT_DISPATCH_SAMPLE_RATE));
+	}
+
+	/**
+	 * @return The maximum number of seconds to wait at the end of a run for the events to be handed to the additional listeners
+	 */
+	public int getDispatchDrainTimeout() {
+		return Math.max(1, config.getInt(P_ITF_DISPATCH_DRAIN_TIMEOUT, DEFAULT_DISPATCH_DRAIN_TIMEOUT));
+	}
+
+	/**
+	 * @return True if the CPU time, allocations and garbage collection time of each test must be sent with its data
+	 */
+	public boolean isProfiling() {
+		return config.getBoolean(P_ITF_PROFILE_ENABLED, false);
+	}
+
+	/**
+	 * @return The directory where the ROX client saves the payloads
+	 */
+	public File getSavedPayloadDirectory() {
+		return new File(getWorkspace() + "/tmp/" + new Payload().getVersion());
+	}
+}
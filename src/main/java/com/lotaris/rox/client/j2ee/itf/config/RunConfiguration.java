@@ -0,0 +1,557 @@
+package com.lotaris.rox.client.j2ee.itf.config;
+
+import com.lotaris.rox.client.j2ee.itf.dispatch.DispatchingListener;
+import com.lotaris.rox.common.config.ServerConfiguration;
+import com.lotaris.rox.utils.CollectionHelper;
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable snapshot of the configuration of a test run. The settings are resolved
+ * once when the run starts, so the listeners and filters do not read the configuration
+ * files again for each test, and a run keeps the same settings from its start to its
+ * end even when the configuration is reloaded in the meantime.
+ *
+ * The category, tags, tickets, generator seed and activation of ROX can be overridden
+ * for a single run through a {@link Builder}.
+ */
+public final class RunConfiguration {
+	private static final Logger LOGGER = LoggerFactory.getLogger(RunConfiguration.class);
+
+	/**
+	 * Configuration the snapshot was taken from, given to the classes of the ROX client
+	 * which read their settings themselves (file store, connector and optimizer store)
+	 */
+	private final ItfConfiguration configuration;
+
+	/**
+	 * ROX settings of the run
+	 */
+	private final boolean disabled;
+	private final String category;
+	private final Set<String> tags;
+	private final Set<String> tickets;
+	private final Long generatorSeed;
+	private final String projectApiId;
+	private final String projectVersion;
+	private final String group;
+	private final boolean save;
+	private final boolean publish;
+	private final boolean payloadPrint;
+	private final boolean payloadCache;
+	private final String optimizerStoreClass;
+	private final String workspace;
+	private final ServerConfiguration serverConfiguration;
+
+	/**
+	 * ITF settings of the run
+	 */
+	private final boolean concurrent;
+	private final boolean columnar;
+	private final boolean spilling;
+	private final int spillMemoryResults;
+	private final File spillDirectory;
+	private final boolean payloadStreaming;
+	private final boolean payloadGzip;
+	private final boolean journaling;
+	private final File journalDirectory;
+	private final int journalSyncInterval;
+	private final int journalSyncBatch;
+	private final boolean streaming;
+	private final int streamBatchSize;
+	private final int streamFlushInterval;
+	private final int streamQueueSize;
+	private final boolean publishAsync;
+	private final int publishThreads;
+	private final int publishTimeout;
+	private final boolean history;
+	private final File historyFile;
+	private final boolean regressionDetection;
+	private final double regressionFactor;
+	private final int regressionMinRuns;
+	private final int regressionMinDuration;
+	private final File savedPayloadDirectory;
+	private final int eventBufferSize;
+	private final boolean chunkedUpload;
+	private final int uploadMaxChunkSize;
+	private final int uploadMaxChunkTests;
+	private final int uploadConnections;
+	private final int uploadRetries;
+	private final int uploadRetryDelay;
+	private final boolean dispatching;
+	private final int dispatchBufferSize;
+	private final DispatchingListener.BackPressure dispatchBackPressure;
+	private final int dispatchSampleRate;
+	private final int dispatchDrainTimeout;
+	private final boolean profiling;
+
+	private RunConfiguration(ItfConfiguration configuration, Builder builder) {
+		this.configuration = configuration;
+
+		disabled = builder.disabled != null ? builder.disabled : configuration.isDisabled();
+		category = builder.category != null ? builder.category : configuration.getCategory();
+		tags = Collections.unmodifiableSet(CollectionHelper.getTags(builder.tags != null ? builder.tags : configuration.getTags(), null, null));
+		tickets = Collections.unmodifiableSet(CollectionHelper.getTickets(builder.tickets != null ? builder.tickets : configuration.getTickets(), null, null));
+		generatorSeed = builder.generatorSeed != null ? builder.generatorSeed : configuration.getGeneratorSeed();
+		projectApiId = configuration.getProjectApiId();
+		projectVersion = configuration.getProjectVersion();
+		group = configuration.getGroup();
+		save = configuration.isSave();
+		publish = configuration.isPublish();
+		payloadPrint = configuration.isPayloadPrint();
+		payloadCache = configuration.isPayloadCache();
+		optimizerStoreClass = configuration.getOptimizerStoreClass();
+		workspace = save ? configuration.getWorkspace() : null;
+		serverConfiguration = publish ? configuration.getServerConfiguration() : null;
+
+		columnar = configuration.isColumnar();
+		spilling = configuration.isSpilling();
+		concurrent = !columnar && !spilling && configuration.isConcurrent();
+		if ((columnar || spilling) && configuration.isConcurrent()) {
+			LOGGER.warn("The {} store is used and synchronizes the threads storing the results, the concurrent store is not used", spilling ? "spilling" : "columnar");
+		}
+		spillMemoryResults = configuration.getSpillMemoryResults();
+		spillDirectory = configuration.getSpillDirectory();
+		payloadStreaming = configuration.isPayloadStreaming();
+		payloadGzip = configuration.isPayloadGzip();
+		journaling = configuration.isJournaling();
+		journalDirectory = configuration.getJournalDirectory();
+		journalSyncInterval = configuration.getJournalSyncInterval();
+		journalSyncBatch = configuration.getJournalSyncBatch();
+		streaming = configuration.isStreaming();
+		streamBatchSize = configuration.getStreamBatchSize();
+		streamFlushInterval = configuration.getStreamFlushInterval();
+		streamQueueSize = configuration.getStreamQueueSize();
+		publishAsync = configuration.isPublishAsync();
+		publishThreads = configuration.getPublishThreads();
+		publishTimeout = configuration.getPublishTimeout();
+		history = configuration.isHistory();
+		historyFile = configuration.getHistoryFile();
+		regressionDetection = history && configuration.isRegressionDetection();
+		regressionFactor = configuration.getRegressionFactor();
+		regressionMinRuns = configuration.getRegressionMinRuns();
+		regressionMinDuration = configuration.getRegressionMinDuration();
+		savedPayloadDirectory = configuration.getSavedPayloadDirectory();
+		eventBufferSize = configuration.getEventBufferSize();
+		chunkedUpload = configuration.isChunkedUpload();
+		if (spilling && (!payloadStreaming && !chunkedUpload || payloadPrint)) {
+			LOGGER.warn("The spilled results are read back in memory to build the payload model, enable itf.payload.streaming to write the payload from the spill file");
+		}
+		uploadMaxChunkSize = configuration.getUploadMaxChunkSize();
+		uploadMaxChunkTests = configuration.getUploadMaxChunkTests();
+		uploadConnections = configuration.getUploadConnections();
+		uploadRetries = configuration.getUploadRetries();
+		uploadRetryDelay = configuration.getUploadRetryDelay();
+		dispatching = configuration.isDispatching();
+		dispatchBufferSize = configuration.getDispatchBufferSize();
+		dispatchBackPressure = dispatching ? configuration.getDispatchBackPressure() : DispatchingListener.BackPressure.BLOCK;
+		dispatchSampleRate = configuration.getDispatchSampleRate();
+		dispatchDrainTimeout = configuration.getDispatchDrainTimeout();
+		profiling = configuration.isProfiling();
+	}
+
+	/**
+	 * @return The snapshot of the current configuration, without overrides
+	 */
+	public static RunConfiguration snapshot() {
+		return new Builder().build();
+	}
+
+	/**
+	 * @return The configuration the snapshot was taken from
+	 */
+	public ItfConfiguration getConfiguration() {
+		return configuration;
+	}
+
+	public boolean isDisabled() {
+		return disabled;
+	}
+
+	/**
+	 * @return The category of the tests which do not define one, null if not set
+	 */
+	public String getCategory() {
+		return category;
+	}
+
+	/**
+	 * @return The tags added to all the tests
+	 */
+	public Set<String> getTags() {
+		return tags;
+	}
+
+	/**
+	 * @return The tickets added to all the tests
+	 */
+	public Set<String> getTickets() {
+		return tickets;
+	}
+
+	/**
+	 * @return The generator seed of the run, null if not set
+	 */
+	public Long getGeneratorSeed() {
+		return generatorSeed;
+	}
+
+	public String getProjectApiId() {
+		return projectApiId;
+	}
+
+	public String getProjectVersion() {
+		return projectVersion;
+	}
+
+	public String getGroup() {
+		return group;
+	}
+
+	/**
+	 * @return True if the payloads must be saved locally
+	 */
+	public boolean isSave() {
+		return save;
+	}
+
+	/**
+	 * @return True if the payloads must be sent to ROX
+	 */
+	public boolean isPublish() {
+		return publish;
+	}
+
+	public boolean isPayloadPrint() {
+		return payloadPrint;
+	}
+
+	public boolean isPayloadCache() {
+		return payloadCache;
+	}
+
+	public String getOptimizerStoreClass() {
+		return optimizerStoreClass;
+	}
+
+	/**
+	 * @return The ROX workspace where the payloads are saved, null when they are not saved
+	 */
+	public String getWorkspace() {
+		return workspace;
+	}
+
+	/**
+	 * @return The ROX server the payloads are sent to, null when they are not sent
+	 */
+	public ServerConfiguration getServerConfiguration() {
+		return serverConfiguration;
+	}
+
+	public boolean isConcurrent() {
+		return concurrent;
+	}
+
+	public boolean isColumnar() {
+		return columnar;
+	}
+
+	public boolean isSpilling() {
+		return spilling;
+	}
+
+	public int getSpillMemoryResults() {
+		return spillMemoryResults;
+	}
+
+	public File getSpillDirectory() {
+		return spillDirectory;
+	}
+
+	public boolean isPayloadStreaming() {
+		return payloadStreaming;
+	}
+
+	public boolean isPayloadGzip() {
+		return payloadGzip;
+	}
+
+	public boolean isJournaling() {
+		return journaling;
+	}
+
+	public File getJournalDirectory() {
+		return journalDirectory;
+	}
+
+	public int getJournalSyncInterval() {
+		return journalSyncInterval;
+	}
+
+	public int getJournalSyncBatch() {
+		return journalSyncBatch;
+	}
+
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	public int getStreamBatchSize() {
+		return streamBatchSize;
+	}
+
+	public int getStreamFlushInterval() {
+		return streamFlushInterval;
+	}
+
+	public int getStreamQueueSize() {
+		return streamQueueSize;
+	}
+
+	public boolean isPublishAsync() {
+		return publishAsync;
+	}
+
+	public int getPublishThreads() {
+		return publishThreads;
+	}
+
+	public int getPublishTimeout() {
+		return publishTimeout;
+	}
+
+	public boolean isHistory() {
+		return history;
+	}
+
+	public File getHistoryFile() {
+		return historyFile;
+	}
+
+	/**
+	 * @return True if the slow tests must be flagged, the test history being enabled and
+	 * recorded, which it is not when the results are streamed
+	 */
+	public boolean isRegressionDetection() {
+		return regressionDetection;
+	}
+
+	public double getRegressionFactor() {
+		return regressionFactor;
+	}
+
+	public int getRegressionMinRuns() {
+		return regressionMinRuns;
+	}
+
+	public int getRegressionMinDuration() {
+		return regressionMinDuration;
+	}
+
+	public File getSavedPayloadDirectory() {
+		return savedPayloadDirectory;
+	}
+
+	public int getEventBufferSize() {
+		return eventBufferSize;
+	}
+
+	public boolean isChunkedUpload() {
+		return chunkedUpload;
+	}
+
+	public int getUploadMaxChunkSize() {
+		return uploadMaxChunkSize;
+	}
+
+	public int getUploadMaxChunkTests() {
+		return uploadMaxChunkTests;
+	}
+
+	public int getUploadConnections() {
+		return uploadConnections;
+	}
+
+	public int getUploadRetries() {
+		return uploadRetries;
+	}
+
+	public int getUploadRetryDelay() {
+		return uploadRetryDelay;
+	}
+
+	public boolean isDispatching() {
+		return dispatching;
+	}
+
+	public int getDispatchBufferSize() {
+		return dispatchBufferSize;
+	}
+
+	public DispatchingListener.BackPressure getDispatchBackPressure() {
+		return dispatchBackPressure;
+	}
+
+	public int getDispatchSampleRate() {
+		return dispatchSampleRate;
+	}
+
+	public int getDispatchDrainTimeout() {
+		return dispatchDrainTimeout;
+	}
+
+	public boolean isProfiling() {
+		return profiling;
+	}
+
+	/**
+	 * Overrides of the configuration for a single run. The settings which are not
+	 * overridden are read from the configuration when the snapshot is built.
+	 */
+	public static class Builder {
+		private final ItfConfiguration configuration;
+
+		private Boolean disabled;
+		private String category;
+		private Set<String> tags;
+		private Set<String> tickets;
+		private Long generatorSeed;
+
+		/**
+		 * Override the current configuration
+		 */
+		public Builder() {
+			this(null);
+		}
+
+		/**
+		 * @param configuration The configuration to override, null for the current one when the snapshot is built
+		 */
+		public Builder(ItfConfiguration configuration) {
+			this.configuration = configuration;
+		}
+
+		/**
+		 * @param disabled True to run the tests without collecting the results for ROX
+		 * @return The builder
+		 */
+		public Builder disabled(boolean disabled) {
+			this.disabled = disabled;
+			return this;
+		}
+
+		/**
+		 * @param category The category of the tests which do not define one
+		 * @return The builder
+		 */
+		public Builder category(String category) {
+			this.category = category;
+			return this;
+		}
+
+		/**
+		 * @param tags The tags added to all the tests, instead of the configured ones
+		 * @return The builder
+		 */
+		public Builder tags(Set<String> tags) {
+			this.tags = tags;
+			return this;
+		}
+
+		/**
+		 * @param tickets The tickets added to all the tests, instead of the configured ones
+		 * @return The builder
+		 */
+		public Builder tickets(Set<String> tickets) {
+			this.tickets = tickets;
+			return this;
+		}
+
+		/**
+		 * @param generatorSeed The generator seed of the run
+		 * @return The builder
+		 */
+		public Builder generatorSeed(Long generatorSeed) {
+			this.generatorSeed = generatorSeed;
+			return this;
+		}
+
+		/**
+		 * Read the overrides from the options of a request, a list of <code>name=value</code>
+		 * separated by <code>;</code>. The names are <code>category</code>, <code>tags</code>,
+		 * <code>tickets</code>, <code>seed</code> and <code>disabled</code>; the tags and
+		 * tickets are separated by <code>,</code>.
+		 *
+		 * @param options The options, null or empty for no override
+		 * @return The builder
+		 * @throws IllegalArgumentException When an option is unknown or invalid
+		 */
+		public Builder options(String options) {
+			if (options == null || options.trim().isEmpty()) {
+				return this;
+			}
+
+			for (String option : options.split(";")) {
+				if (option.trim().isEmpty()) {
+					continue;
+				}
+
+				int separator = option.indexOf('=');
+				if (separator < 0) {
+					throw new IllegalArgumentException("Invalid option " + option + ", expected name=value");
+				}
+
+				String name = option.substring(0, separator).trim();
+				String value = option.substring(separator + 1).trim();
+
+				switch (name) {
+					case "category":
+						category(value);
+						break;
+					case "tags":
+						tags(toSet(value));
+						break;
+					case "tickets":
+						tickets(toSet(value));
+						break;
+					case "seed":
+						try {
+							generatorSeed(Long.valueOf(value));
+						}
+						catch (NumberFormatException nfe) {
+							throw new IllegalArgumentException("Invalid seed " + value, nfe);
+						}
+						break;
+					case "disabled":
+						disabled(Boolean.parseBoolean(value));
+						break;
+					default:
+						throw new IllegalArgumentException("Unknown option " + name + ", expected category, tags, tickets, seed or disabled");
+				}
+			}
+
+			return this;
+		}
+
+		private static Set<String> toSet(String value) {
+			Set<String> values = new LinkedHashSet<>();
+			for (String item : value.split(",")) {
+				if (!item.trim().isEmpty()) {
+					values.add(item.trim());
+				}
+			}
+			return values;
+		}
+
+		/**
+		 * @return The snapshot of the configuration with the overrides
+		 */
+		public RunConfiguration build() {
+			return new RunConfiguration(configuration != null ? configuration : ItfConfiguration.getInstance(), this);
+		}
+	}
+}
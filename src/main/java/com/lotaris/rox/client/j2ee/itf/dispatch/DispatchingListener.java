@@ -0,0 +1,351 @@
+package com.lotaris.rox.client.j2ee.itf.dispatch;
+
+import com.lotaris.j2ee.itf.listeners.DefaultListener;
+import com.lotaris.j2ee.itf.listeners.Listener;
+import com.lotaris.j2ee.itf.model.Description;
+import com.lotaris.rox.client.j2ee.itf.publish.AsyncPayloadPublisher;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Listener handing the events of a test run to other listeners on a dedicated thread,
+ * so a slow listener does not slow down the tests. The events go through a ring buffer
+ * of slots allocated once; when the buffer is full, the thread ending a test waits,
+ * drops the event or keeps only a sample of the events depending on the {@link BackPressure}.
+ *
+ * The start and the end of the run are never dropped, even when the thread running the
+ * tests is interrupted, and the end of the run returns once all the events before it are
+ * handed to the listeners, within the drain timeout.
+ */
+public class DispatchingListener extends DefaultListener {
+	private static final Logger LOGGER = LoggerFactory.getLogger(DispatchingListener.class);
+
+	/**
+	 * Types of the events in the buffer
+	 */
+	private static final int RUN_START = 0;
+	private static final int RUN_END = 1;
+	private static final int TEST_START = 2;
+	private static final int TEST_END = 3;
+
+	/**
+	 * What to do with the events of the tests when the listeners do not keep up
+	 */
+	public enum BackPressure {
+		/**
+		 * The thread ending a test waits for a free slot, no event is lost
+		 */
+		BLOCK("block"),
+
+		/**
+		 * The events arriving when the buffer is full are dropped
+		 */
+		DROP("drop"),
+
+		/**
+		 * Once the buffer is half full, only one event in the sample rate is kept, the
+		 * events arriving when the buffer is full being dropped
+		 */
+		SAMPLE("sample");
+
+		private final String name;
+
+		private BackPressure(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * @return The name of the back-pressure in the configuration
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @param name The name of the back-pressure
+		 * @return The back-pressure
+		 * @throws IllegalArgumentException When the back-pressure is unknown
+		 */
+		public static BackPressure fromName(String name) {
+			for (BackPressure backPressure : values()) {
+				if (backPressure.name.equalsIgnoreCase(name)) {
+					return backPressure;
+				}
+			}
+
+			throw new IllegalArgumentException("Unknown back-pressure " + name + ", expected block, drop or sample");
+		}
+	}
+
+	private final List<Listener> listeners;
+	private final BackPressure backPressure;
+	private final int sampleRate;
+	private final long drainTimeout;
+
+	/**
+	 * Ring buffer of the events, the slots being reused from one event to the other
+	 */
+	private final int[] types;
+	private final Description[] descriptions;
+	private final int mask;
+	private long head;
+	private long tail;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+
+	/**
+	 * Events seen while sampling, and events dropped during the run
+	 */
+	private long sampled;
+	private long dropped;
+
+	/**
+	 * Thread handing the events of the current run to the listeners
+	 */
+	private volatile Thread consumer;
+
+	/**
+	 * Constructor
+	 *
+	 * @param listeners The listeners to hand the events to
+	 * @param bufferSize The number of events waiting for the listeners, rounded up to a power of two
+	 * @param backPressure What to do when the buffer is full
+	 * @param sampleRate One event in this number is kept when sampling
+	 * @param drainTimeout The maximum time to wait at the end of the run for the events to be handed, in milliseconds
+	 */
+	public DispatchingListener(Collection<? extends Listener> listeners, int bufferSize, BackPressure backPressure, int sampleRate, long drainTimeout) {
+		this.listeners = new ArrayList<>(listeners);
+		this.backPressure = backPressure;
+		this.sampleRate = Math.max(1, sampleRate);
+		this.drainTimeout = drainTimeout;
+
+		int capacity = Integer.highestOneBit(Math.max(2, bufferSize) - 1) << 1;
+		types = new int[capacity];
+		descriptions = new Description[capacity];
+		mask = capacity - 1;
+	}
+
+	@Override
+	public void testRunStart() {
+		super.testRunStart();
+
+		lock.lock();
+		try {
+			dropped = 0;
+			sampled = 0;
+		}
+		finally {
+			lock.unlock();
+		}
+
+		consumer = AsyncPayloadPublisher.daemonThreadFactory("rox-listener-dispatch").newThread(new Runnable() {
+			@Override
+			public void run() {
+				consume();
+			}
+		});
+		consumer.start();
+
+		putRunEvent(RUN_START);
+	}
+
+	@Override
+	public void testStart(Description description) {
+		super.testStart(description);
+		offer(TEST_START, description);
+	}
+
+	@Override
+	public void testEnd(Description description) {
+		super.testEnd(description);
+		offer(TEST_END, description);
+	}
+
+	@Override
+	public void testRunEnd() {
+		super.testRunEnd();
+
+		Thread runConsumer = consumer;
+		consumer = null;
+
+		// The run was not started through this listener, the events are handed right away
+		if (runConsumer == null) {
+			dispatch(RUN_END, null);
+			return;
+		}
+
+		// The consumer only stops at the end of the run, it must get it
+		putRunEvent(RUN_END);
+
+		try {
+			runConsumer.join(drainTimeout);
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+
+		if (runConsumer.isAlive()) {
+			LOGGER.warn("The events of the run were not handed to the listeners within {} ms, the remaining ones are handed in the background", drainTimeout);
+		}
+
+		long runDropped = getDropped();
+		if (runDropped > 0) {
+			LOGGER.warn("{} events of the run were dropped as the listeners did not keep up", runDropped);
+		}
+	}
+
+	/**
+	 * @return The number of events dropped during the current or last run
+	 */
+	public long getDropped() {
+		lock.lock();
+		try {
+			return dropped;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Add the event of a test, depending on the back-pressure when the buffer is full
+	 */
+	private void offer(int type, Description description) {
+		if (consumer == null) {
+			dispatch(type, description);
+			return;
+		}
+
+		if (backPressure == BackPressure.BLOCK) {
+			put(type, description);
+			return;
+		}
+
+		lock.lock();
+		try {
+			long size = tail - head;
+
+			if (size > mask || (backPressure == BackPressure.SAMPLE && size > mask / 2 && sampled++ % sampleRate != 0)) {
+				dropped++;
+				return;
+			}
+
+			enqueue(type, description);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Add the event of a test, waiting for a free slot, the event being dropped when the
+	 * thread is interrupted
+	 */
+	private void put(int type, Description description) {
+		lock.lock();
+		try {
+			while (tail - head > mask) {
+				notFull.await();
+			}
+
+			enqueue(type, description);
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			dropped++;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Add the start or the end of the run, waiting for a free slot even when the thread is
+	 * interrupted, its interrupt status being kept
+	 */
+	private void putRunEvent(int type) {
+		lock.lock();
+		try {
+			while (tail - head > mask) {
+				notFull.awaitUninterruptibly();
+			}
+
+			enqueue(type, null);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private void enqueue(int type, Description description) {
+		int slot = (int) (tail & mask);
+		types[slot] = type;
+		descriptions[slot] = description;
+		tail++;
+		notEmpty.signal();
+	}
+
+	/**
+	 * Hand the events to the listeners until the end of the run
+	 */
+	private void consume() {
+		int type;
+
+		do {
+			Description description;
+
+			lock.lock();
+			try {
+				while (head == tail) {
+					notEmpty.awaitUninterruptibly();
+				}
+
+				int slot = (int) (head & mask);
+				type = types[slot];
+				description = descriptions[slot];
+				descriptions[slot] = null;
+				head++;
+				notFull.signal();
+			}
+			finally {
+				lock.unlock();
+			}
+
+			dispatch(type, description);
+		}
+		while (type != RUN_END);
+	}
+
+	/**
+	 * Hand an event to all the listeners, a failing listener does not prevent the others to get it
+	 */
+	private void dispatch(int type, Description description) {
+		for (Listener listener : listeners) {
+			try {
+				switch (type) {
+					case RUN_START:
+						listener.testRunStart();
+						break;
+					case RUN_END:
+						listener.testRunEnd();
+						break;
+					case TEST_START:
+						listener.testStart(description);
+						break;
+					default:
+						listener.testEnd(description);
+				}
+			}
+			catch (RuntimeException re) {
+				LOGGER.warn("The listener {} failed to handle an event", listener.getClass().getName(), re);
+			}
+		}
+	}
+}
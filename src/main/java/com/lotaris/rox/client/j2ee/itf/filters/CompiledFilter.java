@@ -0,0 +1,383 @@
+package com.lotaris.rox.client.j2ee.itf.filters;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import com.lotaris.rox.client.j2ee.itf.config.RunConfiguration;
+import com.lotaris.rox.client.j2ee.itf.history.TestHistory;
+import com.lotaris.rox.client.j2ee.itf.index.RoxableTestIndex;
+import com.lotaris.rox.client.j2ee.itf.index.RoxableTestIndex.IndexedTest;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Filter expressions compiled once into hash sets by type, evaluated with the same
+ * rules as the ROX filter utils: a test is runnable when any filter matches its key,
+ * name, tags or tickets (<code>key:</code>, <code>name:</code>, <code>tag:</code>,
+ * <code>ticket:</code> or no prefix for any of them), the values being matched as
+ * substrings. An exact match is found with a hash lookup. Only the filter values shorter
+ * than the value can match a part of it, so a key is decided by this single lookup when
+ * the key filters are full keys; otherwise the parts of the value of the lengths of the
+ * shorter filter values are looked up, or the filter values are scanned when there are
+ * fewer of them. The decision is memoized per test method.
+ *
+ * The <code>failed:last</code> and <code>failed:since=&lt;uid&gt;</code> filters select the
+ * tests which failed in the last run of the project version, or in all its runs since
+ * the given one. They are resolved once from the local test history, without ROX, and
+ * are refused when the history has no such run rather than selecting no test.
+ */
+public class CompiledFilter {
+	private static final Logger LOGGER = LoggerFactory.getLogger(CompiledFilter.class);
+
+	private static final String FAILED_PREFIX = "failed:";
+	private static final String SINCE_PREFIX = "since=";
+
+	/**
+	 * Values to match by type of filter
+	 */
+	private final FilterValues any = new FilterValues();
+	private final FilterValues keys = new FilterValues();
+	private final FilterValues names = new FilterValues();
+	private final FilterValues tags = new FilterValues();
+	private final FilterValues tickets = new FilterValues();
+
+	/**
+	 * Keys of the tests selected by the failed filters
+	 */
+	private final Set<String> failed = new HashSet<>();
+
+	/**
+	 * History of the previous runs and project version of the runs to select the failed
+	 * tests from, taken from the configuration for the first failed filter when not given
+	 */
+	private TestHistory history;
+	private String version;
+
+	/**
+	 * Configuration of the run to take the test history from, null for the current one
+	 */
+	private final RunConfiguration configuration;
+
+	/**
+	 * Decisions already taken
+	 */
+	private final ConcurrentMap<Method, Boolean> decisions = new ConcurrentHashMap<>();
+
+	private final boolean empty;
+
+	/**
+	 * Compile the filter expressions
+	 *
+	 * @param filters The filters, null or empty to run everything
+	 * @throws IllegalArgumentException When a failed filter cannot be resolved from the test history
+	 */
+	public CompiledFilter(String[] filters) {
+		this(filters, null, null);
+	}
+
+	/**
+	 * Compile the filter expressions
+	 *
+	 * @param filters The filters, null or empty to run everything
+	 * @param history The history of the previous runs, null to load the configured one when required
+	 * @param version The project version of the runs from which the failed tests are selected, null for all
+	 * @throws IllegalArgumentException When a failed filter cannot be resolved from the test history
+	 */
+	public CompiledFilter(String[] filters, TestHistory history, String version) {
+		this(filters, history, version, null);
+	}
+
+	/**
+	 * Compile the filter expressions
+	 *
+	 * @param filters The filters, null or empty to run everything
+	 * @param configuration The configuration of the run to load the test history from, null for the current one
+	 * @throws IllegalArgumentException When a failed filter cannot be resolved from the test history
+	 */
+	public CompiledFilter(String[] filters, RunConfiguration configuration) {
+		this(filters, null, null, configuration);
+	}
+
+	private CompiledFilter(String[] filters, TestHistory history, String version, RunConfiguration configuration) {
+		this.history = history;
+		this.version = version;
+		this.configuration = configuration;
+
+		if (filters != null) {
+			for (String filter : filters) {
+				compile(filter);
+			}
+		}
+
+		any.compile();
+		keys.compile();
+		names.compile();
+		tags.compile();
+		tickets.compile();
+
+		empty = filters == null || filters.length == 0;
+	}
+
+	private void compile(String filter) {
+		if (filter.regionMatches(true, 0, FAILED_PREFIX, 0, FAILED_PREFIX.length())) {
+			compileFailed(filter.substring(FAILED_PREFIX.length()));
+			return;
+		}
+
+		String[] parts = filter.split(":");
+
+		if (parts.length == 1) {
+			any.add(parts[0]);
+		}
+		else if ("key".equalsIgnoreCase(parts[0])) {
+			keys.add(parts[1]);
+		}
+		else if ("name".equalsIgnoreCase(parts[0])) {
+			names.add(parts[1]);
+		}
+		else if ("tag".equalsIgnoreCase(parts[0])) {
+			tags.add(parts[1]);
+		}
+		else if ("ticket".equalsIgnoreCase(parts[0])) {
+			tickets.add(parts[1]);
+		}
+	}
+
+	/**
+	 * Resolve the tests which failed in the runs selected by a failed filter
+	 *
+	 * @param runs last or since=&lt;uid&gt;
+	 */
+	private void compileFailed(String runs) {
+		String sinceUid;
+
+		if ("last".equalsIgnoreCase(runs)) {
+			sinceUid = null;
+		}
+		else if (runs.regionMatches(true, 0, SINCE_PREFIX, 0, SINCE_PREFIX.length())) {
+			sinceUid = runs.substring(SINCE_PREFIX.length());
+		}
+		else {
+			throw new IllegalArgumentException("Unknown filter failed:" + runs + ", expected failed:last or failed:" + SINCE_PREFIX + "<uid>");
+		}
+
+		if (history == null) {
+			RunConfiguration runConfiguration = configuration != null ? configuration : RunConfiguration.snapshot();
+
+			if (!runConfiguration.isHistory()) {
+				throw new IllegalArgumentException("The filter failed:" + runs + " requires the test history, which is not enabled");
+			}
+
+			history = TestHistory.load(runConfiguration.getHistoryFile(), runConfiguration.getSavedPayloadDirectory());
+			version = runConfiguration.getProjectVersion();
+		}
+
+		Set<String> failedKeys = history.getFailedKeys(version, sinceUid);
+
+		// Running no test would look like a successful rerun
+		if (failedKeys == null) {
+			if (sinceUid == null) {
+				throw new IllegalArgumentException("The filter failed:" + runs + " requires a run of the version " + version + " in the test history, there is none");
+			}
+			else {
+				throw new IllegalArgumentException("The filter failed:" + runs + " requires the run " + sinceUid + " of the version " + version + " in the test history, it is unknown");
+			}
+		}
+
+		LOGGER.info("{} failed tests selected by the filter failed:{}", failedKeys.size(), runs);
+		failed.addAll(failedKeys);
+	}
+
+	/**
+	 * Check if a test method is runnable
+	 *
+	 * @param method The test method
+	 * @return True if the method must be run
+	 */
+	public boolean isRunnable(Method method) {
+		if (empty) {
+			return true;
+		}
+
+		Boolean decision = decisions.get(method);
+
+		if (decision == null) {
+			decision = evaluate(method);
+			decisions.putIfAbsent(method, decision);
+		}
+
+		return decision;
+	}
+
+	private boolean evaluate(Method method) {
+		IndexedTest indexed = RoxableTestIndex.find(method);
+
+		if (indexed != null) {
+			// Not a ROX test, nothing to filter on
+			if (indexed.getKey() == null && !indexed.isClassAnnotated()) {
+				return true;
+			}
+
+			return evaluate(
+				indexed.getKey() != null ? indexed.getKey() : "",
+				!indexed.getName().isEmpty() ? indexed.getName() : method.getName(),
+				indexed.getTags(),
+				indexed.getTickets()
+			);
+		}
+
+		// The class was not indexed at compile time, its annotations are read instead
+		RoxableTest methodAnnotation = method.getAnnotation(RoxableTest.class);
+		RoxableTestClass classAnnotation = method.getDeclaringClass().getAnnotation(RoxableTestClass.class);
+
+		// Not a ROX test, nothing to filter on
+		if (methodAnnotation == null && classAnnotation == null) {
+			return true;
+		}
+
+		String key = methodAnnotation != null ? methodAnnotation.key() : "";
+		String name = methodAnnotation != null && methodAnnotation.name() != null && !methodAnnotation.name().isEmpty() ? methodAnnotation.name() : method.getName();
+
+		List<String> testTags = new ArrayList<>();
+		List<String> testTickets = new ArrayList<>();
+
+		if (methodAnnotation != null) {
+			testTags.addAll(Arrays.asList(methodAnnotation.tags()));
+			testTickets.addAll(Arrays.asList(methodAnnotation.tickets()));
+		}
+
+		if (classAnnotation != null) {
+			testTags.addAll(Arrays.asList(classAnnotation.tags()));
+			testTickets.addAll(Arrays.asList(classAnnotation.tickets()));
+		}
+
+		return evaluate(key, name, testTags, testTickets);
+	}
+
+	private boolean evaluate(String key, String name, List<String> testTags, List<String> testTickets) {
+		// Tags and tickets are matched against their textual representation, like the filter utils do
+		String tagsText = Arrays.toString(testTags.toArray());
+		String ticketsText = Arrays.toString(testTickets.toArray());
+
+		return
+			failed.contains(key) ||
+			matches(keys, key) || matches(any, key) ||
+			matches(names, name) || matches(any, name) ||
+			matches(tags, testTags, tagsText) || matches(any, testTags, tagsText) ||
+			matches(tickets, testTickets, ticketsText) || matches(any, testTickets, ticketsText);
+	}
+
+	/**
+	 * @return True if the value contains one of the filter values
+	 */
+	private static boolean matches(FilterValues filterValues, String value) {
+		return !filterValues.isEmpty() && filterValues.isContainedIn(value);
+	}
+
+	/**
+	 * @return True if one of the values is a filter value or the text contains one of the filter values
+	 */
+	private static boolean matches(FilterValues filterValues, List<String> values, String text) {
+		if (filterValues.isEmpty()) {
+			return false;
+		}
+
+		for (String value : values) {
+			if (filterValues.contains(value)) {
+				return true;
+			}
+		}
+
+		return filterValues.isContainedIn(text);
+	}
+
+	/**
+	 * Values of a type of filter, with their distinct lengths to look the parts of a
+	 * value up instead of scanning all the filter values
+	 */
+	private static class FilterValues {
+		private final Set<String> values = new HashSet<>();
+		private int[] lengths;
+
+		public void add(String value) {
+			values.add(value);
+		}
+
+		/**
+		 * Index the lengths of the values once they are all added
+		 */
+		public void compile() {
+			Set<Integer> distinct = new TreeSet<>();
+			for (String value : values) {
+				distinct.add(value.length());
+			}
+
+			lengths = new int[distinct.size()];
+			int i = 0;
+			for (Integer length : distinct) {
+				lengths[i++] = length;
+			}
+		}
+
+		public boolean isEmpty() {
+			return values.isEmpty();
+		}
+
+		public boolean contains(String value) {
+			return values.contains(value);
+		}
+
+		/**
+		 * @return True if the value contains one of the filter values
+		 */
+		public boolean isContainedIn(String value) {
+			if (values.contains(value)) {
+				return true;
+			}
+
+			// Number of parts of the value which could be a shorter filter value
+			long parts = 0;
+			for (int length : lengths) {
+				if (length >= value.length()) {
+					break;
+				}
+				parts += value.length() - length + 1;
+			}
+
+			if (parts == 0) {
+				return false;
+			}
+			else if (parts < values.size()) {
+				for (int length : lengths) {
+					if (length >= value.length()) {
+						break;
+					}
+
+					for (int i = 0; i + length <= value.length(); i++) {
+						if (values.contains(value.substring(i, i + length))) {
+							return true;
+						}
+					}
+				}
+
+				return false;
+			}
+
+			for (String filterValue : values) {
+				if (value.contains(filterValue)) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+	}
+}
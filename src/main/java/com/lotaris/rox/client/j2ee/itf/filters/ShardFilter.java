@@ -0,0 +1,115 @@
+package com.lotaris.rox.client.j2ee.itf.filters;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.client.j2ee.itf.index.RoxableTestIndex;
+import com.lotaris.rox.client.j2ee.itf.index.RoxableTestIndex.IndexedTest;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+
+/**
+ * Select the slice of the tests run by one of the nodes sharing a suite. Each test is
+ * assigned to a shard from a stable hash of its ROX key, so every node computes the
+ * same assignment without coordination and each test runs on exactly one node. The
+ * tests without a key are assigned from their class and method names.
+ *
+ * The shards are numbered from 1 to the number of shards.
+ */
+public class ShardFilter {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int FNV_OFFSET_BASIS = 0x811c9dc5;
+	private static final int FNV_PRIME = 0x01000193;
+
+	private final int shard;
+	private final int shards;
+
+	/**
+	 * Constructor
+	 *
+	 * @param shard The shard of this node, from 1 to the number of shards
+	 * @param shards The number of shards
+	 * @throws IllegalArgumentException When the shard is not between 1 and the number of shards
+	 */
+	public ShardFilter(int shard, int shards) {
+		if (shards < 1 || shard < 1 || shard > shards) {
+			throw new IllegalArgumentException("The shard must be between 1 and the number of shards, got " + shard + " of " + shards);
+		}
+
+		this.shard = shard;
+		this.shards = shards;
+	}
+
+	/**
+	 * Check if a test method belongs to the shard of this node
+	 *
+	 * @param method The test method
+	 * @return True if the method must be run by this node
+	 */
+	public boolean isInShard(Method method) {
+		return shards == 1 || getShard(getShardKey(method), shards) == shard;
+	}
+
+	/**
+	 * @return The shard of this node
+	 */
+	public int getShard() {
+		return shard;
+	}
+
+	/**
+	 * @return The number of shards
+	 */
+	public int getShards() {
+		return shards;
+	}
+
+	/**
+	 * Compute the shard of a test. The hash does not depend on the JVM, so all the
+	 * nodes and all the releases agree on the assignment.
+	 *
+	 * @param key The key of the test
+	 * @param shards The number of shards
+	 * @return The shard of the test, from 1 to the number of shards
+	 */
+	public static int getShard(String key, int shards) {
+		return (hash(key) & Integer.MAX_VALUE) % shards + 1;
+	}
+
+	/**
+	 * 32-bit FNV-1a hash of the UTF-8 bytes of a text, which spreads the short keys
+	 * of ROX better than {@link String#hashCode()}
+	 *
+	 * @param text The text to hash
+	 * @return The hash
+	 */
+	static int hash(String text) {
+		int hash = FNV_OFFSET_BASIS;
+
+		for (byte b : text.getBytes(UTF8)) {
+			hash ^= b & 0xff;
+			hash *= FNV_PRIME;
+		}
+
+		return hash;
+	}
+
+	private static String getShardKey(Method method) {
+		IndexedTest indexed = RoxableTestIndex.find(method);
+		String key;
+
+		if (indexed != null) {
+			key = indexed.getKey();
+		}
+		else {
+			RoxableTest annotation = method.getAnnotation(RoxableTest.class);
+			key = annotation != null ? annotation.key() : null;
+		}
+
+		if (key != null && !key.isEmpty()) {
+			return key;
+		}
+		else {
+			return method.getDeclaringClass().getName() + "." + method.getName();
+		}
+	}
+}
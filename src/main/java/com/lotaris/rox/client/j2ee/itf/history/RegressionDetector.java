@@ -0,0 +1,171 @@
+package com.lotaris.rox.client.j2ee.itf.history;
+
+import com.lotaris.rox.client.j2ee.itf.metadata.TestMetadata;
+import com.lotaris.rox.common.model.v1.Test;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Flag the tests which took much longer than in their previous runs. The baseline of a
+ * test is the larger of the moving average and the 95th percentile of its durations in
+ * the test history, so a test which is sometimes slow is not flagged for it. A test is
+ * flagged when it takes longer than the baseline multiplied by a factor, once its
+ * duration is known for enough runs.
+ *
+ * A flagged test is tagged with {@value #TAG} and its data holds its baseline and how
+ * many times slower than it the test was, so the regressions can be found in ROX.
+ */
+public class RegressionDetector {
+	/**
+	 * Tag of the tests flagged
+	 */
+	public static final String TAG = "slower";
+
+	/**
+	 * Keys of the data of the tests flagged
+	 */
+	public static final String BASELINE	= TestMetadata.REGRESSION_DATA_PREFIX + "baselineMillis";
+	public static final String RATIO			= TestMetadata.REGRESSION_DATA_PREFIX + "ratio";
+
+	private static final int PERCENTILE = 95;
+
+	/**
+	 * Number of regressions detailed in the summary of a run
+	 */
+	private static final int SUMMARY_SIZE = 20;
+
+	private final TestHistory history;
+	private final double factor;
+	private final int minRuns;
+	private final long minDuration;
+
+	/**
+	 * Tests flagged during the run, possibly from several threads
+	 */
+	private final Queue<Regression> regressions = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Test slower than its baseline
+	 */
+	private static class Regression {
+		private final String key;
+		private final String name;
+		private final long duration;
+		private final long baseline;
+
+		private Regression(String key, String name, long duration, long baseline) {
+			this.key = key;
+			this.name = name;
+			this.duration = duration;
+			this.baseline = baseline;
+		}
+
+		private double getRatio() {
+			return (double) duration / baseline;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ENGLISH, "%s (%s): %d ms, %.1f times the baseline of %d ms", key, name, duration, getRatio(), baseline);
+		}
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param history The history of the previous runs
+	 * @param factor The number of times the baseline a test must take to be flagged
+	 * @param minRuns The number of runs for which the duration of a test must be known
+	 * @param minDuration The duration in milliseconds under which a test is never flagged
+	 */
+	public RegressionDetector(TestHistory history, double factor, int minRuns, long minDuration) {
+		this.history = history;
+		this.factor = factor;
+		this.minRuns = minRuns;
+		this.minDuration = minDuration;
+	}
+
+	/**
+	 * @param key The key of the test
+	 * @return The baseline of the test in milliseconds, -1 if its duration is not known for enough runs
+	 */
+	public long getBaseline(String key) {
+		if (history.getDurationCount(key) < minRuns) {
+			return -1;
+		}
+
+		return Math.max((long) Math.ceil(history.getAverageDuration(key)), history.getDurationPercentile(key, PERCENTILE));
+	}
+
+	/**
+	 * Flag the test if it is slower than its baseline
+	 *
+	 * @param test The result of the test
+	 * @return True if the test is flagged
+	 */
+	public boolean check(Test test) {
+		long duration = test.getDuration();
+
+		if (duration < minDuration) {
+			return false;
+		}
+
+		long baseline = getBaseline(test.getKey());
+
+		// A baseline of 0 ms would flag any measurable duration
+		if (baseline <= 0 || duration <= baseline * factor) {
+			return false;
+		}
+
+		Regression regression = new Regression(test.getKey(), test.getName(), duration, baseline);
+		regressions.add(regression);
+
+		test.addTag(TAG);
+		test.addData(BASELINE, Long.toString(baseline));
+		test.addData(RATIO, String.format(Locale.ENGLISH, "%.1f", regression.getRatio()));
+
+		return true;
+	}
+
+	/**
+	 * @return The number of tests flagged during the run
+	 */
+	public int getRegressionCount() {
+		return regressions.size();
+	}
+
+	/**
+	 * @return The summary of the tests flagged during the run, from the slowest compared to its baseline, null if none
+	 */
+	public String getSummary() {
+		if (regressions.isEmpty()) {
+			return null;
+		}
+
+		List<Regression> sorted = new ArrayList<>(regressions);
+		Collections.sort(sorted, new Comparator<Regression>() {
+			@Override
+			public int compare(Regression r1, Regression r2) {
+				return Double.compare(r2.getRatio(), r1.getRatio());
+			}
+		});
+
+		StringBuilder summary = new StringBuilder();
+		summary.append(sorted.size()).append(" tests took more than ").append(String.format(Locale.ENGLISH, "%.1f", factor)).append(" times their baseline:");
+
+		for (Regression regression : sorted.subList(0, Math.min(SUMMARY_SIZE, sorted.size()))) {
+			summary.append("\n  ").append(regression);
+		}
+
+		if (sorted.size() > SUMMARY_SIZE) {
+			summary.append("\n  and ").append(sorted.size() - SUMMARY_SIZE).append(" more");
+		}
+
+		return summary.toString();
+	}
+}
@@ -0,0 +1,81 @@
+package com.lotaris.rox.client.j2ee.itf.history;
+
+import com.lotaris.rox.common.model.v1.Test;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Outcomes of the tests of a run kept for the test history when the results are
+ * streamed and not stored until the end of the run. Only what the history records is
+ * kept, the key, the duration and the outcome of each test, in arrays. The tests are
+ * materialized one by one with these fields when the history is recorded.
+ *
+ * The outcomes are added by the threads ending the tests, which must synchronize them.
+ */
+public class RunOutcomes implements Iterable<Test> {
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private String[] keys = new String[INITIAL_CAPACITY];
+	private long[] durations = new long[INITIAL_CAPACITY];
+	private final BitSet failures = new BitSet();
+	private int size;
+
+	/**
+	 * Keep the outcome of a test
+	 *
+	 * @param test The test ended
+	 */
+	public void add(Test test) {
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			durations = Arrays.copyOf(durations, size * 2);
+		}
+
+		keys[size] = test.getKey();
+		durations[size] = test.getDuration();
+		failures.set(size, !test.isPassed());
+		size++;
+	}
+
+	/**
+	 * @return The number of tests ended
+	 */
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Iterator<Test> iterator() {
+		final int count = size;
+
+		return new Iterator<Test>() {
+			private int index;
+
+			@Override
+			public boolean hasNext() {
+				return index < count;
+			}
+
+			@Override
+			public Test next() {
+				if (index >= count) {
+					throw new NoSuchElementException();
+				}
+
+				Test test = new Test();
+				test.setKey(keys[index]);
+				test.setDuration(durations[index]);
+				test.setPassed(!failures.get(index));
+				index++;
+				return test;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
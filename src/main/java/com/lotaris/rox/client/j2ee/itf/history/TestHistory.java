@@ -0,0 +1,485 @@
+package com.lotaris.rox.client.j2ee.itf.history;
+
+import com.lotaris.rox.common.model.v1.Payload;
+import com.lotaris.rox.common.model.v1.ProjectTestResults;
+import com.lotaris.rox.common.model.v1.Test;
+import com.lotaris.rox.core.serializer.json.JsonSerializer;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compact index of the results of the previous test runs: the durations of each test in
+ * its last {@value #MAX_DURATIONS} runs with their exponentially weighted moving average,
+ * and whether it failed in each of the last {@value #MAX_RUNS} runs, one bit per run,
+ * the runs being identified by their uid and the project version. The index is updated
+ * at the end of each run, so it is loaded in a single read instead of parsing the
+ * payloads of the previous runs.
+ *
+ * An index file is made of a header followed by the tests, all numbers being big-endian:
+ * <pre>
+ * header: magic "ROXH" (4 bytes), format version (int),
+ *         number of runs (int), then for each run from the most recent its uid and
+ *         its project version (modified UTF-8, empty when unknown)
+ * tests:  number of tests (int), then for each test its key (modified UTF-8),
+ *         last duration in milliseconds (long), failures (long, bit 0 for the most recent run),
+ *         moving average of the durations in milliseconds (double), number of durations (int)
+ *         and the durations in milliseconds from the most recent (int each)
+ * </pre>
+ *
+ * The indexes of version 2, without the moving average and the durations, are read
+ * with the last duration as the only one known.
+ */
+public class TestHistory {
+	private static final Logger LOGGER = LoggerFactory.getLogger(TestHistory.class);
+
+	private static final byte[] MAGIC = { 'R', 'O', 'X', 'H' };
+	private static final int VERSION = 3;
+	private static final int VERSION_WITHOUT_DURATIONS = 2;
+
+	/**
+	 * Number of runs for which the failures are kept, one bit per run
+	 */
+	public static final int MAX_RUNS = 64;
+
+	/**
+	 * Number of durations kept per test for the percentiles
+	 */
+	public static final int MAX_DURATIONS = 20;
+
+	/**
+	 * Weight of the last duration in the moving average
+	 */
+	private static final double AVERAGE_WEIGHT = 0.2;
+
+	/**
+	 * Serialize the updates of the index files of the application
+	 */
+	private static final Object LOCK = new Object();
+
+	/**
+	 * Runs known, from the most recent
+	 */
+	private final List<Run> runs = new ArrayList<>();
+
+	private final Map<String, Entry> entries = new HashMap<>();
+
+	/**
+	 * Run of the history
+	 */
+	private static class Run {
+		private final String uid;
+		private final String version;
+
+		private Run(String uid, String version) {
+			this.uid = uid != null ? uid : "";
+			this.version = version != null ? version : "";
+		}
+	}
+
+	/**
+	 * History of a test
+	 */
+	private static class Entry {
+		private long duration;
+		private long failures;
+		private double average = -1;
+		private int[] durations = new int[0];
+
+		/**
+		 * Add the duration of the last execution of the test
+		 */
+		private void addDuration(long lastDuration) {
+			duration = lastDuration;
+			average = average < 0 ? lastDuration : AVERAGE_WEIGHT * lastDuration + (1 - AVERAGE_WEIGHT) * average;
+
+			int[] updated = new int[Math.min(durations.length + 1, MAX_DURATIONS)];
+			updated[0] = (int) Math.min(Integer.MAX_VALUE, Math.max(0, lastDuration));
+			System.arraycopy(durations, 0, updated, 1, updated.length - 1);
+			durations = updated;
+		}
+	}
+
+	/**
+	 * Load the history from an index file. When the index does not exist yet, it is
+	 * built from the last payload saved by the ROX client, if any.
+	 *
+	 * @param index The index file
+	 * @param payloadDirectory The directory of the payloads saved by the ROX client, can be null
+	 * @return The history, empty when there is no previous run
+	 */
+	public static TestHistory load(File index, File payloadDirectory) {
+		long start = System.currentTimeMillis();
+		TestHistory history;
+
+		try {
+			if (index.exists()) {
+				history = read(index);
+			}
+			else {
+				history = fromLastPayload(payloadDirectory);
+
+				if (history.getRunCount() > 0) {
+					history.write(index);
+				}
+			}
+		}
+		catch (IOException ioe) {
+			LOGGER.warn("Unable to load the test history from {}, the tests are run without history", index, ioe);
+			return new TestHistory();
+		}
+
+		LOGGER.debug("Test history of {} tests and {} runs loaded in {} ms", history.entries.size(), history.runs.size(), System.currentTimeMillis() - start);
+
+		return history;
+	}
+
+	/**
+	 * Add the results of a run to an index file
+	 *
+	 * @param index The index file
+	 * @param uid The uid of the run, can be null
+	 * @param version The project version of the run, can be null
+	 * @param tests The results of the run
+	 * @throws IOException When the index cannot be written
+	 */
+	public static void record(File index, String uid, String version, Iterable<Test> tests) throws IOException {
+		synchronized (LOCK) {
+			TestHistory history;
+
+			try {
+				history = index.exists() ? read(index) : new TestHistory();
+			}
+			catch (IOException ioe) {
+				LOGGER.warn("The test history {} cannot be read, it is replaced", index, ioe);
+				history = new TestHistory();
+			}
+
+			history.add(uid, version, tests);
+			history.write(index);
+		}
+	}
+
+	/**
+	 * Add the results of a run as the most recent one
+	 *
+	 * @param uid The uid of the run, can be null
+	 * @param version The project version of the run, can be null
+	 * @param tests The results of the run
+	 */
+	public void add(String uid, String version, Iterable<Test> tests) {
+		runs.add(0, new Run(uid, version));
+		if (runs.size() > MAX_RUNS) {
+			runs.remove(runs.size() - 1);
+		}
+
+		// The failures of the previous runs move one bit further
+		for (Entry entry : entries.values()) {
+			entry.failures <<= 1;
+		}
+
+		for (Test test : tests) {
+			Entry entry = entries.get(test.getKey());
+
+			if (entry == null) {
+				entry = new Entry();
+				entries.put(test.getKey(), entry);
+			}
+
+			entry.addDuration(test.getDuration());
+			if (!test.isPassed()) {
+				entry.failures |= 1;
+			}
+		}
+	}
+
+	/**
+	 * @param key The key of the test
+	 * @return True if the test is known
+	 */
+	public boolean contains(String key) {
+		return entries.containsKey(key);
+	}
+
+	/**
+	 * @param key The key of the test
+	 * @return The duration of the last execution of the test in milliseconds, -1 if unknown
+	 */
+	public long getDuration(String key) {
+		Entry entry = entries.get(key);
+		return entry != null ? entry.duration : -1;
+	}
+
+	/**
+	 * @param key The key of the test
+	 * @return The exponentially weighted moving average of the durations of the test in milliseconds, -1 if unknown
+	 */
+	public double getAverageDuration(String key) {
+		Entry entry = entries.get(key);
+		return entry != null ? entry.average : -1;
+	}
+
+	/**
+	 * @param key The key of the test
+	 * @param percentile The percentile, from 1 to 100
+	 * @return The percentile of the last durations of the test in milliseconds, by nearest rank, -1 if unknown
+	 */
+	public long getDurationPercentile(String key, int percentile) {
+		Entry entry = entries.get(key);
+
+		if (entry == null || entry.durations.length == 0) {
+			return -1;
+		}
+
+		int[] sorted = entry.durations.clone();
+		Arrays.sort(sorted);
+
+		int rank = (int) Math.ceil(sorted.length * Math.min(100, Math.max(1, percentile)) / 100.0);
+		return sorted[rank - 1];
+	}
+
+	/**
+	 * @param key The key of the test
+	 * @return The number of durations of the test known, at most {@value #MAX_DURATIONS}
+	 */
+	public int getDurationCount(String key) {
+		Entry entry = entries.get(key);
+		return entry != null ? entry.durations.length : 0;
+	}
+
+	/**
+	 * @param key The key of the test
+	 * @return True if the test failed in the last run
+	 */
+	public boolean hasFailedLastRun(String key) {
+		return hasFailedInLastRuns(key, 1);
+	}
+
+	/**
+	 * @param key The key of the test
+	 * @param count The number of runs to check, from the most recent
+	 * @return True if the test failed in one of these runs
+	 */
+	public boolean hasFailedInLastRuns(String key, int count) {
+		Entry entry = entries.get(key);
+
+		if (entry == null || count <= 0) {
+			return false;
+		}
+
+		long mask = count >= MAX_RUNS ? -1L : (1L << count) - 1;
+		return (entry.failures & mask) != 0;
+	}
+
+	/**
+	 * Retrieve the tests which failed in the runs of a project version, either in the
+	 * last one or in all the runs since a given one
+	 *
+	 * @param version The project version, null for all the versions
+	 * @param sinceUid The uid of the first run to consider, null for the last run only
+	 * @return The keys of the failed tests, null if the run is unknown or if there is no run of the version
+	 */
+	public Set<String> getFailedKeys(String version, String sinceUid) {
+		long mask = 0;
+		boolean found = false;
+
+		for (int i = 0; i < runs.size() && !found; i++) {
+			Run run = runs.get(i);
+
+			if (version == null || version.equals(run.version)) {
+				mask |= 1L << i;
+				found = sinceUid == null || sinceUid.equals(run.uid);
+			}
+		}
+
+		if (!found) {
+			return null;
+		}
+
+		Set<String> keys = new HashSet<>();
+		for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+			if ((entry.getValue().failures & mask) != 0) {
+				keys.add(entry.getKey());
+			}
+		}
+
+		return keys;
+	}
+
+	/**
+	 * @return The uids of the runs known, from the most recent
+	 */
+	public List<String> getRuns() {
+		List<String> uids = new ArrayList<>(runs.size());
+		for (Run run : runs) {
+			uids.add(run.uid);
+		}
+		return uids;
+	}
+
+	/**
+	 * @return The number of runs known
+	 */
+	public int getRunCount() {
+		return runs.size();
+	}
+
+	/**
+	 * @return The number of tests known
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	private static TestHistory read(File index) throws IOException {
+		TestHistory history = new TestHistory();
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index), 64 * 1024))) {
+			byte[] magic = new byte[MAGIC.length];
+			in.readFully(magic);
+
+			if (!Arrays.equals(magic, MAGIC)) {
+				throw new IOException("The file " + index + " is not a test history");
+			}
+
+			int version = in.readInt();
+			if (version != VERSION && version != VERSION_WITHOUT_DURATIONS) {
+				throw new IOException("The file " + index + " is not a test history of version " + VERSION);
+			}
+
+			int runCount = in.readInt();
+			for (int i = 0; i < runCount; i++) {
+				history.runs.add(new Run(in.readUTF(), in.readUTF()));
+			}
+
+			int testCount = in.readInt();
+			for (int i = 0; i < testCount; i++) {
+				String key = in.readUTF();
+
+				Entry entry = new Entry();
+				entry.duration = in.readLong();
+				entry.failures = in.readLong();
+
+				if (version == VERSION) {
+					entry.average = in.readDouble();
+
+					// A corrupted count must not allocate an array of any size
+					int durationCount = in.readInt();
+					if (durationCount < 0 || durationCount > MAX_DURATIONS) {
+						throw new IOException("The file " + index + " is corrupted, the test " + key + " has " + durationCount + " durations");
+					}
+
+					entry.durations = new int[durationCount];
+					for (int j = 0; j < entry.durations.length; j++) {
+						entry.durations[j] = in.readInt();
+					}
+				}
+				else {
+					entry.average = entry.duration;
+					entry.durations = new int[] { (int) Math.min(Integer.MAX_VALUE, Math.max(0, entry.duration)) };
+				}
+
+				history.entries.put(key, entry);
+			}
+		}
+
+		return history;
+	}
+
+	/**
+	 * Write the index to a temporary file replacing the previous one, so a reader never
+	 * sees a partial index
+	 */
+	private void write(File index) throws IOException {
+		File directory = index.getAbsoluteFile().getParentFile();
+		if (!directory.exists() && !directory.mkdirs()) {
+			throw new IOException("Unable to create the directory " + directory);
+		}
+
+		File tmp = new File(directory, index.getName() + ".tmp");
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024))) {
+			out.write(MAGIC);
+			out.writeInt(VERSION);
+
+			out.writeInt(runs.size());
+			for (Run run : runs) {
+				out.writeUTF(run.uid);
+				out.writeUTF(run.version);
+			}
+
+			out.writeInt(entries.size());
+			for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeLong(entry.getValue().duration);
+				out.writeLong(entry.getValue().failures);
+				out.writeDouble(entry.getValue().average);
+				out.writeInt(entry.getValue().durations.length);
+				for (int duration : entry.getValue().durations) {
+					out.writeInt(duration);
+				}
+			}
+		}
+
+		Files.move(tmp.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Build the history from the most recent payload saved by the ROX client
+	 */
+	private static TestHistory fromLastPayload(File payloadDirectory) throws IOException {
+		TestHistory history = new TestHistory();
+
+		File[] payloads = payloadDirectory != null ? payloadDirectory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isFile();
+			}
+		}) : null;
+
+		if (payloads == null || payloads.length == 0) {
+			return history;
+		}
+
+		File last = payloads[0];
+		for (File payload : payloads) {
+			if (payload.lastModified() > last.lastModified()) {
+				last = payload;
+			}
+		}
+
+		try (InputStreamReader in = new InputStreamReader(new FileInputStream(last), "UTF-8")) {
+			Payload payload = new JsonSerializer().deserializePayload(in, Payload.class);
+
+			List<Test> tests = new ArrayList<>();
+			String version = null;
+			for (ProjectTestResults results : payload.getTestRun().getResults()) {
+				tests.addAll(results.getTests());
+				version = results.getVersion();
+			}
+
+			history.add(payload.getTestRun().getUid(), version, tests);
+			LOGGER.info("Test history built from the payload {}", last);
+		}
+
+		return history;
+	}
+}
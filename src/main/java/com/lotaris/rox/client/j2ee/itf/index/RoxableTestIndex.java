@@ -0,0 +1,455 @@
+package com.lotaris.rox.client.j2ee.itf.index;
+
+import com.lotaris.rox.annotations.TestFlag;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the ROX tests generated at compile time by the {@link RoxableTestProcessor},
+ * so the metadata of a test is found with a lookup instead of reading its annotations.
+ * The indexes of all the jars and class directories of a class loader are merged.
+ *
+ * A class missing from the index, typically compiled without the processor or by an
+ * incremental build, is not known by the index and its annotations must be read.
+ *
+ * The index is a UTF-8 text file with one line per test method or annotated class and
+ * tab-separated fields: class, method signature (empty for a class), key, name, category,
+ * flags, tags, tickets and rollback, the lists being comma-separated. The signature is the
+ * method name followed by the erasure of its parameter types, so the overloaded methods
+ * have their own line. Tabs, new lines, commas and backslashes are escaped with a backslash.
+ */
+public final class RoxableTestIndex {
+	private static final Logger LOGGER = LoggerFactory.getLogger(RoxableTestIndex.class);
+
+	/**
+	 * Location of the index in the class path
+	 */
+	public static final String RESOURCE = "META-INF/rox/roxable-tests.idx";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int FIELDS = 9;
+
+	/**
+	 * Indexes already loaded, released with their class loader
+	 */
+	private static final Map<ClassLoader, RoxableTestIndex> INDEXES = new WeakHashMap<>();
+
+	/**
+	 * Tests per class and method signature, and per class for the methods not annotated
+	 */
+	private final Map<String, IndexedTest> methods = new HashMap<>();
+	private final Map<String, IndexedTest> classes = new HashMap<>();
+
+	private RoxableTestIndex() {}
+
+	/**
+	 * Find the test of a method in the index of its class loader
+	 *
+	 * @param method The test method
+	 * @return The indexed test, null if the class of the method is not indexed
+	 */
+	public static IndexedTest find(Method method) {
+		Class<?> type = method.getDeclaringClass();
+		return forClassLoader(type.getClassLoader()).get(type.getName(), getSignature(method));
+	}
+
+	/**
+	 * @param method A method
+	 * @return The name of the method followed by its parameter types, e.g. <code>createOrder(java.lang.String,int[])</code>
+	 */
+	public static String getSignature(Method method) {
+		StringBuilder signature = new StringBuilder(method.getName()).append('(');
+
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		for (int i = 0; i < parameterTypes.length; i++) {
+			if (i > 0) {
+				signature.append(',');
+			}
+			signature.append(getTypeName(parameterTypes[i]));
+		}
+
+		return signature.append(')').toString();
+	}
+
+	private static String getTypeName(Class<?> type) {
+		return type.isArray() ? getTypeName(type.getComponentType()) + "[]" : type.getName();
+	}
+
+	/**
+	 * @param classLoader The class loader
+	 * @return The index of all the tests visible from the class loader
+	 */
+	public static RoxableTestIndex forClassLoader(ClassLoader classLoader) {
+		ClassLoader loader = classLoader != null ? classLoader : ClassLoader.getSystemClassLoader();
+
+		synchronized (INDEXES) {
+			RoxableTestIndex index = INDEXES.get(loader);
+
+			if (index == null) {
+				index = load(loader);
+				INDEXES.put(loader, index);
+			}
+
+			return index;
+		}
+	}
+
+	/**
+	 * @param className The binary name of the class
+	 * @param methodSignature The signature of the method, as given by {@link #getSignature(java.lang.reflect.Method)}
+	 * @return The indexed test, a test without key when the method is not annotated, null if the class is not indexed
+	 */
+	public IndexedTest get(String className, String methodSignature) {
+		IndexedTest test = methods.get(className + '#' + methodSignature);
+		return test != null ? test : classes.get(className);
+	}
+
+	/**
+	 * @return The number of test methods indexed
+	 */
+	public int size() {
+		int size = 0;
+		for (IndexedTest test : methods.values()) {
+			if (test.getKey() != null) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	private static RoxableTestIndex load(ClassLoader loader) {
+		RoxableTestIndex index = new RoxableTestIndex();
+		Map<String, String[]> methodLines = new HashMap<>();
+		Map<String, String[]> classLines = new HashMap<>();
+
+		try {
+			Enumeration<URL> resources = loader.getResources(RESOURCE);
+
+			while (resources.hasMoreElements()) {
+				URL resource = resources.nextElement();
+
+				try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.openStream(), UTF8))) {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						if (line.isEmpty() || line.startsWith("#")) {
+							continue;
+						}
+
+						String[] fields = split(line, '\t');
+						if (fields.length != FIELDS) {
+							LOGGER.warn("Invalid line in the ROX test index {}: {}", resource, line);
+							continue;
+						}
+
+						// The lists stay escaped until they are split in values
+						for (int i = 0; i < 5; i++) {
+							fields[i] = unescape(fields[i]);
+						}
+
+						if (fields[1].isEmpty()) {
+							classLines.put(fields[0], fields);
+						}
+						else {
+							methodLines.put(fields[0] + '#' + fields[1], fields);
+						}
+					}
+				}
+			}
+		}
+		catch (IOException ioe) {
+			LOGGER.warn("Unable to read the ROX test index, the annotations of the tests will be read instead", ioe);
+			return index;
+		}
+
+		// The classes with annotated methods only have a class entry without metadata
+		for (String[] fields : methodLines.values()) {
+			if (!classLines.containsKey(fields[0])) {
+				classLines.put(fields[0], null);
+			}
+		}
+
+		for (Map.Entry<String, String[]> classLine : classLines.entrySet()) {
+			index.classes.put(classLine.getKey(), new IndexedTest(null, classLine.getValue()));
+		}
+
+		for (Map.Entry<String, String[]> methodLine : methodLines.entrySet()) {
+			index.methods.put(methodLine.getKey(), new IndexedTest(methodLine.getValue(), classLines.get(methodLine.getValue()[0])));
+		}
+
+		LOGGER.debug("{} ROX tests indexed", index.size());
+
+		return index;
+	}
+
+	/**
+	 * Write a line of the index
+	 *
+	 * @param out The builder of the index
+	 * @param className The binary name of the class
+	 * @param methodSignature The method signature, null for a class
+	 * @param key The test key, null for a class
+	 * @param name The test name, can be empty
+	 * @param category The category, can be empty
+	 * @param flags The names of the flags
+	 * @param tags The tags
+	 * @param tickets The tickets
+	 * @param rollback False if the test is not rolled back
+	 */
+	static void writeLine(StringBuilder out, String className, String methodSignature, String key, String name, String category,
+		List<String> flags, List<String> tags, List<String> tickets, boolean rollback) {
+
+		out
+			.append(escape(className)).append('\t')
+			.append(methodSignature != null ? escape(methodSignature) : "").append('\t')
+			.append(key != null ? escape(key) : "").append('\t')
+			.append(escape(name)).append('\t')
+			.append(escape(category)).append('\t')
+			.append(join(flags)).append('\t')
+			.append(join(tags)).append('\t')
+			.append(join(tickets)).append('\t')
+			.append(rollback)
+			.append('\n');
+	}
+
+	private static String join(List<String> values) {
+		StringBuilder joined = new StringBuilder();
+		for (String value : values) {
+			if (joined.length() > 0) {
+				joined.append(',');
+			}
+			joined.append(escape(value));
+		}
+		return joined.toString();
+	}
+
+	private static String escape(String value) {
+		if (value == null) {
+			return "";
+		}
+
+		StringBuilder escaped = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '\t':
+					escaped.append("\\t");
+					break;
+				case '\n':
+					escaped.append("\\n");
+					break;
+				case '\r':
+					escaped.append("\\r");
+					break;
+				case ',':
+				case '\\':
+					escaped.append('\\').append(c);
+					break;
+				default:
+					escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+
+	/**
+	 * Split an escaped text on the separators which are not escaped, the parts are still escaped
+	 */
+	private static String[] split(String text, char separator) {
+		List<String> parts = new ArrayList<>();
+		int start = 0;
+
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+
+			if (c == '\\') {
+				i++;
+			}
+			else if (c == separator) {
+				parts.add(text.substring(start, i));
+				start = i + 1;
+			}
+		}
+
+		parts.add(text.substring(start));
+
+		return parts.toArray(new String[parts.size()]);
+	}
+
+	private static String unescape(String text) {
+		if (text.indexOf('\\') < 0) {
+			return text;
+		}
+
+		StringBuilder unescaped = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+
+			if (c == '\\' && i + 1 < text.length()) {
+				char escaped = text.charAt(++i);
+				switch (escaped) {
+					case 't':
+						unescaped.append('\t');
+						break;
+					case 'n':
+						unescaped.append('\n');
+						break;
+					case 'r':
+						unescaped.append('\r');
+						break;
+					default:
+						unescaped.append(escaped);
+				}
+			}
+			else {
+				unescaped.append(c);
+			}
+		}
+		return unescaped.toString();
+	}
+
+	/**
+	 * @return The values of a list field of a line
+	 */
+	private static List<String> splitList(String field) {
+		if (field.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		List<String> values = new ArrayList<>();
+		for (String value : split(field, ',')) {
+			values.add(unescape(value));
+		}
+		return values;
+	}
+
+	/**
+	 * Metadata of a test method, merged with the metadata of its class
+	 */
+	public static final class IndexedTest {
+		private final String key;
+		private final String name;
+		private final String category;
+		private final int flags;
+		private final List<String> tags;
+		private final List<String> tickets;
+		private final boolean rollback;
+		private final boolean classAnnotated;
+
+		/**
+		 * @param method The fields of the method line, null if the method is not annotated
+		 * @param type The fields of the class line, null if the class is not annotated
+		 */
+		private IndexedTest(String[] method, String[] type) {
+			key = method != null ? method[2] : null;
+			name = method != null ? method[3] : "";
+			classAnnotated = type != null;
+
+			if (method != null && !method[4].isEmpty()) {
+				category = method[4];
+			}
+			else if (type != null && !type[4].isEmpty()) {
+				category = type[4];
+			}
+			else {
+				category = null;
+			}
+
+			List<TestFlag> testFlags = new ArrayList<>();
+			if (method != null) {
+				for (String flag : splitList(method[5])) {
+					try {
+						testFlags.add(TestFlag.valueOf(flag));
+					}
+					catch (IllegalArgumentException iae) {
+						LOGGER.warn("Unknown flag {} of the ROX test {} in the test index, the flag is ignored", flag, key);
+					}
+				}
+			}
+			flags = TestFlag.flagsValue(testFlags);
+
+			tags = merge(method, type, 6);
+			tickets = merge(method, type, 7);
+			rollback = method == null || Boolean.parseBoolean(method[8]);
+		}
+
+		/**
+		 * The values of the method come first, like when they are read from the annotations
+		 */
+		private static List<String> merge(String[] method, String[] type, int field) {
+			List<String> values = new ArrayList<>();
+			if (method != null) {
+				values.addAll(splitList(method[field]));
+			}
+			if (type != null) {
+				values.addAll(splitList(type[field]));
+			}
+			return Collections.unmodifiableList(values);
+		}
+
+		/**
+		 * @return The test key, null if the method is not annotated with {@code @RoxableTest}
+		 */
+		public String getKey() {
+			return key;
+		}
+
+		/**
+		 * @return The name defined on the annotation, empty if none
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return The category defined on the method or class annotation, null if none
+		 */
+		public String getCategory() {
+			return category;
+		}
+
+		public int getFlags() {
+			return flags;
+		}
+
+		/**
+		 * @return The tags of the method followed by the ones of the class
+		 */
+		public List<String> getTags() {
+			return tags;
+		}
+
+		/**
+		 * @return The tickets of the method followed by the ones of the class
+		 */
+		public List<String> getTickets() {
+			return tickets;
+		}
+
+		/**
+		 * @return False if the method is annotated with {@code @NoRollback}
+		 */
+		public boolean isRollback() {
+			return rollback;
+		}
+
+		/**
+		 * @return True if the class is annotated with {@code @RoxableTestClass}
+		 */
+		public boolean isClassAnnotated() {
+			return classAnnotated;
+		}
+	}
+}
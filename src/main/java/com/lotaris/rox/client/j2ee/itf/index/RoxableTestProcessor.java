@@ -0,0 +1,211 @@
+package com.lotaris.rox.client.j2ee.itf.index;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import com.lotaris.rox.annotations.TestFlag;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Annotation processor writing the {@link RoxableTestIndex} of the {@code @RoxableTest}
+ * methods and {@code @RoxableTestClass} classes compiled, so the ROX listener and
+ * filters do not read the annotations of the tests during the runs.
+ *
+ * Two tests with the same key fail the compilation, as their results would be mixed in
+ * ROX. A test with an empty key is reported as a warning, its results are not sent.
+ * The option {@code -Arox.index.duplicates=warning} reports the duplicate keys as
+ * warnings instead.
+ *
+ * The processor is registered as a service of the jar and runs with the compilation of
+ * the tests of any project depending on the ROX ITF client. It runs even when no class
+ * compiled is annotated, so the index of a previous build does not remain.
+ */
+@SupportedAnnotationTypes("*")
+@SupportedOptions(RoxableTestProcessor.DUPLICATES_OPTION)
+public class RoxableTestProcessor extends AbstractProcessor {
+	/**
+	 * Option to report the duplicate keys as errors (default) or warnings
+	 */
+	static final String DUPLICATES_OPTION = "rox.index.duplicates";
+
+	private static final String NO_ROLLBACK_ANNOTATION = "com.lotaris.j2ee.itf.annotations.NoRollback";
+
+	/**
+	 * Lines of the index per class and method signature, sorted to keep the index stable between builds
+	 */
+	private final Map<String, String> lines = new TreeMap<>();
+
+	/**
+	 * Test method using each key
+	 */
+	private final Map<String, String> keys = new HashMap<>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		if (roundEnv.processingOver()) {
+			writeIndex();
+			return false;
+		}
+
+		for (Element element : roundEnv.getElementsAnnotatedWith(RoxableTestClass.class)) {
+			if (element.getKind().isClass() || element.getKind().isInterface()) {
+				indexClass((TypeElement) element);
+			}
+		}
+
+		for (Element element : roundEnv.getElementsAnnotatedWith(RoxableTest.class)) {
+			if (element.getKind() == ElementKind.METHOD) {
+				indexMethod((ExecutableElement) element);
+			}
+		}
+
+		// The annotations are left to the other processors
+		return false;
+	}
+
+	private void indexClass(TypeElement type) {
+		RoxableTestClass annotation = type.getAnnotation(RoxableTestClass.class);
+		String className = getClassName(type);
+
+		StringBuilder line = new StringBuilder();
+		RoxableTestIndex.writeLine(line, className, null, null, "", annotation.category(),
+			Collections.<String>emptyList(), Arrays.asList(annotation.tags()), Arrays.asList(annotation.tickets()), true);
+
+		lines.put(className, line.toString());
+	}
+
+	private void indexMethod(ExecutableElement method) {
+		RoxableTest annotation = method.getAnnotation(RoxableTest.class);
+		String className = getClassName((TypeElement) method.getEnclosingElement());
+		String methodName = method.getSimpleName().toString();
+		String signature = getSignature(method);
+		String key = annotation.key();
+
+		if (key == null || key.isEmpty()) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+				"The @RoxableTest key of " + className + "." + methodName + " is empty, its results will not be sent to ROX", method);
+		}
+		else {
+			String existing = keys.get(key);
+
+			if (existing != null && !existing.equals(className + "." + signature)) {
+				processingEnv.getMessager().printMessage(getDuplicateKind(),
+					"The @RoxableTest key " + key + " of " + className + "." + methodName + " is already used by " + existing, method);
+			}
+			else {
+				keys.put(key, className + "." + signature);
+			}
+		}
+
+		List<String> flags = new ArrayList<>();
+		for (TestFlag flag : annotation.flags()) {
+			flags.add(flag.name());
+		}
+
+		StringBuilder line = new StringBuilder();
+		RoxableTestIndex.writeLine(line, className, signature, key, annotation.name(), annotation.category(),
+			flags, Arrays.asList(annotation.tags()), Arrays.asList(annotation.tickets()), !hasAnnotation(method, NO_ROLLBACK_ANNOTATION));
+
+		lines.put(className + "#" + signature, line.toString());
+	}
+
+	private Diagnostic.Kind getDuplicateKind() {
+		return "warning".equalsIgnoreCase(processingEnv.getOptions().get(DUPLICATES_OPTION)) ? Diagnostic.Kind.WARNING : Diagnostic.Kind.ERROR;
+	}
+
+	private String getClassName(TypeElement type) {
+		return processingEnv.getElementUtils().getBinaryName(type).toString();
+	}
+
+	/**
+	 * @return The name of the method followed by the erasure of its parameter types, as {@link RoxableTestIndex#getSignature(java.lang.reflect.Method)}
+	 */
+	private String getSignature(ExecutableElement method) {
+		StringBuilder signature = new StringBuilder(method.getSimpleName()).append('(');
+
+		for (VariableElement parameter : method.getParameters()) {
+			if (signature.charAt(signature.length() - 1) != '(') {
+				signature.append(',');
+			}
+			signature.append(getTypeName(processingEnv.getTypeUtils().erasure(parameter.asType())));
+		}
+
+		return signature.append(')').toString();
+	}
+
+	/**
+	 * @return The binary name of an erased type, the arrays ending with []
+	 */
+	private String getTypeName(TypeMirror type) {
+		if (type.getKind() == TypeKind.ARRAY) {
+			return getTypeName(((ArrayType) type).getComponentType()) + "[]";
+		}
+		else if (type.getKind() == TypeKind.DECLARED) {
+			return getClassName((TypeElement) ((DeclaredType) type).asElement());
+		}
+		else {
+			return type.toString();
+		}
+	}
+
+	/**
+	 * The annotations of the ITF are checked by name, they may not be on the class path of the processor
+	 */
+	private static boolean hasAnnotation(Element element, String annotationName) {
+		for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+			if (((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void writeIndex() {
+		StringBuilder index = new StringBuilder("# ROX test index generated by ").append(getClass().getName()).append('\n');
+		for (String line : lines.values()) {
+			index.append(line);
+		}
+
+		try {
+			FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", RoxableTestIndex.RESOURCE);
+
+			try (OutputStream out = resource.openOutputStream()) {
+				out.write(index.toString().getBytes("UTF-8"));
+			}
+		}
+		catch (IOException ioe) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Unable to write the ROX test index: " + ioe.getMessage());
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package com.lotaris.rox.client.j2ee.itf.journal;
+
+import com.lotaris.rox.client.j2ee.itf.store.TestSerializer;
+import com.lotaris.rox.common.model.v1.Test;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Content of a journal read back from the disk. The records are read up to the end
+ * of the file or to the first record which is truncated or corrupt, the ones after
+ * it being ignored. The tests marked as published are left out.
+ */
+public class JournalContent {
+	private static final Logger LOGGER = LoggerFactory.getLogger(JournalContent.class);
+
+	private final String uid;
+	private final long startDate;
+	private final List<Test> tests;
+	private final boolean complete;
+
+	private JournalContent(String uid, long startDate, List<Test> tests, boolean complete) {
+		this.uid = uid;
+		this.startDate = startDate;
+		this.tests = Collections.unmodifiableList(tests);
+		this.complete = complete;
+	}
+
+	/**
+	 * Read a journal
+	 *
+	 * @param file The journal file
+	 * @return The content of the journal
+	 * @throws IOException When the file cannot be read or is not a journal
+	 */
+	public static JournalContent read(File file) throws IOException {
+		long remaining = file.length();
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			byte[] magic = new byte[ResultJournal.MAGIC.length];
+			int version;
+			long startDate;
+			String uid = null;
+
+			try {
+				in.readFully(magic);
+				version = in.readInt();
+				startDate = in.readLong();
+
+				int uidLength = in.readInt();
+				if (uidLength > remaining) {
+					throw new IOException("The journal " + file + " has an invalid header");
+				}
+				else if (uidLength >= 0) {
+					byte[] uidBytes = new byte[uidLength];
+					in.readFully(uidBytes);
+					uid = new String(uidBytes, ResultJournal.UTF8);
+				}
+
+				remaining -= magic.length + 16 + Math.max(0, uidLength);
+			}
+			catch (EOFException eofe) {
+				throw new IOException("The journal " + file + " has a truncated header", eofe);
+			}
+
+			if (!Arrays.equals(magic, ResultJournal.MAGIC) || version != ResultJournal.VERSION && version != ResultJournal.VERSION_WITHOUT_MARKERS) {
+				throw new IOException("The file " + file + " is not a journal of version " + ResultJournal.VERSION);
+			}
+
+			List<Test> tests = new ArrayList<>();
+			BitSet published = new BitSet();
+			boolean complete = readRecords(in, remaining, tests, published);
+
+			if (!complete) {
+				LOGGER.warn("The journal {} ends with a truncated or corrupt record, {} results were read", file, tests.size());
+			}
+
+			return new JournalContent(uid, startDate, getUnpublished(tests, published), complete);
+		}
+	}
+
+	/**
+	 * @return True if all the records were read, false if the last one is truncated or corrupt
+	 */
+	private static boolean readRecords(DataInputStream in, long remaining, List<Test> tests, BitSet published) throws IOException {
+		while (remaining > 0) {
+			if (remaining < 8) {
+				return false;
+			}
+
+			int length = in.readInt();
+			int checksum = in.readInt();
+			remaining -= 8;
+
+			if (length == ResultJournal.PUBLISHED_MARKER) {
+				if (remaining < 8) {
+					return false;
+				}
+
+				byte[] range = new byte[8];
+				in.readFully(range);
+				remaining -= 8;
+
+				CRC32 crc = new CRC32();
+				crc.update(range);
+
+				ByteBuffer buffer = ByteBuffer.wrap(range);
+				int first = buffer.getInt();
+				int count = buffer.getInt();
+
+				if ((int) crc.getValue() != checksum || first < 0 || count < 0 || count > Integer.MAX_VALUE - first) {
+					return false;
+				}
+
+				published.set(first, first + count);
+				continue;
+			}
+			else if (length < 0 || length > remaining) {
+				return false;
+			}
+
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			remaining -= length;
+
+			CRC32 crc = new CRC32();
+			crc.update(bytes);
+
+			if ((int) crc.getValue() != checksum) {
+				return false;
+			}
+
+			try {
+				tests.add(TestSerializer.deserialize(bytes));
+			}
+			catch (IOException ioe) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static List<Test> getUnpublished(List<Test> tests, BitSet published) {
+		if (published.isEmpty()) {
+			return tests;
+		}
+
+		List<Test> unpublished = new ArrayList<>(tests.size());
+		for (int i = 0; i < tests.size(); i++) {
+			if (!published.get(i)) {
+				unpublished.add(tests.get(i));
+			}
+		}
+		return unpublished;
+	}
+
+	/**
+	 * @return The test run uid, null if none
+	 */
+	public String getUid() {
+		return uid;
+	}
+
+	/**
+	 * @return The start date of the test run
+	 */
+	public long getStartDate() {
+		return startDate;
+	}
+
+	/**
+	 * @return The tests read
+	 */
+	public List<Test> getTests() {
+		return tests;
+	}
+
+	/**
+	 * @return True if the journal does not end with a truncated or corrupt record
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+}
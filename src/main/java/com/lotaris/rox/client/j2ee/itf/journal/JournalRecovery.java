@@ -0,0 +1,148 @@
+package com.lotaris.rox.client.j2ee.itf.journal;
+
+import com.lotaris.rox.client.j2ee.itf.publish.PayloadPublisher;
+import com.lotaris.rox.client.j2ee.itf.publish.PublishResult;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publish the results of the journals left by the test runs which did not reach
+ * their end, as partial test runs with their original uid. The journals still
+ * locked by a running test run are left untouched, and a journal whose results
+ * could not be delivered is kept for the next start of the application.
+ */
+public class JournalRecovery {
+	private static final Logger LOGGER = LoggerFactory.getLogger(JournalRecovery.class);
+
+	/**
+	 * Directories already recovered since the start of the application
+	 */
+	private static final Set<File> RECOVERED = new HashSet<>();
+
+	private final File directory;
+	private final PayloadPublisher publisher;
+
+	/**
+	 * Constructor
+	 *
+	 * @param directory The directory of the journals
+	 * @param publisher The publisher of the recovered results
+	 */
+	public JournalRecovery(File directory, PayloadPublisher publisher) {
+		this.directory = directory;
+		this.publisher = publisher;
+	}
+
+	/**
+	 * Recover the journals of a directory in the background, once per application start
+	 *
+	 * @param directory The directory of the journals
+	 * @param publisher The publisher of the recovered results
+	 * @param executor The executor running the recovery
+	 */
+	public static void recoverOnce(File directory, PayloadPublisher publisher, Executor executor) {
+		synchronized (RECOVERED) {
+			if (!RECOVERED.add(directory.getAbsoluteFile())) {
+				return;
+			}
+		}
+
+		final JournalRecovery recovery = new JournalRecovery(directory, publisher);
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				recovery.recover();
+			}
+		});
+	}
+
+	/**
+	 * Publish the unfinished journals and delete the ones delivered
+	 *
+	 * @return The number of journals recovered
+	 */
+	public int recover() {
+		File[] journals = directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().endsWith(ResultJournal.EXTENSION);
+			}
+		});
+
+		if (journals == null) {
+			return 0;
+		}
+
+		int recovered = 0;
+
+		for (File journal : journals) {
+			try {
+				if (recover(journal)) {
+					recovered++;
+				}
+			}
+			catch (IOException ioe) {
+				LOGGER.warn("Unable to recover the journal {}", journal, ioe);
+			}
+		}
+
+		return recovered;
+	}
+
+	private boolean recover(File journal) throws IOException {
+		JournalContent content;
+
+		try (FileChannel channel = new RandomAccessFile(journal, "rw").getChannel()) {
+			FileLock lock;
+
+			try {
+				lock = channel.tryLock();
+			}
+			catch (OverlappingFileLockException ofle) {
+				// Locked by a running test run of this application
+				return false;
+			}
+
+			if (lock == null) {
+				// Locked by a running test run of another application
+				return false;
+			}
+
+			try {
+				content = JournalContent.read(journal);
+			}
+			finally {
+				lock.release();
+			}
+		}
+
+		if (!content.getTests().isEmpty()) {
+			long endDate = journal.lastModified();
+
+			LOGGER.info("Publishing the {} results of the unfinished test run {}", content.getTests().size(), content.getUid());
+			PublishResult result = publisher.publish(content.getUid(), endDate, Math.max(0, endDate - content.getStartDate()), content.getTests());
+
+			if (result == null || !result.isDelivered()) {
+				LOGGER.warn("The results of the journal {} were not delivered, it is kept to be recovered again", journal);
+				return false;
+			}
+		}
+
+		if (!journal.delete()) {
+			LOGGER.warn("Unable to delete the recovered journal {}", journal);
+		}
+
+		return true;
+	}
+}
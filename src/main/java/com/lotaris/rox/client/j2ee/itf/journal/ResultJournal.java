@@ -0,0 +1,257 @@
+package com.lotaris.rox.client.j2ee.itf.journal;
+
+import com.lotaris.rox.client.j2ee.itf.publish.BackgroundExecutors;
+import com.lotaris.rox.client.j2ee.itf.store.TestSerializer;
+import com.lotaris.rox.common.model.v1.Test;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of the results of a test run, to recover them when the run
+ * does not reach its end. The records are written as the tests end and the file is
+ * synced to the disk in the background, once per sync interval or as soon as a batch
+ * of records is pending, instead of once per record.
+ *
+ * A journal file is made of a header followed by records, all numbers being big-endian:
+ * <pre>
+ * header: magic "ROXJ" (4 bytes), format version (int), start date of the run (long),
+ *         length of the uid (int, -1 for no uid), uid (UTF-8 bytes)
+ * record: length of the test (int), CRC32 of the test (int), test serialized by {@link TestSerializer}
+ * marker: -1 (int), CRC32 of the range (int), index of the first test (int), number of tests (int)
+ * </pre>
+ * A record is complete only if its length and checksum match, the reader stops at the
+ * first incomplete record. A marker records that a range of the tests, numbered from 0
+ * in the order of their records, was published in a partial payload while the run was
+ * streamed, so they are not published again from the journal. The file is locked while
+ * the journal is open.
+ */
+public class ResultJournal {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ResultJournal.class);
+
+	static final byte[] MAGIC = { 'R', 'O', 'X', 'J' };
+	static final int VERSION = 2;
+
+	/**
+	 * Version of the journals written before the markers of the published tests, still read
+	 */
+	static final int VERSION_WITHOUT_MARKERS = 1;
+
+	/**
+	 * Length written in place of the one of a test by the markers
+	 */
+	static final int PUBLISHED_MARKER = -1;
+	static final String EXTENSION = ".journal";
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File file;
+	private final FileChannel channel;
+	private final FileLock lock;
+	private final int syncBatch;
+
+	/**
+	 * Sync the journal to the disk in the background
+	 */
+	private final ScheduledExecutorService scheduler;
+
+	/**
+	 * Number of records written since the last sync
+	 */
+	private int pending;
+
+	private final AtomicBoolean syncRequested = new AtomicBoolean();
+	private final ScheduledFuture<?> periodicSync;
+
+	private final Runnable syncTask = new Runnable() {
+		@Override
+		public void run() {
+			syncRequested.set(false);
+			try {
+				sync();
+			}
+			catch (ClosedChannelException cce) {
+				// The journal was closed in the meantime, it was synced when closed
+			}
+			catch (IOException ioe) {
+				LOGGER.warn("Unable to sync the journal {}", file, ioe);
+			}
+		}
+	};
+
+	private ResultJournal(File file, FileChannel channel, FileLock lock, long syncInterval, int syncBatch) {
+		this.file = file;
+		this.channel = channel;
+		this.lock = lock;
+		this.syncBatch = syncBatch;
+
+		scheduler = BackgroundExecutors.getScheduler();
+		periodicSync = scheduler.scheduleWithFixedDelay(syncTask, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Create the journal of a test run
+	 *
+	 * @param directory The directory of the journals
+	 * @param uid The test run uid
+	 * @param startDate The start date of the test run
+	 * @param syncInterval The maximum time between two syncs, in milliseconds
+	 * @param syncBatch The number of records after which the journal is synced without waiting
+	 * @return The journal created
+	 * @throws IOException When the journal cannot be created
+	 */
+	public static ResultJournal create(File directory, String uid, long startDate, long syncInterval, int syncBatch) throws IOException {
+		if (!directory.exists() && !directory.mkdirs()) {
+			throw new IOException("Unable to create the journal directory " + directory);
+		}
+
+		File file = new File(directory, startDate + "-" + UUID.randomUUID() + EXTENSION);
+		FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+
+		try {
+			FileLock lock = channel.lock();
+
+			byte[] uidBytes = uid != null ? uid.getBytes(UTF8) : new byte[0];
+			ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 16 + uidBytes.length);
+			header.put(MAGIC).putInt(VERSION).putLong(startDate).putInt(uid != null ? uidBytes.length : -1).put(uidBytes);
+			header.flip();
+			write(channel, header);
+			channel.force(true);
+
+			return new ResultJournal(file, channel, lock, syncInterval, syncBatch);
+		}
+		catch (IOException ioe) {
+			channel.close();
+			throw ioe;
+		}
+	}
+
+	/**
+	 * Append the result of a test, synced to the disk later
+	 *
+	 * @param test The test to append
+	 * @throws IOException When the test cannot be written
+	 */
+	public void append(Test test) throws IOException {
+		byte[] bytes = TestSerializer.serialize(test);
+
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+
+		ByteBuffer record = ByteBuffer.allocate(8 + bytes.length);
+		record.putInt(bytes.length).putInt((int) crc.getValue()).put(bytes);
+		record.flip();
+
+		synchronized (this) {
+			write(channel, record);
+			pending++;
+
+			if (pending >= syncBatch && syncRequested.compareAndSet(false, true)) {
+				scheduler.execute(syncTask);
+			}
+		}
+	}
+
+	/**
+	 * Record that a range of tests was published, the marker being synced to the disk later
+	 *
+	 * @param first The index of the first test published, in the order of their records
+	 * @param count The number of tests published
+	 * @throws IOException When the marker cannot be written
+	 */
+	public void markPublished(int first, int count) throws IOException {
+		ByteBuffer range = ByteBuffer.allocate(8);
+		range.putInt(first).putInt(count);
+
+		CRC32 crc = new CRC32();
+		crc.update(range.array());
+
+		ByteBuffer record = ByteBuffer.allocate(16);
+		record.putInt(PUBLISHED_MARKER).putInt((int) crc.getValue()).put(range.array());
+		record.flip();
+
+		synchronized (this) {
+			write(channel, record);
+			pending++;
+		}
+	}
+
+	/**
+	 * Sync the records written so far to the disk. The records appended while the
+	 * sync is in progress are part of it or of the next one.
+	 *
+	 * @throws IOException When the journal cannot be synced
+	 */
+	public void sync() throws IOException {
+		synchronized (this) {
+			if (pending == 0 || !channel.isOpen()) {
+				return;
+			}
+			pending = 0;
+		}
+
+		channel.force(false);
+	}
+
+	/**
+	 * Sync and close the journal, which stays on the disk
+	 */
+	public void close() {
+		periodicSync.cancel(false);
+
+		if (!channel.isOpen()) {
+			return;
+		}
+
+		try {
+			sync();
+		}
+		catch (IOException ioe) {
+			LOGGER.warn("Unable to sync the journal {}", file, ioe);
+		}
+
+		try {
+			lock.release();
+			channel.close();
+		}
+		catch (IOException ioe) {
+			LOGGER.warn("Unable to close the journal {}", file, ioe);
+		}
+	}
+
+	/**
+	 * Close and delete the journal once its results are published
+	 */
+	public void delete() {
+		close();
+
+		if (!file.delete()) {
+			LOGGER.warn("Unable to delete the journal {}", file);
+		}
+	}
+
+	/**
+	 * @return The journal file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
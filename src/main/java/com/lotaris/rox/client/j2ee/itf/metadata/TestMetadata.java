@@ -0,0 +1,134 @@
+package com.lotaris.rox.client.j2ee.itf.metadata;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.RoxableTestClass;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The metadata of a test method which does not change from one execution to
+ * another: annotations, key, name, category, flags, tags, tickets and the data
+ * describing where the test comes from.
+ */
+public final class TestMetadata {
+	/**
+	 * Prefixes of the data measured on each execution of a test by the profiler and the
+	 * regression detector, which is not part of the metadata of the test
+	 */
+	public static final String PROFILE_DATA_PREFIX = "profile.";
+	public static final String REGRESSION_DATA_PREFIX = "regression.";
+
+	private final RoxableTest methodAnnotation;
+	private final RoxableTestClass classAnnotation;
+	private final String key;
+	private final String name;
+	private final String category;
+	private final int flags;
+	private final Set<String> tags;
+	private final Set<String> tickets;
+	private final Map<String, String> data;
+
+	/**
+	 * Constructor
+	 *
+	 * @param methodAnnotation The method annotation, null if missing
+	 * @param classAnnotation The class annotation, null if missing
+	 * @param name The name of the test
+	 * @param category The category defined on the annotations, null if none
+	 * @param flags The flags value
+	 * @param tags The tags of the test
+	 * @param tickets The tickets of the test
+	 * @param data The data common to all the executions of the test
+	 */
+	public TestMetadata(RoxableTest methodAnnotation, RoxableTestClass classAnnotation, String name, String category,
+		int flags, Set<String> tags, Set<String> tickets, Map<String, String> data) {
+		this(methodAnnotation, classAnnotation, methodAnnotation != null ? methodAnnotation.key() : null, name, category, flags, tags, tickets, data);
+	}
+
+	/**
+	 * Constructor for the metadata found in the test index, without the annotations
+	 *
+	 * @param key The test key, null if the method is not a ROX test
+	 * @param name The name of the test
+	 * @param category The category defined on the annotations, null if none
+	 * @param flags The flags value
+	 * @param tags The tags of the test
+	 * @param tickets The tickets of the test
+	 * @param data The data common to all the executions of the test
+	 */
+	public TestMetadata(String key, String name, String category, int flags, Set<String> tags, Set<String> tickets, Map<String, String> data) {
+		this(null, null, key, name, category, flags, tags, tickets, data);
+	}
+
+	private TestMetadata(RoxableTest methodAnnotation, RoxableTestClass classAnnotation, String key, String name, String category,
+		int flags, Set<String> tags, Set<String> tickets, Map<String, String> data) {
+		this.methodAnnotation = methodAnnotation;
+		this.classAnnotation = classAnnotation;
+		this.key = key;
+		this.name = name;
+		this.category = category;
+		this.flags = flags;
+		this.tags = Collections.unmodifiableSet(new HashSet<>(tags));
+		this.tickets = Collections.unmodifiableSet(new HashSet<>(tickets));
+		this.data = Collections.unmodifiableMap(new HashMap<>(data));
+	}
+
+	/**
+	 * @return The method annotation, null if missing or if the metadata comes from the test index
+	 */
+	public RoxableTest getMethodAnnotation() {
+		return methodAnnotation;
+	}
+
+	/**
+	 * @return The class annotation, null if missing or if the metadata comes from the test index
+	 */
+	public RoxableTestClass getClassAnnotation() {
+		return classAnnotation;
+	}
+
+	/**
+	 * @return The test key, null if the method is not annotated with {@code @RoxableTest}
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return The category defined on the method or class annotation, null if none
+	 */
+	public String getCategory() {
+		return category;
+	}
+
+	public int getFlags() {
+		return flags;
+	}
+
+	public Set<String> getTags() {
+		return tags;
+	}
+
+	public Set<String> getTickets() {
+		return tickets;
+	}
+
+	public Map<String, String> getData() {
+		return data;
+	}
+
+	/**
+	 * @param key The key of a data of a test result
+	 * @return True if the data is measured on each execution of the test, its value being different every time
+	 */
+	public static boolean isExecutionData(String key) {
+		return key.startsWith(PROFILE_DATA_PREFIX) || key.startsWith(REGRESSION_DATA_PREFIX);
+	}
+}
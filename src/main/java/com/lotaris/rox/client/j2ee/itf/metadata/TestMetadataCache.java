@@ -0,0 +1,76 @@
+package com.lotaris.rox.client.j2ee.itf.metadata;
+
+import com.lotaris.j2ee.itf.model.Description;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of the {@link TestMetadata} resolved for each test method. The metadata
+ * is attached to the class declaring the method so it is released with the class
+ * when the application under test is undeployed.
+ *
+ * The metadata is cached per class of listener, as a listener may resolve it in its
+ * own way, for instance by overriding how the annotations are read.
+ */
+public final class TestMetadataCache {
+	/**
+	 * Resolve the metadata of a method on cache miss
+	 */
+	public interface Resolver {
+		TestMetadata resolve(Description description);
+	}
+
+	private static final ClassValue<ConcurrentMap<Class<?>, ConcurrentMap<Method, TestMetadata>>> CACHE =
+		new ClassValue<ConcurrentMap<Class<?>, ConcurrentMap<Method, TestMetadata>>>() {
+			@Override
+			protected ConcurrentMap<Class<?>, ConcurrentMap<Method, TestMetadata>> computeValue(Class<?> type) {
+				return new ConcurrentHashMap<>();
+			}
+		};
+
+	private TestMetadataCache() {}
+
+	/**
+	 * Retrieve the metadata of a method, resolving it on first access
+	 *
+	 * @param description The description of the test
+	 * @param resolverType The class of the listener resolving the metadata
+	 * @param resolver The resolver to use if the metadata is not cached yet
+	 * @return The metadata of the test method
+	 */
+	public static TestMetadata get(Description description, Class<?> resolverType, Resolver resolver) {
+		Method method = description.getMethod();
+		ConcurrentMap<Class<?>, ConcurrentMap<Method, TestMetadata>> resolvers = CACHE.get(method.getDeclaringClass());
+
+		ConcurrentMap<Method, TestMetadata> metadatas = resolvers.get(resolverType);
+		if (metadatas == null) {
+			metadatas = new ConcurrentHashMap<>();
+			ConcurrentMap<Method, TestMetadata> existing = resolvers.putIfAbsent(resolverType, metadatas);
+			if (existing != null) {
+				metadatas = existing;
+			}
+		}
+
+		TestMetadata metadata = metadatas.get(method);
+
+		if (metadata == null) {
+			metadata = resolver.resolve(description);
+			TestMetadata existing = metadatas.putIfAbsent(method, metadata);
+			if (existing != null) {
+				metadata = existing;
+			}
+		}
+
+		return metadata;
+	}
+
+	/**
+	 * Forget the metadata of the methods declared by a class, for all the listeners
+	 *
+	 * @param type The class to forget
+	 */
+	public static void clear(Class<?> type) {
+		CACHE.remove(type);
+	}
+}
@@ -0,0 +1,178 @@
+package com.lotaris.rox.client.j2ee.itf.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Metrics of the time spent by the ROX integration, shared by all the listeners,
+ * filters and publishers of the application. They are registered as a JMX MBean
+ * named {@value #OBJECT_NAME}.
+ */
+public class RoxMetrics implements RoxMetricsMXBean {
+	private static final Logger LOGGER = LoggerFactory.getLogger(RoxMetrics.class);
+
+	public static final String OBJECT_NAME = "com.lotaris.rox.client.j2ee.itf:type=RoxMetrics";
+
+	private static final RoxMetrics INSTANCE = new RoxMetrics();
+
+	static {
+		INSTANCE.register();
+	}
+
+	private final Timer createTest = new Timer();
+	private final Timer filter = new Timer();
+	private final Timer payloadBuild = new Timer();
+	private final Timer save = new Timer();
+	private final Timer send = new Timer();
+
+	private final AtomicLong payloads = new AtomicLong();
+	private final AtomicLong payloadBytes = new AtomicLong();
+	private final AtomicLong lastPayloadBytes = new AtomicLong();
+
+	RoxMetrics() {}
+
+	/**
+	 * @return The metrics of the application
+	 */
+	public static RoxMetrics getInstance() {
+		return INSTANCE;
+	}
+
+	private void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+
+			// Replace the metrics of a previous deployment of the application
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+
+			server.registerMBean(this, name);
+		}
+		catch (JMException | SecurityException e) {
+			LOGGER.warn("Unable to register the ROX metrics MBean {}", OBJECT_NAME, e);
+		}
+	}
+
+	/**
+	 * @return The timer of the creation of the test results
+	 */
+	public Timer getCreateTestTimer() {
+		return createTest;
+	}
+
+	/**
+	 * @return The timer of the evaluation of the ROX filters
+	 */
+	public Timer getFilterTimer() {
+		return filter;
+	}
+
+	/**
+	 * @return The timer of the build of the payload models
+	 */
+	public Timer getPayloadBuildTimer() {
+		return payloadBuild;
+	}
+
+	/**
+	 * @return The timer of the local saves of the payloads
+	 */
+	public Timer getSaveTimer() {
+		return save;
+	}
+
+	/**
+	 * @return The timer of the sends of the payloads to ROX
+	 */
+	public Timer getSendTimer() {
+		return send;
+	}
+
+	/**
+	 * Record the size of a payload written in a single pass
+	 *
+	 * @param bytes The number of bytes of the payload
+	 */
+	public void recordPayload(long bytes) {
+		payloads.incrementAndGet();
+		payloadBytes.addAndGet(bytes);
+		lastPayloadBytes.set(bytes);
+	}
+
+	@Override
+	public TimerStats getCreateTest() {
+		return createTest.getStats();
+	}
+
+	@Override
+	public TimerStats getFilter() {
+		return filter.getStats();
+	}
+
+	@Override
+	public TimerStats getPayloadBuild() {
+		return payloadBuild.getStats();
+	}
+
+	@Override
+	public TimerStats getSave() {
+		return save.getStats();
+	}
+
+	@Override
+	public TimerStats getSend() {
+		return send.getStats();
+	}
+
+	@Override
+	public long getPayloads() {
+		return payloads.get();
+	}
+
+	@Override
+	public long getPayloadBytes() {
+		return payloadBytes.get();
+	}
+
+	@Override
+	public long getLastPayloadBytes() {
+		return lastPayloadBytes.get();
+	}
+
+	@Override
+	public void reset() {
+		createTest.reset();
+		filter.reset();
+		payloadBuild.reset();
+		save.reset();
+		send.reset();
+		payloads.set(0);
+		payloadBytes.set(0);
+		lastPayloadBytes.set(0);
+	}
+
+	/**
+	 * @return The metrics as a map, to be serialized to JSON
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("createTest", getCreateTest());
+		map.put("filter", getFilter());
+		map.put("payloadBuild", getPayloadBuild());
+		map.put("save", getSave());
+		map.put("send", getSend());
+		map.put("payloads", getPayloads());
+		map.put("payloadBytes", getPayloadBytes());
+		map.put("lastPayloadBytes", getLastPayloadBytes());
+		return map;
+	}
+}
@@ -0,0 +1,51 @@
+package com.lotaris.rox.client.j2ee.itf.metrics;
+
+/**
+ * Overhead of the ROX integration, exposed through JMX
+ */
+public interface RoxMetricsMXBean {
+	/**
+	 * @return The statistics of the creation of the test results by the listeners
+	 */
+	TimerStats getCreateTest();
+
+	/**
+	 * @return The statistics of the evaluation of the ROX filters
+	 */
+	TimerStats getFilter();
+
+	/**
+	 * @return The statistics of the build of the payload models
+	 */
+	TimerStats getPayloadBuild();
+
+	/**
+	 * @return The statistics of the local saves of the payloads
+	 */
+	TimerStats getSave();
+
+	/**
+	 * @return The statistics of the sends of the payloads to ROX
+	 */
+	TimerStats getSend();
+
+	/**
+	 * @return The number of payloads written in a single pass
+	 */
+	long getPayloads();
+
+	/**
+	 * @return The number of bytes of the payloads written in a single pass
+	 */
+	long getPayloadBytes();
+
+	/**
+	 * @return The number of bytes of the last payload written in a single pass
+	 */
+	long getLastPayloadBytes();
+
+	/**
+	 * Forget the metrics recorded so far
+	 */
+	void reset();
+}
@@ -0,0 +1,61 @@
+package com.lotaris.rox.client.j2ee.itf.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Count and time an operation, safe to use from several threads without locking
+ */
+public class Timer {
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * Record a successful operation
+	 *
+	 * @param nanos The duration of the operation, in nanoseconds
+	 */
+	public void record(long nanos) {
+		record(nanos, true);
+	}
+
+	/**
+	 * Record an operation
+	 *
+	 * @param nanos The duration of the operation, in nanoseconds
+	 * @param success True if the operation succeeded
+	 */
+	public void record(long nanos, boolean success) {
+		count.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+
+		if (!success) {
+			failures.incrementAndGet();
+		}
+
+		long max = maxNanos.get();
+		while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+			max = maxNanos.get();
+		}
+	}
+
+	/**
+	 * @return The statistics of the operation
+	 */
+	public TimerStats getStats() {
+		return new TimerStats(count.get(), failures.get(), totalNanos.get() / NANOS_PER_MILLI, maxNanos.get() / NANOS_PER_MILLI);
+	}
+
+	/**
+	 * Forget the operations recorded so far
+	 */
+	public void reset() {
+		count.set(0);
+		failures.set(0);
+		totalNanos.set(0);
+		maxNanos.set(0);
+	}
+}
@@ -0,0 +1,56 @@
+package com.lotaris.rox.client.j2ee.itf.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Statistics of a timed operation at a given time
+ */
+public class TimerStats {
+	private final long count;
+	private final long failures;
+	private final double totalMillis;
+	private final double maxMillis;
+
+	@ConstructorProperties({ "count", "failures", "totalMillis", "maxMillis" })
+	public TimerStats(long count, long failures, double totalMillis, double maxMillis) {
+		this.count = count;
+		this.failures = failures;
+		this.totalMillis = totalMillis;
+		this.maxMillis = maxMillis;
+	}
+
+	/**
+	 * @return The number of operations
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return The number of operations which failed
+	 */
+	public long getFailures() {
+		return failures;
+	}
+
+	/**
+	 * @return The time spent in the operations, in milliseconds
+	 */
+	public double getTotalMillis() {
+		return totalMillis;
+	}
+
+	/**
+	 * @return The mean time of an operation, in milliseconds
+	 */
+	public double getMeanMillis() {
+		return count > 0 ? totalMillis / count : 0;
+	}
+
+	/**
+	 * @return The longest time of an operation, in milliseconds
+	 */
+	public double getMaxMillis() {
+		return maxMillis;
+	}
+}
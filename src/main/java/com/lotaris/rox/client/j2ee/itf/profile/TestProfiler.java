@@ -0,0 +1,163 @@
+package com.lotaris.rox.client.j2ee.itf.profile;
+
+import com.lotaris.rox.client.j2ee.itf.metadata.TestMetadata;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measure the resources used by each test between its start and its end: the CPU time
+ * and the bytes allocated by the thread running the test, and the time spent by the
+ * JVM in garbage collections. The measures are added to the data of the test sent to
+ * ROX, so a slower test can be told apart from a test waiting for the garbage collector.
+ *
+ * The CPU time and the allocated bytes are the ones of the thread running the test and
+ * are only measured when the test ends on the thread it started on. The garbage
+ * collection time is the one of the whole JVM, shared by the tests running in parallel.
+ * A measure which is not supported by the JVM is left out of the data.
+ */
+public class TestProfiler {
+	private static final Logger LOGGER = LoggerFactory.getLogger(TestProfiler.class);
+
+	/**
+	 * Keys of the measures in the data of the tests
+	 */
+	public static final String CPU_TIME				= TestMetadata.PROFILE_DATA_PREFIX + "cpuTimeMicros";
+	public static final String ALLOCATED_BYTES	= TestMetadata.PROFILE_DATA_PREFIX + "allocatedBytes";
+	public static final String GC_TIME					= TestMetadata.PROFILE_DATA_PREFIX + "gcTimeMillis";
+
+	private static final int CPU = 0;
+	private static final int ALLOCATED = 1;
+	private static final int GC = 2;
+	private static final int THREAD = 3;
+
+	private static final long UNSUPPORTED = -1;
+
+	private final ThreadMXBean threads;
+	private final com.sun.management.ThreadMXBean allocations;
+	private final GarbageCollectorMXBean[] collectors;
+
+	/**
+	 * Measures at the start of the test running on each thread, with the id of the thread
+	 * to check the test ends on the thread it started on
+	 */
+	private final ThreadLocal<long[]> samples = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[] { UNSUPPORTED, UNSUPPORTED, UNSUPPORTED, UNSUPPORTED };
+		}
+	};
+
+	public TestProfiler() {
+		threads = ManagementFactory.getThreadMXBean();
+		allocations = threads instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) threads : null;
+
+		List<GarbageCollectorMXBean> gcBeans = ManagementFactory.getGarbageCollectorMXBeans();
+		collectors = gcBeans.toArray(new GarbageCollectorMXBean[gcBeans.size()]);
+
+		try {
+			if (threads.isCurrentThreadCpuTimeSupported() && !threads.isThreadCpuTimeEnabled()) {
+				threads.setThreadCpuTimeEnabled(true);
+			}
+
+			if (allocations != null && allocations.isThreadAllocatedMemorySupported() && !allocations.isThreadAllocatedMemoryEnabled()) {
+				allocations.setThreadAllocatedMemoryEnabled(true);
+			}
+		}
+		catch (UnsupportedOperationException | SecurityException e) {
+			LOGGER.warn("Unable to enable the measure of the CPU time and allocations of the threads, only the supported measures are profiled", e);
+		}
+	}
+
+	/**
+	 * Take the measures at the start of a test, on the thread running the test
+	 */
+	public void start() {
+		long[] sample = samples.get();
+		long threadId = Thread.currentThread().getId();
+
+		sample[CPU] = getCpuTime();
+		sample[ALLOCATED] = getAllocatedBytes(threadId);
+		sample[GC] = getGcTime();
+		sample[THREAD] = threadId;
+	}
+
+	/**
+	 * Take the measures at the end of a test and add the resources used since its start
+	 * to its data
+	 *
+	 * @param data The data of the test
+	 */
+	public void stop(Map<String, String> data) {
+		long[] sample = samples.get();
+		long threadId = Thread.currentThread().getId();
+
+		// The test did not start on this thread, or the profiling was enabled while it was running
+		if (sample[THREAD] != threadId) {
+			return;
+		}
+
+		sample[THREAD] = UNSUPPORTED;
+
+		put(data, CPU_TIME, sample[CPU], getCpuTime(), 1000);
+		put(data, ALLOCATED_BYTES, sample[ALLOCATED], getAllocatedBytes(threadId), 1);
+		put(data, GC_TIME, sample[GC], getGcTime(), 1);
+	}
+
+	private static void put(Map<String, String> data, String key, long start, long end, long unit) {
+		if (start != UNSUPPORTED && end != UNSUPPORTED) {
+			data.put(key, Long.toString(Math.max(0, end - start) / unit));
+		}
+	}
+
+	/**
+	 * @return The CPU time of the current thread in nanoseconds, -1 if not supported
+	 */
+	private long getCpuTime() {
+		try {
+			return threads.getCurrentThreadCpuTime();
+		}
+		catch (UnsupportedOperationException uoe) {
+			return UNSUPPORTED;
+		}
+	}
+
+	/**
+	 * @return The bytes allocated by the thread, -1 if not supported
+	 */
+	private long getAllocatedBytes(long threadId) {
+		if (allocations == null) {
+			return UNSUPPORTED;
+		}
+
+		try {
+			return allocations.getThreadAllocatedBytes(threadId);
+		}
+		catch (UnsupportedOperationException uoe) {
+			return UNSUPPORTED;
+		}
+	}
+
+	/**
+	 * @return The accumulated time of the garbage collections of the JVM in milliseconds, -1 if not supported
+	 */
+	private long getGcTime() {
+		long time = 0;
+
+		for (GarbageCollectorMXBean collector : collectors) {
+			long collectorTime = collector.getCollectionTime();
+
+			if (collectorTime < 0) {
+				return UNSUPPORTED;
+			}
+
+			time += collectorTime;
+		}
+
+		return collectors.length > 0 ? time : UNSUPPORTED;
+	}
+}
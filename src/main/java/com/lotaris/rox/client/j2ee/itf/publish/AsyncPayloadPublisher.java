@@ -0,0 +1,501 @@
+package com.lotaris.rox.client.j2ee.itf.publish;
+
+import com.lotaris.rox.client.j2ee.itf.publish.PublishResult.Outcome;
+import com.lotaris.rox.common.model.v1.Payload;
+import com.lotaris.rox.common.model.v1.Test;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publish the payloads in the background. The local save and the send to ROX
+ * run at the same time on the executor, and both must complete within the
+ * timeout budget or they are cancelled.
+ */
+public class AsyncPayloadPublisher {
+	private static final Logger LOGGER = LoggerFactory.getLogger(AsyncPayloadPublisher.class);
+
+	private static final int SAVE = 0;
+	private static final int SEND = 1;
+
+	private final PayloadPublisher publisher;
+	private final ExecutorService executor;
+	private final long timeout;
+
+	/**
+	 * Cancel the publications which exceed their timeout budget
+	 */
+	private final ScheduledExecutorService timeouts;
+
+	/**
+	 * Callback of a publication, told whether the payload was delivered or not
+	 */
+	public interface Completion {
+		/**
+		 * Called once, when both channels are completed and their tasks have ended. A task
+		 * still running when its channel timed out or was cancelled may succeed after all,
+		 * the channel is then given as succeeded so the payload is not published again.
+		 *
+		 * @param result The outcome of the publication
+		 */
+		void completed(PublishResult result);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param publisher The publisher doing the actual save and send
+	 * @param executor The executor running the save and send tasks
+	 * @param timeout The timeout budget of a publication, in milliseconds
+	 */
+	public AsyncPayloadPublisher(PayloadPublisher publisher, ExecutorService executor, long timeout) {
+		this(publisher, executor, BackgroundExecutors.getScheduler(), timeout);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param publisher The publisher doing the actual save and send
+	 * @param executor The executor running the save and send tasks
+	 * @param timeouts The executor cancelling the publications which exceed their timeout budget
+	 * @param timeout The timeout budget of a publication, in milliseconds
+	 */
+	public AsyncPayloadPublisher(PayloadPublisher publisher, ExecutorService executor, ScheduledExecutorService timeouts, long timeout) {
+		this.publisher = publisher;
+		this.executor = executor;
+		this.timeouts = timeouts;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Create a thread factory for daemon threads, so the publication never
+	 * prevents the application server from shutting down
+	 *
+	 * @param name The prefix of the thread names
+	 * @return The thread factory
+	 */
+	public static ThreadFactory daemonThreadFactory(final String name) {
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Start the publication of a payload
+	 *
+	 * @param payload The payload to publish
+	 * @return The future completed once the payload is saved and sent, or the timeout budget is exhausted
+	 */
+	public Future<PublishResult> publish(final Payload payload) {
+		return publish(payload, null);
+	}
+
+	/**
+	 * Start the publication of a payload
+	 *
+	 * @param payload The payload to publish
+	 * @param completion Called with the result once the publication is completed, can be null
+	 * @return The future completed once the payload is saved and sent, or the timeout budget is exhausted
+	 */
+	public Future<PublishResult> publish(final Payload payload, Completion completion) {
+		final Publication publication = new Publication();
+		publication.completion = completion;
+
+		if (publisher.isSave()) {
+			publication.start(SAVE, new Runnable() {
+				@Override
+				public void run() {
+					long start = System.currentTimeMillis();
+					try {
+						publisher.save(payload);
+						publication.complete(SAVE, Outcome.SUCCEEDED, System.currentTimeMillis() - start);
+					}
+					catch (Exception e) {
+						LOGGER.warn("Unable to save the payload", e);
+						publication.complete(SAVE, Outcome.FAILED, System.currentTimeMillis() - start);
+					}
+				}
+			});
+		}
+		else {
+			publication.complete(SAVE, Outcome.SKIPPED, 0);
+		}
+
+		if (publisher.isPublish()) {
+			publication.start(SEND, new Runnable() {
+				@Override
+				public void run() {
+					long start = System.currentTimeMillis();
+					try {
+						Outcome outcome = publisher.send(payload) ? Outcome.SUCCEEDED : Outcome.FAILED;
+						publication.complete(SEND, outcome, System.currentTimeMillis() - start);
+					}
+					catch (Exception e) {
+						LOGGER.warn("Unable to send the payload to ROX", e);
+						publication.complete(SEND, Outcome.FAILED, System.currentTimeMillis() - start);
+					}
+				}
+			});
+		}
+		else {
+			publication.complete(SEND, Outcome.SKIPPED, 0);
+		}
+
+		publication.scheduleTimeout();
+
+		return publication;
+	}
+
+	/**
+	 * Start the publication of a payload written in a single pass to the local file and
+	 * to ROX, both channels being completed when the pass is over
+	 *
+	 * The tests are released once the pass is over, or when the publication times out
+	 * before the pass is started. A pass still running when the publication times out may
+	 * be blocked on I/O and keep reading the tests, they are released when it ends.
+	 *
+	 * @param uid The test run uid
+	 * @param duration The duration of the test run
+	 * @param tests The tests to put in the payload, read during the publication
+	 * @param release Run once the tests are no longer read, to release them, can be null
+	 * @param completion Called with the result once the publication is completed, can be null
+	 * @return The future completed once the payload is saved and sent, or the timeout budget is exhausted
+	 */
+	public Future<PublishResult> stream(final String uid, final long duration, final Iterable<Test> tests, Runnable release, Completion completion) {
+		final Publication publication = new Publication();
+		publication.completion = completion;
+		publication.release = release;
+
+		publication.startAll(new Runnable() {
+			@Override
+			public void run() {
+				// The publication timed out before the pass was started, the tests are released
+				if (!publication.claim()) {
+					return;
+				}
+
+				long start = System.currentTimeMillis();
+				try {
+					PublishResult result = publisher.stream(uid, duration, tests);
+					publication.complete(SAVE, result.getSaveOutcome(), result.getSaveDuration());
+					publication.complete(SEND, result.getSendOutcome(), result.getSendDuration());
+				}
+				catch (Exception e) {
+					LOGGER.warn("Unable to write the payload", e);
+					publication.complete(SAVE, Outcome.FAILED, System.currentTimeMillis() - start);
+					publication.complete(SEND, Outcome.FAILED, System.currentTimeMillis() - start);
+				}
+				finally {
+					publication.release();
+				}
+			}
+		});
+
+		publication.scheduleTimeout();
+
+		return publication;
+	}
+
+	/**
+	 * Future of a publication, completed when both channels are completed
+	 */
+	private class Publication implements Future<PublishResult> {
+		private final long start = System.currentTimeMillis();
+		private final CountDownLatch remaining = new CountDownLatch(2);
+		private final AtomicReferenceArray<Outcome> outcomes = new AtomicReferenceArray<>(2);
+		private final long[] durations = new long[2];
+		private final Task[] tasks = new Task[2];
+
+		/**
+		 * Outcomes of the tasks which succeeded after their channel timed out or was cancelled
+		 */
+		private final AtomicReferenceArray<Outcome> lateOutcomes = new AtomicReferenceArray<>(2);
+		private final long[] lateDurations = new long[2];
+
+		/**
+		 * Number of tasks submitted which have not ended yet
+		 */
+		private final AtomicInteger running = new AtomicInteger();
+		private final AtomicBoolean notified = new AtomicBoolean();
+		private volatile ScheduledFuture<?> timeoutTask;
+		private volatile PublishResult result;
+		private volatile boolean cancelled;
+		private Completion completion;
+
+		/**
+		 * Release of the tests read by the task, run once by the task or by the timeout if the task was not started
+		 */
+		private Runnable release;
+		private final AtomicBoolean claimed = new AtomicBoolean();
+
+		private void start(int channel, Runnable task) {
+			tasks[channel] = new Task(task);
+		}
+
+		/**
+		 * Start a task completing both channels
+		 */
+		private void startAll(Runnable task) {
+			Task all = new Task(task);
+			tasks[SAVE] = all;
+			tasks[SEND] = all;
+		}
+
+		/**
+		 * @return True if the caller owns the release of the tests, false if it was already claimed
+		 */
+		private boolean claim() {
+			return claimed.compareAndSet(false, true);
+		}
+
+		private void release() {
+			if (release != null) {
+				release.run();
+			}
+		}
+
+		private void scheduleTimeout() {
+			if (remaining.getCount() > 0) {
+				timeoutTask = timeouts.schedule(new Runnable() {
+					@Override
+					public void run() {
+						timeout();
+					}
+				}, timeout, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		/**
+		 * Complete a channel, only the first completion of a channel is taken into account
+		 *
+		 * @return True if the channel was completed by this call
+		 */
+		private boolean complete(int channel, Outcome outcome, long duration) {
+			if (!outcomes.compareAndSet(channel, null, outcome)) {
+				Outcome previous = outcomes.get(channel);
+
+				// The task succeeded after all, the completion is told the payload was delivered
+				if ((previous == Outcome.TIMED_OUT || previous == Outcome.CANCELLED) && outcome == Outcome.SUCCEEDED) {
+					synchronized (durations) {
+						lateDurations[channel] = duration;
+					}
+					lateOutcomes.set(channel, outcome);
+					LOGGER.info("The {} of the payload succeeded after it was {}", channel == SAVE ? "save" : "send", previous);
+				}
+				return false;
+			}
+
+			synchronized (durations) {
+				durations[channel] = duration;
+			}
+
+			if (outcome == Outcome.CANCELLED) {
+				cancelled = true;
+			}
+
+			remaining.countDown();
+
+			if (remaining.getCount() == 0) {
+				done();
+			}
+
+			return true;
+		}
+
+		private void timeout() {
+			abort(Outcome.TIMED_OUT, true);
+		}
+
+		/**
+		 * Complete the channels still running with the given outcome and cancel their tasks
+		 *
+		 * @return True if at least one channel was completed by this call
+		 */
+		private boolean abort(Outcome outcome, boolean mayInterruptIfRunning) {
+			long elapsed = System.currentTimeMillis() - start;
+			boolean aborted = false;
+
+			for (int channel = 0; channel < 2; channel++) {
+				if (complete(channel, outcome, elapsed)) {
+					aborted = true;
+
+					if (tasks[channel] != null) {
+						tasks[channel].cancel(mayInterruptIfRunning);
+					}
+				}
+			}
+
+			// The task was not started, it will not read the tests
+			if (release != null && claim()) {
+				release();
+			}
+
+			return aborted;
+		}
+
+		private synchronized void done() {
+			if (result != null) {
+				return;
+			}
+
+			if (timeoutTask != null) {
+				timeoutTask.cancel(false);
+			}
+
+			synchronized (durations) {
+				result = new PublishResult(outcomes.get(SAVE), durations[SAVE], outcomes.get(SEND), durations[SEND], System.currentTimeMillis() - start);
+			}
+
+			if (result.isSuccessful()) {
+				LOGGER.info("Payload published, {}", result);
+			}
+			else {
+				LOGGER.warn("Payload not completely published, {}", result);
+			}
+
+			notifyCompletion();
+		}
+
+		/**
+		 * Call the completion once the channels are completed and their tasks have ended
+		 */
+		private void notifyCompletion() {
+			if (result == null || running.get() > 0 || completion == null || !notified.compareAndSet(false, true)) {
+				return;
+			}
+
+			Outcome saveOutcome = result.getSaveOutcome();
+			Outcome sendOutcome = result.getSendOutcome();
+			long saveDuration = result.getSaveDuration();
+			long sendDuration = result.getSendDuration();
+
+			synchronized (durations) {
+				if (lateOutcomes.get(SAVE) != null) {
+					saveOutcome = lateOutcomes.get(SAVE);
+					saveDuration = lateDurations[SAVE];
+				}
+				if (lateOutcomes.get(SEND) != null) {
+					sendOutcome = lateOutcomes.get(SEND);
+					sendDuration = lateDurations[SEND];
+				}
+			}
+
+			if (saveOutcome == result.getSaveOutcome() && sendOutcome == result.getSendOutcome()) {
+				completion.completed(result);
+			}
+			else {
+				completion.completed(new PublishResult(saveOutcome, saveDuration, sendOutcome, sendDuration, System.currentTimeMillis() - start));
+			}
+		}
+
+		/**
+		 * Task of one or both channels, counted as running until it ends or is cancelled before it starts
+		 */
+		private class Task implements Runnable {
+			private final Runnable task;
+			private final AtomicBoolean started = new AtomicBoolean();
+			private final Future<?> future;
+
+			private Task(Runnable task) {
+				this.task = task;
+				running.incrementAndGet();
+				future = executor.submit(this);
+			}
+
+			@Override
+			public void run() {
+				if (!started.compareAndSet(false, true)) {
+					return;
+				}
+
+				try {
+					task.run();
+				}
+				finally {
+					ended();
+				}
+			}
+
+			private void cancel(boolean mayInterruptIfRunning) {
+				future.cancel(mayInterruptIfRunning);
+
+				// The task will never run
+				if (started.compareAndSet(false, true)) {
+					ended();
+				}
+			}
+
+			private void ended() {
+				if (running.decrementAndGet() == 0) {
+					notifyCompletion();
+				}
+			}
+		}
+
+		/**
+		 * Cancel the tasks of the channels still running, which are completed as cancelled.
+		 * The completion is still called, with the outcomes of the channels.
+		 */
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return abort(Outcome.CANCELLED, mayInterruptIfRunning);
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		@Override
+		public boolean isDone() {
+			return remaining.getCount() == 0;
+		}
+
+		@Override
+		public PublishResult get() throws InterruptedException, ExecutionException {
+			remaining.await();
+			return awaitResult();
+		}
+
+		@Override
+		public PublishResult get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			if (!remaining.await(timeout, unit)) {
+				throw new TimeoutException();
+			}
+			return awaitResult();
+		}
+
+		/**
+		 * The result is built by the thread completing the last channel, wait for it
+		 */
+		private synchronized PublishResult awaitResult() {
+			if (cancelled) {
+				throw new CancellationException("The publication was cancelled");
+			}
+
+			if (result == null) {
+				done();
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package com.lotaris.rox.client.j2ee.itf.publish;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Executors of the work done in the background by the ROX integration: the publication
+ * of the payloads, the recovery of the journals, the syncs of the journals and the
+ * timeouts of the publications.
+ *
+ * The application server should give its managed executors with {@link #setExecutors(ExecutorService, ScheduledExecutorService)}
+ * when the application starts. Otherwise the executors are created on first use, and
+ * {@link #shutdown()} must be called when the application is undeployed so their threads
+ * do not keep the class loader of the application. The executors given by the application
+ * server are never shut down by the ROX integration.
+ */
+public final class BackgroundExecutors {
+	private static ExecutorService publishExecutor;
+	private static ScheduledExecutorService scheduler;
+
+	/**
+	 * True if the executors were created by the ROX integration, which must shut them down
+	 */
+	private static boolean ownPublishExecutor;
+	private static boolean ownScheduler;
+
+	private BackgroundExecutors() {}
+
+	/**
+	 * Use the executors managed by the application server
+	 *
+	 * @param publishExecutor The executor of the publications and of the recovery of the journals
+	 * @param scheduler The executor of the syncs of the journals and of the timeouts of the publications
+	 */
+	public static synchronized void setExecutors(ExecutorService publishExecutor, ScheduledExecutorService scheduler) {
+		shutdown();
+
+		BackgroundExecutors.publishExecutor = publishExecutor;
+		BackgroundExecutors.scheduler = scheduler;
+	}
+
+	/**
+	 * @param threads The number of threads of the executor, when it is created
+	 * @return The executor of the publications and of the recovery of the journals
+	 */
+	public static synchronized ExecutorService getPublishExecutor(int threads) {
+		if (publishExecutor == null) {
+			publishExecutor = Executors.newFixedThreadPool(threads, AsyncPayloadPublisher.daemonThreadFactory("rox-publisher"));
+			ownPublishExecutor = true;
+		}
+		return publishExecutor;
+	}
+
+	/**
+	 * @return The executor of the syncs of the journals and of the timeouts of the publications
+	 */
+	public static synchronized ScheduledExecutorService getScheduler() {
+		if (scheduler == null) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(AsyncPayloadPublisher.daemonThreadFactory("rox-scheduler"));
+			ownScheduler = true;
+		}
+		return scheduler;
+	}
+
+	/**
+	 * Shut the executors created by the ROX integration down, the publications in progress
+	 * being interrupted. The executors are created again if they are used afterwards.
+	 */
+	public static synchronized void shutdown() {
+		if (ownPublishExecutor) {
+			publishExecutor.shutdownNow();
+		}
+
+		if (ownScheduler) {
+			scheduler.shutdownNow();
+		}
+
+		publishExecutor = null;
+		scheduler = null;
+		ownPublishExecutor = false;
+		ownScheduler = false;
+	}
+}
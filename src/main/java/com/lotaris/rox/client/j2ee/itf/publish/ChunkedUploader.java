@@ -0,0 +1,279 @@
+package com.lotaris.rox.client.j2ee.itf.publish;
+
+import com.lotaris.rox.client.j2ee.itf.config.RunConfiguration;
+import com.lotaris.rox.client.j2ee.itf.metrics.RoxMetrics;
+import com.lotaris.rox.common.config.ServerConfiguration;
+import com.lotaris.rox.common.model.v1.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Upload of a test run to ROX in several payloads sharing the test run uid, so ROX
+ * Center assembles them into one test run. A payload is bounded in size and in number
+ * of tests to stay below the request limits of the proxies between the application
+ * server and ROX.
+ *
+ * The payloads are built one by one from the tests while the previous ones are sent
+ * on a bounded number of connections, and at most two payloads per connection are kept
+ * in memory. A payload which fails is sent again on its own, the others are not affected.
+ * A payload rejected by ROX as invalid (4xx except 408 and 429) is not sent again.
+ *
+ * The size bound counts the UTF-8 bytes of the whole payload, the test run uid, the
+ * project and the other fields around the tests included.
+ */
+public class ChunkedUploader {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ChunkedUploader.class);
+
+	/**
+	 * HTTP status of the rejections which may succeed when the payload is sent again,
+	 * the other client errors fail the same way on every retry
+	 */
+	private static final int REQUEST_TIMEOUT = 408;
+	private static final int TOO_MANY_REQUESTS = 429;
+
+	private final RunConfiguration configuration;
+	private final boolean gzip;
+	private final int maxChunkBytes;
+	private final int maxChunkTests;
+	private final int connections;
+	private final int retries;
+	private final long retryDelay;
+
+	/**
+	 * Payload resource, discovered once per upload
+	 */
+	private URL payloadUrl;
+
+	/**
+	 * Constructor
+	 *
+	 * @param configuration The configuration of the run, which gives the project and the ROX server
+	 * @param gzip True to compress the payloads
+	 * @param maxChunkBytes The maximum size of the JSON of a payload in UTF-8, in bytes
+	 * @param maxChunkTests The maximum number of tests of a payload
+	 * @param connections The maximum number of payloads sent at the same time
+	 * @param retries The number of times a payload is sent again when it fails
+	 * @param retryDelay The time to wait before the first retry, doubled for each next one, in milliseconds
+	 */
+	public ChunkedUploader(RunConfiguration configuration, boolean gzip, int maxChunkBytes, int maxChunkTests, int connections, int retries, long retryDelay) {
+		this.configuration = configuration;
+		this.gzip = gzip;
+		this.maxChunkBytes = Math.max(1, maxChunkBytes);
+		this.maxChunkTests = Math.max(1, maxChunkTests);
+		this.connections = Math.max(1, connections);
+		this.retries = Math.max(0, retries);
+		this.retryDelay = retryDelay;
+	}
+
+	/**
+	 * Upload the tests of a run in payloads bounded in size
+	 *
+	 * @param uid The test run uid shared by the payloads
+	 * @param duration The duration of the test run
+	 * @param tests The tests of the run, iterated once
+	 * @return True if all the payloads were accepted by ROX
+	 */
+	public boolean upload(String uid, long duration, Iterable<Test> tests) {
+		return upload(uid, duration, tests, null);
+	}
+
+	/**
+	 * Upload the tests of a run in payloads bounded in size, the tests with unchanged
+	 * metadata in their compact form
+	 *
+	 * @param uid The test run uid shared by the payloads
+	 * @param duration The duration of the test run
+	 * @param tests The tests of the run, iterated once
+	 * @param fingerprints The fingerprints of the metadata last published, null to upload the full tests
+	 * @return True if all the payloads were accepted by ROX
+	 */
+	public boolean upload(String uid, long duration, Iterable<Test> tests, MetadataFingerprints fingerprints) {
+		PayloadWriter writer = new PayloadWriter(configuration.getProjectApiId(), configuration.getProjectVersion(), configuration.getGroup());
+
+		ExecutorService executor = Executors.newFixedThreadPool(connections, AsyncPayloadPublisher.daemonThreadFactory("rox-chunk-upload"));
+		Semaphore inMemory = new Semaphore(connections * 2);
+		List<Future<Boolean>> chunks = new ArrayList<>();
+
+		synchronized (this) {
+			payloadUrl = null;
+		}
+
+		try {
+			// The fields around the tests are written in every payload
+			ByteArrayOutputStream envelope = new ByteArrayOutputStream();
+			writer.writeSerialized(envelope, uid, duration, new ArrayList<byte[]>());
+			long maxTestBytes = Math.max(1, maxChunkBytes - envelope.size());
+
+			List<byte[]> chunk = new ArrayList<>();
+			long chunkBytes = 0;
+
+			for (Test test : tests) {
+				byte[] json = writer.serialize(fingerprints != null ? fingerprints.compact(test) : test);
+
+				if (!chunk.isEmpty() && (chunkBytes + json.length > maxTestBytes || chunk.size() == maxChunkTests)) {
+					chunks.add(submit(executor, inMemory, writer, uid, duration, chunk, chunks.size() + 1));
+					chunk = new ArrayList<>();
+					chunkBytes = 0;
+				}
+
+				chunk.add(json);
+				// The test and the comma separating it from the next one
+				chunkBytes += json.length + 1;
+			}
+
+			if (!chunk.isEmpty()) {
+				chunks.add(submit(executor, inMemory, writer, uid, duration, chunk, chunks.size() + 1));
+			}
+		}
+		catch (IOException ioe) {
+			LOGGER.warn("Unable to write the payloads of the test run {}", uid, ioe);
+			chunks.add(null);
+		}
+		finally {
+			executor.shutdown();
+		}
+
+		return awaitChunks(uid, chunks);
+	}
+
+	/**
+	 * Write the payload of a chunk and send it in the background, waiting when there are
+	 * already enough payloads in memory
+	 */
+	private Future<Boolean> submit(ExecutorService executor, final Semaphore inMemory, PayloadWriter writer, String uid, long duration, List<byte[]> chunk, final int index) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writer.writeSerialized(out, uid, duration, chunk);
+		final byte[] payload = out.toByteArray();
+
+		RoxMetrics.getInstance().recordPayload(payload.length);
+
+		inMemory.acquireUninterruptibly();
+
+		return executor.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				try {
+					return sendWithRetries(payload, index);
+				}
+				finally {
+					inMemory.release();
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return True if all the chunks were accepted
+	 */
+	private boolean awaitChunks(String uid, List<Future<Boolean>> chunks) {
+		int failed = 0;
+
+		for (Future<Boolean> chunk : chunks) {
+			try {
+				if (chunk == null || !chunk.get()) {
+					failed++;
+				}
+			}
+			catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				failed++;
+			}
+			catch (ExecutionException ee) {
+				LOGGER.warn("Unable to send a payload of the test run {}", uid, ee.getCause());
+				failed++;
+			}
+		}
+
+		if (failed > 0) {
+			LOGGER.warn("{} of the {} payloads of the test run {} were not accepted by ROX", failed, chunks.size(), uid);
+		}
+		else {
+			LOGGER.info("The test run {} was sent to ROX in {} payloads", uid, chunks.size());
+		}
+
+		return failed == 0;
+	}
+
+	private boolean sendWithRetries(byte[] payload, int index) {
+		for (int attempt = 0; attempt <= retries; attempt++) {
+			if (attempt > 0) {
+				LOGGER.info("Sending the payload {} again, retry {} of {}", index, attempt, retries);
+
+				try {
+					Thread.sleep(retryDelay << (attempt - 1));
+				}
+				catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+
+			try {
+				int code = send(payload);
+
+				if (code == PayloadUpload.ACCEPTED) {
+					return true;
+				}
+				else if (!isRetryable(code)) {
+					LOGGER.warn("The payload {} was rejected by ROX with the status {}, it is not sent again", index, code);
+					return false;
+				}
+			}
+			catch (IOException ioe) {
+				LOGGER.warn("Unable to send the payload {} to ROX", index, ioe);
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @param code The HTTP status of a payload not accepted
+	 * @return True if sending the payload again may succeed
+	 */
+	private static boolean isRetryable(int code) {
+		return code < 400 || code >= 500 || code == REQUEST_TIMEOUT || code == TOO_MANY_REQUESTS;
+	}
+
+	/**
+	 * Send a payload to ROX
+	 *
+	 * @param payload The JSON of the payload
+	 * @return The HTTP status of the answer of ROX, 202 when the payload was accepted
+	 * @throws IOException When ROX cannot be reached
+	 */
+	protected int send(byte[] payload) throws IOException {
+		ServerConfiguration server = configuration.getServerConfiguration();
+		PayloadUpload upload = new PayloadUpload(server, gzip, getPayloadUrl(server));
+
+		try {
+			try (OutputStream body = upload.start()) {
+				body.write(payload);
+			}
+			return upload.getResponseCode();
+		}
+		catch (IOException ioe) {
+			upload.abort();
+			throw ioe;
+		}
+	}
+
+	private synchronized URL getPayloadUrl(ServerConfiguration server) throws IOException {
+		if (payloadUrl == null) {
+			payloadUrl = new PayloadUpload(server, gzip, null).getPayloadResourceUrl();
+		}
+		return payloadUrl;
+	}
+}
@@ -0,0 +1,35 @@
+package com.lotaris.rox.client.j2ee.itf.publish;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream counting the bytes written through it
+ */
+class CountingOutputStream extends FilterOutputStream {
+	private long count;
+
+	CountingOutputStream(OutputStream out) {
+		super(out);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		count++;
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		out.write(bytes, offset, length);
+		count += length;
+	}
+
+	/**
+	 * @return The number of bytes written
+	 */
+	long getCount() {
+		return count;
+	}
+}
@@ -0,0 +1,148 @@
+package com.lotaris.rox.client.j2ee.itf.publish;
+
+import com.lotaris.rox.client.j2ee.itf.config.RunConfiguration;
+import com.lotaris.rox.common.model.v1.Test;
+import com.lotaris.rox.common.utils.FootprintGenerator;
+import com.lotaris.rox.commons.optimize.OptimizerStore;
+import com.lotaris.rox.core.cache.CacheOptimizerStore;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fingerprints of the metadata of the tests (name, category, flags, tags, tickets and
+ * data) last published to ROX, kept per test key in the optimizer store of the ROX
+ * client. A test whose fingerprint did not change since the last successful publication
+ * is sent in the compact form understood by ROX Center: key, duration, outcome and
+ * message only.
+ *
+ * The fingerprints are the ones of the payload optimizer of the ROX client, so the
+ * cache is shared with the payloads sent by the ROX connector. They are persisted only
+ * when the payload is accepted, a payload which fails leaves the cache unchanged.
+ */
+public class MetadataFingerprints {
+	private static final Logger LOGGER = LoggerFactory.getLogger(MetadataFingerprints.class);
+
+	private final OptimizerStore store;
+	private final String projectApiId;
+	private final String projectVersion;
+
+	private int compacted;
+
+	/**
+	 * Constructor
+	 *
+	 * @param store The store of the fingerprints, already started
+	 * @param projectApiId The API identifier of the project
+	 * @param projectVersion The version of the project
+	 */
+	MetadataFingerprints(OptimizerStore store, String projectApiId, String projectVersion) {
+		this.store = store;
+		this.projectApiId = projectApiId;
+		this.projectVersion = projectVersion;
+	}
+
+	/**
+	 * Load the fingerprints of the project, when the payload cache of the ROX client is enabled
+	 *
+	 * @param configuration The configuration of the run
+	 * @return The fingerprints, null when the payload cache is disabled or its store cannot be created
+	 */
+	public static MetadataFingerprints start(RunConfiguration configuration) {
+		if (!configuration.isPayloadCache()) {
+			return null;
+		}
+
+		OptimizerStore store;
+		String storeClass = configuration.getOptimizerStoreClass();
+
+		if (storeClass == null) {
+			store = new CacheOptimizerStore();
+		}
+		else {
+			try {
+				store = (OptimizerStore) Class.forName(storeClass).newInstance();
+			}
+			catch (ClassNotFoundException | InstantiationException | IllegalAccessException | ClassCastException e) {
+				LOGGER.warn("Unable to create the optimizer store {}, the payload will be sent without optimizations", storeClass, e);
+				return null;
+			}
+		}
+
+		store.start(configuration.getConfiguration());
+
+		return new MetadataFingerprints(store, configuration.getProjectApiId(), configuration.getProjectVersion());
+	}
+
+	/**
+	 * Record the fingerprint of a test and give the form to send to ROX
+	 *
+	 * @param test The test to send
+	 * @return The test itself when its metadata changed, its compact form otherwise
+	 */
+	public Test compact(Test test) {
+		String footprint = footprint(test);
+		boolean changed = store.testHasChanged(projectApiId, projectVersion, test.getKey(), footprint);
+		store.storeTestFootprint(projectApiId, projectVersion, test.getKey(), footprint);
+
+		if (changed) {
+			return test;
+		}
+
+		compacted++;
+
+		Test compact = new Test();
+		compact.setKey(test.getKey());
+		compact.setDuration(test.getDuration());
+		compact.setPassed(test.isPassed());
+		compact.setMessage(test.getMessage());
+		return compact;
+	}
+
+	/**
+	 * Persist the fingerprints once the payload is published
+	 *
+	 * @param published True if the payload was accepted by ROX, the fingerprints are discarded otherwise
+	 */
+	public void stop(boolean published) {
+		if (compacted > 0) {
+			LOGGER.info("{} tests were sent without their unchanged metadata", compacted);
+		}
+
+		store.stop(published);
+	}
+
+	/**
+	 * Same fingerprint as the payload optimizer of the ROX client
+	 *
+	 * @param test The test
+	 * @return The fingerprint of the metadata of the test
+	 */
+	static String footprint(Test test) {
+		StringBuilder metadata = new StringBuilder()
+			.append(test.getCategory())
+			.append(test.getName())
+			.append(test.getFlags());
+
+		// Missing collections have the same fingerprint as empty ones
+		if (test.getTags() != null) {
+			for (String tag : test.getTags()) {
+				metadata.append(tag);
+			}
+		}
+
+		if (test.getTickets() != null) {
+			for (String ticket : test.getTickets()) {
+				metadata.append(ticket);
+			}
+		}
+
+		if (test.getData() != null) {
+			for (Map.Entry<String, String> data : test.getData().entrySet()) {
+				metadata.append(data.getKey()).append(data.getValue());
+			}
+		}
+
+		return FootprintGenerator.footprint(metadata.toString());
+	}
+}
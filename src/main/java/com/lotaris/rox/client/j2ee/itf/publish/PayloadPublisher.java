@@ -0,0 +1,370 @@
+package com.lotaris.rox.client.j2ee.itf.publish;
+
+import com.lotaris.rox.client.j2ee.itf.config.RunConfiguration;
+import com.lotaris.rox.client.j2ee.itf.metrics.RoxMetrics;
+import com.lotaris.rox.client.j2ee.itf.publish.PublishResult.Outcome;
+import com.lotaris.rox.common.model.v1.ModelFactory;
+import com.lotaris.rox.common.model.v1.Payload;
+import com.lotaris.rox.common.model.v1.Test;
+import com.lotaris.rox.core.connector.Connector;
+import com.lotaris.rox.core.storage.FileStore;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.UUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Build the test payloads and save or send them to ROX depending on the configuration
+ */
+public class PayloadPublisher {
+	private static final Logger LOGGER = LoggerFactory.getLogger(PayloadPublisher.class);
+
+	/**
+	 * Configuration of the run the payloads are published for
+	 */
+	private final RunConfiguration configuration;
+
+	/**
+	 * Upload of the payloads in several chunks, null to send them in one request
+	 */
+	private final ChunkedUploader uploader;
+
+	public PayloadPublisher(RunConfiguration configuration) {
+		this(configuration, null);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param configuration The configuration of the run, which tells where and how the payloads are published
+	 * @param uploader The upload of the payloads in chunks, null to send each payload in one request
+	 */
+	public PayloadPublisher(RunConfiguration configuration, ChunkedUploader uploader) {
+		this.configuration = configuration;
+		this.uploader = uploader;
+	}
+
+	/**
+	 * @return True if the payloads must be saved or published
+	 */
+	public boolean isEnabled() {
+		return configuration.isPublish() || configuration.isSave();
+	}
+
+	/**
+	 * Create a payload for the project configured
+	 *
+	 * @param uid The test run uid
+	 * @param endDate The end date of the test run
+	 * @param duration The duration of the test run
+	 * @param tests The tests to put in the payload
+	 * @return The payload created
+	 */
+	public Payload createPayload(String uid, Long endDate, long duration, List<Test> tests) {
+		long start = System.nanoTime();
+
+		Payload payload = ModelFactory.createPayload(
+			ModelFactory.createTestRun(
+				configuration.getProjectApiId(),
+				configuration.getProjectVersion(),
+				endDate,
+				duration,
+				configuration.getGroup(),
+				uid,
+				tests));
+
+		RoxMetrics.getInstance().getPayloadBuildTimer().record(System.nanoTime() - start);
+
+		return payload;
+	}
+
+	/**
+	 * The payload model is still required to print the payload. The payloads uploaded in
+	 * chunks are always written from the tests.
+	 *
+	 * @return True if the payloads are written from the tests without building the payload model
+	 */
+	public boolean isStreaming() {
+		return (configuration.isPayloadStreaming() || uploader != null) && !configuration.isPayloadPrint();
+	}
+
+	/**
+	 * Save and/or send the payload of a test run to ROX, in a single pass when possible
+	 *
+	 * @param uid The test run uid
+	 * @param endDate The end date of the test run
+	 * @param duration The duration of the test run
+	 * @param tests The tests to put in the payload
+	 * @return The outcome of the save and the send
+	 */
+	public PublishResult publish(String uid, Long endDate, long duration, List<Test> tests) {
+		if (isStreaming()) {
+			return stream(uid, duration, tests);
+		}
+		else {
+			return publish(createPayload(uid, endDate, duration, tests));
+		}
+	}
+
+	/**
+	 * Write the payload of a test run once, to the local file and to ROX at the same
+	 * time. A failure of one of them does not stop the other. When the payloads are
+	 * uploaded in chunks, or when the payload cache is enabled and the tests with unchanged
+	 * metadata are sent in their compact form, the tests are iterated once more to send
+	 * them after the save, the local file keeping the full tests.
+	 *
+	 * @param uid The test run uid
+	 * @param duration The duration of the test run
+	 * @param tests The tests to put in the payload
+	 * @return The outcome of the save and the send
+	 */
+	public PublishResult stream(String uid, long duration, Iterable<Test> tests) {
+		long start = System.currentTimeMillis();
+
+		MetadataFingerprints fingerprints = isPublish() ? MetadataFingerprints.start(configuration) : null;
+
+		OutputStream file = null;
+		if (isSave()) {
+			try {
+				file = new BufferedOutputStream(new FileOutputStream(createSaveFile()));
+			}
+			catch (IOException ioe) {
+				LOGGER.warn("Unable to save the payload", ioe);
+			}
+		}
+
+		PayloadUpload upload = null;
+		OutputStream body = null;
+		if (isPublish() && uploader == null && fingerprints == null) {
+			upload = new PayloadUpload(configuration);
+			try {
+				body = upload.start();
+			}
+			catch (IOException ioe) {
+				LOGGER.warn("Unable to send the payload to ROX", ioe);
+				upload.abort();
+			}
+		}
+
+		TeeOutputStream out = new TeeOutputStream(file, body);
+
+		if (file != null || body != null) {
+			CountingOutputStream counter = new CountingOutputStream(out);
+			try {
+				new PayloadWriter(configuration.getProjectApiId(), configuration.getProjectVersion(), configuration.getGroup()).write(counter, uid, duration, tests);
+				RoxMetrics.getInstance().recordPayload(counter.getCount());
+			}
+			catch (IOException ioe) {
+				LOGGER.warn("Unable to write the payload", ioe);
+			}
+			finally {
+				out.close();
+			}
+		}
+
+		Outcome saveOutcome = Outcome.SKIPPED;
+		if (isSave()) {
+			if (file != null && out.getFailure(0) == null) {
+				saveOutcome = Outcome.SUCCEEDED;
+			}
+			else {
+				if (file != null) {
+					LOGGER.warn("Unable to save the payload", out.getFailure(0));
+				}
+				saveOutcome = Outcome.FAILED;
+			}
+		}
+
+		Outcome sendOutcome = Outcome.SKIPPED;
+		if (upload != null) {
+			if (body != null && out.getFailure(1) == null) {
+				sendOutcome = isAccepted(upload) ? Outcome.SUCCEEDED : Outcome.FAILED;
+			}
+			else {
+				if (body != null) {
+					LOGGER.warn("Unable to send the payload to ROX", out.getFailure(1));
+					upload.abort();
+				}
+				sendOutcome = Outcome.FAILED;
+			}
+		}
+
+		long saveTime = System.currentTimeMillis() - start;
+
+		// The save and the send are done in the same pass, they take the same time
+		long sendTime = saveTime;
+
+		if (isPublish() && uploader != null) {
+			long uploadStart = System.currentTimeMillis();
+			sendOutcome = uploader.upload(uid, duration, tests, fingerprints) ? Outcome.SUCCEEDED : Outcome.FAILED;
+			sendTime = System.currentTimeMillis() - uploadStart;
+		}
+		else if (fingerprints != null) {
+			long uploadStart = System.currentTimeMillis();
+			sendOutcome = send(uid, duration, tests, fingerprints) ? Outcome.SUCCEEDED : Outcome.FAILED;
+			sendTime = System.currentTimeMillis() - uploadStart;
+		}
+
+		if (fingerprints != null) {
+			fingerprints.stop(sendOutcome == Outcome.SUCCEEDED);
+		}
+
+		if (saveOutcome != Outcome.SKIPPED) {
+			RoxMetrics.getInstance().getSaveTimer().record(saveTime * 1000000L, saveOutcome == Outcome.SUCCEEDED);
+		}
+		if (sendOutcome != Outcome.SKIPPED) {
+			RoxMetrics.getInstance().getSendTimer().record(sendTime * 1000000L, sendOutcome == Outcome.SUCCEEDED);
+		}
+
+		return new PublishResult(saveOutcome, saveTime, sendOutcome, sendTime, System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * @return The file where the payload is saved, where the ROX file store would save it
+	 */
+	private File createSaveFile() throws IOException {
+		File directory = new File(configuration.getWorkspace() + "/tmp/" + new Payload().getVersion());
+
+		if (!directory.exists() && !directory.mkdirs()) {
+			throw new IOException("Unable to create the directory " + directory);
+		}
+
+		return new File(directory, UUID.randomUUID().toString());
+	}
+
+	/**
+	 * Send the payload of a test run to ROX in one request, the tests with unchanged
+	 * metadata in their compact form
+	 *
+	 * @return True if the payload was accepted
+	 */
+	private boolean send(String uid, long duration, Iterable<Test> tests, MetadataFingerprints fingerprints) {
+		PayloadUpload upload = new PayloadUpload(configuration);
+
+		try {
+			CountingOutputStream body = new CountingOutputStream(upload.start());
+			try {
+				new PayloadWriter(configuration.getProjectApiId(), configuration.getProjectVersion(), configuration.getGroup()).write(body, uid, duration, tests, fingerprints);
+			}
+			finally {
+				body.close();
+			}
+			RoxMetrics.getInstance().recordPayload(body.getCount());
+		}
+		catch (IOException ioe) {
+			LOGGER.warn("Unable to send the payload to ROX", ioe);
+			upload.abort();
+			return false;
+		}
+
+		return isAccepted(upload);
+	}
+
+	private boolean isAccepted(PayloadUpload upload) {
+		try {
+			return upload.complete();
+		}
+		catch (IOException ioe) {
+			LOGGER.warn("Unable to send the payload to ROX", ioe);
+			upload.abort();
+			return false;
+		}
+	}
+
+	/**
+	 * Save and/or send the payload to ROX. A failure of the save does not stop the send.
+	 *
+	 * @param payload The payload to publish
+	 * @return The outcome of the save and the send
+	 */
+	public PublishResult publish(Payload payload) {
+		long start = System.currentTimeMillis();
+
+		Outcome saveOutcome = Outcome.SKIPPED;
+		if (isSave()) {
+			try {
+				save(payload);
+				saveOutcome = Outcome.SUCCEEDED;
+			}
+			catch (IOException ioe) {
+				LOGGER.warn("Unable to save the payload", ioe);
+				saveOutcome = Outcome.FAILED;
+			}
+		}
+
+		long sendStart = System.currentTimeMillis();
+
+		Outcome sendOutcome = Outcome.SKIPPED;
+		if (isPublish()) {
+			try {
+				sendOutcome = send(payload) ? Outcome.SUCCEEDED : Outcome.FAILED;
+			}
+			catch (IOException ioe) {
+				LOGGER.warn("Unable to send the payload to ROX", ioe);
+				sendOutcome = Outcome.FAILED;
+			}
+		}
+
+		long end = System.currentTimeMillis();
+
+		return new PublishResult(saveOutcome, sendStart - start, sendOutcome, end - sendStart, end - start);
+	}
+
+	/**
+	 * @return True if the payloads must be saved locally
+	 */
+	public boolean isSave() {
+		return configuration.isSave();
+	}
+
+	/**
+	 * @return True if the payloads must be sent to ROX
+	 */
+	public boolean isPublish() {
+		return configuration.isPublish();
+	}
+
+	/**
+	 * Save the payload locally
+	 *
+	 * @param payload The payload to save
+	 * @throws IOException When the payload cannot be saved
+	 */
+	public void save(Payload payload) throws IOException {
+		long start = System.nanoTime();
+		boolean saved = false;
+
+		try {
+			new FileStore(configuration.getConfiguration()).save(payload);
+			saved = true;
+		}
+		finally {
+			RoxMetrics.getInstance().getSaveTimer().record(System.nanoTime() - start, saved);
+		}
+	}
+
+	/**
+	 * Send the payload to ROX
+	 *
+	 * @param payload The payload to send
+	 * @return True if the payload was accepted by ROX
+	 * @throws IOException When the ROX URL is not valid
+	 */
+	public boolean send(Payload payload) throws IOException {
+		long start = System.nanoTime();
+		boolean sent = false;
+
+		try {
+			sent = new Connector(configuration.getConfiguration()).send(payload);
+			return sent;
+		}
+		finally {
+			RoxMetrics.getInstance().getSendTimer().record(System.nanoTime() - start, sent);
+		}
+	}
+}
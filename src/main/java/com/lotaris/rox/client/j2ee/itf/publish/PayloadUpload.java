@@ -0,0 +1,188 @@
+package com.lotaris.rox.client.j2ee.itf.publish;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lotaris.rox.client.j2ee.itf.config.RunConfiguration;
+import com.lotaris.rox.common.config.ServerConfiguration;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URL;
+import java.util.Scanner;
+import java.util.zip.GZIPOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Upload of a payload to ROX with its body streamed while it is written. The payload
+ * resource is discovered from the API root like the ROX connector does, and the body
+ * is sent in chunks, compressed with gzip if required.
+ */
+class PayloadUpload {
+	private static final Logger LOGGER = LoggerFactory.getLogger(PayloadUpload.class);
+
+	private static final String API_ROOT_MEDIA_TYPE = "application/hal+json";
+	private static final String API_TEST_PAYLOAD_MEDIA_TYPE = "application/vnd.lotaris.rox.payload.v1+json";
+	private static final String API_ROOT_TEST_PAYLOAD_LINK = "v1:test-payloads";
+
+	/**
+	 * HTTP status of a payload accepted by ROX
+	 */
+	static final int ACCEPTED = 202;
+
+	private static final int CONNECTION_TIMEOUT = 10000;
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private final ServerConfiguration server;
+	private final boolean gzip;
+
+	/**
+	 * Payload resource already discovered, null to discover it when the upload starts
+	 */
+	private final URL payloadUrl;
+
+	private HttpURLConnection connection;
+	private OutputStream body;
+
+	/**
+	 * Constructor
+	 *
+	 * @param configuration The configuration of the run, which gives the ROX server and the compression
+	 */
+	PayloadUpload(RunConfiguration configuration) {
+		this(configuration.getServerConfiguration(), configuration.isPayloadGzip(), null);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param server The ROX server
+	 * @param gzip True to compress the body with gzip
+	 * @param payloadUrl The URL of the payload resource, null to discover it from the API root
+	 */
+	PayloadUpload(ServerConfiguration server, boolean gzip, URL payloadUrl) {
+		this.server = server;
+		this.gzip = gzip;
+		this.payloadUrl = payloadUrl;
+	}
+
+	/**
+	 * Connect to ROX and start the upload
+	 *
+	 * @return The stream where the JSON of the payload must be written, closed by the caller
+	 * @throws IOException When ROX cannot be reached
+	 */
+	OutputStream start() throws IOException {
+		URL url = payloadUrl != null ? payloadUrl : getPayloadResourceUrl();
+
+		connection = openConnection(url);
+		connection.setRequestMethod("POST");
+		connection.setRequestProperty("Content-Type", API_TEST_PAYLOAD_MEDIA_TYPE + "; charset=UTF-8");
+		if (gzip) {
+			connection.setRequestProperty("Content-Encoding", "gzip");
+		}
+		server.configureAuthentication(connection);
+		connection.setConnectTimeout(CONNECTION_TIMEOUT);
+		connection.setChunkedStreamingMode(CHUNK_SIZE);
+		connection.setDoOutput(true);
+		connection.setDoInput(true);
+
+		OutputStream out = connection.getOutputStream();
+		body = gzip ? new GZIPOutputStream(out, CHUNK_SIZE) : new BufferedOutputStream(out, CHUNK_SIZE);
+
+		return body;
+	}
+
+	/**
+	 * Wait for the answer of ROX once the body is written and closed
+	 *
+	 * @return True if the payload was accepted
+	 * @throws IOException When the answer cannot be read
+	 */
+	boolean complete() throws IOException {
+		return getResponseCode() == ACCEPTED;
+	}
+
+	/**
+	 * Wait for the answer of ROX once the body is written and closed
+	 *
+	 * @return The HTTP status code of the answer, 202 when the payload was accepted
+	 * @throws IOException When the answer cannot be read
+	 */
+	int getResponseCode() throws IOException {
+		int code = connection.getResponseCode();
+
+		if (code == ACCEPTED) {
+			LOGGER.info("The payload was successfully sent to ROX Center.");
+		}
+		else {
+			LOGGER.error("Unable to send the payload to ROX. Return code: {}, content: {}", code, read(connection.getErrorStream()));
+		}
+
+		return code;
+	}
+
+	/**
+	 * Release the connection when the upload is abandoned
+	 */
+	void abort() {
+		if (connection != null) {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * @return The URL of the payload resource, discovered from the API root
+	 * @throws IOException When ROX cannot be reached
+	 */
+	URL getPayloadResourceUrl() throws IOException {
+		URL apiUrl = new URL(server.getApiUrl());
+
+		HttpURLConnection root = openConnection(apiUrl);
+		root.setRequestMethod("GET");
+		root.setRequestProperty("Accept", API_ROOT_MEDIA_TYPE + "; charset=UTF-8");
+		server.configureAuthentication(root);
+		root.setConnectTimeout(CONNECTION_TIMEOUT);
+		root.setDoInput(true);
+
+		if (root.getResponseCode() == 401) {
+			throw new IOException("Authentication to ROX Center failed with API key " + server.getApiKeyId());
+		}
+
+		LOGGER.info("Connected to ROX Center API at {}", server.getApiUrl());
+
+		try (InputStream in = root.getInputStream()) {
+			JsonNode href = new ObjectMapper().readTree(in).path("_links").path(API_ROOT_TEST_PAYLOAD_LINK).path("href");
+
+			if (href.isMissingNode()) {
+				throw new IOException("Expected HAL+JSON API root to have a " + API_ROOT_TEST_PAYLOAD_LINK + " link");
+			}
+
+			return new URL(href.textValue());
+		}
+	}
+
+	private HttpURLConnection openConnection(URL url) throws IOException {
+		if (server.hasProxyConfiguration()) {
+			return (HttpURLConnection) url.openConnection(new Proxy(Proxy.Type.HTTP,
+				new InetSocketAddress(server.getProxyConfiguration().getHost(), server.getProxyConfiguration().getPort())));
+		}
+		else {
+			return (HttpURLConnection) url.openConnection();
+		}
+	}
+
+	private static String read(InputStream in) {
+		if (in == null) {
+			return "";
+		}
+
+		try (Scanner scanner = new Scanner(in, "UTF-8")) {
+			return scanner.useDelimiter("\\A").hasNext() ? scanner.next() : "";
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package com.lotaris.rox.client.j2ee.itf.publish;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.lotaris.rox.common.model.v1.Test;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Write the JSON of a test payload incrementally, the tests being serialized one by
+ * one as they are read from their source. The JSON is the same as the one produced by
+ * the ROX serializer from the payload model, without building the model first.
+ */
+public class PayloadWriter {
+	/**
+	 * Property names of the test run and project results in the payload format v1
+	 */
+	private static final String TEST_RUN_GROUP = "g";
+	private static final String TEST_RUN_UID = "u";
+	private static final String TEST_RUN_DURATION = "d";
+	private static final String TEST_RUN_RESULTS = "r";
+	private static final String RESULTS_PROJECT = "j";
+	private static final String RESULTS_VERSION = "v";
+	private static final String RESULTS_TESTS = "t";
+
+	private final ObjectMapper mapper;
+
+	private final String projectApiId;
+	private final String projectVersion;
+	private final String group;
+
+	/**
+	 * Constructor
+	 *
+	 * @param projectApiId The API identifier of the project
+	 * @param projectVersion The version of the project
+	 * @param group The group of the test run, can be null
+	 */
+	public PayloadWriter(String projectApiId, String projectVersion, String group) {
+		this.projectApiId = projectApiId;
+		this.projectVersion = projectVersion;
+		this.group = group;
+
+		// Same configuration as the ROX serializer, the output stream is flushed and closed by the caller
+		mapper = new ObjectMapper();
+		mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+		mapper.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+		mapper.configure(SerializationFeature.FLUSH_AFTER_WRITE_VALUE, false);
+	}
+
+	/**
+	 * Write a payload
+	 *
+	 * @param out The output stream where the JSON is written in UTF-8
+	 * @param uid The test run uid
+	 * @param duration The duration of the test run
+	 * @param tests The tests of the payload, iterated once
+	 * @throws IOException When the payload cannot be written
+	 */
+	public void write(OutputStream out, String uid, long duration, Iterable<Test> tests) throws IOException {
+		write(out, uid, duration, tests, null);
+	}
+
+	/**
+	 * Write a payload, the tests with unchanged metadata in their compact form
+	 *
+	 * @param out The output stream where the JSON is written in UTF-8
+	 * @param uid The test run uid
+	 * @param duration The duration of the test run
+	 * @param tests The tests of the payload, iterated once
+	 * @param fingerprints The fingerprints of the metadata last published, null to write the full tests
+	 * @throws IOException When the payload cannot be written
+	 */
+	public void write(OutputStream out, String uid, long duration, Iterable<Test> tests, MetadataFingerprints fingerprints) throws IOException {
+		JsonGenerator generator = writeStart(out, uid, duration);
+
+		for (Test test : tests) {
+			mapper.writeValue(generator, fingerprints != null ? fingerprints.compact(test) : test);
+		}
+
+		writeEnd(generator);
+	}
+
+	/**
+	 * Write a payload from tests already serialized with {@link #serialize(com.lotaris.rox.common.model.v1.Test)}
+	 *
+	 * @param out The output stream where the JSON is written in UTF-8
+	 * @param uid The test run uid
+	 * @param duration The duration of the test run
+	 * @param tests The JSON of the tests of the payload, encoded in UTF-8
+	 * @throws IOException When the payload cannot be written
+	 */
+	public void writeSerialized(OutputStream out, String uid, long duration, Iterable<byte[]> tests) throws IOException {
+		JsonGenerator generator = writeStart(out, uid, duration);
+
+		// The tests are copied as they are after the start of the tests array, the generator only closes it
+		generator.flush();
+
+		boolean first = true;
+		for (byte[] test : tests) {
+			if (!first) {
+				out.write(',');
+			}
+			out.write(test);
+			first = false;
+		}
+
+		writeEnd(generator);
+	}
+
+	/**
+	 * @param test The test to serialize
+	 * @return The JSON of the test encoded in UTF-8, as written in the payloads
+	 * @throws IOException When the test cannot be serialized
+	 */
+	public byte[] serialize(Test test) throws IOException {
+		return mapper.writeValueAsBytes(test);
+	}
+
+	/**
+	 * Write the test run and project results up to the start of the tests array
+	 */
+	private JsonGenerator writeStart(OutputStream out, String uid, long duration) throws IOException {
+		JsonGenerator generator = mapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+
+		generator.writeStartObject();
+
+		if (group != null) {
+			generator.writeStringField(TEST_RUN_GROUP, group);
+		}
+
+		if (uid != null) {
+			generator.writeStringField(TEST_RUN_UID, uid);
+		}
+
+		generator.writeNumberField(TEST_RUN_DURATION, duration);
+
+		generator.writeArrayFieldStart(TEST_RUN_RESULTS);
+		generator.writeStartObject();
+
+		if (projectApiId != null) {
+			generator.writeStringField(RESULTS_PROJECT, projectApiId);
+		}
+
+		if (projectVersion != null) {
+			generator.writeStringField(RESULTS_VERSION, projectVersion);
+		}
+
+		generator.writeArrayFieldStart(RESULTS_TESTS);
+
+		return generator;
+	}
+
+	/**
+	 * Close the tests array, the project results and the test run
+	 */
+	private void writeEnd(JsonGenerator generator) throws IOException {
+		generator.writeEndArray();
+		generator.writeEndObject();
+		generator.writeEndArray();
+		generator.writeEndObject();
+
+		generator.close();
+	}
+}
@@ -0,0 +1,94 @@
+package com.lotaris.rox.client.j2ee.itf.publish;
+
+/**
+ * Outcome and timings of the publication of a payload
+ */
+public class PublishResult {
+	/**
+	 * Outcome of one publication channel
+	 */
+	public enum Outcome {
+		/**
+		 * The channel is disabled in the configuration
+		 */
+		SKIPPED,
+		SUCCEEDED,
+		FAILED,
+		/**
+		 * The channel did not complete within the timeout budget
+		 */
+		TIMED_OUT,
+		/**
+		 * The publication was cancelled before the channel completed
+		 */
+		CANCELLED
+	}
+
+	private final Outcome saveOutcome;
+	private final Outcome sendOutcome;
+	private final long saveDuration;
+	private final long sendDuration;
+	private final long duration;
+
+	/**
+	 * Constructor
+	 *
+	 * @param saveOutcome The outcome of the local save
+	 * @param saveDuration The time spent to save the payload, in milliseconds
+	 * @param sendOutcome The outcome of the send to ROX
+	 * @param sendDuration The time spent to send the payload, in milliseconds
+	 * @param duration The time between the submission and the completion of the publication, in milliseconds
+	 */
+	public PublishResult(Outcome saveOutcome, long saveDuration, Outcome sendOutcome, long sendDuration, long duration) {
+		this.saveOutcome = saveOutcome;
+		this.saveDuration = saveDuration;
+		this.sendOutcome = sendOutcome;
+		this.sendDuration = sendDuration;
+		this.duration = duration;
+	}
+
+	public Outcome getSaveOutcome() {
+		return saveOutcome;
+	}
+
+	public Outcome getSendOutcome() {
+		return sendOutcome;
+	}
+
+	public long getSaveDuration() {
+		return saveDuration;
+	}
+
+	public long getSendDuration() {
+		return sendDuration;
+	}
+
+	public long getDuration() {
+		return duration;
+	}
+
+	/**
+	 * @return True if no channel failed, timed out or was cancelled
+	 */
+	public boolean isSuccessful() {
+		return isSuccessful(saveOutcome) && isSuccessful(sendOutcome);
+	}
+
+	/**
+	 * The results of a run can be dropped, and its journal deleted, only once delivered
+	 *
+	 * @return True if the payload was sent to ROX, or saved locally when it is not sent
+	 */
+	public boolean isDelivered() {
+		return sendOutcome == Outcome.SUCCEEDED || sendOutcome == Outcome.SKIPPED && saveOutcome == Outcome.SUCCEEDED;
+	}
+
+	private static boolean isSuccessful(Outcome outcome) {
+		return outcome == Outcome.SKIPPED || outcome == Outcome.SUCCEEDED;
+	}
+
+	@Override
+	public String toString() {
+		return "save: " + saveOutcome + " (" + saveDuration + " ms), send: " + sendOutcome + " (" + sendDuration + " ms), total: " + duration + " ms";
+	}
+}
@@ -0,0 +1,223 @@
+package com.lotaris.rox.client.j2ee.itf.publish;
+
+import com.lotaris.rox.common.config.RoxRuntimeException;
+import com.lotaris.rox.common.model.v1.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publish the test results in partial payloads while the tests are running. The
+ * results are queued by the listener and a background thread sends them every
+ * N tests or T seconds, whatever comes first. All the partial payloads share the
+ * same test run uid so ROX Center assembles them into one test run.
+ *
+ * The queue is bounded: when the sender cannot keep up, the test thread waits
+ * until there is room again instead of keeping the results on the heap.
+ *
+ * The tests are numbered from 0 in the order they are queued, and the listener is told
+ * which ones were delivered after each partial payload, so they are not published again
+ * when the run is recovered from its journal.
+ */
+public class StreamingPublisher implements Runnable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(StreamingPublisher.class);
+
+	/**
+	 * Marker to stop the background thread once the queue is drained
+	 */
+	private static final Test END_OF_RUN = new Test();
+
+	private final PayloadPublisher publisher;
+	private final String uid;
+	private final long startDate;
+	private final int batchSize;
+	private final long flushInterval;
+
+	/**
+	 * Results waiting to be published
+	 */
+	private final BlockingQueue<Test> queue;
+
+	private Thread thread;
+
+	/**
+	 * Told about the partial payloads delivered, can be null
+	 */
+	private BatchListener listener;
+
+	/**
+	 * Number of tests published so far
+	 */
+	private volatile int published;
+
+	/**
+	 * Number of tests which could not be published
+	 */
+	private volatile int failed;
+
+	/**
+	 * Index of the first test of the current batch
+	 */
+	private int batchStart;
+
+	/**
+	 * Listener of the partial payloads delivered
+	 */
+	public interface BatchListener {
+		/**
+		 * Called by the background sender once a partial payload is delivered
+		 *
+		 * @param first The index of the first test of the payload, in the order they were queued
+		 * @param count The number of tests of the payload
+		 */
+		void published(int first, int count);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param publisher The publisher used to save and send the partial payloads
+	 * @param uid The test run uid shared by all the partial payloads
+	 * @param startDate The start date of the test run
+	 * @param batchSize The number of tests after which a partial payload is published
+	 * @param flushInterval The maximum time between two partial payloads, in milliseconds
+	 * @param queueSize The maximum number of results waiting to be published
+	 */
+	public StreamingPublisher(PayloadPublisher publisher, String uid, long startDate, int batchSize, long flushInterval, int queueSize) {
+		this.publisher = publisher;
+		this.uid = uid;
+		this.startDate = startDate;
+		this.batchSize = batchSize;
+		this.flushInterval = flushInterval;
+		this.queue = new ArrayBlockingQueue<>(queueSize);
+	}
+
+	/**
+	 * @param listener Told about the partial payloads delivered, set before the sender is started
+	 */
+	public void setListener(BatchListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Start the background sender
+	 */
+	public void start() {
+		thread = new Thread(this, "rox-stream-publisher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Queue a test result, waiting for room in the queue if necessary
+	 *
+	 * @param test The test to publish
+	 */
+	public void add(Test test) {
+		try {
+			queue.put(test);
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			LOGGER.warn("Interrupted while queuing the result of the test {}", test.getKey());
+		}
+	}
+
+	/**
+	 * Publish the remaining results and wait for the background sender to stop
+	 */
+	public void close() {
+		add(END_OF_RUN);
+
+		try {
+			thread.join();
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			LOGGER.warn("Interrupted while waiting for the last results to be published");
+		}
+	}
+
+	/**
+	 * @return The number of tests published so far
+	 */
+	public int getPublished() {
+		return published;
+	}
+
+	/**
+	 * @return True if all the tests queued so far were delivered, to be checked once closed
+	 */
+	public boolean isDelivered() {
+		return failed == 0 && queue.isEmpty() && thread != null && !thread.isAlive();
+	}
+
+	@Override
+	public void run() {
+		List<Test> batch = new ArrayList<>(batchSize);
+		long deadline = System.currentTimeMillis() + flushInterval;
+
+		try {
+			while (true) {
+				Test test = queue.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+
+				if (test == END_OF_RUN) {
+					flush(batch);
+					return;
+				}
+				else if (test != null) {
+					batch.add(test);
+				}
+
+				if (batch.size() >= batchSize || System.currentTimeMillis() >= deadline) {
+					flush(batch);
+					deadline = System.currentTimeMillis() + flushInterval;
+				}
+			}
+		}
+		catch (InterruptedException ie) {
+			failed += batch.size() + queue.size();
+			LOGGER.warn("The streaming publisher was interrupted, {} results were not published", batch.size() + queue.size());
+		}
+	}
+
+	/**
+	 * Publish a partial payload with the tests of the batch
+	 *
+	 * @param batch The tests to publish, cleared once published
+	 */
+	private void flush(List<Test> batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+
+		try {
+			long now = System.currentTimeMillis();
+			PublishResult result = publisher.publish(publisher.createPayload(uid, now, now - startDate, new ArrayList<>(batch)));
+
+			if (result != null && result.isDelivered()) {
+				published += batch.size();
+				LOGGER.debug("Partial payload with {} tests published ({} so far)", batch.size(), published);
+
+				if (listener != null) {
+					listener.published(batchStart, batch.size());
+				}
+			}
+			else {
+				failed += batch.size();
+				LOGGER.warn("Partial payload with {} tests not delivered, {}", batch.size(), result);
+			}
+		}
+		catch (RoxRuntimeException e) {
+			failed += batch.size();
+			LOGGER.warn("Could not publish or save partial test payload", e);
+		}
+
+		batchStart += batch.size();
+		batch.clear();
+	}
+}
@@ -0,0 +1,104 @@
+package com.lotaris.rox.client.j2ee.itf.publish;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream writing the same bytes to several branches. A branch which fails
+ * is left aside and the others keep receiving the bytes, the stream fails only
+ * when no branch is left.
+ */
+class TeeOutputStream extends OutputStream {
+	private final OutputStream[] branches;
+	private final IOException[] failures;
+
+	/**
+	 * @param branches The output streams, a null branch is ignored
+	 */
+	TeeOutputStream(OutputStream... branches) {
+		this.branches = branches;
+		this.failures = new IOException[branches.length];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		for (int i = 0; i < branches.length; i++) {
+			if (isActive(i)) {
+				try {
+					branches[i].write(bytes, offset, length);
+				}
+				catch (IOException ioe) {
+					failures[i] = ioe;
+				}
+			}
+		}
+		ensureActive();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		for (int i = 0; i < branches.length; i++) {
+			if (isActive(i)) {
+				try {
+					branches[i].flush();
+				}
+				catch (IOException ioe) {
+					failures[i] = ioe;
+				}
+			}
+		}
+		ensureActive();
+	}
+
+	/**
+	 * Close all the branches, even the failed ones
+	 */
+	@Override
+	public void close() {
+		for (int i = 0; i < branches.length; i++) {
+			if (branches[i] != null) {
+				try {
+					branches[i].close();
+				}
+				catch (IOException ioe) {
+					if (failures[i] == null) {
+						failures[i] = ioe;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param branch The index of the branch
+	 * @return The failure of the branch, null if it did not fail
+	 */
+	IOException getFailure(int branch) {
+		return failures[branch];
+	}
+
+	private boolean isActive(int branch) {
+		return branches[branch] != null && failures[branch] == null;
+	}
+
+	private void ensureActive() throws IOException {
+		for (int i = 0; i < branches.length; i++) {
+			if (isActive(i)) {
+				return;
+			}
+		}
+
+		IOException failure = new IOException("All the outputs of the payload failed");
+		for (IOException branchFailure : failures) {
+			if (branchFailure != null) {
+				failure.addSuppressed(branchFailure);
+			}
+		}
+		throw failure;
+	}
+}
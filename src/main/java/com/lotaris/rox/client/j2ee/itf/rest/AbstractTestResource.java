@@ -5,18 +5,32 @@ import com.lotaris.j2ee.itf.filters.Filter;
 import com.lotaris.j2ee.itf.listeners.Listener;
 import com.lotaris.rox.client.j2ee.itf.RoxFilter;
 import com.lotaris.rox.client.j2ee.itf.RoxListener;
-import com.lotaris.rox.common.config.Configuration;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lotaris.rox.client.j2ee.itf.config.ItfConfiguration;
+import com.lotaris.rox.client.j2ee.itf.config.RunConfiguration;
+import com.lotaris.rox.client.j2ee.itf.dispatch.DispatchingListener;
+import com.lotaris.rox.client.j2ee.itf.filters.ShardFilter;
+import com.lotaris.rox.client.j2ee.itf.metrics.RoxMetrics;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map.Entry;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
 import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,7 +43,58 @@ public abstract class AbstractTestResource {
 	private static final Logger LOGGER = LoggerFactory.getLogger(AbstractTestResource.class);
 	
 	/**
-	 * Start the test through the integration test controller
+	 * HTTP status returned when too many runs are already submitted
+	 */
+	private static final int TOO_MANY_REQUESTS = 429;
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	/**
+	 * Ways to execute a run: in the request, in the background, or in the background
+	 * with its events sent in the response
+	 */
+	private enum RunMode {
+		SYNC, ASYNC, EVENTS
+	}
+
+	/**
+	 * Executor of the runs submitted in asynchronous mode, shared by all the requests
+	 */
+	private static TestRunExecutor runExecutor;
+	
+	/**
+	 * Admission of all the runs executed on this node, shared by all the requests
+	 */
+	private static RunAdmission runAdmission;
+	
+	/**
+	 * Configuration the executor and the admission were last configured from, they
+	 * follow the limits of the configuration when it is reloaded
+	 */
+	private static ItfConfiguration runExecutorConfiguration;
+	private static ItfConfiguration runAdmissionConfiguration;
+	
+	/**
+	 * True once the use of the deprecated global options is logged
+	 */
+	private static volatile boolean globalOptionsWarned;
+
+	/**
+	 * URI and query of the request, the other parameters of a run are read from it
+	 */
+	@Context
+	private UriInfo uriInfo;
+
+	/**
+	 * Start the test through the integration test controller. With <code>async=true</code>,
+	 * the run is submitted and <code>202 Accepted</code> is returned right away with
+	 * the run id, the progress of the run is then available through {@link #status(java.lang.String)}.
+	 * 
+	 * When the suite is shared by several nodes, each node runs the shard of the tests
+	 * selected from the hash of their key, and all the shards report under the same uid.
+	 * The query parameters <code>async</code>, <code>shard</code>, <code>shards</code>
+	 * and <code>uid</code> are read into the {@link RunParameters}.
+	 * 
 	 * @param filters Filters to apply if necessary
 	 */
 	@GET
@@ -41,8 +106,107 @@ public abstract class AbstractTestResource {
 		@QueryParam("project") String projectName,
 		@QueryParam("options") String options) {
 		
-		// Parse additional options
-		parseOptions(options);
+		RunParameters parameters;
+		try {
+			parameters = RunParameters.fromQuery(uriInfo);
+		}
+		catch (IllegalArgumentException iae) {
+			return badRequest(iae.getMessage());
+		}
+		
+		return run(filters, seed, category, projectName, options, parameters);
+	}
+	
+	/**
+	 * Start the test through the integration test controller
+	 * 
+	 * @param filters Filters to apply if necessary
+	 * @param parameters The mode and sharding of the run
+	 * @see #run(java.lang.String, java.lang.Long, java.lang.String, java.lang.String, java.lang.String) 
+	 */
+	public Response run(String filters, Long seed, String category, String projectName, String options, RunParameters parameters) {
+		return start(filters, seed, category, projectName, options, parameters.isAsync() ? RunMode.ASYNC : RunMode.SYNC, parameters);
+	}
+	
+	/**
+	 * Start the tests and follow their progress: the start and the end of the run and
+	 * each test ended are sent while the run is executed, as Server-Sent Events or as
+	 * JSON lines. The events go through a bounded buffer which drops the oldest ones
+	 * when the client does not keep up, so the client never slows down the run.
+	 * 
+	 * The query parameter <code>format</code> gives the format of the events, sse (default)
+	 * or lines.
+	 * 
+	 * @see #run(java.lang.String, java.lang.Long, java.lang.String, java.lang.String, java.lang.String) 
+	 */
+	@GET
+	@Path("events")
+	@Produces({ "text/event-stream", "application/x-ndjson" })
+	public Response events(
+		@QueryParam("filters") String filters, 
+		@QueryParam("seed") Long seed, 
+		@QueryParam("category") String category, 
+		@QueryParam("project") String projectName,
+		@QueryParam("options") String options) {
+		
+		RunParameters parameters;
+		try {
+			parameters = RunParameters.fromQuery(uriInfo);
+		}
+		catch (IllegalArgumentException iae) {
+			return badRequest(iae.getMessage());
+		}
+		
+		return start(filters, seed, category, projectName, options, RunMode.EVENTS, parameters);
+	}
+	
+	/**
+	 * Configure the filters and the listeners of a run and start it
+	 */
+	private Response start(String filters, Long seed, String category, String projectName, String options, RunMode mode, RunParameters parameters) {
+		Integer shard = parameters.getShard();
+		Integer shards = parameters.getShards();
+		String uid = parameters.getUid();
+		
+		// Validate the sharding before anything is run
+		ShardFilter shardFilter = null;
+		if (shard != null || shards != null) {
+			if (shard == null || shards == null) {
+				return badRequest("The shard and shards parameters must be used together");
+			}
+			
+			try {
+				shardFilter = new ShardFilter(shard, shards);
+			}
+			catch (IllegalArgumentException iae) {
+				return badRequest(iae.getMessage());
+			}
+			
+			if (shards > 1 && (uid == null || uid.isEmpty())) {
+				return badRequest("The uid parameter is required to report the shards under the same test run");
+			}
+		}
+		
+		// Format of the events sent to the client following the run
+		RunEventOutput.Format eventFormat = null;
+		if (mode == RunMode.EVENTS) {
+			try {
+				eventFormat = RunEventOutput.Format.fromName(parameters.getFormat());
+			}
+			catch (IllegalArgumentException iae) {
+				return badRequest(iae.getMessage());
+			}
+		}
+		
+		// Parse additional options and take the snapshot of the configuration used by the whole run
+		RunConfiguration.Builder overrides = new RunConfiguration.Builder();
+		try {
+			parseOptions(options, overrides);
+		}
+		catch (IllegalArgumentException iae) {
+			return badRequest(iae.getMessage());
+		}
+		RunConfiguration configuration = overrides.build();
 		
 		// Logging
 		if (LOGGER.isDebugEnabled()) {
@@ -55,15 +219,19 @@ public abstract class AbstractTestResource {
 			if (seed != null) {
 				message.append("Seed[").append(seed).append("]");
 			}
+			
+			if (shard != null) {
+				message.append("Shard[").append(shard).append("/").append(shards).append("]");
+			}
 
 			LOGGER.debug(message.toString());
 		}
 
 		// Retrieve the test controller
-		TestController testController = getController();
+		final TestController testController = getController();
 		
-		Map<String, Listener> roxListeners = new HashMap<>();
-		Map<String, Filter> roxFilters = new HashMap<>();
+		final Map<String, Listener> roxListeners = new HashMap<>();
+		final Map<String, Filter> roxFilters = new HashMap<>();
 
 		RoxListener defaultListener;
 		
@@ -73,6 +241,12 @@ public abstract class AbstractTestResource {
 		else {
 			defaultListener = new RoxListener();
 		}
+		
+		defaultListener.setConfiguration(configuration);
+		
+		if (uid != null && !uid.isEmpty()) {
+			defaultListener.setUid(uid);
+		}
 	
 		// To manage the filters
 		List<String> finalFilters = new ArrayList<>();
@@ -84,17 +258,33 @@ public abstract class AbstractTestResource {
 		finalFilters.addAll(getAdditionalFilters());
 		
 		// Configure filters and default listener
-		roxFilters.put("roxFilter", new RoxFilter(finalFilters.toArray(new String[finalFilters.size()])));
+		try {
+			roxFilters.put("roxFilter", new RoxFilter(finalFilters.toArray(new String[finalFilters.size()]), shardFilter, configuration));
+		}
+		catch (IllegalArgumentException iae) {
+			return badRequest(iae.getMessage());
+		}
 		roxListeners.put("roxListener", defaultListener);
 		
-		// Add more listeners
-		for (Entry<String, Listener> listener : getAdditionalListeners(category, projectName).entrySet()) {
-			roxListeners.put(listener.getKey(), listener.getValue());
+		// Add more listeners, called on a dedicated thread when the dispatch is enabled
+		Map<String, Listener> additionalListeners = getAdditionalListeners(category, projectName);
+		if (configuration.isDispatching() && !additionalListeners.isEmpty()) {
+			roxListeners.put("dispatchingListener", new DispatchingListener(
+				additionalListeners.values(), 
+				configuration.getDispatchBufferSize(), 
+				configuration.getDispatchBackPressure(), 
+				configuration.getDispatchSampleRate(), 
+				configuration.getDispatchDrainTimeout() * 1000L));
+		}
+		else {
+			for (Entry<String, Listener> listener : additionalListeners.entrySet()) {
+				roxListeners.put(listener.getKey(), listener.getValue());
+			}
 		}
 		
 		// Retrieve seed from configuration
-		if (Configuration.getInstance().getGeneratorSeed() != null) {
-			seed = Configuration.getInstance().getGeneratorSeed();
+		if (configuration.getGeneratorSeed() != null) {
+			seed = configuration.getGeneratorSeed();
 		}
 		
 		// Generate default seed
@@ -102,18 +292,270 @@ public abstract class AbstractTestResource {
 			seed = System.currentTimeMillis();
 		}
 		
+		// Admit the run on this node, a run is rejected before anything is started
+		final RunAdmission admission = getRunAdmission();
+		boolean admitted = false;
+		if (admission.isRejecting() || mode == RunMode.SYNC) {
+			if (!admission.admit()) {
+				LOGGER.warn("{} test runs are already running, the run is rejected", admission.getRunning());
+				return tooManyRequests("Too many test runs running");
+			}
+			admitted = true;
+		}
+		
+		// Submit the integration tests
+		if (mode != RunMode.SYNC) {
+			TestRunExecutor executor = getRunExecutor();
+			TestRunStatus status = executor.createStatus();
+			roxListeners.put("progressListener", new ProgressListener(status));
+
+			final RunEventBuffer events;
+			if (mode == RunMode.EVENTS) {
+				events = new RunEventBuffer(configuration.getEventBufferSize());
+				roxListeners.put("eventListener", new RunEventListener(status.getId(), events));
+			}
+			else {
+				events = null;
+			}
+
+			final RunContext context = new RunContext(status.getId(), configuration, testController, roxFilters, roxListeners, seed);
+			final boolean runAdmitted = admitted;
+
+			try {
+				executor.submit(status, new Callable<Long>() {
+					@Override
+					public Long call() {
+						// The runs waiting for a slot wait in the background
+						if (!runAdmitted && !admission.admit()) {
+							if (events != null) {
+								events.close();
+							}
+							throw new IllegalStateException("The test run was not admitted, too many test runs running");
+						}
+						
+						try {
+							return runTests(context);
+						}
+						finally {
+							admission.release();
+							
+							// The run may end without notifying the listeners
+							if (events != null) {
+								events.close();
+							}
+						}
+					}
+				});
+			}
+			catch (RejectedExecutionException ree) {
+				if (admitted) {
+					admission.release();
+				}
+				LOGGER.warn("Too many test runs submitted, the run is rejected");
+				return tooManyRequests("Too many test runs submitted");
+			}
+
+			if (mode == RunMode.EVENTS) {
+				return Response
+					.ok(new RunEventOutput(events, eventFormat), eventFormat.getMediaType())
+					.header("Cache-Control", "no-cache")
+					.build();
+			}
+
+			Response.ResponseBuilder accepted = Response.status(Response.Status.ACCEPTED).entity(toJson(status.toMap()));
+			if (parameters.getUriInfo() != null) {
+				accepted.location(parameters.getUriInfo().getAbsolutePathBuilder().path(status.getId()).build());
+			}
+			return accepted.build();
+		}
+
 		// Run the integration tests
-		LOGGER.info("Generator seed: {}", testController.run(roxFilters, roxListeners, seed));
+		try {
+			runTests(new RunContext(UUID.randomUUID().toString(), configuration, testController, roxFilters, roxListeners, seed));
+		}
+		finally {
+			admission.release();
+		}
 		
 		return Response.ok().build();
 	}
 	
+	/**
+	 * Retrieve the status and progress of a run submitted in asynchronous mode
+	 * 
+	 * @param runId The run identifier returned on submission
+	 * @return The status of the run
+	 */
+	@GET
+	@Path("{runId}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response status(@PathParam("runId") String runId) {
+		TestRunStatus status = getRunExecutor().getStatus(runId);
+		
+		if (status == null) {
+			return Response.status(Response.Status.NOT_FOUND).build();
+		}
+		else {
+			return Response.ok(toJson(status.toMap())).build();
+		}
+	}
+	
+	/**
+	 * Retrieve the time spent by the ROX integration since the application started
+	 * 
+	 * @return The metrics of the listeners, filters and publishers
+	 */
+	@GET
+	@Path("stats")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response stats() {
+		return Response.ok(toJson(RoxMetrics.getInstance().toMap())).build();
+	}
+	
+	/**
+	 * Run the integration tests
+	 * 
+	 * @param context The context of the run
+	 * @return The generator seed used
+	 */
+	private Long runTests(RunContext context) {
+		LOGGER.info("Test run {} started, {} test runs running", context.getId(), getRunAdmission().getRunning());
+		Long generatorSeed = context.run();
+		LOGGER.info("Test run {} ended, generator seed: {}", context.getId(), generatorSeed);
+		return generatorSeed;
+	}
+	
+	/**
+	 * The executor has as many threads as runs admitted at the same time, so the run
+	 * admission alone limits the runs executed in parallel. When the configuration is
+	 * reloaded, the executor is resized and keeps the runs submitted and their status.
+	 *
+	 * @return The executor of the runs submitted in asynchronous mode
+	 */
+	private static synchronized TestRunExecutor getRunExecutor() {
+		ItfConfiguration configuration = ItfConfiguration.getInstance();
+		int limit = getRunAdmission().getLimit();
+		
+		if (runExecutor == null) {
+			runExecutor = new TestRunExecutor(limit, configuration.getMaxQueuedRuns(), configuration.getRetainedRuns());
+		}
+		else if (configuration != runExecutorConfiguration) {
+			runExecutor.resize(limit, configuration.getMaxQueuedRuns(), configuration.getRetainedRuns());
+		}
+		
+		runExecutorConfiguration = configuration;
+		return runExecutor;
+	}
+	
+	/**
+	 * When the configuration is reloaded, the admission takes the new limits and the
+	 * runs already admitted keep their slot.
+	 * 
+	 * @return The admission of the runs executed on this node
+	 */
+	private static synchronized RunAdmission getRunAdmission() {
+		ItfConfiguration configuration = ItfConfiguration.getInstance();
+		
+		if (runAdmission == null) {
+			runAdmission = new RunAdmission(
+				configuration.getRunAdmission(), 
+				configuration.getRunLimit(), 
+				configuration.getRunWaitTimeout() * 1000L);
+		}
+		else if (configuration != runAdmissionConfiguration) {
+			runAdmission.reconfigure(
+				configuration.getRunAdmission(), 
+				configuration.getRunLimit(), 
+				configuration.getRunWaitTimeout() * 1000L);
+		}
+		
+		runAdmissionConfiguration = configuration;
+		return runAdmission;
+	}
+	
+	/**
+	 * @param message The reason of the rejection
+	 * @return The response rejecting a run when too many are running or submitted
+	 */
+	private Response tooManyRequests(String message) {
+		return Response.status(TOO_MANY_REQUESTS).entity(toJson(Collections.singletonMap("error", message))).build();
+	}
+	
+	/**
+	 * @param message The reason of the rejection
+	 * @return The response rejecting an invalid request
+	 */
+	private Response badRequest(String message) {
+		return Response.status(Response.Status.BAD_REQUEST).entity(toJson(Collections.singletonMap("error", message))).build();
+	}
+	
+	/**
+	 * Serialize an object to JSON
+	 * 
+	 * @param object The object to serialize
+	 * @return The JSON
+	 */
+	protected String toJson(Object object) {
+		try {
+			return MAPPER.writeValueAsString(object);
+		}
+		catch (IOException ioe) {
+			throw new IllegalStateException("Unable to serialize the response", ioe);
+		}
+	}
+	
 	/**
 	 * @return Retrieve the test controller
 	 */
 	public abstract TestController getController();
 	
-	public abstract void parseOptions(String options);
+	/**
+	 * Parse the options of a run into the shared configuration, which changes the runs
+	 * executed at the same time. It is only called when it is overridden.
+	 * 
+	 * @param options The options of the run
+	 * @deprecated Override {@link #parseOptions(java.lang.String, com.lotaris.rox.client.j2ee.itf.config.RunConfiguration.Builder)} 
+	 * so the options apply to their run only
+	 */
+	@Deprecated
+	public void parseOptions(String options) {
+	}
+	
+	/**
+	 * Parse the options of a run into overrides of its configuration, which apply to
+	 * this run only. By default, the options are read with {@link RunConfiguration.Builder#options(java.lang.String)};
+	 * the options are also given to {@link #parseOptions(java.lang.String)} when a
+	 * subclass still overrides it.
+	 * 
+	 * @param options The options of the run
+	 * @param configuration The overrides of the configuration of the run
+	 * @throws IllegalArgumentException When the options are invalid
+	 */
+	public void parseOptions(String options, RunConfiguration.Builder configuration) {
+		if (overridesGlobalOptions()) {
+			if (!globalOptionsWarned) {
+				globalOptionsWarned = true;
+				LOGGER.warn("{} overrides parseOptions(String), which changes the configuration of all the runs, "
+					+ "parseOptions(String, RunConfiguration.Builder) should be overridden instead", getClass().getName());
+			}
+			parseOptions(options);
+		}
+		else {
+			configuration.options(options);
+		}
+	}
+	
+	/**
+	 * @return True if the deprecated {@link #parseOptions(java.lang.String)} is overridden
+	 */
+	private boolean overridesGlobalOptions() {
+		try {
+			return getClass().getMethod("parseOptions", String.class).getDeclaringClass() != AbstractTestResource.class;
+		}
+		catch (NoSuchMethodException nsme) {
+			return false;
+		}
+	}
 	
 	/**
 	 * @return More filters to add
@@ -0,0 +1,27 @@
+package com.lotaris.rox.client.j2ee.itf.rest;
+
+import com.lotaris.j2ee.itf.listeners.DefaultListener;
+import com.lotaris.j2ee.itf.model.Description;
+
+/**
+ * Listener to follow the progress of a test run submitted in asynchronous mode
+ */
+public class ProgressListener extends DefaultListener {
+	private final TestRunStatus status;
+
+	public ProgressListener(TestRunStatus status) {
+		this.status = status;
+	}
+
+	@Override
+	public void testStart(Description description) {
+		super.testStart(description);
+		status.testStarted();
+	}
+
+	@Override
+	public void testEnd(Description description) {
+		super.testEnd(description);
+		status.testEnded(description.isPassed());
+	}
+}
@@ -0,0 +1,173 @@
+package com.lotaris.rox.client.j2ee.itf.rest;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission of the test runs on a node, shared by the runs executed in the request
+ * and in the background. A run holds a slot from its admission to its end; when all
+ * the slots are taken, the next runs wait for one or are rejected depending on the
+ * {@link Policy}.
+ */
+public class RunAdmission {
+	/**
+	 * What to do with a run when the concurrency limit is reached
+	 */
+	public enum Policy {
+		/**
+		 * The runs are executed in parallel up to the limit, the next ones wait for a slot
+		 */
+		PARALLEL("parallel"),
+
+		/**
+		 * The runs are executed one at a time, whatever the limit
+		 */
+		SERIALIZE("serialize"),
+
+		/**
+		 * The runs are executed in parallel up to the limit, the next ones are rejected
+		 */
+		REJECT("reject");
+
+		private final String name;
+
+		private Policy(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * @return The name of the policy in the configuration
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @param name The name of the policy
+		 * @return The policy
+		 * @throws IllegalArgumentException When the policy is unknown
+		 */
+		public static Policy fromName(String name) {
+			for (Policy policy : values()) {
+				if (policy.name.equalsIgnoreCase(name)) {
+					return policy;
+				}
+			}
+
+			throw new IllegalArgumentException("Unknown run admission " + name + ", expected parallel, serialize or reject");
+		}
+	}
+
+	private volatile Policy policy;
+	private volatile int limit;
+	private volatile long waitTimeout;
+	private final Slots slots;
+
+	/**
+	 * Constructor
+	 *
+	 * @param policy What to do with a run when the limit is reached
+	 * @param limit The maximum number of runs executed at the same time, 0 for no limit
+	 * @param waitTimeout The maximum time a run waits for a slot, in milliseconds
+	 */
+	public RunAdmission(Policy policy, int limit, long waitTimeout) {
+		this.policy = policy;
+		this.limit = toLimit(policy, limit);
+		this.waitTimeout = waitTimeout;
+		this.slots = new Slots(this.limit);
+	}
+
+	private static int toLimit(Policy policy, int limit) {
+		return policy == Policy.SERIALIZE ? 1 : limit > 0 ? limit : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Apply a reloaded configuration. The runs admitted keep their slot: when the limit
+	 * is lowered below the number of runs running, no run is admitted until enough of
+	 * them have ended.
+	 *
+	 * @param policy What to do with a run when the limit is reached
+	 * @param limit The maximum number of runs executed at the same time, 0 for no limit
+	 * @param waitTimeout The maximum time a run waits for a slot, in milliseconds
+	 */
+	public synchronized void reconfigure(Policy policy, int limit, long waitTimeout) {
+		int newLimit = toLimit(policy, limit);
+
+		if (newLimit > this.limit) {
+			slots.release(newLimit - this.limit);
+		}
+		else if (newLimit < this.limit) {
+			slots.reducePermits(this.limit - newLimit);
+		}
+
+		this.policy = policy;
+		this.limit = newLimit;
+		this.waitTimeout = waitTimeout;
+	}
+
+	/**
+	 * @return True if the runs are rejected instead of waiting when the limit is reached
+	 */
+	public boolean isRejecting() {
+		return policy == Policy.REJECT;
+	}
+
+	/**
+	 * Take a slot for a run, waiting for one depending on the policy. The slot must be
+	 * released with {@link #release()} at the end of the run.
+	 *
+	 * @return True if the run is admitted, false if it is rejected or waited too long
+	 */
+	public boolean admit() {
+		if (policy == Policy.REJECT) {
+			return slots.tryAcquire();
+		}
+
+		try {
+			return slots.tryAcquire(waitTimeout, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Give the slot of a run back at its end
+	 */
+	public void release() {
+		slots.release();
+	}
+
+	/**
+	 * @return The number of runs admitted and not ended yet
+	 */
+	public synchronized int getRunning() {
+		return limit - slots.availablePermits();
+	}
+
+	/**
+	 * @return The maximum number of runs executed at the same time, {@link Integer#MAX_VALUE} for no limit
+	 */
+	public int getLimit() {
+		return limit;
+	}
+
+	public Policy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Slots of the runs, which can be reduced while they are taken
+	 */
+	private static class Slots extends Semaphore {
+		public Slots(int permits) {
+			super(permits, true);
+		}
+
+		@Override
+		public void reducePermits(int reduction) {
+			super.reducePermits(reduction);
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package com.lotaris.rox.client.j2ee.itf.rest;
+
+import com.lotaris.j2ee.itf.TestController;
+import com.lotaris.j2ee.itf.filters.Filter;
+import com.lotaris.j2ee.itf.listeners.Listener;
+import com.lotaris.rox.client.j2ee.itf.config.RunConfiguration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Everything a test run needs, created for each request so the runs executed at the
+ * same time on a node do not share their listeners, filters, seed or configuration.
+ */
+public class RunContext {
+	private final String id;
+	private final RunConfiguration configuration;
+	private final TestController controller;
+	private final Map<String, Filter> filters;
+	private final Map<String, Listener> listeners;
+	private final long seed;
+
+	/**
+	 * Constructor
+	 *
+	 * @param id The run identifier
+	 * @param configuration The configuration of the run
+	 * @param controller The test controller executing the run
+	 * @param filters The filters of the run
+	 * @param listeners The listeners of the run
+	 * @param seed The generator seed of the run
+	 */
+	public RunContext(String id, RunConfiguration configuration, TestController controller, Map<String, Filter> filters, Map<String, Listener> listeners, long seed) {
+		this.id = id;
+		this.configuration = configuration;
+		this.controller = controller;
+		this.filters = Collections.unmodifiableMap(new HashMap<>(filters));
+		this.listeners = Collections.unmodifiableMap(new HashMap<>(listeners));
+		this.seed = seed;
+	}
+
+	/**
+	 * Run the tests
+	 *
+	 * @return The generator seed used
+	 */
+	public Long run() {
+		return controller.run(filters, listeners, seed);
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public RunConfiguration getConfiguration() {
+		return configuration;
+	}
+
+	public TestController getController() {
+		return controller;
+	}
+
+	public Map<String, Filter> getFilters() {
+		return filters;
+	}
+
+	public Map<String, Listener> getListeners() {
+		return listeners;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+}
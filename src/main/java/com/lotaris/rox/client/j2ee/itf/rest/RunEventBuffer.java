@@ -0,0 +1,106 @@
+package com.lotaris.rox.client.j2ee.itf.rest;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded buffer of the events of a test run between the listener and the client
+ * following the run. When the client does not keep up, the oldest events are dropped
+ * so the tests never wait for the client; the number of dropped events is reported
+ * to the client with the next event.
+ */
+public class RunEventBuffer {
+	private final int capacity;
+	private final ArrayDeque<Map<String, Object>> events;
+
+	/**
+	 * Number of events dropped since the last one taken
+	 */
+	private long dropped;
+
+	private boolean closed;
+	private boolean abandoned;
+
+	/**
+	 * Constructor
+	 *
+	 * @param capacity The maximum number of events waiting for the client
+	 */
+	public RunEventBuffer(int capacity) {
+		this.capacity = Math.max(1, capacity);
+		this.events = new ArrayDeque<>(this.capacity);
+	}
+
+	/**
+	 * Add an event, dropping the oldest one when the buffer is full. Never blocks.
+	 *
+	 * @param event The event
+	 */
+	public synchronized void offer(Map<String, Object> event) {
+		if (closed || abandoned) {
+			return;
+		}
+
+		if (events.size() == capacity) {
+			events.pollFirst();
+			dropped++;
+		}
+
+		events.addLast(event);
+		notifyAll();
+	}
+
+	/**
+	 * Take the next event, waiting for it at most a given time
+	 *
+	 * @param timeout The maximum time to wait, in milliseconds
+	 * @return The event, null if none arrived in time or if the buffer is closed and empty
+	 * @throws InterruptedException When the thread is interrupted while waiting
+	 */
+	public synchronized Map<String, Object> poll(long timeout) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+		while (events.isEmpty() && !closed) {
+			long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (remaining <= 0) {
+				return null;
+			}
+			wait(remaining);
+		}
+
+		return events.pollFirst();
+	}
+
+	/**
+	 * @return The number of events dropped since the last call, reset to zero
+	 */
+	public synchronized long takeDropped() {
+		long count = dropped;
+		dropped = 0;
+		return count;
+	}
+
+	/**
+	 * No event is added once the run has ended, the remaining ones can still be taken
+	 */
+	public synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+
+	/**
+	 * @return True if the run has ended and all its events were taken
+	 */
+	public synchronized boolean isDrained() {
+		return closed && events.isEmpty();
+	}
+
+	/**
+	 * The client is gone, the events of the rest of the run are discarded
+	 */
+	public synchronized void abandon() {
+		abandoned = true;
+		events.clear();
+	}
+}
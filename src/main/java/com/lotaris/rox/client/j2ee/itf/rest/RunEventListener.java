@@ -0,0 +1,83 @@
+package com.lotaris.rox.client.j2ee.itf.rest;
+
+import com.lotaris.j2ee.itf.listeners.DefaultListener;
+import com.lotaris.j2ee.itf.model.Description;
+import com.lotaris.rox.annotations.RoxableTest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Listener publishing the start and the end of a test run and each test ended to the
+ * client following the run
+ */
+public class RunEventListener extends DefaultListener {
+	private final String runId;
+	private final RunEventBuffer events;
+
+	private final AtomicInteger passed = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+
+	/**
+	 * Constructor
+	 *
+	 * @param runId The run identifier
+	 * @param events The buffer of the events sent to the client
+	 */
+	public RunEventListener(String runId, RunEventBuffer events) {
+		this.runId = runId;
+		this.events = events;
+	}
+
+	@Override
+	public void testRunStart() {
+		super.testRunStart();
+
+		Map<String, Object> event = createEvent("start");
+		event.put("date", startDate);
+		events.offer(event);
+	}
+
+	@Override
+	public void testEnd(Description description) {
+		super.testEnd(description);
+
+		if (description.isPassed()) {
+			passed.incrementAndGet();
+		}
+		else {
+			failed.incrementAndGet();
+		}
+
+		RoxableTest annotation = description.getMethod().getAnnotation(RoxableTest.class);
+
+		Map<String, Object> event = createEvent("test");
+		event.put("key", annotation != null ? annotation.key() : null);
+		event.put("name", description.getName());
+		event.put("passed", description.isPassed());
+		event.put("duration", description.getDuration());
+		if (description.getMessage() != null) {
+			event.put("message", description.getMessage());
+		}
+		events.offer(event);
+	}
+
+	@Override
+	public void testRunEnd() {
+		super.testRunEnd();
+
+		Map<String, Object> event = createEvent("end");
+		event.put("passed", passed.get());
+		event.put("failed", failed.get());
+		event.put("duration", endDate - startDate);
+		events.offer(event);
+		events.close();
+	}
+
+	private Map<String, Object> createEvent(String type) {
+		Map<String, Object> event = new LinkedHashMap<>();
+		event.put("type", type);
+		event.put("runId", runId);
+		return event;
+	}
+}
@@ -0,0 +1,138 @@
+package com.lotaris.rox.client.j2ee.itf.rest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.ws.rs.core.StreamingOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Body of the response following a test run, written while the run is executed. The
+ * events are written as Server-Sent Events or as JSON lines, each one being flushed
+ * to the client as soon as it is taken from the buffer.
+ */
+public class RunEventOutput implements StreamingOutput {
+	private static final Logger LOGGER = LoggerFactory.getLogger(RunEventOutput.class);
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	/**
+	 * Time after which a keep-alive is written when no event arrives, in milliseconds
+	 */
+	private static final long KEEP_ALIVE = 15000;
+
+	/**
+	 * Formats of the events
+	 */
+	public enum Format {
+		/**
+		 * Server-Sent Events, the type of the event being the SSE event name
+		 */
+		SSE("sse", "text/event-stream"),
+
+		/**
+		 * One JSON object per line
+		 */
+		LINES("lines", "application/x-ndjson");
+
+		private final String name;
+		private final String mediaType;
+
+		private Format(String name, String mediaType) {
+			this.name = name;
+			this.mediaType = mediaType;
+		}
+
+		/**
+		 * @return The media type of the response
+		 */
+		public String getMediaType() {
+			return mediaType;
+		}
+
+		/**
+		 * @param name The name of the format, null for SSE
+		 * @return The format
+		 * @throws IllegalArgumentException When the format is unknown
+		 */
+		public static Format fromName(String name) {
+			if (name == null || name.isEmpty()) {
+				return SSE;
+			}
+
+			for (Format format : values()) {
+				if (format.name.equalsIgnoreCase(name)) {
+					return format;
+				}
+			}
+
+			throw new IllegalArgumentException("Unknown event format " + name + ", expected sse or lines");
+		}
+	}
+
+	private final RunEventBuffer events;
+	private final Format format;
+
+	/**
+	 * Constructor
+	 *
+	 * @param events The buffer of the events of the run
+	 * @param format The format of the events
+	 */
+	public RunEventOutput(RunEventBuffer events, Format format) {
+		this.events = events;
+		this.format = format;
+	}
+
+	@Override
+	public void write(OutputStream out) throws IOException {
+		try {
+			while (!events.isDrained()) {
+				Map<String, Object> event = events.poll(KEEP_ALIVE);
+
+				long dropped = events.takeDropped();
+				if (dropped > 0) {
+					Map<String, Object> droppedEvent = new LinkedHashMap<>();
+					droppedEvent.put("type", "dropped");
+					droppedEvent.put("count", dropped);
+					write(out, droppedEvent);
+				}
+
+				if (event != null) {
+					write(out, event);
+				}
+				else if (format == Format.SSE && dropped == 0) {
+					out.write(":\n\n".getBytes(UTF8));
+				}
+
+				out.flush();
+			}
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			events.abandon();
+		}
+		catch (IOException ioe) {
+			// The run goes on without the client
+			LOGGER.info("The client following the test run is gone, its events are discarded");
+			events.abandon();
+			throw ioe;
+		}
+	}
+
+	private void write(OutputStream out, Map<String, Object> event) throws IOException {
+		String json = MAPPER.writeValueAsString(event);
+
+		if (format == Format.SSE) {
+			out.write(("event: " + event.get("type") + "\ndata: " + json + "\n\n").getBytes(UTF8));
+		}
+		else {
+			out.write((json + "\n").getBytes(UTF8));
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package com.lotaris.rox.client.j2ee.itf.rest;
+
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriInfo;
+
+/**
+ * Query parameters of a test run added to the filters, seed, category, project and
+ * options of the original resource method: the asynchronous mode, the sharding and
+ * the format of the events.
+ */
+public class RunParameters {
+	private final boolean async;
+	private final Integer shard;
+	private final Integer shards;
+	private final String uid;
+	private final String format;
+	private final UriInfo uriInfo;
+
+	/**
+	 * Constructor
+	 *
+	 * @param async True to return before the end of the run
+	 * @param shard The shard to run, from 1 to the number of shards, null to run all the tests
+	 * @param shards The number of shards
+	 * @param uid The test run uid shared by the shards, required when there are several shards
+	 * @param format The format of the events, sse (default) or lines
+	 * @param uriInfo The URI of the request, to locate the status of an asynchronous run
+	 */
+	public RunParameters(boolean async, Integer shard, Integer shards, String uid, String format, UriInfo uriInfo) {
+		this.async = async;
+		this.shard = shard;
+		this.shards = shards;
+		this.uid = uid;
+		this.format = format;
+		this.uriInfo = uriInfo;
+	}
+
+	/**
+	 * Read the parameters from the query of a request
+	 *
+	 * @param uriInfo The URI of the request, null when the run is not started by a request
+	 * @return The parameters of the run
+	 * @throws IllegalArgumentException When the shard or the number of shards is not a number
+	 */
+	public static RunParameters fromQuery(UriInfo uriInfo) {
+		if (uriInfo == null) {
+			return new RunParameters(false, null, null, null, null, null);
+		}
+
+		MultivaluedMap<String, String> query = uriInfo.getQueryParameters();
+
+		return new RunParameters(
+			Boolean.parseBoolean(query.getFirst("async")),
+			parseInteger(query, "shard"),
+			parseInteger(query, "shards"),
+			query.getFirst("uid"),
+			query.getFirst("format"),
+			uriInfo);
+	}
+
+	private static Integer parseInteger(MultivaluedMap<String, String> query, String name) {
+		String value = query.getFirst(name);
+
+		if (value == null || value.isEmpty()) {
+			return null;
+		}
+
+		try {
+			return Integer.valueOf(value);
+		}
+		catch (NumberFormatException nfe) {
+			throw new IllegalArgumentException("The " + name + " parameter must be a number", nfe);
+		}
+	}
+
+	public boolean isAsync() {
+		return async;
+	}
+
+	public Integer getShard() {
+		return shard;
+	}
+
+	public Integer getShards() {
+		return shards;
+	}
+
+	public String getUid() {
+		return uid;
+	}
+
+	public String getFormat() {
+		return format;
+	}
+
+	public UriInfo getUriInfo() {
+		return uriInfo;
+	}
+}
@@ -0,0 +1,154 @@
+package com.lotaris.rox.client.j2ee.itf.rest;
+
+import com.lotaris.rox.client.j2ee.itf.publish.AsyncPayloadPublisher;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Run the test runs submitted in asynchronous mode. At most a given number of
+ * runs are executed at the same time, the others wait in a bounded queue and
+ * the submissions are rejected once the queue is full. The limits can be changed
+ * while runs are executed, see {@link #resize(int, int, int)}.
+ */
+public class TestRunExecutor {
+	private static final Logger LOGGER = LoggerFactory.getLogger(TestRunExecutor.class);
+
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * Status of the runs submitted, the oldest completed ones are forgotten
+	 */
+	private final Map<String, TestRunStatus> runs;
+
+	private int maxConcurrentRuns;
+	private int maxQueuedRuns;
+	private volatile int retainedRuns;
+
+	/**
+	 * Number of runs submitted and not ended yet, running or queued
+	 */
+	private int pending;
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxConcurrentRuns The maximum number of runs executed at the same time
+	 * @param maxQueuedRuns The maximum number of runs waiting to be executed
+	 * @param retainedRuns The number of runs for which the status is kept
+	 */
+	public TestRunExecutor(int maxConcurrentRuns, int maxQueuedRuns, int retainedRuns) {
+		this.maxConcurrentRuns = maxConcurrentRuns;
+		this.maxQueuedRuns = maxQueuedRuns;
+		this.retainedRuns = retainedRuns;
+
+		// The queue is bounded by the submission, so the bound can change with the configuration
+		executor = new ThreadPoolExecutor(
+			maxConcurrentRuns,
+			maxConcurrentRuns,
+			60, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(),
+			AsyncPayloadPublisher.daemonThreadFactory("rox-test-run"));
+
+		executor.allowCoreThreadTimeOut(true);
+
+		runs = Collections.synchronizedMap(new LinkedHashMap<String, TestRunStatus>() {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, TestRunStatus> eldest) {
+				return size() > TestRunExecutor.this.retainedRuns && eldest.getValue().isCompleted();
+			}
+		});
+	}
+
+	/**
+	 * Apply a reloaded configuration. The runs running or queued are kept, even beyond
+	 * the new limits, and the statuses of the runs already submitted stay available.
+	 *
+	 * @param maxConcurrentRuns The maximum number of runs executed at the same time
+	 * @param maxQueuedRuns The maximum number of runs waiting to be executed
+	 * @param retainedRuns The number of runs for which the status is kept
+	 */
+	public synchronized void resize(int maxConcurrentRuns, int maxQueuedRuns, int retainedRuns) {
+		// The core size may never exceed the maximum size
+		if (maxConcurrentRuns > executor.getMaximumPoolSize()) {
+			executor.setMaximumPoolSize(maxConcurrentRuns);
+			executor.setCorePoolSize(maxConcurrentRuns);
+		}
+		else {
+			executor.setCorePoolSize(maxConcurrentRuns);
+			executor.setMaximumPoolSize(maxConcurrentRuns);
+		}
+
+		this.maxConcurrentRuns = maxConcurrentRuns;
+		this.maxQueuedRuns = maxQueuedRuns;
+		this.retainedRuns = retainedRuns;
+	}
+
+	/**
+	 * @return A new status for a run to submit
+	 */
+	public TestRunStatus createStatus() {
+		return new TestRunStatus(UUID.randomUUID().toString());
+	}
+
+	/**
+	 * Submit a run
+	 *
+	 * @param status The status of the run, updated while the run is executed
+	 * @param run The run to execute, returning the generator seed used
+	 * @throws RejectedExecutionException When the maximum number of queued runs is reached
+	 */
+	public synchronized void submit(final TestRunStatus status, final Callable<Long> run) {
+		if (pending >= (long) maxConcurrentRuns + maxQueuedRuns) {
+			throw new RejectedExecutionException("The maximum number of queued runs is reached");
+		}
+
+		runs.put(status.getId(), status);
+		pending++;
+
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					status.start();
+
+					try {
+						status.finish(run.call());
+					}
+					catch (Exception e) {
+						LOGGER.error("The test run {} failed", status.getId(), e);
+						status.fail(e.getMessage() != null ? e.getMessage() : e.getClass().getName());
+					}
+					finally {
+						ended();
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException ree) {
+			runs.remove(status.getId());
+			pending--;
+			throw ree;
+		}
+	}
+
+	private synchronized void ended() {
+		pending--;
+	}
+
+	/**
+	 * @param id The run identifier
+	 * @return The status of the run, null if unknown
+	 */
+	public TestRunStatus getStatus(String id) {
+		return runs.get(id);
+	}
+}
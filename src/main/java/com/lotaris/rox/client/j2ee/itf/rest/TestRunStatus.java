@@ -0,0 +1,114 @@
+package com.lotaris.rox.client.j2ee.itf.rest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Status and progress of a test run submitted in asynchronous mode
+ */
+public class TestRunStatus {
+	/**
+	 * Lifecycle of a test run
+	 */
+	public enum State {
+		QUEUED,
+		RUNNING,
+		FINISHED,
+		FAILED
+	}
+
+	private final String id;
+	private final long submittedDate = System.currentTimeMillis();
+	private final AtomicInteger started = new AtomicInteger();
+	private final AtomicInteger passed = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+
+	private volatile State state = State.QUEUED;
+	private volatile Long startDate;
+	private volatile Long endDate;
+	private volatile Long seed;
+	private volatile String error;
+
+	public TestRunStatus(String id) {
+		this.id = id;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	public boolean isCompleted() {
+		return state == State.FINISHED || state == State.FAILED;
+	}
+
+	/**
+	 * Mark the run as started
+	 */
+	void start() {
+		startDate = System.currentTimeMillis();
+		state = State.RUNNING;
+	}
+
+	/**
+	 * Mark the run as finished
+	 *
+	 * @param seed The generator seed used by the run
+	 */
+	void finish(Long seed) {
+		this.seed = seed;
+		endDate = System.currentTimeMillis();
+		state = State.FINISHED;
+	}
+
+	/**
+	 * Mark the run as failed
+	 *
+	 * @param error The reason of the failure
+	 */
+	void fail(String error) {
+		this.error = error;
+		endDate = System.currentTimeMillis();
+		state = State.FAILED;
+	}
+
+	void testStarted() {
+		started.incrementAndGet();
+	}
+
+	void testEnded(boolean testPassed) {
+		if (testPassed) {
+			passed.incrementAndGet();
+		}
+		else {
+			failed.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @return The status as a map ready to be serialized
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<>();
+
+		map.put("id", id);
+		map.put("state", state.name());
+		map.put("submittedDate", submittedDate);
+		map.put("startDate", startDate);
+		map.put("endDate", endDate);
+		map.put("seed", seed);
+		map.put("started", started.get());
+		map.put("passed", passed.get());
+		map.put("failed", failed.get());
+
+		if (error != null) {
+			map.put("error", error);
+		}
+
+		return map;
+	}
+}
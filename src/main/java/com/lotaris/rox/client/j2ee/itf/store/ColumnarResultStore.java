@@ -0,0 +1,385 @@
+package com.lotaris.rox.client.j2ee.itf.store;
+
+import com.lotaris.rox.client.j2ee.itf.metadata.TestMetadata;
+import com.lotaris.rox.common.model.v1.Test;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Store keeping the test results in columns instead of one object graph per result.
+ * The strings are encoded once in a dictionary and referenced by their index, and
+ * the parts of the results which repeat from one execution of a test method to the
+ * other are encoded once per distinct value:
+ * <ul>
+ * <li>the descriptor of the test: key, name, category, flags, tags and tickets;</li>
+ * <li>the shape of its data: the keys of the data map.</li>
+ * </ul>
+ * Each result then takes its descriptor, its duration, its outcome, its message, its
+ * data shape and the indexes of its data values, in primitive arrays. The messages
+ * are kept as they are, most tests having none, and so are the values of the data
+ * measured on each execution, which would only fill the dictionary with values never
+ * seen again.
+ *
+ * The tests are materialized one by one when the results are retrieved, as the ROX
+ * client does not need them all at the same time to serialize the payload.
+ */
+public class ColumnarResultStore implements ResultStore {
+	/**
+	 * Index of a missing value in the columns
+	 */
+	private static final int NONE = -1;
+
+	/**
+	 * Data values below this index are the ones of the execution values, from -2 down
+	 */
+	private static final int FIRST_EXECUTION_VALUE = -2;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * Distinct values of the results
+	 */
+	private final Dictionary<String> strings = new Dictionary<>();
+	private final Dictionary<List<Integer>> sets = new Dictionary<>();
+	private final Dictionary<Descriptor> descriptors = new Dictionary<>();
+	private final Dictionary<List<Integer>> shapes = new Dictionary<>();
+
+	/**
+	 * Columns of the results, one entry per result
+	 */
+	private int[] descriptorColumn = new int[INITIAL_CAPACITY];
+	private long[] durations = new long[INITIAL_CAPACITY];
+	private long[] passed = new long[INITIAL_CAPACITY / 64];
+	private String[] messages = new String[INITIAL_CAPACITY];
+	private int[] shapeColumn = new int[INITIAL_CAPACITY];
+	private int[] valueOffsets = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Indexes of the data values, in the order of the keys of the shape of each result
+	 */
+	private int[] values = new int[INITIAL_CAPACITY * 8];
+	private int valueCount;
+
+	/**
+	 * Values of the data measured on each execution of the tests, outside of the dictionary
+	 */
+	private String[] executionValues = new String[INITIAL_CAPACITY];
+	private int executionValueCount;
+
+	private int size;
+
+	/**
+	 * Part of a result shared by the executions of a test method
+	 */
+	private static final class Descriptor {
+		private final int key;
+		private final int name;
+		private final int category;
+		private final int flags;
+		private final int tags;
+		private final int tickets;
+
+		private Descriptor(int key, int name, int category, int flags, int tags, int tickets) {
+			this.key = key;
+			this.name = name;
+			this.category = category;
+			this.flags = flags;
+			this.tags = tags;
+			this.tickets = tickets;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Descriptor)) {
+				return false;
+			}
+
+			Descriptor other = (Descriptor) obj;
+			return key == other.key && name == other.name && category == other.category &&
+				flags == other.flags && tags == other.tags && tickets == other.tickets;
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(new int[] { key, name, category, flags, tags, tickets });
+		}
+	}
+
+	@Override
+	public synchronized void add(Test test) {
+		ensureCapacity(size + 1);
+
+		descriptorColumn[size] = descriptors.encode(new Descriptor(
+			strings.encode(test.getKey()),
+			strings.encode(test.getName()),
+			strings.encode(test.getCategory()),
+			test.getFlags() != null ? test.getFlags() : NONE,
+			encodeSet(test.getTags()),
+			encodeSet(test.getTickets())));
+
+		durations[size] = test.getDuration();
+		messages[size] = test.getMessage();
+
+		if (test.isPassed()) {
+			passed[size >> 6] |= 1L << size;
+		}
+		else {
+			passed[size >> 6] &= ~(1L << size);
+		}
+
+		Map<String, String> data = test.getData();
+		valueOffsets[size] = valueCount;
+
+		if (data == null) {
+			shapeColumn[size] = NONE;
+		}
+		else {
+			if (valueCount + data.size() > values.length) {
+				values = Arrays.copyOf(values, Math.max(values.length * 2, valueCount + data.size()));
+			}
+
+			List<Integer> shape = new ArrayList<>(data.size());
+			for (Map.Entry<String, String> entry : data.entrySet()) {
+				shape.add(strings.encode(entry.getKey()));
+				values[valueCount++] = TestMetadata.isExecutionData(entry.getKey()) ? encodeExecutionValue(entry.getValue()) : strings.encode(entry.getValue());
+			}
+
+			shapeColumn[size] = shapes.encode(shape);
+		}
+
+		size++;
+	}
+
+	@Override
+	public synchronized int size() {
+		return size;
+	}
+
+	@Override
+	public synchronized boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * The list returned is a view of the store, the tests being materialized each time
+	 * they are accessed. It must not be used once the store is cleared.
+	 */
+	@Override
+	public synchronized List<Test> getResults() {
+		final int count = size;
+
+		return new AbstractList<Test>() {
+			@Override
+			public Test get(int index) {
+				if (index < 0 || index >= count) {
+					throw new IndexOutOfBoundsException("Index: " + index + ", size: " + count);
+				}
+				return materialize(index);
+			}
+
+			@Override
+			public int size() {
+				return count;
+			}
+		};
+	}
+
+	@Override
+	public synchronized void clear() {
+		strings.clear();
+		sets.clear();
+		descriptors.clear();
+		shapes.clear();
+		Arrays.fill(messages, 0, size, null);
+		Arrays.fill(executionValues, 0, executionValueCount, null);
+		size = 0;
+		valueCount = 0;
+		executionValueCount = 0;
+	}
+
+	/**
+	 * @return The number of distinct strings of the results
+	 */
+	public synchronized int getDistinctStrings() {
+		return strings.size();
+	}
+
+	private synchronized Test materialize(int index) {
+		Test test = new Test();
+		Descriptor descriptor = descriptors.decode(descriptorColumn[index]);
+
+		test.setKey(strings.decode(descriptor.key));
+		test.setName(strings.decode(descriptor.name));
+		test.setDuration(durations[index]);
+		test.setPassed((passed[index >> 6] & (1L << index)) != 0);
+		test.setMessage(messages[index]);
+		test.setCategory(strings.decode(descriptor.category));
+
+		if (descriptor.flags != NONE) {
+			test.setFlags(descriptor.flags);
+		}
+
+		if (descriptor.tags != NONE) {
+			test.addTags(decodeSet(descriptor.tags));
+		}
+
+		if (descriptor.tickets != NONE) {
+			test.addTickets(decodeSet(descriptor.tickets));
+		}
+
+		if (shapeColumn[index] != NONE) {
+			List<Integer> shape = shapes.decode(shapeColumn[index]);
+			Map<String, String> data = new HashMap<>(shape.size() * 2);
+
+			for (int i = 0; i < shape.size(); i++) {
+				data.put(strings.decode(shape.get(i)), decodeValue(values[valueOffsets[index] + i]));
+			}
+
+			test.addData(data);
+		}
+
+		return test;
+	}
+
+	private int encodeExecutionValue(String value) {
+		if (value == null) {
+			return NONE;
+		}
+
+		if (executionValueCount == executionValues.length) {
+			executionValues = Arrays.copyOf(executionValues, executionValueCount * 2);
+		}
+
+		executionValues[executionValueCount] = value;
+		return FIRST_EXECUTION_VALUE - executionValueCount++;
+	}
+
+	private String decodeValue(int index) {
+		return index <= FIRST_EXECUTION_VALUE ? executionValues[FIRST_EXECUTION_VALUE - index] : strings.decode(index);
+	}
+
+	private int encodeSet(Collection<String> values) {
+		if (values == null) {
+			return NONE;
+		}
+
+		List<Integer> set = new ArrayList<>(values.size());
+		for (String value : values) {
+			set.add(strings.encode(value));
+		}
+
+		return sets.encode(set);
+	}
+
+	private Set<String> decodeSet(int index) {
+		Set<String> set = new LinkedHashSet<>();
+
+		for (Integer value : sets.decode(index)) {
+			set.add(strings.decode(value));
+		}
+
+		return set;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= descriptorColumn.length) {
+			return;
+		}
+
+		int length = descriptorColumn.length * 2;
+
+		descriptorColumn = Arrays.copyOf(descriptorColumn, length);
+		durations = Arrays.copyOf(durations, length);
+		passed = Arrays.copyOf(passed, length / 64);
+		messages = Arrays.copyOf(messages, length);
+		shapeColumn = Arrays.copyOf(shapeColumn, length);
+		valueOffsets = Arrays.copyOf(valueOffsets, length);
+	}
+
+	/**
+	 * Encode the distinct values by their index, null being encoded as NONE. The indexes
+	 * are found with an open addressing table of primitive indexes, so a distinct value
+	 * costs a few slots of arrays instead of an entry and a boxed index in a map.
+	 */
+	private static class Dictionary<T> {
+		private Object[] values = new Object[16];
+		private int[] table = newTable(32);
+		private int size;
+
+		int encode(T value) {
+			if (value == null) {
+				return NONE;
+			}
+
+			int mask = table.length - 1;
+			int slot = spread(value.hashCode()) & mask;
+
+			while (table[slot] != NONE) {
+				if (values[table[slot]].equals(value)) {
+					return table[slot];
+				}
+				slot = (slot + 1) & mask;
+			}
+
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+
+			values[size] = value;
+			table[slot] = size;
+
+			if (++size * 2 > table.length) {
+				rehash(table.length * 2);
+			}
+
+			return size - 1;
+		}
+
+		@SuppressWarnings("unchecked")
+		T decode(int index) {
+			return index == NONE ? null : (T) values[index];
+		}
+
+		int size() {
+			return size;
+		}
+
+		void clear() {
+			values = new Object[16];
+			table = newTable(32);
+			size = 0;
+		}
+
+		private void rehash(int length) {
+			table = newTable(length);
+			int mask = length - 1;
+
+			for (int i = 0; i < size; i++) {
+				int slot = spread(values[i].hashCode()) & mask;
+
+				while (table[slot] != NONE) {
+					slot = (slot + 1) & mask;
+				}
+
+				table[slot] = i;
+			}
+		}
+
+		private static int[] newTable(int length) {
+			int[] table = new int[length];
+			Arrays.fill(table, NONE);
+			return table;
+		}
+
+		private static int spread(int hash) {
+			return (hash ^ (hash >>> 16)) * 0x9e3779b9;
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package com.lotaris.rox.client.j2ee.itf.store;
+
+import com.lotaris.rox.common.model.v1.Test;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Store the test results in a list, for the runs executed on a single thread
+ */
+public class ListResultStore implements ResultStore {
+	private final List<Test> results;
+
+	public ListResultStore() {
+		this(new ArrayList<Test>());
+	}
+
+	/**
+	 * @param results The list where the results are stored
+	 */
+	public ListResultStore(List<Test> results) {
+		this.results = results;
+	}
+
+	@Override
+	public void add(Test test) {
+		results.add(test);
+	}
+
+	@Override
+	public int size() {
+		return results.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return results.isEmpty();
+	}
+
+	@Override
+	public List<Test> getResults() {
+		return results;
+	}
+
+	@Override
+	public void clear() {
+		results.clear();
+	}
+}
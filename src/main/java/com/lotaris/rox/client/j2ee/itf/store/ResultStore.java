@@ -0,0 +1,36 @@
+package com.lotaris.rox.client.j2ee.itf.store;
+
+import com.lotaris.rox.common.model.v1.Test;
+import java.util.List;
+
+/**
+ * Store of the test results collected by the listener until the payload is built
+ */
+public interface ResultStore {
+	/**
+	 * Store a test result
+	 *
+	 * @param test The test to store
+	 */
+	void add(Test test);
+
+	/**
+	 * @return The number of tests stored
+	 */
+	int size();
+
+	/**
+	 * @return True if no test is stored
+	 */
+	boolean isEmpty();
+
+	/**
+	 * @return The tests stored, to build the payload once the run is over
+	 */
+	List<Test> getResults();
+
+	/**
+	 * Forget all the tests stored
+	 */
+	void clear();
+}
@@ -0,0 +1,283 @@
+package com.lotaris.rox.client.j2ee.itf.store;
+
+import com.lotaris.rox.common.model.v1.Test;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Store keeping a limited number of test results in memory, the next ones being
+ * serialized to an append-only memory-mapped file. The results stored on disk are
+ * read back one by one when they are retrieved.
+ *
+ * The file is made of records, each of them being the length of the serialized
+ * test on four bytes followed by the test serialized by {@link TestSerializer}.
+ * The file is mapped in regions of fixed size, a record can span two regions. The
+ * regions are unmapped when the store is cleared, so the file can be deleted on the
+ * systems which keep mapped files.
+ *
+ * The results are only read back one by one when the payload is written from them
+ * ({@code itf.payload.streaming}), building the payload model loads them all in memory.
+ */
+public class SpillingResultStore implements ResultStore {
+	private static final Logger LOGGER = LoggerFactory.getLogger(SpillingResultStore.class);
+
+	/**
+	 * Size of the regions of the file mapped in memory
+	 */
+	static final int REGION_SIZE = 8 * 1024 * 1024;
+
+	/**
+	 * Maximum number of results kept in memory
+	 */
+	private final int memoryResults;
+
+	/**
+	 * Directory where the spill file is created
+	 */
+	private final File directory;
+
+	/**
+	 * Results kept in memory
+	 */
+	private final List<Test> memory = new ArrayList<>();
+
+	/**
+	 * Spill file and its regions mapped in memory, created with the first spilled result
+	 */
+	private File file;
+	private final List<MappedByteBuffer> regions = new ArrayList<>();
+
+	/**
+	 * Offsets of the results in the spill file and number of bytes written
+	 */
+	private long[] offsets = new long[1024];
+	private int spilled;
+	private long position;
+
+	private final int regionSize;
+
+	/**
+	 * @param memoryResults The maximum number of results kept in memory
+	 * @param directory The directory where the spill file is created, the temporary directory when null
+	 */
+	public SpillingResultStore(int memoryResults, File directory) {
+		this(memoryResults, directory, REGION_SIZE);
+	}
+
+	SpillingResultStore(int memoryResults, File directory, int regionSize) {
+		this.memoryResults = memoryResults;
+		this.directory = directory;
+		this.regionSize = regionSize;
+	}
+
+	@Override
+	public synchronized void add(Test test) {
+		if (memory.size() < memoryResults) {
+			memory.add(test);
+		}
+		else {
+			try {
+				spill(test);
+			}
+			catch (IOException ioe) {
+				LOGGER.warn("Unable to spill the test result to {}, it is kept in memory", file, ioe);
+				memory.add(test);
+			}
+		}
+	}
+
+	@Override
+	public synchronized int size() {
+		return memory.size() + spilled;
+	}
+
+	@Override
+	public synchronized boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * The list returned is a view of the store, the results on disk being read back
+	 * each time they are accessed. It must not be used once the store is cleared.
+	 */
+	@Override
+	public synchronized List<Test> getResults() {
+		final int inMemory = memory.size();
+		final int onDisk = spilled;
+
+		return new AbstractList<Test>() {
+			@Override
+			public Test get(int index) {
+				if (index < inMemory) {
+					return memory.get(index);
+				}
+				else if (index < inMemory + onDisk) {
+					return read(index - inMemory);
+				}
+				else {
+					throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+				}
+			}
+
+			@Override
+			public int size() {
+				return inMemory + onDisk;
+			}
+		};
+	}
+
+	@Override
+	public synchronized void clear() {
+		memory.clear();
+
+		for (MappedByteBuffer region : regions) {
+			unmap(region);
+		}
+
+		regions.clear();
+		spilled = 0;
+		position = 0;
+
+		if (file != null) {
+			// The file stays on disk as long as it is mapped on some systems
+			if (!file.delete()) {
+				LOGGER.debug("Unable to delete the spill file {}, it will be deleted on exit", file);
+			}
+			file = null;
+		}
+	}
+
+	/**
+	 * @return The number of results stored on disk
+	 */
+	public synchronized int getSpilled() {
+		return spilled;
+	}
+
+	/**
+	 * @return The spill file, null if no result is stored on disk
+	 */
+	public synchronized File getFile() {
+		return file;
+	}
+
+	private void spill(Test test) throws IOException {
+		if (file == null) {
+			file = File.createTempFile("rox-results-", ".bin", directory);
+			file.deleteOnExit();
+		}
+
+		byte[] bytes = TestSerializer.serialize(test);
+
+		if (spilled == offsets.length) {
+			offsets = Arrays.copyOf(offsets, spilled * 2);
+		}
+
+		long offset = position;
+		write(ByteBuffer.allocate(4).putInt(bytes.length).array());
+		write(bytes);
+
+		offsets[spilled++] = offset;
+	}
+
+	private void write(byte[] bytes) throws IOException {
+		int written = 0;
+
+		while (written < bytes.length) {
+			MappedByteBuffer region = getRegion(position);
+			int count = Math.min(region.remaining(), bytes.length - written);
+
+			region.put(bytes, written, count);
+			written += count;
+			position += count;
+		}
+	}
+
+	/**
+	 * @param offset An offset in the file
+	 * @return The region containing the offset, mapped when it is the next one
+	 */
+	private MappedByteBuffer getRegion(long offset) throws IOException {
+		int index = (int) (offset / regionSize);
+
+		if (index == regions.size()) {
+			// The mapping stays valid once the file is closed
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				regions.add(raf.getChannel().map(FileChannel.MapMode.READ_WRITE, (long) index * regionSize, regionSize));
+			}
+		}
+
+		return regions.get(index);
+	}
+
+	/**
+	 * Release the memory mapping of a region without waiting for the garbage collection of
+	 * the buffer. The JDK has no public API for this, the cleaner of the buffer is called
+	 * through {@code sun.misc.Unsafe} on Java 9 and later, and directly on older versions.
+	 *
+	 * @param region The region to unmap, which must not be used anymore
+	 */
+	private static void unmap(MappedByteBuffer region) {
+		try {
+			try {
+				Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+				Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+				Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+				theUnsafe.setAccessible(true);
+				invokeCleaner.invoke(theUnsafe.get(null), region);
+			}
+			catch (NoSuchMethodException nsme) {
+				Method cleanerMethod = region.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(region);
+
+				if (cleaner != null) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+			}
+		}
+		catch (ReflectiveOperationException | RuntimeException e) {
+			LOGGER.debug("Unable to unmap a region of the spill file, it is unmapped once garbage collected", e);
+		}
+	}
+
+	private synchronized Test read(int index) {
+		try {
+			byte[] length = new byte[4];
+			read(offsets[index], length);
+
+			byte[] bytes = new byte[ByteBuffer.wrap(length).getInt()];
+			read(offsets[index] + 4, bytes);
+
+			return TestSerializer.deserialize(bytes);
+		}
+		catch (IOException ioe) {
+			throw new IllegalStateException("Unable to read the test result " + index + " from " + file, ioe);
+		}
+	}
+
+	private void read(long offset, byte[] bytes) throws IOException {
+		int read = 0;
+
+		while (read < bytes.length) {
+			ByteBuffer region = getRegion(offset + read).duplicate();
+			region.position((int) ((offset + read) % regionSize));
+
+			int count = Math.min(region.remaining(), bytes.length - read);
+			region.get(bytes, read, count);
+			read += count;
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package com.lotaris.rox.client.j2ee.itf.store;
+
+import com.lotaris.rox.common.model.v1.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact binary form of the test results, used to keep them outside of the heap.
+ * The fields are written in a fixed order, the strings in UTF-8 prefixed by their
+ * length and the collections prefixed by their size, -1 standing for a missing value.
+ */
+public final class TestSerializer {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private TestSerializer() {}
+
+	/**
+	 * @param test The test to serialize
+	 * @return The bytes of the test
+	 */
+	public static byte[] serialize(Test test) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+
+		try {
+			write(test, new DataOutputStream(bytes));
+		}
+		catch (IOException ioe) {
+			// Writing to memory does not fail
+			throw new IllegalStateException(ioe);
+		}
+
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @param bytes The bytes of a test
+	 * @return The test
+	 * @throws IOException When the bytes are not a serialized test
+	 */
+	public static Test deserialize(byte[] bytes) throws IOException {
+		return read(new DataInputStream(new ByteArrayInputStream(bytes)));
+	}
+
+	/**
+	 * Write a test
+	 *
+	 * @param test The test to write
+	 * @param out The output
+	 * @throws IOException When the test cannot be written
+	 */
+	public static void write(Test test, DataOutput out) throws IOException {
+		writeString(test.getKey(), out);
+		writeString(test.getName(), out);
+		out.writeLong(test.getDuration());
+		out.writeBoolean(test.isPassed());
+		writeString(test.getMessage(), out);
+		writeString(test.getCategory(), out);
+		out.writeInt(test.getFlags() != null ? test.getFlags() : -1);
+		writeStrings(test.getTags(), out);
+		writeStrings(test.getTickets(), out);
+
+		Map<String, String> data = test.getData();
+
+		if (data == null) {
+			out.writeInt(-1);
+		}
+		else {
+			out.writeInt(data.size());
+			for (Map.Entry<String, String> entry : data.entrySet()) {
+				writeString(entry.getKey(), out);
+				writeString(entry.getValue(), out);
+			}
+		}
+	}
+
+	/**
+	 * Read a test
+	 *
+	 * @param in The input
+	 * @return The test read
+	 * @throws IOException When the test cannot be read
+	 */
+	public static Test read(DataInput in) throws IOException {
+		Test test = new Test();
+
+		test.setKey(readString(in));
+		test.setName(readString(in));
+		test.setDuration(in.readLong());
+		test.setPassed(in.readBoolean());
+		test.setMessage(readString(in));
+		test.setCategory(readString(in));
+
+		int flags = in.readInt();
+		if (flags >= 0) {
+			test.setFlags(flags);
+		}
+
+		Set<String> tags = readStrings(in);
+		if (tags != null) {
+			test.addTags(tags);
+		}
+
+		Set<String> tickets = readStrings(in);
+		if (tickets != null) {
+			test.addTickets(tickets);
+		}
+
+		int dataSize = in.readInt();
+		if (dataSize >= 0) {
+			Map<String, String> data = new HashMap<>(dataSize * 2);
+			for (int i = 0; i < dataSize; i++) {
+				data.put(readString(in), readString(in));
+			}
+			test.addData(data);
+		}
+
+		return test;
+	}
+
+	private static void writeString(String value, DataOutput out) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+		}
+		else {
+			byte[] bytes = value.getBytes(UTF8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		int length = in.readInt();
+
+		if (length < 0) {
+			return null;
+		}
+
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	private static void writeStrings(Collection<String> values, DataOutput out) throws IOException {
+		if (values == null) {
+			out.writeInt(-1);
+		}
+		else {
+			out.writeInt(values.size());
+			for (String value : values) {
+				writeString(value, out);
+			}
+		}
+	}
+
+	private static Set<String> readStrings(DataInput in) throws IOException {
+		int size = in.readInt();
+
+		if (size < 0) {
+			return null;
+		}
+
+		Set<String> values = new HashSet<>(size * 2);
+		for (int i = 0; i < size; i++) {
+			values.add(readString(in));
+		}
+		return values;
+	}
+}
@@ -0,0 +1,115 @@
+package com.lotaris.rox.client.j2ee.itf.store;
+
+import com.lotaris.rox.common.model.v1.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Store the test results of runs executed on several threads. Each thread adds
+ * its results to its own buffer without any lock, and the buffers are merged when
+ * the results are retrieved at the end of the run.
+ */
+public class ThreadLocalResultStore implements ResultStore {
+	/**
+	 * Buffers of all the threads which stored results
+	 */
+	private final Queue<Buffer> buffers = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Buffer of the current thread, a new one being created when the store was cleared
+	 */
+	private final ThreadLocal<Buffer> buffer = new ThreadLocal<Buffer>() {
+		@Override
+		protected Buffer initialValue() {
+			Buffer threadBuffer = new Buffer();
+			buffers.add(threadBuffer);
+			return threadBuffer;
+		}
+	};
+
+	@Override
+	public void add(Test test) {
+		Buffer threadBuffer = buffer.get();
+
+		// The buffer was dropped when the store was cleared
+		if (threadBuffer.cleared) {
+			buffer.remove();
+			threadBuffer = buffer.get();
+		}
+
+		threadBuffer.add(test);
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (Buffer threadBuffer : buffers) {
+			size += threadBuffer.size;
+		}
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public List<Test> getResults() {
+		List<Test> results = new ArrayList<>(size());
+		for (Buffer threadBuffer : buffers) {
+			threadBuffer.copyTo(results);
+		}
+		return results;
+	}
+
+	/**
+	 * Release the results of all the threads. The other threads keep their buffer, empty,
+	 * until they store a result again.
+	 */
+	@Override
+	public void clear() {
+		for (Buffer threadBuffer : buffers) {
+			threadBuffer.clear();
+		}
+
+		buffers.clear();
+		buffer.remove();
+	}
+
+	/**
+	 * Growable array written by a single thread. The size is volatile and written
+	 * after the element, so a reader seeing a size also sees the elements before it.
+	 */
+	private static class Buffer {
+		private Test[] elements = new Test[64];
+		private volatile int size;
+		private volatile boolean cleared;
+
+		private void add(Test test) {
+			int current = size;
+
+			if (current == elements.length) {
+				elements = Arrays.copyOf(elements, current * 2);
+			}
+
+			elements[current] = test;
+			size = current + 1;
+		}
+
+		private void clear() {
+			cleared = true;
+			size = 0;
+			elements = new Test[0];
+		}
+
+		private void copyTo(List<Test> results) {
+			int current = size;
+			Test[] snapshot = elements;
+			results.addAll(Arrays.asList(snapshot).subList(0, current));
+		}
+	}
+}
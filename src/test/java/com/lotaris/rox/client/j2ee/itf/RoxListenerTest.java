@@ -2,11 +2,15 @@ package com.lotaris.rox.client.j2ee.itf;
 
 import com.lotaris.j2ee.itf.model.Description;
 import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.client.j2ee.itf.store.ListResultStore;
+import com.lotaris.rox.client.j2ee.itf.store.ThreadLocalResultStore;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
 import org.mockito.Mock;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -49,7 +53,7 @@ public class RoxListenerTest {
 		
 		roxListener = new RoxListener();
 		results = new ArrayList<>();
-		Whitebox.setInternalState(roxListener, "results", results);
+		Whitebox.setInternalState(roxListener, "results", new ListResultStore(results));
 		
 		try {
 			setFinalStatic(RoxListener.class.getDeclaredField("LOGGER"), mockLogger);
@@ -78,6 +82,16 @@ public class RoxListenerTest {
 		return description.pass();
 	}
 	
+	/**
+	 * This method is never run. Its annotation is replaced by the
+	 * one of the dummy method in the listener reading the annotations.
+	 */
+	@RoxableTest(key = "hookedKey")
+	@com.lotaris.j2ee.itf.annotations.Test
+	public Description hookedMethod(Description description) {
+		return description.pass();
+	}
+
 	@Test
 	@RoxableTest(key = "6eb18c16a7ce")
 	public void theRoxTestListenerShouldContainOneResultAfterOneTestNotification() {
@@ -98,6 +112,17 @@ public class RoxListenerTest {
 		assertEquals("The listener does not contain any result where it should", results.size(), 1);
 	}
 
+	@Test
+	@RoxableTest(key = "3f9a0c6e2b71")
+	public void resultShouldDescribeTheClassDeclaringTheTest() throws NoSuchMethodException {
+		Method m = RoxListenerTest.class.getMethod("dummyMethod", Description.class);
+
+		roxListener.testEnd(new Description("groupName", m.getAnnotation(com.lotaris.j2ee.itf.annotations.Test.class), m).pass());
+
+		assertEquals("The class should be the one declaring the test", "RoxListenerTest", results.get(0).getData().get("class"));
+		assertEquals("The package should be the one of the test class", RoxListenerTest.class.getPackage().getName(), results.get(0).getData().get("package"));
+	}
+
 	@Test
 	@RoxableTest(key = "e6f2bcd5a728")
 	public void theRoxTestListenerShouldNotContainAnyResultAndShouldLogWarning() {
@@ -154,4 +179,77 @@ public class RoxListenerTest {
 		assertEquals("The data should contains five elements", 5, results.get(0).getData().size());
 		assertNotNull("The test in the results should contain the custom data", results.get(0).getData().get("test"));
 	}	
+
+	@Test
+	@RoxableTest(key = "b4e07a2c9f13")
+	public void noResultShouldBeLostWhenTestsEndConcurrently() throws Exception {
+		final int threads = 8;
+		final int testsPerThread = 2000;
+
+		ThreadLocalResultStore store = new ThreadLocalResultStore();
+		Whitebox.setInternalState(roxListener, "results", store);
+
+		final Method m = RoxListenerTest.class.getMethod("dummyMethod", Description.class);
+		final com.lotaris.j2ee.itf.annotations.Test a = m.getAnnotation(com.lotaris.j2ee.itf.annotations.Test.class);
+
+		final CyclicBarrier barrier = new CyclicBarrier(threads);
+		List<Thread> workers = new ArrayList<>();
+
+		for (int i = 0; i < threads; i++) {
+			Thread worker = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						barrier.await();
+					}
+					catch (InterruptedException | BrokenBarrierException e) {
+						return;
+					}
+
+					for (int j = 0; j < testsPerThread; j++) {
+						roxListener.testEnd(new Description("groupName", a, m).pass());
+					}
+				}
+			});
+			workers.add(worker);
+			worker.start();
+		}
+
+		for (Thread worker : workers) {
+			worker.join();
+		}
+
+		assertEquals("No result should be lost", threads * testsPerThread, store.getResults().size());
+	}
+
+	@Test
+	@RoxableTest(key = "b2e85d07f4a1")
+	public void overriddenAnnotationHookShouldBeUsedInsteadOfTheTestIndex() throws Exception {
+		final Method dummyMethod = RoxListenerTest.class.getMethod("dummyMethod", Description.class);
+
+		RoxListener hookedListener = new RoxListener() {
+			@Override
+			protected RoxableTest getMethodAnnotation(Description description) {
+				return dummyMethod.getAnnotation(RoxableTest.class);
+			}
+		};
+
+		List<com.lotaris.rox.common.model.v1.Test> hookedResults = new ArrayList<>();
+		Whitebox.setInternalState(hookedListener, "results", new ListResultStore(hookedResults));
+
+		Method m = RoxListenerTest.class.getMethod("hookedMethod", Description.class);
+		hookedListener.testEnd(new Description("groupName", m.getAnnotation(com.lotaris.j2ee.itf.annotations.Test.class), m).pass());
+
+		assertEquals("The listener should contain one result", 1, hookedResults.size());
+		assertEquals("The key should come from the overridden hook", "dummyKey", hookedResults.get(0).getKey());
+
+		// The metadata cached for the listener overriding the hook is not shared with the others
+		RoxListener plainListener = new RoxListener();
+		List<com.lotaris.rox.common.model.v1.Test> plainResults = new ArrayList<>();
+		Whitebox.setInternalState(plainListener, "results", new ListResultStore(plainResults));
+
+		plainListener.testEnd(new Description("groupName", m.getAnnotation(com.lotaris.j2ee.itf.annotations.Test.class), m).pass());
+
+		assertEquals("The key should come from the annotation of the method", "hookedKey", plainResults.get(0).getKey());
+	}
 }
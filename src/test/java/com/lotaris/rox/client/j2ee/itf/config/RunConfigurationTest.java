@@ -0,0 +1,111 @@
+package com.lotaris.rox.client.j2ee.itf.config;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class RunConfigurationTest {
+	private ItfConfiguration configuration;
+
+	@Before
+	public void mockConfiguration() {
+		configuration = mock(ItfConfiguration.class);
+		when(configuration.getCategory()).thenReturn("Configured");
+		when(configuration.getTags()).thenReturn(Collections.singleton("configured"));
+		when(configuration.getGeneratorSeed()).thenReturn(42L);
+	}
+
+	@Test
+	@RoxableTest(key = "5d2a8f1c6e94")
+	public void overridesShouldApplyToTheirRunOnly() {
+		RunConfiguration overridden = new RunConfiguration.Builder(configuration)
+			.category("Overridden")
+			.tags(Collections.singleton("overridden"))
+			.generatorSeed(7L)
+			.build();
+
+		RunConfiguration other = new RunConfiguration.Builder(configuration).build();
+
+		assertEquals("The category should be overridden", "Overridden", overridden.getCategory());
+		assertTrue("The tags should be overridden", overridden.getTags().contains("overridden"));
+		assertFalse("The configured tags should be replaced", overridden.getTags().contains("configured"));
+		assertEquals("The generator seed should be overridden", Long.valueOf(7L), overridden.getGeneratorSeed());
+
+		assertEquals("The other runs should keep the configured category", "Configured", other.getCategory());
+		assertTrue("The other runs should keep the configured tags", other.getTags().contains("configured"));
+		assertEquals("The other runs should keep the configured seed", Long.valueOf(42L), other.getGeneratorSeed());
+	}
+
+	@Test
+	@RoxableTest(key = "c71e0b9a3f28")
+	public void snapshotShouldNotChangeWithTheConfiguration() {
+		when(configuration.isPublish()).thenReturn(true);
+		when(configuration.getGroup()).thenReturn("nightly");
+
+		RunConfiguration snapshot = new RunConfiguration.Builder(configuration).build();
+
+		when(configuration.getCategory()).thenReturn("Reloaded");
+		when(configuration.isDisabled()).thenReturn(true);
+		when(configuration.isPublish()).thenReturn(false);
+		when(configuration.getGroup()).thenReturn("reloaded");
+
+		assertEquals("The category of the snapshot should not change", "Configured", snapshot.getCategory());
+		assertFalse("The activation of the snapshot should not change", snapshot.isDisabled());
+		assertTrue("The publication of the snapshot should not change", snapshot.isPublish());
+		assertEquals("The group of the snapshot should not change", "nightly", snapshot.getGroup());
+
+		verify(configuration, times(1)).getCategory();
+	}
+
+	@Test
+	@RoxableTest(key = "0b6f2d8e4a93")
+	public void concurrentStoreShouldNotBeUsedWithTheColumnarStore() {
+		when(configuration.isConcurrent()).thenReturn(true);
+
+		assertTrue("The concurrent store should be used alone", new RunConfiguration.Builder(configuration).build().isConcurrent());
+
+		when(configuration.isColumnar()).thenReturn(true);
+
+		RunConfiguration columnar = new RunConfiguration.Builder(configuration).build();
+		assertFalse("The concurrent store should not be used with the columnar store", columnar.isConcurrent());
+		assertTrue("The columnar store should be used", columnar.isColumnar());
+	}
+
+	@Test
+	@RoxableTest(key = "94d7e2b0a6c1")
+	public void regressionDetectionShouldStayEnabledWhenTheResultsAreStreamed() {
+		when(configuration.isRegressionDetection()).thenReturn(true);
+
+		assertFalse("The regression detection should require the test history", new RunConfiguration.Builder(configuration).build().isRegressionDetection());
+
+		when(configuration.isHistory()).thenReturn(true);
+		when(configuration.isStreaming()).thenReturn(true);
+
+		assertTrue("The regression detection should be enabled when the results are streamed", new RunConfiguration.Builder(configuration).build().isRegressionDetection());
+	}
+
+	@Test
+	@RoxableTest(key = "f18a4c6d2e97")
+	public void optionsShouldBeReadIntoTheOverridesOfTheRun() {
+		RunConfiguration overridden = new RunConfiguration.Builder(configuration)
+			.options("category=Overridden; tags=first,second; seed=7")
+			.build();
+
+		assertEquals("The category should be overridden", "Overridden", overridden.getCategory());
+		assertTrue("The tags should be overridden", overridden.getTags().containsAll(Arrays.asList("first", "second")));
+		assertEquals("The generator seed should be overridden", Long.valueOf(7L), overridden.getGeneratorSeed());
+
+		try {
+			new RunConfiguration.Builder(configuration).options("unknown=true");
+			fail("An unknown option should be refused");
+		}
+		catch (IllegalArgumentException iae) {
+			assertTrue("The option should be named", iae.getMessage().contains("unknown"));
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package com.lotaris.rox.client.j2ee.itf.dispatch;
+
+import com.lotaris.j2ee.itf.listeners.DefaultListener;
+import com.lotaris.j2ee.itf.model.Description;
+import com.lotaris.rox.annotations.RoxableTest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DispatchingListenerTest {
+	/**
+	 * Listener recording the events it gets, once released
+	 */
+	private static class RecordingListener extends DefaultListener {
+		private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+		private final CountDownLatch release;
+		private final CountDownLatch waiting = new CountDownLatch(1);
+		private volatile Thread thread;
+
+		RecordingListener(CountDownLatch release) {
+			this.release = release;
+		}
+
+		@Override
+		public void testRunStart() {
+			thread = Thread.currentThread();
+			events.add("runStart");
+		}
+
+		@Override
+		public void testEnd(Description description) {
+			waiting.countDown();
+			try {
+				release.await();
+			}
+			catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+			events.add(description.getSimpleName());
+		}
+
+		@Override
+		public void testRunEnd() {
+			events.add("runEnd");
+		}
+	}
+
+	private static Description description() throws NoSuchMethodException {
+		return new Description("group", null, DispatchingListenerTest.class.getDeclaredMethod("description"));
+	}
+
+	@Test
+	@RoxableTest(key = "9a4f1d7e2c36")
+	public void allEventsShouldBeHandedBeforeTheEndOfTheRunWhenBlocking() throws NoSuchMethodException {
+		RecordingListener recording = new RecordingListener(new CountDownLatch(0));
+		DispatchingListener listener = new DispatchingListener(Collections.singleton(recording), 4, DispatchingListener.BackPressure.BLOCK, 1, 10000);
+
+		listener.testRunStart();
+		for (int i = 0; i < 100; i++) {
+			listener.testEnd(description().pass());
+		}
+		listener.testRunEnd();
+
+		assertEquals("All the events should be handed to the listener", 102, recording.events.size());
+		assertEquals("The start of the run should be handed first", "runStart", recording.events.get(0));
+		assertEquals("The end of the run should be handed last", "runEnd", recording.events.get(101));
+		assertNotSame("The events should be handed on another thread", Thread.currentThread(), recording.thread);
+		assertEquals("No event should be dropped", 0, listener.getDropped());
+	}
+
+	@Test
+	@RoxableTest(key = "e58c0b3a71f4")
+	public void eventsShouldBeDroppedWithoutWaitingWhenTheBufferIsFull() throws NoSuchMethodException {
+		CountDownLatch release = new CountDownLatch(1);
+		RecordingListener recording = new RecordingListener(release);
+		DispatchingListener listener = new DispatchingListener(Collections.singleton(recording), 4, DispatchingListener.BackPressure.DROP, 1, 10000);
+
+		listener.testRunStart();
+		for (int i = 0; i < 100; i++) {
+			listener.testEnd(description().pass());
+		}
+		release.countDown();
+		listener.testRunEnd();
+
+		assertTrue("The events beyond the buffer should be dropped", listener.getDropped() >= 100 - 5);
+		assertEquals("The events kept should be handed to the listener", 102 - listener.getDropped(), recording.events.size());
+		assertEquals("The end of the run should never be dropped", "runEnd", recording.events.get(recording.events.size() - 1));
+	}
+
+	@Test
+	@RoxableTest(key = "5d0b9e27c8a1")
+	public void endOfTheRunShouldBeHandedWhenTheThreadIsInterrupted() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		RecordingListener recording = new RecordingListener(release);
+		DispatchingListener listener = new DispatchingListener(Collections.singleton(recording), 4, DispatchingListener.BackPressure.DROP, 1, 10000);
+
+		listener.testRunStart();
+		listener.testEnd(description().pass());
+		assertTrue("The listener should wait in the first test", recording.waiting.await(10, TimeUnit.SECONDS));
+		for (int i = 0; i < 99; i++) {
+			listener.testEnd(description().pass());
+		}
+
+		// The buffer is full when the end of the run is added by an interrupted thread
+		Thread releaser = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				}
+				catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+				release.countDown();
+			}
+		});
+		releaser.start();
+
+		Thread.currentThread().interrupt();
+		listener.testRunEnd();
+
+		assertTrue("The interrupt status of the thread should be kept", Thread.interrupted());
+
+		recording.thread.join(10000);
+		assertFalse("The events should all be handed to the listener", recording.thread.isAlive());
+		assertEquals("The end of the run should be handed to the listener", "runEnd", recording.events.get(recording.events.size() - 1));
+	}
+}
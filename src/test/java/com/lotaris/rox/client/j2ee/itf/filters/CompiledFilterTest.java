@@ -0,0 +1,126 @@
+package com.lotaris.rox.client.j2ee.itf.filters;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.client.j2ee.itf.history.TestHistory;
+import com.lotaris.rox.common.model.v1.ModelFactory;
+import com.lotaris.rox.core.filters.FilterUtils;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CompiledFilterTest {
+	private static final String[][] FILTERS = {
+		{ "key:compiledKey" },
+		{ "key:dummy" },
+		{ "KEY:compiledKey" },
+		{ "key:otherKey", "key:compiledKey" },
+		{ "key:k1", "key:k2", "key:k3", "key:k4", "key:k5", "key:k6", "key:k7", "key:zz", "key:xx", "key:ww", "key:vv", "key:uu", "key:y2" },
+		{ "name:Method" },
+		{ "name:Dummy named" },
+		{ "tag:dummyTag" },
+		{ "tag:Tag, other" },
+		{ "ticket:dummyTicket" },
+		{ "ticket:noTicket" },
+		{ "dummyTag" },
+		{ "noMatch" },
+		{ "unknown:compiledKey" }
+	};
+
+	/**
+	 * These methods are never run. They are used only to
+	 * compare the compiled filters with the filter utils.
+	 */
+	@RoxableTest(key = "compiledKey", tags = "dummyTag", tickets = "dummyTicket")
+	public void dummyMethod() {}
+
+	@RoxableTest(key = "compiledKey2", name = "Dummy named test", tags = { "dummyTag", "otherTag" })
+	public void namedMethod() {}
+
+	public void notRoxableMethod() {}
+
+	@Test
+	@RoxableTest(key = "8c2f5e1a9d40")
+	public void compiledFiltersShouldTakeTheSameDecisionsAsTheFilterUtils() throws NoSuchMethodException {
+		for (String methodName : new String[] { "dummyMethod", "namedMethod", "notRoxableMethod" }) {
+			Method method = CompiledFilterTest.class.getMethod(methodName);
+
+			for (String[] filters : FILTERS) {
+				assertEquals(
+					"The decision for " + methodName + " with " + filters[filters.length - 1] + " should be the same",
+					FilterUtils.isRunnable(method, filters),
+					new CompiledFilter(filters).isRunnable(method));
+			}
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "e57b03c9d2a1")
+	public void everyTestShouldBeRunnableWithoutFilters() throws NoSuchMethodException {
+		Method method = CompiledFilterTest.class.getMethod("dummyMethod");
+
+		assertTrue("The test should be runnable without filters", new CompiledFilter(null).isRunnable(method));
+		assertTrue("The test should be runnable with empty filters", new CompiledFilter(new String[0]).isRunnable(method));
+	}
+
+	@Test
+	@RoxableTest(key = "3a9d6f08b1e7")
+	public void decisionShouldBeTheSameWhenMemoized() throws NoSuchMethodException {
+		Method method = CompiledFilterTest.class.getMethod("namedMethod");
+		CompiledFilter filter = new CompiledFilter(new String[] { "key:noKey", "tag:otherTag" });
+
+		assertTrue("The test should be runnable", filter.isRunnable(method));
+		assertTrue("The memoized decision should be the same", filter.isRunnable(method));
+	}
+
+	@Test
+	@RoxableTest(key = "c61e4b8f2d05")
+	public void filterWithoutValueShouldNotFail() throws NoSuchMethodException {
+		Method method = CompiledFilterTest.class.getMethod("dummyMethod");
+
+		assertFalse("The test should not be runnable", new CompiledFilter(new String[] { "ticket" }).isRunnable(method));
+	}
+
+	@Test
+	@RoxableTest(key = "9f04d1c7e3b8")
+	public void failedFiltersShouldSelectTheTestsWhichFailedInTheHistory() throws NoSuchMethodException {
+		TestHistory history = new TestHistory();
+		history.add("run-1", "1.0.0", Arrays.asList(result("compiledKey", false), result("compiledKey2", true)));
+		history.add("run-2", "1.0.0", Arrays.asList(result("compiledKey", true), result("compiledKey2", false)));
+		history.add("run-3", "2.0.0", Arrays.asList(result("compiledKey", false), result("compiledKey2", true)));
+
+		Method dummy = CompiledFilterTest.class.getMethod("dummyMethod");
+		Method named = CompiledFilterTest.class.getMethod("namedMethod");
+
+		CompiledFilter last = new CompiledFilter(new String[] { "failed:last" }, history, "1.0.0");
+		assertFalse("The test passed in the last run of the version", last.isRunnable(dummy));
+		assertTrue("The test failed in the last run of the version", last.isRunnable(named));
+
+		CompiledFilter since = new CompiledFilter(new String[] { "failed:since=run-1" }, history, "1.0.0");
+		assertTrue("The test failed in the first run of the version", since.isRunnable(dummy));
+		assertTrue("The test failed in the last run of the version", since.isRunnable(named));
+
+	}
+
+	@Test
+	@RoxableTest(key = "2b7f9c4e0a63")
+	public void failedFiltersWithoutTheRunInTheHistoryShouldBeRefused() {
+		TestHistory history = new TestHistory();
+		history.add("run-1", "1.0.0", Arrays.asList(result("compiledKey", false)));
+
+		for (String[] filters : new String[][] { { "failed:since=run-0" }, { "failed:last" }, { "failed:first" } }) {
+			try {
+				new CompiledFilter(filters, history, "2.0.0");
+				fail("The filter " + filters[0] + " should be refused rather than select no test");
+			}
+			catch (IllegalArgumentException iae) {
+				assertTrue("The filter should be named", iae.getMessage().contains(filters[0]));
+			}
+		}
+	}
+
+	private static com.lotaris.rox.common.model.v1.Test result(String key, boolean passed) {
+		return ModelFactory.createTest(key, key, "category", 0L, 1L, null, passed, 0, null, null, null);
+	}
+}
@@ -0,0 +1,76 @@
+package com.lotaris.rox.client.j2ee.itf.filters;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import java.lang.reflect.Method;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ShardFilterTest {
+	/**
+	 * These methods are never run. They are used only to
+	 * check the shard assigned to the test methods.
+	 */
+	@RoxableTest(key = "shardKey")
+	public void dummyMethod() {}
+
+	public void methodWithoutAnnotation() {}
+
+	@Test
+	@RoxableTest(key = "5be1d27c0a94")
+	public void hashShouldNotChangeBetweenReleases() {
+		assertEquals("The hash should be the 32-bit FNV-1a hash", 0xe40c292c, ShardFilter.hash("a"));
+		assertEquals("The hash of an empty key should be the offset basis", 0x811c9dc5, ShardFilter.hash(""));
+	}
+
+	@Test
+	@RoxableTest(key = "a09c6e3f71d2")
+	public void eachTestShouldBeInExactlyOneShardAndTheShardsShouldBeBalanced() throws Exception {
+		int shards = 4;
+		int keys = 20000;
+		int[] counts = new int[shards];
+		Random random = new Random(42);
+
+		for (int i = 0; i < keys; i++) {
+			String key = String.format("%012x", random.nextLong() & 0xffffffffffffL);
+			int shard = ShardFilter.getShard(key, shards);
+
+			assertTrue("The shard should be between 1 and the number of shards", shard >= 1 && shard <= shards);
+			counts[shard - 1]++;
+		}
+
+		for (int count : counts) {
+			assertTrue("Each shard should get about a quarter of the tests, got " + count, Math.abs(count - keys / shards) < keys / 20);
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "e71f08b4c36a")
+	public void theShardsShouldPartitionTheTestMethods() throws Exception {
+		Method[] methods = {
+			ShardFilterTest.class.getMethod("dummyMethod"),
+			ShardFilterTest.class.getMethod("methodWithoutAnnotation")
+		};
+
+		for (Method method : methods) {
+			int selected = 0;
+
+			for (int shard = 1; shard <= 3; shard++) {
+				if (new ShardFilter(shard, 3).isInShard(method)) {
+					selected++;
+				}
+			}
+
+			assertEquals("The method " + method.getName() + " should be in exactly one shard", 1, selected);
+		}
+
+		assertTrue("A single shard should run all the tests", new ShardFilter(1, 1).isInShard(methods[0]));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	@RoxableTest(key = "2c84d9a5f0e7")
+	public void shardOutOfRangeShouldBeRejected() {
+		new ShardFilter(4, 3);
+	}
+}
@@ -0,0 +1,53 @@
+package com.lotaris.rox.client.j2ee.itf.history;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.common.model.v1.ModelFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RegressionDetectorTest {
+	private static com.lotaris.rox.common.model.v1.Test result(String key, long duration) {
+		return ModelFactory.createTest(key, key, "category", 0L, duration, null, true, 0, new HashSet<String>(), new HashSet<String>(), new HashMap<String, String>());
+	}
+
+	private static TestHistory history(String key, long... durations) {
+		TestHistory history = new TestHistory();
+		for (long duration : durations) {
+			history.add(null, "1.0.0", Arrays.asList(result(key, duration)));
+		}
+		return history;
+	}
+
+	@Test
+	@RoxableTest(key = "d29a6e04c7b8")
+	public void testMuchSlowerThanItsBaselineShouldBeFlagged() {
+		RegressionDetector detector = new RegressionDetector(history("order", 200, 220, 180, 210, 190), 3.0, 5, 100);
+
+		com.lotaris.rox.common.model.v1.Test slow = result("order", 900);
+		assertTrue("The test should be flagged", detector.check(slow));
+		assertTrue("The test should be tagged", slow.getTags().contains(RegressionDetector.TAG));
+		assertEquals("The baseline should be the 95th percentile", "220", slow.getData().get(RegressionDetector.BASELINE));
+		assertEquals("The ratio to the baseline should be sent", "4.1", slow.getData().get(RegressionDetector.RATIO));
+
+		assertFalse("A test within the factor should not be flagged", detector.check(result("order", 600)));
+		assertEquals("The summary should count the flagged tests", 1, detector.getRegressionCount());
+		assertTrue("The summary should detail the flagged test", detector.getSummary().contains("order (order): 900 ms"));
+	}
+
+	@Test
+	@RoxableTest(key = "7f5b1a93e06c")
+	public void testWithoutEnoughHistoryOrTooShortShouldNotBeFlagged() {
+		assertFalse("A test known for too few runs should not be flagged",
+			new RegressionDetector(history("order", 200, 210), 3.0, 5, 100).check(result("order", 5000)));
+
+		assertFalse("A test shorter than the minimum duration should not be flagged",
+			new RegressionDetector(history("order", 10, 10, 10, 10, 10), 3.0, 5, 100).check(result("order", 90)));
+
+		assertFalse("An unknown test should not be flagged",
+			new RegressionDetector(history("order", 200, 210, 200, 210, 200), 3.0, 5, 100).check(result("payment", 5000)));
+	}
+}
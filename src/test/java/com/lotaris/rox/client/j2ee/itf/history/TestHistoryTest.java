@@ -0,0 +1,117 @@
+package com.lotaris.rox.client.j2ee.itf.history;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.common.model.v1.ModelFactory;
+import com.lotaris.rox.core.serializer.json.JsonSerializer;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class TestHistoryTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static com.lotaris.rox.common.model.v1.Test result(String key, long duration, boolean passed) {
+		return ModelFactory.createTest(key, key, "category", 0L, duration, null, passed, 0, null, null, null);
+	}
+
+	@Test
+	@RoxableTest(key = "8d3f1e60b2a7")
+	public void recordedRunsShouldBeLoadedBack() throws IOException {
+		File index = new File(folder.getRoot(), "history.idx");
+
+		TestHistory.record(index, "run-1", "1.0.0", Arrays.asList(result("fast", 10, true), result("failed", 50, false)));
+		TestHistory.record(index, "run-2", "1.0.0", Arrays.asList(result("fast", 12, true), result("slow", 900, true)));
+
+		TestHistory history = TestHistory.load(index, null);
+
+		assertEquals("Both runs should be known, the most recent first", Arrays.asList("run-2", "run-1"), history.getRuns());
+		assertEquals("All the tests should be known", 3, history.size());
+		assertEquals("The last duration should be kept", 12L, history.getDuration("fast"));
+		assertEquals("The duration of an unknown test should be -1", -1L, history.getDuration("unknown"));
+		assertFalse("The test did not fail in the last run", history.hasFailedLastRun("failed"));
+		assertTrue("The test failed in one of the last two runs", history.hasFailedInLastRuns("failed", 2));
+	}
+
+	@Test
+	@RoxableTest(key = "6a2e9d04c7b1")
+	public void outcomesOfTheStreamedTestsShouldBeRecorded() throws IOException {
+		File index = new File(folder.getRoot(), "history.idx");
+
+		RunOutcomes outcomes = new RunOutcomes();
+		for (int i = 0; i < 2000; i++) {
+			outcomes.add(result("test-" + i, i, i % 2 == 0));
+		}
+
+		TestHistory.record(index, "run-1", "1.0.0", outcomes);
+
+		TestHistory history = TestHistory.load(index, null);
+
+		assertEquals("All the streamed tests should be known", 2000, history.size());
+		assertEquals("The duration of a streamed test should be kept", 1999L, history.getDuration("test-1999"));
+		assertTrue("The failure of a streamed test should be kept", history.hasFailedLastRun("test-1"));
+		assertFalse("The success of a streamed test should be kept", history.hasFailedLastRun("test-2"));
+	}
+
+	@Test
+	@RoxableTest(key = "c5a09e4d7f13")
+	public void missingIndexShouldBeBuiltFromTheLastSavedPayload() throws IOException {
+		File payloads = folder.newFolder("payloads");
+		File index = new File(folder.getRoot(), "history.idx");
+
+		List<com.lotaris.rox.common.model.v1.Test> tests = Arrays.asList(result("slow", 900, true), result("failed", 50, false));
+		try (OutputStreamWriter out = new OutputStreamWriter(new FileOutputStream(new File(payloads, "payload")), "UTF-8")) {
+			new JsonSerializer().serializePayload(out, ModelFactory.createPayload(ModelFactory.createTestRun("project", "1.0.0", 100L, 42L, null, "saved-run", tests)), false);
+		}
+
+		TestHistory history = TestHistory.load(index, payloads);
+
+		assertEquals("The run of the payload should be known", Arrays.asList("saved-run"), history.getRuns());
+		assertTrue("The failure of the payload should be known", history.hasFailedLastRun("failed"));
+		assertTrue("The index should be written", index.exists());
+	}
+
+	@Test
+	@RoxableTest(key = "0b7c3f5e9a21")
+	public void durationsShouldBeKeptForTheBaselines() throws IOException {
+		File index = new File(folder.getRoot(), "history.idx");
+
+		for (int i = 1; i <= TestHistory.MAX_DURATIONS + 5; i++) {
+			TestHistory.record(index, "run-" + i, "1.0.0", Arrays.asList(result("slow", i * 10, true)));
+		}
+
+		TestHistory history = TestHistory.load(index, null);
+
+		assertEquals("Only the last durations should be kept", TestHistory.MAX_DURATIONS, history.getDurationCount("slow"));
+		assertEquals("The percentile should be computed from the last durations", 240L, history.getDurationPercentile("slow", 95));
+		assertTrue("The moving average should follow the last durations", history.getAverageDuration("slow") > 150 && history.getAverageDuration("slow") < 250);
+		assertEquals("An unknown test should have no duration", 0, history.getDurationCount("unknown"));
+	}
+
+	@Test
+	@RoxableTest(key = "f1b63a0e8d57")
+	public void corruptedDurationCountShouldNotBeLoaded() throws IOException {
+		File index = new File(folder.getRoot(), "history.idx");
+		TestHistory.record(index, "run-1", "1.0.0", Arrays.asList(result("slow", 900, true)));
+
+		// The count of durations is the last int before the single duration of the single test
+		try (RandomAccessFile file = new RandomAccessFile(index, "rw")) {
+			file.seek(file.length() - 8);
+			file.writeInt(Integer.MAX_VALUE);
+		}
+
+		TestHistory history = TestHistory.load(index, null);
+
+		assertEquals("The corrupted history should not be loaded", 0, history.size());
+		assertEquals("The corrupted history should have no run", 0, history.getRunCount());
+	}
+}
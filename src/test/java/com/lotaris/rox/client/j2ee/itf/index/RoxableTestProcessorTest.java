@@ -0,0 +1,149 @@
+package com.lotaris.rox.client.j2ee.itf.index;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.annotations.TestFlag;
+import com.lotaris.rox.client.j2ee.itf.index.RoxableTestIndex.IndexedTest;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+public class RoxableTestProcessorTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final String ORDER_TEST =
+		"package sample;\n" +
+		"import com.lotaris.j2ee.itf.annotations.NoRollback;\n" +
+		"import com.lotaris.rox.annotations.RoxableTest;\n" +
+		"import com.lotaris.rox.annotations.RoxableTestClass;\n" +
+		"@RoxableTestClass(tags = \"order\", category = \"Orders\")\n" +
+		"public class OrderTest {\n" +
+		"  @RoxableTest(key = \"a1b2c3d4e5f6\", name = \"Create, then pay\", tags = \"payment\", tickets = \"ROX-42\")\n" +
+		"  @NoRollback\n" +
+		"  public void createOrder() {}\n" +
+		"  @RoxableTest(key = \"b2c3d4e5f6a1\")\n" +
+		"  public void createOrder(String[] items, int count) {}\n" +
+		"  public void helper() {}\n" +
+		"}\n";
+
+	private static final String EMPTY_TEST =
+		"package sample;\n" +
+		"public class EmptyTest {\n" +
+		"  public void helper() {}\n" +
+		"}\n";
+
+	private static final String DUPLICATE_TEST =
+		"package sample;\n" +
+		"import com.lotaris.rox.annotations.RoxableTest;\n" +
+		"public class DuplicateTest {\n" +
+		"  @RoxableTest(key = \"a1b2c3d4e5f6\")\n" +
+		"  public void createOrderAgain() {}\n" +
+		"}\n";
+
+	private boolean compile(File output, DiagnosticCollector<JavaFileObject> diagnostics, String... sources) throws IOException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		assumeNotNull(compiler);
+
+		File sourceDir = folder.newFolder();
+		File[] files = new File[sources.length];
+
+		for (int i = 0; i < sources.length; i++) {
+			String className = sources[i].substring(sources[i].indexOf("public class ") + 13, sources[i].indexOf(" {"));
+			files[i] = new File(sourceDir, className + ".java");
+			Files.write(files[i].toPath(), sources[i].getBytes(Charset.forName("UTF-8")));
+		}
+
+		try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null)) {
+			JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+				Arrays.asList("-d", output.getPath(), "-classpath", System.getProperty("java.class.path")),
+				null, fileManager.getJavaFileObjects(files));
+
+			task.setProcessors(Collections.singletonList(new RoxableTestProcessor()));
+
+			return task.call();
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "5c0e9a2d71b4")
+	public void indexShouldDescribeTheTestsCompiled() throws Exception {
+		File output = folder.newFolder();
+
+		assertTrue("The sample tests should compile", compile(output, new DiagnosticCollector<JavaFileObject>(), ORDER_TEST));
+		assertTrue("The index should be generated", new File(output, RoxableTestIndex.RESOURCE).isFile());
+
+		try (URLClassLoader loader = new URLClassLoader(new URL[] { output.toURI().toURL() }, null)) {
+			RoxableTestIndex index = RoxableTestIndex.forClassLoader(loader);
+			IndexedTest test = index.get("sample.OrderTest", "createOrder()");
+
+			assertEquals("The test should be indexed with its key", "a1b2c3d4e5f6", test.getKey());
+			assertEquals("The name should be indexed", "Create, then pay", test.getName());
+			assertEquals("The category of the class should be inherited", "Orders", test.getCategory());
+			assertEquals("The tags of the method should come first", Arrays.asList("payment", "order"), test.getTags());
+			assertEquals("The tickets should be indexed", Arrays.asList("ROX-42"), test.getTickets());
+			assertFalse("The test should not be rolled back", test.isRollback());
+
+			IndexedTest overload = index.get("sample.OrderTest", "createOrder(java.lang.String[],int)");
+			assertEquals("The overloaded method should be indexed with its own key", "b2c3d4e5f6a1", overload.getKey());
+
+			IndexedTest helper = index.get("sample.OrderTest", "helper()");
+			assertNull("A method which is not annotated should have no key", helper.getKey());
+			assertTrue("A method which is not annotated should keep the class metadata", helper.isClassAnnotated());
+
+			assertNull("A class which is not indexed should not be found", index.get("sample.OtherTest", "createOrder()"));
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "7a4c1e9b2d60")
+	public void indexShouldBeOverwrittenWhenNoTestIsCompiled() throws Exception {
+		File output = folder.newFolder();
+		File index = new File(output, RoxableTestIndex.RESOURCE);
+
+		assertTrue("The sample tests should compile", compile(output, new DiagnosticCollector<JavaFileObject>(), ORDER_TEST));
+		assertTrue("The sample class should compile", compile(output, new DiagnosticCollector<JavaFileObject>(), EMPTY_TEST));
+
+		assertTrue("The index should still exist", index.isFile());
+		assertFalse("The tests of the previous build should not remain", new String(Files.readAllBytes(index.toPath()), "UTF-8").contains("a1b2c3d4e5f6"));
+	}
+
+	@Test
+	@RoxableTest(key = "d05b8e3a1f72")
+	public void unknownFlagsShouldBeIgnored() throws Exception {
+		File output = folder.newFolder();
+		File index = new File(output, RoxableTestIndex.RESOURCE);
+		index.getParentFile().mkdirs();
+		Files.write(index.toPath(), "sample.OrderTest\tcreateOrder()\ta1b2c3d4e5f6\t\t\tINACTIVE,UNKNOWN\t\t\ttrue\n".getBytes("UTF-8"));
+
+		try (URLClassLoader loader = new URLClassLoader(new URL[] { output.toURI().toURL() }, null)) {
+			IndexedTest test = RoxableTestIndex.forClassLoader(loader).get("sample.OrderTest", "createOrder()");
+
+			assertEquals("The known flags should be kept", TestFlag.flagsValue(Arrays.asList(TestFlag.INACTIVE)), test.getFlags());
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "e83f6b1c0d95")
+	public void duplicateKeyShouldFailTheCompilation() throws Exception {
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+		assertFalse("A duplicate key should fail the compilation", compile(folder.newFolder(), diagnostics, ORDER_TEST, DUPLICATE_TEST));
+		assertTrue("The error should name the test using the key first", diagnostics.getDiagnostics().toString().contains("is already used by sample."));
+	}
+}
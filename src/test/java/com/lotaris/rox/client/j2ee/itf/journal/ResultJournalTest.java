@@ -0,0 +1,170 @@
+package com.lotaris.rox.client.j2ee.itf.journal;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.client.j2ee.itf.publish.PayloadPublisher;
+import com.lotaris.rox.client.j2ee.itf.publish.PublishResult;
+import com.lotaris.rox.client.j2ee.itf.publish.PublishResult.Outcome;
+import com.lotaris.rox.common.model.v1.ModelFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class ResultJournalTest {
+	private static final PublishResult DELIVERED = new PublishResult(Outcome.SKIPPED, 0, Outcome.SUCCEEDED, 0, 0);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Captor
+	private ArgumentCaptor<List<com.lotaris.rox.common.model.v1.Test>> published;
+
+	@Before
+	public void initCaptors() {
+		MockitoAnnotations.initMocks(this);
+	}
+
+	private File writeJournal(int tests) throws IOException {
+		ResultJournal journal = ResultJournal.create(folder.getRoot(), "run-uid", 1000L, 60000, 2);
+
+		for (int i = 0; i < tests; i++) {
+			journal.append(ModelFactory.createTest("key" + i, "name" + i, "category", 0L, i, null, true, 0, null, null, null));
+		}
+
+		journal.close();
+		return journal.getFile();
+	}
+
+	@Test
+	@RoxableTest(key = "41d8e2b7a0c6")
+	public void journaledResultsShouldBeReadBack() throws IOException {
+		JournalContent content = JournalContent.read(writeJournal(5));
+
+		assertEquals("The uid should be read back", "run-uid", content.getUid());
+		assertEquals("The start date should be read back", 1000L, content.getStartDate());
+		assertEquals("All the results should be read back", 5, content.getTests().size());
+		assertEquals("The results should be read back in order", "key4", content.getTests().get(4).getKey());
+		assertTrue("The journal should be complete", content.isComplete());
+	}
+
+	@Test
+	@RoxableTest(key = "b95f0c3e1a72")
+	public void truncatedTailShouldBeIgnored() throws IOException {
+		File file = writeJournal(3);
+		long length = file.length();
+
+		// The last record starts where a journal of two results ends
+		long lastRecord = writeJournal(2).length();
+
+		for (long size = lastRecord + 1; size < length; size++) {
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.setLength(size);
+			}
+
+			JournalContent content = JournalContent.read(file);
+
+			assertEquals("The complete records should be read when truncated at " + size, 2, content.getTests().size());
+			assertFalse("The journal should be incomplete when truncated at " + size, content.isComplete());
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "6c03a9f5d2e8")
+	public void corruptTailShouldBeIgnored() throws IOException {
+		File file = writeJournal(3);
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(file.length() - 3);
+			int b = raf.read();
+			raf.seek(file.length() - 3);
+			raf.write(b ^ 0xFF);
+		}
+
+		JournalContent content = JournalContent.read(file);
+
+		assertEquals("The records before the corrupt one should be read", 2, content.getTests().size());
+		assertFalse("The journal should be incomplete", content.isComplete());
+	}
+
+	@Test(expected = IOException.class)
+	@RoxableTest(key = "e2a7d4c91f05")
+	public void fileWithoutJournalHeaderShouldBeRejected() throws IOException {
+		File file = folder.newFile("other" + ResultJournal.EXTENSION);
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.writeBytes("Not a journal at all");
+		}
+
+		JournalContent.read(file);
+	}
+
+	@Test
+	@RoxableTest(key = "08f6b1e3c7d4")
+	public void unfinishedJournalsShouldBePublishedAndDeleted() throws IOException {
+		File unfinished = writeJournal(3);
+		ResultJournal running = ResultJournal.create(folder.getRoot(), "running-uid", 2000L, 60000, 100);
+
+		PayloadPublisher publisher = mock(PayloadPublisher.class);
+		when(publisher.publish(anyString(), anyLong(), anyLong(), anyListOf(com.lotaris.rox.common.model.v1.Test.class))).thenReturn(DELIVERED);
+
+		int recovered = new JournalRecovery(folder.getRoot(), publisher).recover();
+
+		verify(publisher).publish(eq("run-uid"), anyLong(), anyLong(), published.capture());
+
+		assertEquals("Only the unfinished journal should be recovered", 1, recovered);
+		assertEquals("The results of the unfinished journal should be published", 3, published.getValue().size());
+		assertFalse("The unfinished journal should be deleted", unfinished.exists());
+		assertTrue("The journal of the running test run should be kept", running.getFile().exists());
+
+		running.delete();
+	}
+
+	@Test
+	@RoxableTest(key = "9a4e1c7f2b60")
+	public void undeliveredJournalsShouldBeKept() throws IOException {
+		File unfinished = writeJournal(3);
+
+		PayloadPublisher publisher = mock(PayloadPublisher.class);
+		when(publisher.publish(anyString(), anyLong(), anyLong(), anyListOf(com.lotaris.rox.common.model.v1.Test.class)))
+			.thenReturn(new PublishResult(Outcome.SKIPPED, 0, Outcome.FAILED, 0, 0));
+
+		int recovered = new JournalRecovery(folder.getRoot(), publisher).recover();
+
+		assertEquals("The undelivered journal should not be counted as recovered", 0, recovered);
+		assertTrue("The undelivered journal should be kept for the next recovery", unfinished.exists());
+	}
+
+	@Test
+	@RoxableTest(key = "c6b28f0d4e13")
+	public void testsMarkedAsPublishedShouldNotBeReadBack() throws IOException {
+		ResultJournal journal = ResultJournal.create(folder.getRoot(), "run-uid", 1000L, 60000, 100);
+
+		for (int i = 0; i < 5; i++) {
+			journal.append(ModelFactory.createTest("key" + i, "name" + i, "category", 0L, i, null, true, 0, null, null, null));
+
+			if (i == 1) {
+				journal.markPublished(0, 2);
+			}
+		}
+
+		journal.markPublished(3, 1);
+		journal.close();
+
+		JournalContent content = JournalContent.read(journal.getFile());
+
+		assertEquals("Only the tests not published should be read back", 2, content.getTests().size());
+		assertEquals("The first test not published should be read back", "key2", content.getTests().get(0).getKey());
+		assertEquals("The last test not published should be read back", "key4", content.getTests().get(1).getKey());
+		assertTrue("The journal should be complete", content.isComplete());
+	}
+}
@@ -0,0 +1,346 @@
+package com.lotaris.rox.client.j2ee.itf.load;
+
+import com.lotaris.j2ee.itf.model.Description;
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.client.j2ee.itf.RoxListener;
+import com.lotaris.rox.client.j2ee.itf.config.ItfConfiguration;
+import com.lotaris.rox.client.j2ee.itf.config.RunConfiguration;
+import com.lotaris.rox.client.j2ee.itf.stub.RoxServerStub;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Drive the ROX listener with synthetic test runs publishing to a {@link RoxServerStub},
+ * to measure the whole path from the end of the tests to the payloads accepted by ROX:
+ * creation and storage of the results, serialization and upload of the payloads.
+ *
+ * Each run has its own listener and thread, the tests of a run being ended one after
+ * the other at the configured rate. The time spent by the listener at the end of each
+ * test and at the end of each run is measured and summarized in a {@link Report}.
+ */
+public class LoadGenerator {
+	private static final String[] MESSAGES = {
+		null,
+		null,
+		"Expected the order to be refunded but it was CANCELLED",
+		null,
+		"java.lang.IllegalStateException: The account is locked\n\tat com.example.AccountService.login(AccountService.java:142)"
+	};
+
+	private final RoxServerStub server;
+
+	private int tests = 1000;
+	private int runs = 1;
+	private int rate;
+	private boolean payloadStreaming;
+	private boolean gzip;
+	private boolean chunked;
+	private int maxChunkTests = 5000;
+	private int connections = 4;
+
+	/**
+	 * @param server The stub receiving the payloads
+	 */
+	public LoadGenerator(RoxServerStub server) {
+		this.server = server;
+	}
+
+	/**
+	 * @param tests The number of tests of each run
+	 * @return The generator
+	 */
+	public LoadGenerator tests(int tests) {
+		this.tests = tests;
+		return this;
+	}
+
+	/**
+	 * @param runs The number of runs executed in parallel
+	 * @return The generator
+	 */
+	public LoadGenerator runs(int runs) {
+		this.runs = runs;
+		return this;
+	}
+
+	/**
+	 * @param rate The number of tests ended per second in each run, 0 for as fast as possible
+	 * @return The generator
+	 */
+	public LoadGenerator rate(int rate) {
+		this.rate = rate;
+		return this;
+	}
+
+	/**
+	 * @param payloadStreaming True to write the payloads in a single pass
+	 * @param gzip True to compress the payloads written in a single pass
+	 * @return The generator
+	 */
+	public LoadGenerator payloadStreaming(boolean payloadStreaming, boolean gzip) {
+		this.payloadStreaming = payloadStreaming;
+		this.gzip = gzip;
+		return this;
+	}
+
+	/**
+	 * @param maxChunkTests The maximum number of tests of a chunk
+	 * @param connections The maximum number of chunks uploaded at the same time
+	 * @return The generator
+	 */
+	public LoadGenerator chunked(int maxChunkTests, int connections) {
+		this.chunked = true;
+		this.maxChunkTests = maxChunkTests;
+		this.connections = connections;
+		return this;
+	}
+
+	/**
+	 * Execute the runs in parallel and wait for their payloads to be published
+	 *
+	 * @return The measures of the runs
+	 * @throws Exception When a run fails
+	 */
+	public Report generate() throws Exception {
+		final RunConfiguration configuration = new RunConfiguration.Builder(createConfiguration()).build();
+		final List<Method> methods = getTestMethods();
+
+		ExecutorService executor = Executors.newFixedThreadPool(runs);
+		List<Future<long[]>> futures = new ArrayList<>();
+
+		long start = System.nanoTime();
+
+		try {
+			for (int i = 0; i < runs; i++) {
+				futures.add(executor.submit(new Callable<long[]>() {
+					@Override
+					public long[] call() {
+						return run(configuration, methods);
+					}
+				}));
+			}
+
+			long[] testEnds = new long[runs * tests];
+			long[] runEnds = new long[runs];
+
+			for (int i = 0; i < runs; i++) {
+				long[] measures = futures.get(i).get();
+				System.arraycopy(measures, 0, testEnds, i * tests, tests);
+				runEnds[i] = measures[tests];
+			}
+
+			return new Report(runs, tests, System.nanoTime() - start, testEnds, runEnds, server.getAccepted(), server.getRejected(), server.getReceivedBytes());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Execute a run
+	 *
+	 * @return The time spent at the end of each test, followed by the time spent at the end of the run, in nanoseconds
+	 */
+	private long[] run(RunConfiguration configuration, List<Method> methods) {
+		long[] measures = new long[tests + 1];
+		long interval = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+
+		RoxListener listener = new RoxListener();
+		listener.setConfiguration(configuration);
+		listener.setUid(UUID.randomUUID().toString());
+		listener.testRunStart();
+
+		long start = System.nanoTime();
+
+		for (int i = 0; i < tests; i++) {
+			Method method = methods.get(i % methods.size());
+			Description description = new Description("load", method.getAnnotation(com.lotaris.j2ee.itf.annotations.Test.class), method);
+			description.addData("iteration", Integer.toString(i));
+
+			if (interval > 0) {
+				long wait = start + i * interval - System.nanoTime();
+				if (wait > 0) {
+					LockSupport.parkNanos(wait);
+				}
+			}
+
+			listener.testStart(description);
+
+			String message = MESSAGES[i % MESSAGES.length];
+			if (message == null) {
+				description.pass();
+			}
+			else {
+				description.fail(message);
+			}
+
+			long testEnd = System.nanoTime();
+			listener.testEnd(description);
+			measures[i] = System.nanoTime() - testEnd;
+		}
+
+		long runEnd = System.nanoTime();
+		listener.testRunEnd();
+		measures[tests] = System.nanoTime() - runEnd;
+
+		return measures;
+	}
+
+	/**
+	 * @return The configuration of the ROX client pointing at the stub
+	 */
+	private ItfConfiguration createConfiguration() {
+		ItfConfiguration configuration = mock(ItfConfiguration.class);
+
+		when(configuration.isPublish()).thenReturn(true);
+		when(configuration.getServerConfiguration()).thenReturn(server.createServerConfiguration());
+		when(configuration.getProjectApiId()).thenReturn("load");
+		when(configuration.getProjectVersion()).thenReturn("1.0.0");
+		when(configuration.getTags()).thenReturn(Collections.<String>emptySet());
+		when(configuration.getTickets()).thenReturn(Collections.<String>emptySet());
+		when(configuration.isPayloadStreaming()).thenReturn(payloadStreaming);
+		when(configuration.isPayloadGzip()).thenReturn(gzip);
+		when(configuration.isChunkedUpload()).thenReturn(chunked);
+		when(configuration.getUploadMaxChunkSize()).thenReturn(Integer.MAX_VALUE);
+		when(configuration.getUploadMaxChunkTests()).thenReturn(maxChunkTests);
+		when(configuration.getUploadConnections()).thenReturn(connections);
+		when(configuration.getUploadRetries()).thenReturn(3);
+		when(configuration.getUploadRetryDelay()).thenReturn(10);
+
+		return configuration;
+	}
+
+	private static List<Method> getTestMethods() {
+		List<Method> methods = new ArrayList<>();
+
+		for (Method method : LoadGenerator.class.getMethods()) {
+			if (method.getAnnotation(RoxableTest.class) != null) {
+				methods.add(method);
+			}
+		}
+
+		// The order of the reflected methods is not specified, keep the runs comparable
+		Collections.sort(methods, new Comparator<Method>() {
+			@Override
+			public int compare(Method left, Method right) {
+				return left.getName().compareTo(right.getName());
+			}
+		});
+
+		return methods;
+	}
+
+	@RoxableTest(key = "7e1d0c5a9b01")
+	@com.lotaris.j2ee.itf.annotations.Test
+	public void shouldCreateTheOrder(Description description) {}
+
+	@RoxableTest(key = "7e1d0c5a9b02", tags = { "payment", "order" })
+	@com.lotaris.j2ee.itf.annotations.Test
+	public void shouldPayTheOrder(Description description) {}
+
+	@RoxableTest(key = "7e1d0c5a9b03", category = "Account", tickets = "JIRA-88")
+	@com.lotaris.j2ee.itf.annotations.Test
+	public void shouldLockTheAccount(Description description) {}
+
+	@RoxableTest(key = "7e1d0c5a9b04", name = "Send the monthly report", tags = "report")
+	@com.lotaris.j2ee.itf.annotations.Test
+	public void shouldSendTheMonthlyReport(Description description) {}
+
+	/**
+	 * Measures of the runs of a load
+	 */
+	public static class Report {
+		private final int runs;
+		private final int tests;
+		private final long duration;
+		private final long[] testEnds;
+		private final long[] runEnds;
+		private final int accepted;
+		private final int rejected;
+		private final long receivedBytes;
+
+		Report(int runs, int tests, long duration, long[] testEnds, long[] runEnds, int accepted, int rejected, long receivedBytes) {
+			this.runs = runs;
+			this.tests = tests;
+			this.duration = duration;
+			this.testEnds = testEnds;
+			this.runEnds = runEnds;
+			this.accepted = accepted;
+			this.rejected = rejected;
+			this.receivedBytes = receivedBytes;
+
+			Arrays.sort(this.testEnds);
+			Arrays.sort(this.runEnds);
+		}
+
+		/**
+		 * @return The number of tests published per second, from the start of the runs to the end of the last publication
+		 */
+		public double getThroughput() {
+			return runs * (double) tests * TimeUnit.SECONDS.toNanos(1) / duration;
+		}
+
+		/**
+		 * @param percentile The percentile, between 0 and 100
+		 * @return The time spent by the listener at the end of a test, in nanoseconds
+		 */
+		public long getTestEndLatency(double percentile) {
+			return percentile(testEnds, percentile);
+		}
+
+		/**
+		 * @param percentile The percentile, between 0 and 100
+		 * @return The time spent by the listener at the end of a run to serialize and send the payloads, in nanoseconds
+		 */
+		public long getRunEndLatency(double percentile) {
+			return percentile(runEnds, percentile);
+		}
+
+		public int getAccepted() {
+			return accepted;
+		}
+
+		public int getRejected() {
+			return rejected;
+		}
+
+		public long getReceivedBytes() {
+			return receivedBytes;
+		}
+
+		private static long percentile(long[] sorted, double percentile) {
+			if (sorted.length == 0) {
+				return 0;
+			}
+			int rank = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+			return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ENGLISH,
+				"%d runs of %d tests in %.1f ms, %.0f tests/s%n" +
+				"  test end: p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n" +
+				"  run end (serialize and send): p50 %.1f ms, max %.1f ms%n" +
+				"  payloads: %d accepted, %d rejected, %d bytes received",
+				runs, tests, duration / 1e6, getThroughput(),
+				getTestEndLatency(50) / 1e3, getTestEndLatency(99) / 1e3, getTestEndLatency(99.9) / 1e3, getTestEndLatency(100) / 1e3,
+				getRunEndLatency(50) / 1e6, getRunEndLatency(100) / 1e6,
+				accepted, rejected, receivedBytes);
+		}
+	}
+}
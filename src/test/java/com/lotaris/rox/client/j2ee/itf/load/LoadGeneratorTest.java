@@ -0,0 +1,68 @@
+package com.lotaris.rox.client.j2ee.itf.load;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.client.j2ee.itf.stub.RoxServerStub;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * End-to-end load of the publish path against the ROX stub. The load is small by
+ * default to keep the build fast, and can be raised from the command line:
+ *
+ * <pre>
+ * mvn test -Dtest=LoadGeneratorTest -Drox.load.tests=100000 -Drox.load.runs=4 -Drox.load.rate=0
+ * </pre>
+ */
+public class LoadGeneratorTest {
+	private static final Logger LOGGER = LoggerFactory.getLogger(LoadGeneratorTest.class);
+
+	private static final int TESTS = Integer.getInteger("rox.load.tests", 2000);
+	private static final int RUNS = Integer.getInteger("rox.load.runs", 2);
+	private static final int RATE = Integer.getInteger("rox.load.rate", 0);
+
+	@Test
+	@RoxableTest(key = "e49b2d07c6f1")
+	public void parallelRunsShouldBePublishedToTheStub() throws Exception {
+		try (RoxServerStub server = new RoxServerStub()) {
+			server.withRecording(TESTS * RUNS <= 10000);
+
+			LoadGenerator.Report report = new LoadGenerator(server)
+				.tests(TESTS)
+				.runs(RUNS)
+				.rate(RATE)
+				.payloadStreaming(true, true)
+				.generate();
+
+			LOGGER.info("Single-pass payloads: {}", report);
+
+			assertEquals("Each run should publish one payload", RUNS, report.getAccepted());
+			assertEquals("No payload should be rejected", 0, report.getRejected());
+			if (TESTS * RUNS <= 10000) {
+				assertEquals("All the tests should reach the stub", TESTS * RUNS, server.countTests());
+			}
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "38a6f0d1b52e")
+	public void chunksShouldBeRetriedUnderInjectedFaults() throws Exception {
+		try (RoxServerStub server = new RoxServerStub()) {
+			server.withLatency(5).withSlowReads(4 * 1024 * 1024).failNext(2, 503);
+
+			LoadGenerator.Report report = new LoadGenerator(server)
+				.tests(TESTS)
+				.runs(RUNS)
+				.chunked(Math.max(1, TESTS / 4), 2)
+				.generate();
+
+			LOGGER.info("Chunked upload with faults: {}", report);
+
+			assertEquals("The failed chunks should be rejected once", 2, report.getRejected());
+			assertEquals("All the chunks should be accepted once retried", RUNS * 4, report.getAccepted());
+			assertEquals("All the tests should reach the stub", TESTS * RUNS, server.countTests());
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package com.lotaris.rox.client.j2ee.itf.metadata;
+
+import com.lotaris.j2ee.itf.model.Description;
+import com.lotaris.rox.annotations.RoxableTest;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestMetadataCacheTest {
+	private Description description;
+	private AtomicInteger resolutions;
+	private TestMetadataCache.Resolver resolver;
+
+	@Before
+	public void createDescription() {
+		try {
+			Method m = TestMetadataCacheTest.class.getMethod("dummyMethod", Description.class);
+
+			com.lotaris.j2ee.itf.annotations.Test a =
+				m.getAnnotation(com.lotaris.j2ee.itf.annotations.Test.class);
+
+			description = new Description("groupName", a, m);
+		}
+		catch (NoSuchMethodException | SecurityException nme) {}
+
+		TestMetadataCache.clear(TestMetadataCacheTest.class);
+
+		resolutions = new AtomicInteger();
+		resolver = new TestMetadataCache.Resolver() {
+			@Override
+			public TestMetadata resolve(Description description) {
+				resolutions.incrementAndGet();
+				return new TestMetadata(
+					description.getMethod().getAnnotation(RoxableTest.class), null, "Dummy method", null, 0,
+					new HashSet<String>(), new HashSet<String>(), new HashMap<String, String>());
+			}
+		};
+	}
+
+	/**
+	 * This method is never run. It is used only to create
+	 * the description object.
+	 */
+	@RoxableTest(key = "cacheKey", tags = "dummyTag", tickets = "dummyTicket")
+	@com.lotaris.j2ee.itf.annotations.Test
+	public Description dummyMethod(Description description) {
+		return description;
+	}
+
+	@Test
+	@RoxableTest(key = "7a3c95e0d1b8")
+	public void metadataShouldBeResolvedOnlyOncePerMethod() {
+		TestMetadata first = TestMetadataCache.get(description, TestMetadataCacheTest.class, resolver);
+		TestMetadata second = TestMetadataCache.get(description, TestMetadataCacheTest.class, resolver);
+
+		assertSame("The cached metadata should be returned", first, second);
+		assertEquals("The metadata should be resolved only once", 1, resolutions.get());
+		assertEquals("The key should come from the method annotation", "cacheKey", first.getKey());
+	}
+
+	@Test
+	@RoxableTest(key = "c4e1f29b60a7")
+	public void metadataShouldBeResolvedAgainOnceTheClassIsCleared() {
+		TestMetadataCache.get(description, TestMetadataCacheTest.class, resolver);
+		TestMetadataCache.clear(TestMetadataCacheTest.class);
+		TestMetadataCache.get(description, TestMetadataCacheTest.class, resolver);
+
+		assertEquals("The metadata should be resolved again", 2, resolutions.get());
+	}
+
+	@Test
+	@RoxableTest(key = "6b2f0d94e7a3")
+	public void metadataShouldBeResolvedOncePerListenerClass() {
+		TestMetadata first = TestMetadataCache.get(description, TestMetadataCacheTest.class, resolver);
+		TestMetadata other = TestMetadataCache.get(description, String.class, resolver);
+
+		assertNotSame("Each listener class should have its own metadata", first, other);
+		assertEquals("The metadata should be resolved once per listener class", 2, resolutions.get());
+		assertSame("The metadata of each listener class should be cached", other, TestMetadataCache.get(description, String.class, resolver));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	@RoxableTest(key = "18d6b0fa3e52")
+	public void cachedMetadataShouldNotBeModifiable() {
+		TestMetadataCache.get(description, TestMetadataCacheTest.class, resolver).getTags().add("tag");
+	}
+
+	@Test
+	@RoxableTest(key = "f05b7c2d8e91")
+	public void emptyMetadataShouldHaveNoKeyWithoutMethodAnnotation() {
+		TestMetadata metadata = new TestMetadata(null, null, "name", null, 0,
+			Collections.<String>emptySet(), Collections.<String>emptySet(), Collections.<String, String>emptyMap());
+
+		assertNull("The key should be null when the method annotation is missing", metadata.getKey());
+	}
+}
@@ -0,0 +1,50 @@
+package com.lotaris.rox.client.j2ee.itf.metrics;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RoxMetricsTest {
+	@Test
+	@RoxableTest(key = "d7c24b0e9a61")
+	public void timerShouldRecordTheCountFailuresAndDurations() {
+		Timer timer = new Timer();
+
+		timer.record(2000000L);
+		timer.record(6000000L, false);
+
+		TimerStats stats = timer.getStats();
+
+		assertEquals("Two operations should be recorded", 2, stats.getCount());
+		assertEquals("One failure should be recorded", 1, stats.getFailures());
+		assertEquals("The total time should be recorded", 8.0, stats.getTotalMillis(), 0.001);
+		assertEquals("The mean time should be computed", 4.0, stats.getMeanMillis(), 0.001);
+		assertEquals("The longest time should be recorded", 6.0, stats.getMaxMillis(), 0.001);
+
+		timer.reset();
+
+		assertEquals("The timer should be empty once reset", 0, timer.getStats().getCount());
+	}
+
+	@Test
+	@RoxableTest(key = "3e85f1a2c0b9")
+	public void metricsShouldBeReadableThroughJmx() throws Exception {
+		RoxMetrics metrics = RoxMetrics.getInstance();
+		metrics.reset();
+		metrics.getSendTimer().record(1000000L, false);
+		metrics.recordPayload(1024);
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(RoxMetrics.OBJECT_NAME);
+
+		CompositeData send = (CompositeData) server.getAttribute(name, "Send");
+
+		assertEquals("The failed send should be visible", 1L, send.get("failures"));
+		assertEquals("The payload size should be visible", 1024L, server.getAttribute(name, "LastPayloadBytes"));
+	}
+}
@@ -0,0 +1,60 @@
+package com.lotaris.rox.client.j2ee.itf.profile;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestProfilerTest {
+	private static volatile byte[] allocated;
+
+	@Test
+	@RoxableTest(key = "b4d17e2a9c03")
+	public void resourcesUsedByTheTestShouldBeAddedToItsData() {
+		TestProfiler profiler = new TestProfiler();
+		Map<String, String> data = new HashMap<>();
+
+		profiler.start();
+		for (int i = 0; i < 16; i++) {
+			allocated = new byte[64 * 1024];
+		}
+		profiler.stop(data);
+
+		if (data.containsKey(TestProfiler.ALLOCATED_BYTES)) {
+			assertTrue("The allocations of the test should be measured", Long.parseLong(data.get(TestProfiler.ALLOCATED_BYTES)) >= 16 * 64 * 1024);
+		}
+
+		if (data.containsKey(TestProfiler.CPU_TIME)) {
+			assertTrue("The CPU time should not be negative", Long.parseLong(data.get(TestProfiler.CPU_TIME)) >= 0);
+		}
+
+		assertTrue("The garbage collection time should be measured", data.containsKey(TestProfiler.GC_TIME));
+	}
+
+	@Test
+	@RoxableTest(key = "61f0a8c5d3e7")
+	public void testEndingOnAnotherThreadShouldNotBeProfiled() throws Exception {
+		final TestProfiler profiler = new TestProfiler();
+		final Map<String, String> data = new HashMap<>();
+
+		profiler.start();
+
+		Thread end = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				profiler.stop(data);
+			}
+		});
+		end.start();
+		end.join();
+
+		assertTrue("The measures of another thread should not be added", data.isEmpty());
+
+		profiler.stop(data);
+		data.clear();
+		profiler.stop(data);
+		assertTrue("A test should be profiled once", data.isEmpty());
+	}
+}
@@ -0,0 +1,224 @@
+package com.lotaris.rox.client.j2ee.itf.publish;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.client.j2ee.itf.publish.AsyncPayloadPublisher.Completion;
+import com.lotaris.rox.client.j2ee.itf.publish.PublishResult.Outcome;
+import com.lotaris.rox.common.model.v1.Payload;
+import java.util.Collections;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class AsyncPayloadPublisherTest {
+	@Mock
+	private PayloadPublisher publisher;
+
+	private ExecutorService executor;
+
+	@Before
+	public void createPublisher() {
+		MockitoAnnotations.initMocks(this);
+		when(publisher.isSave()).thenReturn(true);
+		when(publisher.isPublish()).thenReturn(true);
+		executor = Executors.newFixedThreadPool(2);
+	}
+
+	@After
+	public void shutdownExecutor() {
+		executor.shutdownNow();
+	}
+
+	private static Answer<Object> sleep(final long millis, final Object result) {
+		return new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				Thread.sleep(millis);
+				return result;
+			}
+		};
+	}
+
+	private static Completion record(final AtomicReference<PublishResult> completed, final CountDownLatch called) {
+		return new Completion() {
+			@Override
+			public void completed(PublishResult result) {
+				completed.set(result);
+				called.countDown();
+			}
+		};
+	}
+
+	/**
+	 * Wait for the other channel to start too, counting the channels which saw the other one running
+	 */
+	private static Answer<Object> meet(final CountDownLatch started, final AtomicInteger met, final Object result) {
+		return new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				started.countDown();
+				if (started.await(2, TimeUnit.SECONDS)) {
+					met.incrementAndGet();
+				}
+				return result;
+			}
+		};
+	}
+
+	@Test
+	@RoxableTest(key = "2b7e9f04c1d3")
+	public void saveAndSendShouldRunInParallel() throws Exception {
+		CountDownLatch started = new CountDownLatch(2);
+		AtomicInteger met = new AtomicInteger();
+		doAnswer(meet(started, met, null)).when(publisher).save(any(Payload.class));
+		doAnswer(meet(started, met, true)).when(publisher).send(any(Payload.class));
+
+		PublishResult result = new AsyncPayloadPublisher(publisher, executor, 5000).publish(new Payload()).get(5, TimeUnit.SECONDS);
+
+		assertEquals("The payload should be saved", Outcome.SUCCEEDED, result.getSaveOutcome());
+		assertEquals("The payload should be sent", Outcome.SUCCEEDED, result.getSendOutcome());
+		assertEquals("The save and send should overlap, each running while the other one started", 2, met.get());
+		assertTrue("The publication should be successful", result.isSuccessful());
+	}
+
+	@Test
+	@RoxableTest(key = "d91c38a6f5e0")
+	public void sendShouldTimeOutWhenTheBudgetIsExhausted() throws Exception {
+		doAnswer(sleep(5000, true)).when(publisher).send(any(Payload.class));
+
+		PublishResult result = new AsyncPayloadPublisher(publisher, executor, 100).publish(new Payload()).get(2, TimeUnit.SECONDS);
+
+		assertEquals("The payload should be saved", Outcome.SUCCEEDED, result.getSaveOutcome());
+		assertEquals("The send should time out", Outcome.TIMED_OUT, result.getSendOutcome());
+		assertFalse("The publication should not be successful", result.isSuccessful());
+	}
+
+	@Test
+	@RoxableTest(key = "c81e5a3f09d7")
+	public void cancelShouldCompleteTheRunningChannelsAsCancelled() throws Exception {
+		doAnswer(sleep(5000, true)).when(publisher).send(any(Payload.class));
+
+		AtomicReference<PublishResult> completed = new AtomicReference<>();
+		CountDownLatch called = new CountDownLatch(1);
+		Future<PublishResult> publication = new AsyncPayloadPublisher(publisher, executor, 5000).publish(new Payload(), record(completed, called));
+
+		Thread.sleep(100);
+
+		assertTrue("The publication should be cancelled", publication.cancel(true));
+		assertTrue("The publication should be reported as cancelled", publication.isCancelled());
+		assertTrue("The publication should be done", publication.isDone());
+		assertFalse("A cancelled publication should not be cancelled again", publication.cancel(true));
+		assertTrue("The completion should be called once the send is interrupted", called.await(2, TimeUnit.SECONDS));
+		assertEquals("The save should not be cancelled once completed", Outcome.SUCCEEDED, completed.get().getSaveOutcome());
+		assertEquals("The send should be cancelled", Outcome.CANCELLED, completed.get().getSendOutcome());
+
+		try {
+			publication.get();
+			fail("The result of a cancelled publication should not be available");
+		}
+		catch (CancellationException ce) {
+			// Expected
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "60fa2e8b7c14")
+	public void rejectedPayloadShouldBeReportedAsFailed() throws Exception {
+		when(publisher.isSave()).thenReturn(false);
+		when(publisher.send(any(Payload.class))).thenReturn(false);
+
+		PublishResult result = new AsyncPayloadPublisher(publisher, executor, 5000).publish(new Payload()).get(2, TimeUnit.SECONDS);
+
+		assertEquals("The save should be skipped", Outcome.SKIPPED, result.getSaveOutcome());
+		assertEquals("The send should fail", Outcome.FAILED, result.getSendOutcome());
+		verify(publisher, never()).save(any(Payload.class));
+	}
+
+	@Test
+	@RoxableTest(key = "a3d05e9c71b8")
+	public void testsShouldBeReleasedOnlyOnceTheTimedOutPassIsOver() throws Exception {
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch released = new CountDownLatch(1);
+
+		// A pass blocked on I/O is not stopped by the interruption
+		doAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				while (blocked.getCount() > 0) {
+					try {
+						blocked.await();
+					}
+					catch (InterruptedException ie) {
+						// Ignored like a blocked socket would
+					}
+				}
+				return new PublishResult(Outcome.SUCCEEDED, 0, Outcome.SUCCEEDED, 0, 0);
+			}
+		}).when(publisher).stream(anyString(), anyLong(), anyListOf(com.lotaris.rox.common.model.v1.Test.class));
+
+		Runnable release = new Runnable() {
+			@Override
+			public void run() {
+				released.countDown();
+			}
+		};
+
+		PublishResult result = new AsyncPayloadPublisher(publisher, executor, 100)
+			.stream("uid", 0, Collections.<com.lotaris.rox.common.model.v1.Test>emptyList(), release, null).get(2, TimeUnit.SECONDS);
+
+		assertEquals("The send should time out", Outcome.TIMED_OUT, result.getSendOutcome());
+		assertEquals("The tests should not be released while the pass reads them", 1, released.getCount());
+
+		blocked.countDown();
+
+		assertTrue("The tests should be released once the pass is over", released.await(2, TimeUnit.SECONDS));
+	}
+
+	@Test
+	@RoxableTest(key = "e5a27c90d3b4")
+	public void completionShouldBeToldWhenTheTimedOutSendSucceedsAfterAll() throws Exception {
+		final CountDownLatch blocked = new CountDownLatch(1);
+
+		// A send blocked on I/O is not stopped by the interruption
+		doAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				while (blocked.getCount() > 0) {
+					try {
+						blocked.await();
+					}
+					catch (InterruptedException ie) {
+						// Ignored like a blocked socket would
+					}
+				}
+				return true;
+			}
+		}).when(publisher).send(any(Payload.class));
+
+		AtomicReference<PublishResult> completed = new AtomicReference<>();
+		CountDownLatch called = new CountDownLatch(1);
+		PublishResult result = new AsyncPayloadPublisher(publisher, executor, 100).publish(new Payload(), record(completed, called)).get(2, TimeUnit.SECONDS);
+
+		assertEquals("The send should time out", Outcome.TIMED_OUT, result.getSendOutcome());
+		assertEquals("The completion should wait for the send to end", 1, called.getCount());
+
+		blocked.countDown();
+
+		assertTrue("The completion should be called once the send is over", called.await(2, TimeUnit.SECONDS));
+		assertTrue("The payload should be delivered", completed.get().isDelivered());
+	}
+}
@@ -0,0 +1,53 @@
+package com.lotaris.rox.client.j2ee.itf.publish;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BackgroundExecutorsTest {
+	@After
+	public void shutdownExecutors() {
+		BackgroundExecutors.shutdown();
+	}
+
+	@Test
+	@RoxableTest(key = "4e81c0b7d2a9")
+	public void shutdownShouldStopTheExecutorsCreatedByTheClient() {
+		ExecutorService publishExecutor = BackgroundExecutors.getPublishExecutor(1);
+		ScheduledExecutorService scheduler = BackgroundExecutors.getScheduler();
+
+		BackgroundExecutors.shutdown();
+
+		assertTrue("The publish executor should be shut down", publishExecutor.isShutdown());
+		assertTrue("The scheduler should be shut down", scheduler.isShutdown());
+		assertNotSame("A new executor should be created after the shutdown", publishExecutor, BackgroundExecutors.getPublishExecutor(1));
+	}
+
+	@Test
+	@RoxableTest(key = "b95d3a2e07f1")
+	public void shutdownShouldNotStopTheManagedExecutors() {
+		ExecutorService publishExecutor = Executors.newSingleThreadExecutor();
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+		try {
+			BackgroundExecutors.setExecutors(publishExecutor, scheduler);
+
+			assertSame("The managed executor should be used", publishExecutor, BackgroundExecutors.getPublishExecutor(1));
+			assertSame("The managed scheduler should be used", scheduler, BackgroundExecutors.getScheduler());
+
+			BackgroundExecutors.shutdown();
+
+			assertFalse("The managed executor should not be shut down", publishExecutor.isShutdown());
+			assertFalse("The managed scheduler should not be shut down", scheduler.isShutdown());
+		}
+		finally {
+			publishExecutor.shutdownNow();
+			scheduler.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package com.lotaris.rox.client.j2ee.itf.publish;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.client.j2ee.itf.config.ItfConfiguration;
+import com.lotaris.rox.client.j2ee.itf.config.RunConfiguration;
+import com.lotaris.rox.common.model.v1.ModelFactory;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class ChunkedUploaderTest {
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	/**
+	 * Uploader keeping the payloads instead of sending them, the first attempt to send
+	 * the payload with the failing key being rejected
+	 */
+	private static class RecordingUploader extends ChunkedUploader {
+		private final List<JsonNode> sent = Collections.synchronizedList(new ArrayList<JsonNode>());
+		private final List<Integer> sizes = Collections.synchronizedList(new ArrayList<Integer>());
+		private final String failingKey;
+		private volatile boolean failed;
+
+		RecordingUploader(int maxChunkBytes, int maxChunkTests, String failingKey) {
+			super(new RunConfiguration.Builder(mock(ItfConfiguration.class)).build(), false, maxChunkBytes, maxChunkTests, 3, 2, 1);
+			this.failingKey = failingKey;
+		}
+
+		@Override
+		protected int send(byte[] payload) throws IOException {
+			JsonNode json = MAPPER.readTree(payload);
+
+			for (JsonNode test : json.path("r").path(0).path("t")) {
+				if (test.path("k").asText().equals(failingKey) && !failed) {
+					failed = true;
+					throw new IOException("Connection reset");
+				}
+			}
+
+			sent.add(json);
+			sizes.add(payload.length);
+			return PayloadUpload.ACCEPTED;
+		}
+	}
+
+	/**
+	 * Uploader counting the attempts to send the payloads, all rejected with the same status
+	 */
+	private static class RejectedUploader extends ChunkedUploader {
+		private final AtomicInteger attempts = new AtomicInteger();
+		private final int status;
+
+		RejectedUploader(int status) {
+			super(new RunConfiguration.Builder(mock(ItfConfiguration.class)).build(), false, Integer.MAX_VALUE, Integer.MAX_VALUE, 1, 2, 1);
+			this.status = status;
+		}
+
+		@Override
+		protected int send(byte[] payload) {
+			attempts.incrementAndGet();
+			return status;
+		}
+	}
+
+	private static List<com.lotaris.rox.common.model.v1.Test> createTests(int count) {
+		return createTests(count, "name");
+	}
+
+	private static List<com.lotaris.rox.common.model.v1.Test> createTests(int count, String name) {
+		List<com.lotaris.rox.common.model.v1.Test> tests = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			tests.add(ModelFactory.createTest("key" + i, name + i, "category", 0L, i, null, true, 0, null, null, null));
+		}
+		return tests;
+	}
+
+	@Test
+	@RoxableTest(key = "2b7e94c0d1a5")
+	public void testRunShouldBeSplitInChunksSharingTheUid() {
+		RecordingUploader uploader = new RecordingUploader(Integer.MAX_VALUE, 10, "key17");
+
+		assertTrue("The upload should succeed once the failed chunk is retried", uploader.upload("run-uid", 42L, createTests(35)));
+		assertTrue("The chunk with the failing key should have failed once", uploader.failed);
+		assertEquals("The tests should be split in chunks of at most 10 tests", 4, uploader.sent.size());
+
+		Set<String> keys = new HashSet<>();
+		for (JsonNode payload : uploader.sent) {
+			assertEquals("All the chunks should share the uid", "run-uid", payload.path("u").asText());
+			assertEquals("All the chunks should have the duration of the run", 42L, payload.path("d").asLong());
+			assertTrue("A chunk should have at most 10 tests", payload.path("r").path(0).path("t").size() <= 10);
+
+			for (JsonNode test : payload.path("r").path(0).path("t")) {
+				keys.add(test.path("k").asText());
+			}
+		}
+
+		assertEquals("Each test should be uploaded once", 35, keys.size());
+	}
+
+	@Test
+	@RoxableTest(key = "d05f3a8e6b12")
+	public void chunksShouldBeBoundedInSize() {
+		RecordingUploader uploader = new RecordingUploader(1000, Integer.MAX_VALUE, null);
+
+		// The names take more bytes in UTF-8 than chars
+		assertTrue("The upload should succeed", uploader.upload("run-uid", 42L, createTests(200, "\u00e9t\u00e9 \u6e2c\u8a66 \ud83d\ude80 ")));
+		assertTrue("The tests should be split in several chunks", uploader.sent.size() > 1);
+
+		int tests = 0;
+		for (int i = 0; i < uploader.sent.size(); i++) {
+			assertTrue("A chunk should not exceed the size bound in bytes, its uid and project included", uploader.sizes.get(i) <= 1000);
+			tests += uploader.sent.get(i).path("r").path(0).path("t").size();
+		}
+
+		assertEquals("All the tests should be uploaded", 200, tests);
+	}
+
+	@Test
+	@RoxableTest(key = "e8a42f6d1c39")
+	public void invalidChunksShouldNotBeRetried() {
+		RejectedUploader invalid = new RejectedUploader(400);
+		assertFalse("The upload should fail", invalid.upload("run-uid", 42L, createTests(1)));
+		assertEquals("A chunk rejected as invalid should not be sent again", 1, invalid.attempts.get());
+
+		RejectedUploader throttled = new RejectedUploader(429);
+		assertFalse("The upload should fail", throttled.upload("run-uid", 42L, createTests(1)));
+		assertEquals("A throttled chunk should be sent again", 3, throttled.attempts.get());
+
+		RejectedUploader unavailable = new RejectedUploader(503);
+		assertFalse("The upload should fail", unavailable.upload("run-uid", 42L, createTests(1)));
+		assertEquals("A chunk rejected by an unavailable server should be sent again", 3, unavailable.attempts.get());
+	}
+}
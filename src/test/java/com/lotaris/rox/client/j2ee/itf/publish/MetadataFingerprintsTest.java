@@ -0,0 +1,114 @@
+package com.lotaris.rox.client.j2ee.itf.publish;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.client.j2ee.itf.history.RegressionDetector;
+import com.lotaris.rox.client.j2ee.itf.profile.TestProfiler;
+import com.lotaris.rox.common.config.Configuration;
+import com.lotaris.rox.common.model.v1.ModelFactory;
+import com.lotaris.rox.commons.optimize.OptimizerStore;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MetadataFingerprintsTest {
+	/**
+	 * Store keeping the fingerprints in memory, the ones of a run being kept only when it is published
+	 */
+	private static class MemoryStore implements OptimizerStore {
+		private final Map<String, String> published = new HashMap<>();
+		private final Map<String, String> pending = new HashMap<>();
+
+		@Override
+		public void start(Configuration configuration) {
+			pending.clear();
+		}
+
+		@Override
+		public void stop(boolean success) {
+			if (success) {
+				published.putAll(pending);
+			}
+		}
+
+		@Override
+		public boolean testHasChanged(String apiId, String version, String key, String footprint) {
+			return !footprint.equals(published.get(key));
+		}
+
+		@Override
+		public void storeTestFootprint(String apiId, String version, String key, String footprint) {
+			pending.put(key, footprint);
+		}
+	}
+
+	private static com.lotaris.rox.common.model.v1.Test createTest(String tag) {
+		com.lotaris.rox.common.model.v1.Test test = ModelFactory.createTest("key", "Create the order", "Order", 0L, 42L, null, true, 0, new HashSet<String>(), new HashSet<String>(), null);
+		test.addTag(tag);
+		return test;
+	}
+
+	private static String serialize(PayloadWriter writer, com.lotaris.rox.common.model.v1.Test test) throws IOException {
+		return new String(writer.serialize(test), "UTF-8");
+	}
+
+	@Test
+	@RoxableTest(key = "91c4e7a0b3d6")
+	public void unchangedMetadataShouldBeSentCompactOnceItWasPublished() throws Exception {
+		MemoryStore store = new MemoryStore();
+		PayloadWriter writer = new PayloadWriter("project", "1.0.0", null);
+
+		MetadataFingerprints failedRun = new MetadataFingerprints(store, "project", "1.0.0");
+		assertTrue("The first run should send the name", serialize(writer, failedRun.compact(createTest("order"))).contains("Create the order"));
+		failedRun.stop(false);
+
+		MetadataFingerprints publishedRun = new MetadataFingerprints(store, "project", "1.0.0");
+		assertTrue("The metadata should be sent again when the previous run was not published", serialize(writer, publishedRun.compact(createTest("order"))).contains("Create the order"));
+		publishedRun.stop(true);
+
+		MetadataFingerprints nextRun = new MetadataFingerprints(store, "project", "1.0.0");
+		String compact = serialize(writer, nextRun.compact(createTest("order")));
+		assertFalse("The unchanged name should not be sent", compact.contains("Create the order"));
+		assertFalse("The unchanged tags should not be sent", compact.contains("order\""));
+		assertTrue("The key should still be sent", compact.contains("\"key\""));
+		assertTrue("The duration should still be sent", compact.contains("42"));
+
+		assertTrue("A changed tag should send the metadata again", serialize(writer, nextRun.compact(createTest("payment"))).contains("Create the order"));
+	}
+
+	@Test
+	@RoxableTest(key = "8e15c9d3a6f0")
+	public void executionDataShouldBeSentWithTheFullTest() {
+		com.lotaris.rox.common.model.v1.Test test = createTest("order");
+		com.lotaris.rox.common.model.v1.Test profiled = createTest("order");
+		profiled.addData(TestProfiler.CPU_TIME, "1234");
+		profiled.addData(RegressionDetector.RATIO, "3.5");
+
+		assertNotEquals("The measures of an execution should be part of the fingerprint like in the ROX payload optimizer",
+			MetadataFingerprints.footprint(test), MetadataFingerprints.footprint(profiled));
+
+		MemoryStore store = new MemoryStore();
+		MetadataFingerprints publishedRun = new MetadataFingerprints(store, "project", "1.0.0");
+		publishedRun.compact(test);
+		publishedRun.stop(true);
+
+		com.lotaris.rox.common.model.v1.Test sent = new MetadataFingerprints(store, "project", "1.0.0").compact(profiled);
+		assertSame("The profiled test should be sent in full", profiled, sent);
+
+		com.lotaris.rox.common.model.v1.Test compact = new MetadataFingerprints(store, "project", "1.0.0").compact(createTest("order"));
+		assertNull("The compact test should only have the fields of the compact form", compact.getData());
+	}
+
+	@Test
+	@RoxableTest(key = "2f0d8b6c14a7")
+	public void fingerprintShouldMatchTheRoxPayloadOptimizer() {
+		com.lotaris.rox.common.model.v1.Test test = createTest("order");
+
+		assertEquals("The fingerprint should be the one of the ROX payload optimizer",
+			com.lotaris.rox.common.utils.FootprintGenerator.footprint("OrderCreate the order0order"),
+			MetadataFingerprints.footprint(test));
+	}
+}
@@ -0,0 +1,129 @@
+package com.lotaris.rox.client.j2ee.itf.publish;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.common.config.Configuration;
+import com.lotaris.rox.common.config.ServerConfiguration;
+import com.lotaris.rox.common.model.v1.ModelFactory;
+import com.lotaris.rox.core.connector.Connector;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class PayloadUploadTest {
+	private HttpServer server;
+	private ServerConfiguration serverConfiguration;
+
+	/**
+	 * Content type and body of the last payload received, the body uncompressed
+	 */
+	private String contentType;
+	private byte[] body;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		final String url = "http://localhost:" + server.getAddress().getPort();
+
+		server.createContext("/api", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				answer(exchange, 200, ("{\"_links\":{\"v1:test-payloads\":{\"href\":\"" + url + "/payloads\"}}}").getBytes("UTF-8"));
+			}
+		});
+
+		server.createContext("/payloads", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				InputStream in = exchange.getRequestBody();
+				if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+					in = new GZIPInputStream(in);
+				}
+
+				contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+				body = read(in);
+				answer(exchange, PayloadUpload.ACCEPTED, new byte[0]);
+			}
+		});
+
+		server.start();
+
+		serverConfiguration = mock(ServerConfiguration.class);
+		when(serverConfiguration.getApiUrl()).thenReturn(url + "/api");
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	private static void answer(HttpExchange exchange, int status, byte[] content) throws IOException {
+		exchange.sendResponseHeaders(status, content.length > 0 ? content.length : -1);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(content);
+		}
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	private static List<com.lotaris.rox.common.model.v1.Test> createTests() {
+		Map<String, String> data = new HashMap<>();
+		data.put("package", "com.lotaris");
+
+		List<com.lotaris.rox.common.model.v1.Test> tests = new ArrayList<>();
+		tests.add(ModelFactory.createTest("key1", "first", "category", 0L, 12L, null, true, 0, new HashSet<>(Arrays.asList("tag")), null, data));
+		tests.add(ModelFactory.createTest("key2", "second", null, 0L, 3L, "Failure\nat line 2", false, 1, null, new HashSet<>(Arrays.asList("ticket")), null));
+		return tests;
+	}
+
+	@Test
+	@RoxableTest(key = "51c7e0a9b3d8")
+	public void streamedPayloadShouldBeTheSameAsThePayloadSentByTheRoxConnector() throws IOException {
+		List<com.lotaris.rox.common.model.v1.Test> tests = createTests();
+
+		Configuration configuration = mock(Configuration.class);
+		when(configuration.getServerConfiguration()).thenReturn(serverConfiguration);
+
+		assertTrue("The ROX connector should send the payload", new Connector(configuration).send(
+			ModelFactory.createPayload(ModelFactory.createTestRun("project", "1.0.0", 100L, 42L, "nightly", "run-uid", tests))));
+
+		String expectedContentType = contentType;
+		byte[] expected = body;
+
+		for (boolean gzip : new boolean[] { false, true }) {
+			PayloadUpload upload = new PayloadUpload(serverConfiguration, gzip, null);
+
+			try (OutputStream out = upload.start()) {
+				new PayloadWriter("project", "1.0.0", "nightly").write(out, "run-uid", 42L, tests);
+			}
+
+			assertTrue("The streamed payload should be accepted", upload.complete());
+			assertEquals("The streamed payload should have the content type of the ROX connector", expectedContentType, contentType);
+			assertEquals("The streamed payload should be the same as the payload sent by the ROX connector", new String(expected, "UTF-8"), new String(body, "UTF-8"));
+		}
+	}
+}
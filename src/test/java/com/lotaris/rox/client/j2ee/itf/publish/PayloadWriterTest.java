@@ -0,0 +1,74 @@
+package com.lotaris.rox.client.j2ee.itf.publish;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.common.model.v1.ModelFactory;
+import com.lotaris.rox.common.model.v1.Payload;
+import com.lotaris.rox.core.serializer.json.JsonSerializer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PayloadWriterTest {
+	private static List<com.lotaris.rox.common.model.v1.Test> createTests() {
+		Map<String, String> data = new HashMap<>();
+		data.put("package", "com.lotaris");
+		data.put("quote", "\"é\"");
+
+		List<com.lotaris.rox.common.model.v1.Test> tests = new ArrayList<>();
+		tests.add(ModelFactory.createTest("key1", "first", "category", 0L, 12L, null, true, 0, new HashSet<>(Arrays.asList("tag")), null, data));
+		tests.add(ModelFactory.createTest("key2", "second", null, 0L, 3L, "Failure\nat line 2", false, 1, null, new HashSet<>(Arrays.asList("ticket")), null));
+		return tests;
+	}
+
+	private static String serialize(Payload payload) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new JsonSerializer().serializePayload(new OutputStreamWriter(out, "UTF-8"), payload, false);
+		return out.toString("UTF-8");
+	}
+
+	@Test
+	@RoxableTest(key = "f40b7d2e61c9")
+	public void writtenPayloadShouldBeTheSameAsTheSerializedPayloadModel() throws IOException {
+		for (String group : new String[] { null, "nightly" }) {
+			List<com.lotaris.rox.common.model.v1.Test> tests = createTests();
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			new PayloadWriter("project", "1.0.0", group).write(out, "run-uid", 42L, tests);
+
+			String expected = serialize(ModelFactory.createPayload(ModelFactory.createTestRun("project", "1.0.0", 100L, 42L, group, "run-uid", tests)));
+
+			assertEquals("The written payload should be the same as the serialized payload model", expected, out.toString("UTF-8"));
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "9a2c6e07d3b5")
+	public void payloadShouldStillBeWrittenToTheOtherOutputsWhenOneFails() throws IOException {
+		OutputStream failing = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("Disk full");
+			}
+		};
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		TeeOutputStream tee = new TeeOutputStream(failing, out);
+
+		new PayloadWriter("project", "1.0.0", null).write(tee, "run-uid", 42L, createTests());
+		tee.close();
+
+		assertNotNull("The failure of the first output should be kept", tee.getFailure(0));
+		assertNull("The second output should not fail", tee.getFailure(1));
+		assertTrue("The whole payload should be written to the second output", out.toString("UTF-8").endsWith("]}]}"));
+	}
+}
@@ -0,0 +1,111 @@
+package com.lotaris.rox.client.j2ee.itf.publish;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.client.j2ee.itf.publish.PublishResult.Outcome;
+import com.lotaris.rox.common.model.v1.Payload;
+import com.lotaris.rox.common.model.v1.Test;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class StreamingPublisherTest {
+	@Mock
+	private PayloadPublisher publisher;
+
+	@Captor
+	private ArgumentCaptor<List<Test>> tests;
+
+	@Before
+	public void createPublisher() {
+		MockitoAnnotations.initMocks(this);
+		when(publisher.createPayload(anyString(), anyLong(), anyLong(), anyListOf(Test.class))).thenReturn(new Payload());
+		when(publisher.publish(any(Payload.class))).thenReturn(new PublishResult(Outcome.SKIPPED, 0, Outcome.SUCCEEDED, 0, 0));
+	}
+
+	@org.junit.Test
+	@RoxableTest(key = "5c1e0b7d93a2")
+	public void partialPayloadsShouldBePublishedEveryBatchWithTheSameUid() {
+		StreamingPublisher streamingPublisher = new StreamingPublisher(publisher, "uid", System.currentTimeMillis(), 2, 60000, 10);
+		streamingPublisher.start();
+
+		for (int i = 0; i < 5; i++) {
+			streamingPublisher.add(new Test("key" + i, "name" + i, 1L, true, null, "Integration"));
+		}
+
+		streamingPublisher.close();
+
+		verify(publisher, times(3)).createPayload(eq("uid"), anyLong(), anyLong(), tests.capture());
+		verify(publisher, times(3)).publish(any(Payload.class));
+
+		List<Integer> sizes = new ArrayList<>();
+		for (List<Test> batch : tests.getAllValues()) {
+			sizes.add(batch.size());
+		}
+
+		assertEquals("The results should be published in batches of two tests", "[2, 2, 1]", sizes.toString());
+		assertEquals("All the tests should be published", 5, streamingPublisher.getPublished());
+	}
+
+	@org.junit.Test
+	@RoxableTest(key = "a08f6e41c7d5")
+	public void partialPayloadShouldBePublishedWhenTheFlushIntervalIsReached() throws InterruptedException {
+		StreamingPublisher streamingPublisher = new StreamingPublisher(publisher, "uid", System.currentTimeMillis(), 100, 50, 10);
+		streamingPublisher.start();
+
+		streamingPublisher.add(new Test("key", "name", 1L, true, null, "Integration"));
+		Thread.sleep(500);
+
+		verify(publisher, times(1)).publish(any(Payload.class));
+
+		streamingPublisher.close();
+
+		verify(publisher, times(1)).publish(any(Payload.class));
+	}
+
+	@org.junit.Test
+	@RoxableTest(key = "e93b2d0a61f4")
+	public void nothingShouldBePublishedWhenNoTestWasQueued() {
+		StreamingPublisher streamingPublisher = new StreamingPublisher(publisher, "uid", System.currentTimeMillis(), 2, 60000, 10);
+		streamingPublisher.start();
+		streamingPublisher.close();
+
+		verify(publisher, never()).publish(any(Payload.class));
+	}
+
+	@org.junit.Test
+	@RoxableTest(key = "2f8d6a0b3e97")
+	public void onlyTheDeliveredBatchesShouldBeReported() {
+		when(publisher.publish(any(Payload.class))).thenReturn(
+			new PublishResult(Outcome.SKIPPED, 0, Outcome.SUCCEEDED, 0, 0),
+			new PublishResult(Outcome.SKIPPED, 0, Outcome.FAILED, 0, 0),
+			new PublishResult(Outcome.SKIPPED, 0, Outcome.SUCCEEDED, 0, 0));
+
+		final List<String> ranges = new ArrayList<>();
+
+		StreamingPublisher streamingPublisher = new StreamingPublisher(publisher, "uid", System.currentTimeMillis(), 2, 60000, 10);
+		streamingPublisher.setListener(new StreamingPublisher.BatchListener() {
+			@Override
+			public void published(int first, int count) {
+				ranges.add(first + "+" + count);
+			}
+		});
+		streamingPublisher.start();
+
+		for (int i = 0; i < 5; i++) {
+			streamingPublisher.add(new Test("key" + i, "name" + i, 1L, true, null, "Integration"));
+		}
+
+		streamingPublisher.close();
+
+		assertEquals("The first and last batches should be reported", "[0+2, 4+1]", ranges.toString());
+		assertEquals("Only the tests delivered should be counted", 3, streamingPublisher.getPublished());
+		assertFalse("The stream should not be delivered", streamingPublisher.isDelivered());
+	}
+}
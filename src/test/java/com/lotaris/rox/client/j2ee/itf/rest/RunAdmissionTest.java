@@ -0,0 +1,63 @@
+package com.lotaris.rox.client.j2ee.itf.rest;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RunAdmissionTest {
+	@Test
+	@RoxableTest(key = "c47e19a2d8b5")
+	public void runsBeyondTheLimitShouldBeRejected() {
+		RunAdmission admission = new RunAdmission(RunAdmission.Policy.REJECT, 2, 0);
+
+		assertTrue("The first run should be admitted", admission.admit());
+		assertTrue("The second run should be admitted", admission.admit());
+		assertFalse("The third run should be rejected", admission.admit());
+		assertEquals("Two runs should be running", 2, admission.getRunning());
+
+		admission.release();
+		assertTrue("A run should be admitted once a slot is released", admission.admit());
+	}
+
+	@Test
+	@RoxableTest(key = "0e6bd3f5a912")
+	public void serializedRunsShouldWaitForTheRunningOne() throws Exception {
+		final RunAdmission admission = new RunAdmission(RunAdmission.Policy.SERIALIZE, 4, 50);
+
+		assertTrue("The first run should be admitted", admission.admit());
+		assertFalse("The second run should not be admitted within the wait timeout", admission.admit());
+
+		Thread release = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				admission.release();
+			}
+		});
+		release.start();
+		release.join();
+
+		assertTrue("The second run should be admitted once the first one ended", admission.admit());
+		assertEquals("One run should be running", 1, admission.getRunning());
+	}
+
+	@Test
+	@RoxableTest(key = "7a3c0e5f9b21")
+	public void reconfiguredLimitShouldApplyToTheNextRuns() {
+		RunAdmission admission = new RunAdmission(RunAdmission.Policy.REJECT, 2, 0);
+
+		assertTrue("The first run should be admitted", admission.admit());
+		assertTrue("The second run should be admitted", admission.admit());
+
+		admission.reconfigure(RunAdmission.Policy.REJECT, 1, 0);
+		assertEquals("The admitted runs should keep their slot", 2, admission.getRunning());
+
+		admission.release();
+		assertFalse("No run should be admitted until the runs are below the new limit", admission.admit());
+
+		admission.reconfigure(RunAdmission.Policy.REJECT, 3, 0);
+		assertTrue("A run should be admitted with the raised limit", admission.admit());
+		assertTrue("A run should be admitted up to the raised limit", admission.admit());
+		assertFalse("The runs beyond the raised limit should be rejected", admission.admit());
+	}
+}
@@ -0,0 +1,63 @@
+package com.lotaris.rox.client.j2ee.itf.rest;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RunEventBufferTest {
+	private static Map<String, Object> event(int index) {
+		return Collections.<String, Object>singletonMap("type", "test" + index);
+	}
+
+	@Test
+	@RoxableTest(key = "f3a17c5e08d2")
+	public void oldestEventsShouldBeDroppedWhenTheBufferIsFull() throws InterruptedException {
+		RunEventBuffer buffer = new RunEventBuffer(3);
+
+		for (int i = 0; i < 5; i++) {
+			buffer.offer(event(i));
+		}
+		buffer.close();
+
+		assertEquals("The dropped events should be counted", 2, buffer.takeDropped());
+		assertEquals("The count should be reset once taken", 0, buffer.takeDropped());
+		assertEquals("The oldest event kept should be taken first", event(2), buffer.poll(0));
+		assertEquals("The events should be taken in order", event(3), buffer.poll(0));
+		assertEquals("The events should be taken in order", event(4), buffer.poll(0));
+		assertTrue("The buffer should be drained", buffer.isDrained());
+		assertNull("No event should be taken from a drained buffer", buffer.poll(1000));
+	}
+
+	@Test
+	@RoxableTest(key = "6b2de90f4c71")
+	public void eventsShouldBeWrittenAsJsonLinesWithTheDroppedCount() throws IOException {
+		RunEventBuffer buffer = new RunEventBuffer(1);
+		buffer.offer(event(0));
+		buffer.offer(event(1));
+		buffer.close();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new RunEventOutput(buffer, RunEventOutput.Format.LINES).write(out);
+
+		assertEquals("The dropped count should precede the remaining event",
+			"{\"type\":\"dropped\",\"count\":1}\n{\"type\":\"test1\"}\n", out.toString("UTF-8"));
+	}
+
+	@Test
+	@RoxableTest(key = "0ec58b13a9f6")
+	public void eventsShouldBeWrittenAsServerSentEvents() throws IOException {
+		RunEventBuffer buffer = new RunEventBuffer(10);
+		buffer.offer(Collections.<String, Object>singletonMap("type", "start"));
+		buffer.close();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new RunEventOutput(buffer, RunEventOutput.Format.SSE).write(out);
+
+		assertEquals("The type should be the name of the event", "event: start\ndata: {\"type\":\"start\"}\n\n", out.toString("UTF-8"));
+	}
+}
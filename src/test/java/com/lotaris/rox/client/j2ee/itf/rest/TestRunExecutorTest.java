@@ -0,0 +1,122 @@
+package com.lotaris.rox.client.j2ee.itf.rest;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestRunExecutorTest {
+	private static Callable<Long> blockingRun(final CountDownLatch release) {
+		return new Callable<Long>() {
+			@Override
+			public Long call() throws Exception {
+				release.await(5, TimeUnit.SECONDS);
+				return 42L;
+			}
+		};
+	}
+
+	private static void waitFor(TestRunStatus status, TestRunStatus.State state) throws InterruptedException {
+		for (int i = 0; i < 500 && status.getState() != state; i++) {
+			Thread.sleep(10);
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "b3f8a1d6e027")
+	public void runShouldGoThroughAllTheStates() throws Exception {
+		TestRunExecutor executor = new TestRunExecutor(1, 1, 10);
+		CountDownLatch release = new CountDownLatch(1);
+
+		TestRunStatus status = executor.createStatus();
+		executor.submit(status, blockingRun(release));
+
+		waitFor(status, TestRunStatus.State.RUNNING);
+		assertEquals("The run should be running", TestRunStatus.State.RUNNING, status.getState());
+		assertSame("The status should be retrievable by id", status, executor.getStatus(status.getId()));
+
+		release.countDown();
+		waitFor(status, TestRunStatus.State.FINISHED);
+
+		assertEquals("The run should be finished", TestRunStatus.State.FINISHED, status.getState());
+		assertEquals("The seed should be reported", 42L, status.toMap().get("seed"));
+	}
+
+	@Test
+	@RoxableTest(key = "4e0c7b92f5a8")
+	public void runsShouldBeRejectedWhenTheQueueIsFull() throws Exception {
+		TestRunExecutor executor = new TestRunExecutor(1, 1, 10);
+		CountDownLatch release = new CountDownLatch(1);
+
+		TestRunStatus running = executor.createStatus();
+		executor.submit(running, blockingRun(release));
+		waitFor(running, TestRunStatus.State.RUNNING);
+
+		TestRunStatus queued = executor.createStatus();
+		executor.submit(queued, blockingRun(release));
+		assertEquals("The second run should wait", TestRunStatus.State.QUEUED, queued.getState());
+
+		TestRunStatus rejected = executor.createStatus();
+		try {
+			executor.submit(rejected, blockingRun(release));
+			fail("The third run should be rejected");
+		}
+		catch (RejectedExecutionException ree) {
+			assertNull("The rejected run should be forgotten", executor.getStatus(rejected.getId()));
+		}
+		finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "91d2e6c08b3f")
+	public void failingRunShouldBeReportedAsFailed() throws Exception {
+		TestRunExecutor executor = new TestRunExecutor(1, 1, 10);
+
+		TestRunStatus status = executor.createStatus();
+		executor.submit(status, new Callable<Long>() {
+			@Override
+			public Long call() {
+				throw new IllegalStateException("No controller");
+			}
+		});
+
+		waitFor(status, TestRunStatus.State.FAILED);
+
+		assertEquals("The run should be failed", TestRunStatus.State.FAILED, status.getState());
+		assertEquals("The reason should be reported", "No controller", status.toMap().get("error"));
+	}
+
+	@Test
+	@RoxableTest(key = "d5b8e2a7c064")
+	public void resizedExecutorShouldKeepTheSubmittedRuns() throws Exception {
+		TestRunExecutor executor = new TestRunExecutor(1, 0, 10);
+		CountDownLatch release = new CountDownLatch(1);
+
+		try {
+			TestRunStatus first = executor.createStatus();
+			executor.submit(first, blockingRun(release));
+			waitFor(first, TestRunStatus.State.RUNNING);
+
+			executor.resize(2, 1, 10);
+
+			TestRunStatus second = executor.createStatus();
+			executor.submit(second, blockingRun(release));
+			waitFor(second, TestRunStatus.State.RUNNING);
+			assertEquals("The second run should run with the raised limit", TestRunStatus.State.RUNNING, second.getState());
+
+			TestRunStatus queued = executor.createStatus();
+			executor.submit(queued, blockingRun(release));
+			assertEquals("The third run should wait in the raised queue", TestRunStatus.State.QUEUED, queued.getState());
+			assertSame("The status of the run submitted before the resize should be kept", first, executor.getStatus(first.getId()));
+		}
+		finally {
+			release.countDown();
+		}
+	}
+}
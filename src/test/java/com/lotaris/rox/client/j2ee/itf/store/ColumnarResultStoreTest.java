@@ -0,0 +1,104 @@
+package com.lotaris.rox.client.j2ee.itf.store;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.client.j2ee.itf.profile.TestProfiler;
+import com.lotaris.rox.common.model.v1.ModelFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ColumnarResultStoreTest {
+	private static com.lotaris.rox.common.model.v1.Test createTest(int index) {
+		Set<String> tags = index % 5 == 0 ? null : new HashSet<>(Arrays.asList("itf", "tag" + (index % 3)));
+		Set<String> tickets = index % 2 == 0 ? null : new HashSet<>(Arrays.asList("JIRA-" + (index % 4)));
+
+		Map<String, String> data = null;
+		if (index % 7 != 0) {
+			data = new HashMap<>();
+			data.put("class", "Class" + (index % 10));
+			data.put("method", "method" + index);
+
+			if (index % 3 == 1) {
+				data.put(TestProfiler.CPU_TIME, Integer.toString(index * 13));
+			}
+		}
+
+		com.lotaris.rox.common.model.v1.Test test = ModelFactory.createTest(
+			"key" + index, "name" + index, index % 3 == 0 ? null : "category", 0L, index, 
+			index % 2 == 0 ? null : "Failure é " + index, index % 2 == 0, index % 4, tags, tickets, data);
+
+		if (index % 11 == 0) {
+			test.setFlags(null);
+		}
+
+		return test;
+	}
+
+	@Test
+	@RoxableTest(key = "b1c7f26e09d4")
+	public void storedResultsShouldBeMaterializedBack() {
+		ColumnarResultStore store = new ColumnarResultStore();
+
+		for (int i = 0; i < 3000; i++) {
+			store.add(createTest(i));
+		}
+
+		assertEquals("The store should contain all the results", 3000, store.size());
+
+		List<com.lotaris.rox.common.model.v1.Test> results = store.getResults();
+
+		for (int i = 0; i < 3000; i++) {
+			com.lotaris.rox.common.model.v1.Test expected = createTest(i);
+			com.lotaris.rox.common.model.v1.Test actual = results.get(i);
+
+			assertEquals("The key should be materialized", expected.getKey(), actual.getKey());
+			assertEquals("The name should be materialized", expected.getName(), actual.getName());
+			assertEquals("The category should be materialized", expected.getCategory(), actual.getCategory());
+			assertEquals("The duration should be materialized", expected.getDuration(), actual.getDuration());
+			assertEquals("The status should be materialized", expected.isPassed(), actual.isPassed());
+			assertEquals("The message should be materialized", expected.getMessage(), actual.getMessage());
+			assertEquals("The flags should be materialized", expected.getFlags(), actual.getFlags());
+			assertEquals("The tags should be materialized", expected.getTags(), actual.getTags());
+			assertEquals("The tickets should be materialized", expected.getTickets(), actual.getTickets());
+			assertEquals("The data should be materialized", expected.getData(), actual.getData());
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "5d08a3e1f7c2")
+	public void repeatedStringsShouldBeStoredOnce() {
+		ColumnarResultStore store = new ColumnarResultStore();
+
+		for (int i = 0; i < 1000; i++) {
+			store.add(createTest(i % 10));
+		}
+
+		assertTrue("The strings of the ten distinct results should be stored once, got " + store.getDistinctStrings(), store.getDistinctStrings() < 60);
+
+		store.clear();
+
+		assertTrue("The store should be empty once cleared", store.isEmpty());
+		assertEquals("The dictionary should be empty once cleared", 0, store.getDistinctStrings());
+	}
+
+	@Test
+	@RoxableTest(key = "c3e90a7d5b28")
+	public void executionDataShouldBeKeptOutOfTheDictionary() {
+		ColumnarResultStore store = new ColumnarResultStore();
+
+		for (int i = 0; i < 1000; i++) {
+			com.lotaris.rox.common.model.v1.Test test = createTest(i % 10);
+			test.addData(TestProfiler.ALLOCATED_BYTES, Integer.toString(i * 1000));
+			store.add(test);
+		}
+
+		assertTrue("The measures should not be stored in the dictionary, got " + store.getDistinctStrings(), store.getDistinctStrings() < 60);
+		assertEquals("The measures should be materialized", "999000", store.getResults().get(999).getData().get(TestProfiler.ALLOCATED_BYTES));
+	}
+}
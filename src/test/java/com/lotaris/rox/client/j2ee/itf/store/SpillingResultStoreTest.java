@@ -0,0 +1,83 @@
+package com.lotaris.rox.client.j2ee.itf.store;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.common.model.v1.ModelFactory;
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class SpillingResultStoreTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static com.lotaris.rox.common.model.v1.Test createTest(int index) {
+		Set<String> tags = new HashSet<>();
+		tags.add("tag" + index);
+
+		Map<String, String> data = new HashMap<>();
+		data.put("index", "" + index);
+
+		return ModelFactory.createTest(
+			"key" + index, "name" + index, "category", 0L, index, index % 2 == 0 ? null : "Failure é " + index, index % 2 == 0, index, tags, null, data);
+	}
+
+	@Test
+	@RoxableTest(key = "7e3b9d05c1a4")
+	public void resultsBeyondTheMemoryLimitShouldBeReadBackFromTheSpillFile() {
+		// Regions smaller than the records to read and write them across regions
+		SpillingResultStore store = new SpillingResultStore(3, folder.getRoot(), 16);
+
+		for (int i = 0; i < 100; i++) {
+			store.add(createTest(i));
+		}
+
+		assertEquals("The store should contain all the results", 100, store.size());
+		assertEquals("The results beyond the memory limit should be on disk", 97, store.getSpilled());
+		assertTrue("The spill file should be in the configured directory", store.getFile().getParentFile().equals(folder.getRoot()));
+
+		List<com.lotaris.rox.common.model.v1.Test> results = store.getResults();
+
+		for (int i = 0; i < 100; i++) {
+			com.lotaris.rox.common.model.v1.Test expected = createTest(i);
+			com.lotaris.rox.common.model.v1.Test actual = results.get(i);
+
+			assertEquals("The key should be read back", expected.getKey(), actual.getKey());
+			assertEquals("The name should be read back", expected.getName(), actual.getName());
+			assertEquals("The duration should be read back", expected.getDuration(), actual.getDuration());
+			assertEquals("The status should be read back", expected.isPassed(), actual.isPassed());
+			assertEquals("The message should be read back", expected.getMessage(), actual.getMessage());
+			assertEquals("The flags should be read back", expected.getFlags(), actual.getFlags());
+			assertEquals("The tags should be read back", expected.getTags(), actual.getTags());
+			assertEquals("The tickets should be read back", expected.getTickets(), actual.getTickets());
+			assertEquals("The data should be read back", expected.getData(), actual.getData());
+		}
+	}
+
+	@Test
+	@RoxableTest(key = "c2a86f41e9d7")
+	public void spillFileShouldBeDeletedWhenTheStoreIsCleared() {
+		SpillingResultStore store = new SpillingResultStore(0, folder.getRoot());
+
+		store.add(createTest(1));
+		File file = store.getFile();
+
+		assertTrue("The spill file should exist", file.exists());
+
+		store.clear();
+
+		assertTrue("The store should be empty", store.isEmpty());
+		assertFalse("The spill file should be deleted", file.exists());
+
+		store.add(createTest(2));
+
+		assertEquals("The store should be usable once cleared", "key2", store.getResults().get(0).getKey());
+	}
+}
@@ -0,0 +1,113 @@
+package com.lotaris.rox.client.j2ee.itf.store;
+
+import com.lotaris.rox.annotations.RoxableTest;
+import com.lotaris.rox.common.model.v1.ModelFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ThreadLocalResultStoreTest {
+	private static com.lotaris.rox.common.model.v1.Test createTest(String key) {
+		return ModelFactory.createTest(key, key, "category", 0L, 10L, "", true, 0, null, null, null);
+	}
+
+	@Test
+	@RoxableTest(key = "5d1c8a7e0f42")
+	public void resultsStoredByAllTheThreadsShouldBeMerged() throws InterruptedException {
+		final ThreadLocalResultStore store = new ThreadLocalResultStore();
+		final int threads = 16;
+		final int testsPerThread = 5000;
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Thread> workers = new ArrayList<>();
+
+		for (int i = 0; i < threads; i++) {
+			final int thread = i;
+			Thread worker = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					}
+					catch (InterruptedException ie) {
+						return;
+					}
+
+					for (int j = 0; j < testsPerThread; j++) {
+						store.add(createTest(thread + "-" + j));
+					}
+				}
+			});
+			workers.add(worker);
+			worker.start();
+		}
+
+		start.countDown();
+
+		for (Thread worker : workers) {
+			worker.join();
+		}
+
+		Set<String> keys = new HashSet<>();
+		for (com.lotaris.rox.common.model.v1.Test test : store.getResults()) {
+			keys.add(test.getKey());
+		}
+
+		assertEquals("The store should contain the results of all the threads", threads * testsPerThread, store.size());
+		assertEquals("Every result should be merged exactly once", threads * testsPerThread, keys.size());
+	}
+
+	@Test
+	@RoxableTest(key = "a0f63e9b27d8")
+	public void storeShouldBeEmptyAndReusableOnceCleared() {
+		ThreadLocalResultStore store = new ThreadLocalResultStore();
+
+		store.add(createTest("first"));
+		store.clear();
+
+		assertTrue("The store should be empty once cleared", store.isEmpty());
+
+		store.add(createTest("second"));
+
+		assertEquals("The result stored after the clear should be kept", 1, store.getResults().size());
+		assertEquals("The result stored after the clear should be kept", "second", store.getResults().get(0).getKey());
+	}
+
+	@Test
+	@RoxableTest(key = "e3b90d5a7c16")
+	public void threadsStillRunningShouldStoreTheirResultsOnceCleared() throws Exception {
+		final ThreadLocalResultStore store = new ThreadLocalResultStore();
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+
+		try {
+			pool.submit(add(store, "before")).get(2, TimeUnit.SECONDS);
+			store.clear();
+
+			assertTrue("The results of the pool thread should be released", store.isEmpty());
+
+			pool.submit(add(store, "after")).get(2, TimeUnit.SECONDS);
+
+			assertEquals("The result stored by the pool thread after the clear should be kept", 1, store.size());
+			assertEquals("The result stored by the pool thread after the clear should be kept", "after", store.getResults().get(0).getKey());
+		}
+		finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private static Runnable add(final ThreadLocalResultStore store, final String key) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				store.add(createTest(key));
+			}
+		};
+	}
+}
@@ -0,0 +1,353 @@
+package com.lotaris.rox.client.j2ee.itf.stub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lotaris.rox.client.j2ee.itf.publish.AsyncPayloadPublisher;
+import com.lotaris.rox.common.config.ServerConfiguration;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * In-process stand-in of the ROX Center API, listening on the loopback interface. It
+ * serves the API root with the link to the payload resource and accepts the payloads
+ * like ROX Center does, so the ROX connector and the uploads of the ITF client can be
+ * pointed at it without any network access.
+ *
+ * The payloads received are recorded, uncompressed, and latency, errors and slow reads
+ * of the request bodies can be injected to exercise the publish path under faults.
+ */
+public class RoxServerStub implements AutoCloseable {
+	private static final String API_ROOT_MEDIA_TYPE = "application/hal+json";
+	private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	/**
+	 * Payloads accepted, uncompressed, when they are recorded
+	 */
+	private final List<byte[]> payloads = new ArrayList<>();
+	private volatile boolean recording = true;
+
+	/**
+	 * Counters of the payload requests
+	 */
+	private final AtomicInteger accepted = new AtomicInteger();
+	private final AtomicInteger rejected = new AtomicInteger();
+	private final AtomicLong receivedBytes = new AtomicLong();
+
+	/**
+	 * Injected faults
+	 */
+	private volatile long latency;
+	private volatile int readBytesPerSecond;
+	private volatile double errorRate;
+	private volatile int errorCode = 503;
+	private final AtomicInteger failures = new AtomicInteger();
+	private final Random random = new Random(42);
+
+	/**
+	 * Start a stub answering on 4 threads
+	 *
+	 * @throws IOException When the stub cannot listen
+	 */
+	public RoxServerStub() throws IOException {
+		this(4);
+	}
+
+	/**
+	 * Start a stub
+	 *
+	 * @param threads The number of requests handled at the same time
+	 * @throws IOException When the stub cannot listen
+	 */
+	public RoxServerStub(int threads) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 0);
+		executor = Executors.newFixedThreadPool(threads, AsyncPayloadPublisher.daemonThreadFactory("rox-server-stub"));
+
+		server.createContext("/api/payloads", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				handlePayload(exchange);
+			}
+		});
+
+		server.createContext("/api", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				handleRoot(exchange);
+			}
+		});
+
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	/**
+	 * @return The URL of the API root of the stub
+	 */
+	public String getApiUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/api";
+	}
+
+	/**
+	 * @return The configuration of a ROX server pointing at the stub
+	 */
+	public ServerConfiguration createServerConfiguration() {
+		Map<String, Object> properties = new HashMap<>();
+		properties.put("apiUrl", getApiUrl());
+		properties.put("apiKeyId", "stub");
+		properties.put("apiKeySecret", "stub");
+
+		ServerConfiguration configuration = new ServerConfiguration("stub");
+		configuration.configureWith(properties);
+		return configuration;
+	}
+
+	/**
+	 * @param latency The time to wait before answering a payload request, in milliseconds
+	 * @return The stub
+	 */
+	public RoxServerStub withLatency(long latency) {
+		this.latency = latency;
+		return this;
+	}
+
+	/**
+	 * @param readBytesPerSecond The rate at which the bodies of the payload requests are read, 0 to read them as fast as possible
+	 * @return The stub
+	 */
+	public RoxServerStub withSlowReads(int readBytesPerSecond) {
+		this.readBytesPerSecond = readBytesPerSecond;
+		return this;
+	}
+
+	/**
+	 * @param errorRate The ratio of the payload requests answered with an error, between 0 and 1
+	 * @param errorCode The HTTP status of the errors
+	 * @return The stub
+	 */
+	public RoxServerStub withErrors(double errorRate, int errorCode) {
+		this.errorRate = errorRate;
+		this.errorCode = errorCode;
+		return this;
+	}
+
+	/**
+	 * @param count The number of next payload requests answered with an error
+	 * @param errorCode The HTTP status of the errors
+	 * @return The stub
+	 */
+	public RoxServerStub failNext(int count, int errorCode) {
+		this.errorCode = errorCode;
+		failures.set(count);
+		return this;
+	}
+
+	/**
+	 * @param recording False to only count the payloads, typically under a heavy load
+	 * @return The stub
+	 */
+	public RoxServerStub withRecording(boolean recording) {
+		this.recording = recording;
+		return this;
+	}
+
+	/**
+	 * @return The payloads accepted, uncompressed
+	 */
+	public List<byte[]> getPayloads() {
+		synchronized (payloads) {
+			return new ArrayList<>(payloads);
+		}
+	}
+
+	/**
+	 * @return The number of tests in the payloads recorded
+	 * @throws IOException When a payload is not valid JSON
+	 */
+	public int countTests() throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		int count = 0;
+
+		for (byte[] payload : getPayloads()) {
+			for (JsonNode results : mapper.readTree(payload).path("r")) {
+				count += results.path("t").size();
+			}
+		}
+
+		return count;
+	}
+
+	public int getAccepted() {
+		return accepted.get();
+	}
+
+	public int getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * @return The number of bytes of the payload requests, as received on the wire
+	 */
+	public long getReceivedBytes() {
+		return receivedBytes.get();
+	}
+
+	/**
+	 * Forget the payloads and the counters, the injected faults are kept
+	 */
+	public void reset() {
+		synchronized (payloads) {
+			payloads.clear();
+		}
+		accepted.set(0);
+		rejected.set(0);
+		receivedBytes.set(0);
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private void handleRoot(HttpExchange exchange) throws IOException {
+		if (!"/api".equals(exchange.getRequestURI().getPath()) && !"/api/".equals(exchange.getRequestURI().getPath())) {
+			respond(exchange, 404, "Not found");
+			return;
+		}
+
+		if (exchange.getRequestHeaders().getFirst("Authorization") == null) {
+			respond(exchange, 401, "Missing API key");
+			return;
+		}
+
+		exchange.getResponseHeaders().set("Content-Type", API_ROOT_MEDIA_TYPE);
+		respond(exchange, 200, "{\"_links\":{\"v1:test-payloads\":{\"href\":\"" + getApiUrl() + "/payloads\"}}}");
+	}
+
+	private void handlePayload(HttpExchange exchange) throws IOException {
+		if (!"POST".equals(exchange.getRequestMethod())) {
+			respond(exchange, 405, "Method not allowed");
+			return;
+		}
+
+		byte[] payload = readBody(exchange);
+
+		sleep(latency);
+
+		if (isFailing()) {
+			rejected.incrementAndGet();
+			respond(exchange, errorCode, "Injected failure");
+			return;
+		}
+
+		if (recording) {
+			synchronized (payloads) {
+				payloads.add(payload);
+			}
+		}
+
+		accepted.incrementAndGet();
+		respond(exchange, 202, null);
+	}
+
+	private boolean isFailing() {
+		int remaining = failures.get();
+		while (remaining > 0) {
+			if (failures.compareAndSet(remaining, remaining - 1)) {
+				return true;
+			}
+			remaining = failures.get();
+		}
+
+		if (errorRate > 0) {
+			synchronized (random) {
+				return random.nextDouble() < errorRate;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Read the body of a request, at the configured rate, and uncompress it if required
+	 */
+	private byte[] readBody(HttpExchange exchange) throws IOException {
+		ByteArrayOutputStream raw = new ByteArrayOutputStream();
+		byte[] buffer = new byte[READ_BUFFER_SIZE];
+
+		try (InputStream in = exchange.getRequestBody()) {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				raw.write(buffer, 0, read);
+
+				int rate = readBytesPerSecond;
+				if (rate > 0) {
+					sleep(read * 1000L / rate);
+				}
+			}
+		}
+
+		receivedBytes.addAndGet(raw.size());
+
+		if (!"gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+			return raw.toByteArray();
+		}
+
+		ByteArrayOutputStream json = new ByteArrayOutputStream();
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(raw.toByteArray()))) {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				json.write(buffer, 0, read);
+			}
+		}
+		return json.toByteArray();
+	}
+
+	private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+		if (body == null) {
+			exchange.sendResponseHeaders(code, -1);
+			exchange.close();
+			return;
+		}
+
+		byte[] bytes = body.getBytes("UTF-8");
+		exchange.sendResponseHeaders(code, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private static void sleep(long millis) {
+		if (millis <= 0) {
+			return;
+		}
+
+		try {
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}